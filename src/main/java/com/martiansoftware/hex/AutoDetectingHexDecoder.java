@@ -0,0 +1,239 @@
+package com.martiansoftware.hex;
+
+//   Copyright 2016 Martian Software, Inc.
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PushbackReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+
+/**
+ * A HexDecoder that identifies the format of its input from a short prefix
+ * (at most the first line) and hands the whole input to the decoder for that
+ * format.
+ *
+ * Plain hex, with or without delimiters (the STRICT, DEFAULT, and SIMPLE
+ * formats), is decoded by a DefaultHexDecoder.  All three share the same
+ * table-driven decoding loop, so nothing is gained by decoding them more
+ * strictly, and the DefaultHexDecoder still decodes input whose later lines
+ * are laid out differently than the first.  Hex dumps, Intel HEX, and
+ * S-records, which a DefaultHexDecoder would decode incorrectly, are decoded
+ * by their own decoders.
+ *
+ * ```
+ *   AutoDetectingHexDecoder d = new AutoDetectingHexDecoder();
+ *   byte[] a = d.decode("48656c6c6f");
+ *   byte[] b = d.decode("00000000: 48 65 6c 6c 6f                                     Hello");
+ * ```
+ *
+ * @author <a href="http://martylamb.com">Marty Lamb</a>
+ */
+public class AutoDetectingHexDecoder implements HexDecoder {
+
+    /** The maximum number of characters examined to identify a format */
+    static final int SNIFF_LENGTH = 256;
+
+    private static final int MIN_ADDRESS_DIGITS = 4;
+    private static final int MIN_INTEL_HEX_DIGITS = 10;
+
+    /**
+     * The formats that can be identified
+     */
+    public enum Format {
+        /** Hex digits only, as produced by DefaultHexEncoder */
+        STRICT,
+        /** Hex digits with whitespace or other delimiters */
+        DEFAULT,
+        /** Pairs of hex digits separated by colons, as produced by StandardHexCodecs.SIMPLE */
+        SIMPLE,
+        /** A hex dump with addresses, as produced by HexDumpEncoder */
+        HEXDUMP,
+        /** Intel HEX records */
+        INTEL_HEX,
+        /** Motorola S-records */
+        SREC
+    }
+
+    private final HexDecoder _plain = new DefaultHexDecoder();
+    private final HexDecoder _hexDump = new HexDumpDecoder();
+    private final HexDecoder _intelHex = new IntelHexDecoder();
+    private final HexDecoder _sRecord = new SRecordDecoder();
+
+    /**
+     * Identifies the format of the specified input from its first line.
+     * Leading whitespace is skipped, and at most SNIFF_LENGTH characters
+     * are examined.  A first line that is cut off by that limit, or by the
+     * end of a prefix of SNIFF_LENGTH or more characters, is identified from
+     * the characters examined without requiring them to form a complete line.
+     *
+     * @param in the input (or a prefix of it) to examine
+     * @return the identified format; DEFAULT if no other format matches
+     */
+    public static Format detect(CharSequence in) {
+        int start = 0, len = in.length();
+        while (start < len && Character.isWhitespace(in.charAt(start))) ++start;
+        int end = start;
+        for (int max = Math.min(len, start + SNIFF_LENGTH); end < max; ++end) {
+            char c = in.charAt(end);
+            if (c == '\r' || c == '\n') break;
+        }
+        boolean complete = (end < len) ? (in.charAt(end) == '\r' || in.charAt(end) == '\n') : len < SNIFF_LENGTH;
+        while (end > start && Character.isWhitespace(in.charAt(end - 1))) --end;
+        if (start == end) return Format.DEFAULT;
+
+        char first = in.charAt(start);
+        if (first == ':' && end - start > MIN_INTEL_HEX_DIGITS && (!complete || (end - start - 1) % 2 == 0)
+                && hexDigits(in, start + 1, end) == end) {
+            return Format.INTEL_HEX;
+        }
+        if (first == 'S' && end - start > 2 && Character.isDigit(in.charAt(start + 1)) && hexDigits(in, start + 2, end) == end) {
+            return Format.SREC;
+        }
+
+        int digits = hexDigits(in, start, end);
+        if (digits == end) return Format.STRICT;
+        if (digits - start >= MIN_ADDRESS_DIGITS && in.charAt(digits) == ':'
+                && digits + 1 < end && Character.isWhitespace(in.charAt(digits + 1))) {
+            return Format.HEXDUMP;
+        }
+        return isSimple(in, start, end) ? Format.SIMPLE : Format.DEFAULT;
+    }
+
+    /**
+     * @param format a format identified by `detect()`
+     * @return the decoder used for input in the specified format
+     */
+    public HexDecoder decoderFor(Format format) {
+        switch (format) {
+            case HEXDUMP: return _hexDump;
+            case INTEL_HEX: return _intelHex;
+            case SREC: return _sRecord;
+            default: return _plain;
+        }
+    }
+
+    /**
+     * @return the index of the first character at or after start that is
+     * not a hex digit, or end if there is none
+     */
+    private static int hexDigits(CharSequence in, int start, int end) {
+        int i = start;
+        while (i < end) {
+            char c = in.charAt(i);
+            if (c >= HexDecoderAdapter.DIGIT_VALUES.length || HexDecoderAdapter.DIGIT_VALUES[c] < 0) break;
+            ++i;
+        }
+        return i;
+    }
+
+    /**
+     * @return true if the range consists of two-digit bytes separated by single colons
+     */
+    private static boolean isSimple(CharSequence in, int start, int end) {
+        if ((end - start + 1) % 3 != 0) return false;
+        for (int i = start; i < end; i += 3) {
+            if (hexDigits(in, i, i + 2) != i + 2) return false;
+            if (i + 2 < end && in.charAt(i + 2) != ':') return false;
+        }
+        return true;
+    }
+
+    private HexDecoder decoderFor(CharSequence in) {
+        return decoderFor(detect(in));
+    }
+
+    @Override
+    public byte[] decode(String in) throws ParseException {
+        return decoderFor(in).decode(in);
+    }
+
+    @Override
+    public byte[] decode(CharSequence in, int start, int end) throws ParseException {
+        return decoderFor(in.subSequence(start, Math.min(end, start + SNIFF_LENGTH))).decode(in, start, end);
+    }
+
+    @Override
+    public int decode(char[] in, int offset, int len, byte[] out, int outOffset) throws ParseException {
+        CharBuffer prefix = CharBuffer.wrap(in, offset, Math.min(len, SNIFF_LENGTH));
+        return decoderFor(prefix).decode(in, offset, len, out, outOffset);
+    }
+
+    /**
+     * Identifies the format of the input from a prefix read from it, and then
+     * decodes the prefix and the rest of the input with the decoder for that
+     * format
+     */
+    @Override
+    public void decode(Reader in, OutputStream out) throws ParseException, IOException {
+        PushbackReader r = new PushbackReader(in, SNIFF_LENGTH);
+        char[] prefix = new char[SNIFF_LENGTH];
+        int n = 0, read;
+        boolean content = false, lineEnded = false;
+        // stop reading at the end of the first non-blank line
+        while (!lineEnded && n < prefix.length && (read = r.read(prefix, n, prefix.length - n)) >= 0) {
+            for (int end = n + read; n < end; ++n) {
+                if (prefix[n] == '\n' && content) lineEnded = true;
+                content |= !Character.isWhitespace(prefix[n]);
+            }
+        }
+        r.unread(prefix, 0, n);
+        decoderFor(CharBuffer.wrap(prefix, 0, n)).decode(r, out);
+    }
+
+    /**
+     * Identifies the format of the hex file from its first characters, and
+     * then decodes the file with the decoder for that format, in parallel if
+     * that decoder supports it
+     */
+    @Override
+    public long decode(Path in, Path out, int threads) throws ParseException, IOException {
+        char[] prefix = new char[SNIFF_LENGTH];
+        int n;
+        try (FileChannel fc = FileChannel.open(in, StandardOpenOption.READ)) {
+            n = new ChannelReader(fc, 0, prefix.length).read(prefix, 0, prefix.length);
+        }
+        return decoderFor(CharBuffer.wrap(prefix, 0, Math.max(0, n))).decode(in, out, threads);
+    }
+
+    @Override
+    public void decode(ByteBuffer in, ByteBuffer out) throws ParseException, IOException {
+        ByteBuffer b = in.duplicate();
+        char[] prefix = new char[Math.min(SNIFF_LENGTH, b.remaining())];
+        for (int i = 0; i < prefix.length; ++i) prefix[i] = (char) (b.get() & 0xff);
+        decoderFor(CharBuffer.wrap(prefix)).decode(in, out);
+    }
+
+    @Override
+    public long decodedLength(CharSequence in) throws ParseException {
+        return decoderFor(in).decodedLength(in);
+    }
+
+    @Override
+    public int validate(CharSequence in) {
+        return decoderFor(in).validate(in);
+    }
+
+    @Override
+    public DecodeResult tryDecode(CharSequence in) {
+        return decoderFor(in).tryDecode(in);
+    }
+
+}
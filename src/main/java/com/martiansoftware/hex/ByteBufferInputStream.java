@@ -0,0 +1,60 @@
+package com.martiansoftware.hex;
+
+//   Copyright 2016 Martian Software, Inc.
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * An InputStream that reads the remaining bytes of a ByteBuffer (including
+ * direct and memory-mapped buffers), advancing the buffer's position as it
+ * goes.
+ *
+ * @author <a href="http://martylamb.com">Marty Lamb</a>
+ */
+class ByteBufferInputStream extends InputStream {
+
+    private final ByteBuffer _buf;
+
+    ByteBufferInputStream(ByteBuffer buf) {
+        _buf = buf;
+    }
+
+    @Override
+    public int read() {
+        return _buf.hasRemaining() ? (_buf.get() & 0xff) : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+        if (len == 0) return 0;
+        if (!_buf.hasRemaining()) return -1;
+        int n = Math.min(len, _buf.remaining());
+        _buf.get(b, off, n);
+        return n;
+    }
+
+    @Override
+    public long skip(long n) {
+        int skipped = (int) Math.max(0, Math.min(n, _buf.remaining()));
+        _buf.position(_buf.position() + skipped);
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return _buf.remaining();
+    }
+}
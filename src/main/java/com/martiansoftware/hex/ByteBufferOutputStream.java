@@ -0,0 +1,44 @@
+package com.martiansoftware.hex;
+
+//   Copyright 2016 Martian Software, Inc.
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * An OutputStream that writes to a ByteBuffer (including direct and
+ * memory-mapped buffers), advancing the buffer's position as it goes.  Writing
+ * more bytes than the buffer has room for throws a BufferOverflowException.
+ *
+ * @author <a href="http://martylamb.com">Marty Lamb</a>
+ */
+class ByteBufferOutputStream extends OutputStream {
+
+    private final ByteBuffer _buf;
+
+    ByteBufferOutputStream(ByteBuffer buf) {
+        _buf = buf;
+    }
+
+    @Override
+    public void write(int b) {
+        _buf.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        _buf.put(b, off, len);
+    }
+}
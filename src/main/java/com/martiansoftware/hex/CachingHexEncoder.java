@@ -0,0 +1,244 @@
+package com.martiansoftware.hex;
+
+//   Copyright 2016 Martian Software, Inc.
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+import com.martiansoftware.validation.Hope;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A HexEncoder that caches the Strings encoded by another HexEncoder for
+ * short byte arrays, such as UUIDs, hashes, and other identifiers that are
+ * encoded over and over.
+ *
+ * The cache holds a bounded number of entries in small sets of slots chosen by
+ * a hash of the bytes; a lookup examines only the slots in one set.  Lookups
+ * take no locks and write nothing shared except the hit and miss counters.
+ * The LEAST_RECENTLY_USED policy also marks an entry as referenced when it is
+ * found, but only if the mark has been cleared since, so repeated hits on a
+ * popular entry only read it.  An entry's bytes and String never change, and
+ * entries are replaced atomically, so concurrent encoders never see a
+ * partially written entry.
+ *
+ * Only arrays of up to 64 bytes are cached; longer arrays, and all streams,
+ * buffers, and channels, are passed directly to the underlying encoder.
+ *
+ * ```
+ *   CachingHexEncoder ids = new CachingHexEncoder(new DefaultHexEncoder(), 4096);
+ *   String s = ids.encode(tenantId);
+ *   ...
+ *   System.out.printf("%d hits, %d misses%n", ids.hits(), ids.misses());
+ * ```
+ *
+ * @author <a href="http://martylamb.com">Marty Lamb</a>
+ */
+public class CachingHexEncoder implements HexEncoder {
+
+    /**
+     * The policies for choosing which entry in a full set to replace
+     */
+    public enum Eviction {
+        /**
+         * Replace an entry that has not been returned recently, approximating
+         * least-recently-used with a CLOCK reference mark on each entry
+         */
+        LEAST_RECENTLY_USED,
+        /** Replace the entry that was added first */
+        FIRST_IN_FIRST_OUT,
+        /** Replace a randomly chosen entry */
+        RANDOM
+    }
+
+    /** The length of the longest byte array that will be cached */
+    public static final int MAX_CACHED_LENGTH = 64;
+
+    private static final int WAYS = 4;
+
+    private final HexEncoder _encoder;
+    private final Eviction _eviction;
+    private final AtomicReferenceArray<Entry> _entries;
+    private final int[] _hands;
+    private final int _setMask;
+    private final LongAdder _hits = new LongAdder();
+    private final LongAdder _misses = new LongAdder();
+
+    /**
+     * Creates a new CachingHexEncoder with a least-recently-used eviction policy
+     * @param encoder the HexEncoder whose results will be cached
+     * @param maxEntries the maximum number of encoded Strings to cache
+     */
+    public CachingHexEncoder(HexEncoder encoder, int maxEntries) {
+        this(encoder, maxEntries, Eviction.LEAST_RECENTLY_USED);
+    }
+
+    /**
+     * Creates a new CachingHexEncoder
+     * @param encoder the HexEncoder whose results will be cached
+     * @param maxEntries the maximum number of encoded Strings to cache
+     * @param eviction the policy for choosing which entry to replace when
+     * a new entry is added to a full set
+     */
+    public CachingHexEncoder(HexEncoder encoder, int maxEntries, Eviction eviction) {
+        _encoder = Hope.that(encoder).named("encoder").isNotNull().value();
+        _eviction = Hope.that(eviction).named("eviction").isNotNull().value();
+        Hope.that(maxEntries).named("maxEntries").isTrue(n -> n >= WAYS, "maxEntries must be at least " + WAYS);
+        int sets = Integer.highestOneBit(maxEntries / WAYS);
+        _setMask = sets - 1;
+        _entries = new AtomicReferenceArray<>(sets * WAYS);
+        _hands = new int[sets];
+    }
+
+    @Override
+    public String encode(byte[] b, int offset, int len) {
+        if (len > MAX_CACHED_LENGTH) return _encoder.encode(b, offset, len);
+        int hash = hash(b, offset, len);
+        int set = (hash & _setMask) * WAYS;
+        for (int i = set; i < set + WAYS; ++i) {
+            Entry e = _entries.get(i);
+            if (e != null && e._hash == hash && e.matches(b, offset, len)) {
+                _hits.increment();
+                if (_eviction == Eviction.LEAST_RECENTLY_USED && !e._referenced) e._referenced = true;
+                return e._value;
+            }
+        }
+        _misses.increment();
+        String value = _encoder.encode(b, offset, len);
+        _entries.set(victim(hash & _setMask), new Entry(hash, b, offset, len, value));
+        return value;
+    }
+
+    @Override
+    public void encode(byte[] b, int offset, int len, PrintWriter out) {
+        if (len > MAX_CACHED_LENGTH) {
+            _encoder.encode(b, offset, len, out);
+        } else {
+            out.write(encode(b, offset, len));
+            out.flush();
+        }
+    }
+
+    @Override
+    public void encode(InputStream in, PrintWriter out) throws IOException {
+        _encoder.encode(in, out);
+    }
+
+    @Override
+    public void encode(ByteBuffer in, PrintWriter out) {
+        _encoder.encode(in, out);
+    }
+
+    @Override
+    public void encode(SeekableByteChannel in, long offset, long length, PrintWriter out) throws IOException {
+        _encoder.encode(in, offset, length, out);
+    }
+
+    @Override
+    public IncrementalHexEncoder newIncrementalEncoder() {
+        return _encoder.newIncrementalEncoder();
+    }
+
+    /**
+     * @return the number of encodings returned from the cache
+     */
+    public long hits() {
+        return _hits.sum();
+    }
+
+    /**
+     * @return the number of cacheable encodings that were not found in the
+     * cache and were passed to the underlying encoder
+     */
+    public long misses() {
+        return _misses.sum();
+    }
+
+    /**
+     * @return the maximum number of entries in the cache
+     */
+    public int capacity() {
+        return _entries.length();
+    }
+
+    /**
+     * Removes all entries from the cache and resets the hit and miss counters
+     */
+    public void clear() {
+        for (int i = 0; i < _entries.length(); ++i) _entries.set(i, null);
+        _hits.reset();
+        _misses.reset();
+    }
+
+    /**
+     * Chooses the slot to replace in a set, preferring an empty slot.  The
+     * FIRST_IN_FIRST_OUT and LEAST_RECENTLY_USED policies advance a clock
+     * hand around the set; the latter skips (and clears) entries that have
+     * been referenced since the hand last passed them.  Hands are updated
+     * without synchronization, so concurrent misses may occasionally choose
+     * the same victim, which only costs an extra miss later.
+     */
+    private int victim(int setIndex) {
+        int set = setIndex * WAYS;
+        for (int i = set; i < set + WAYS; ++i) {
+            if (_entries.get(i) == null) return i;
+        }
+        if (_eviction == Eviction.RANDOM) return set + ThreadLocalRandom.current().nextInt(WAYS);
+
+        int hand = _hands[setIndex];
+        for (int n = 0; n < WAYS && _eviction == Eviction.LEAST_RECENTLY_USED; ++n) {
+            Entry e = _entries.get(set + hand);
+            if (e == null || !e._referenced) break;
+            e._referenced = false;
+            hand = (hand + 1) % WAYS;
+        }
+        _hands[setIndex] = (hand + 1) % WAYS;
+        return set + hand;
+    }
+
+    private static int hash(byte[] b, int offset, int len) {
+        int h = len;
+        for (int i = offset, end = offset + len; i < end; ++i) {
+            h = 31 * h + b[i];
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private static class Entry {
+        private final int _hash;
+        private final byte[] _key;
+        private final String _value;
+        private volatile boolean _referenced = false;
+
+        Entry(int hash, byte[] b, int offset, int len, String value) {
+            _hash = hash;
+            _key = new byte[len];
+            System.arraycopy(b, offset, _key, 0, len);
+            _value = value;
+        }
+
+        boolean matches(byte[] b, int offset, int len) {
+            if (_key.length != len) return false;
+            for (int i = 0; i < len; ++i) {
+                if (_key[i] != b[offset + i]) return false;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.martiansoftware.hex;
+
+//   Copyright 2016 Martian Software, Inc.
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+
+/**
+ * An InputStream that reads a region of a SeekableByteChannel.  FileChannels
+ * are read via positional reads that do not change the channel's position;
+ * other channels are positioned once at the start of the region and then read
+ * sequentially.  Closing this stream does not close the channel.
+ *
+ * @author <a href="http://martylamb.com">Marty Lamb</a>
+ */
+class ChannelInputStream extends InputStream {
+
+    private final SeekableByteChannel _channel;
+    private final FileChannel _fileChannel;
+    private long _position;
+    private long _remaining;
+    private boolean _positioned = false;
+
+    ChannelInputStream(SeekableByteChannel channel, long position, long length) {
+        _channel = channel;
+        _fileChannel = (channel instanceof FileChannel) ? (FileChannel) channel : null;
+        _position = position;
+        _remaining = length;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        return (read(b, 0, 1) == 1) ? (b[0] & 0xff) : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) return 0;
+        if (_remaining <= 0) return -1;
+        if (_fileChannel == null && !_positioned) {
+            _channel.position(_position);
+            _positioned = true;
+        }
+        ByteBuffer buf = ByteBuffer.wrap(b, off, (int) Math.min(len, _remaining));
+        int n;
+        do {
+            n = (_fileChannel == null) ? _channel.read(buf) : _fileChannel.read(buf, _position);
+        } while (n == 0);
+        if (n < 0) {
+            _remaining = 0;
+            return -1;
+        }
+        _position += n;
+        _remaining -= n;
+        return n;
+    }
+}
@@ -0,0 +1,80 @@
+package com.martiansoftware.hex;
+
+//   Copyright 2016 Martian Software, Inc.
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A Reader that reads single-byte (ASCII or ISO-8859-1) characters from a
+ * FileChannel via positional block reads, beginning at a specified position.
+ * Reading does not change the channel's own position, and closing this Reader
+ * does not close the channel.
+ *
+ * @author <a href="http://martylamb.com">Marty Lamb</a>
+ */
+class ChannelReader extends Reader {
+
+    private final FileChannel _channel;
+    private final ByteBuffer _buf;
+    private long _nextRead;
+
+    ChannelReader(FileChannel channel, long position, int bufferSize) {
+        _channel = channel;
+        _buf = ByteBuffer.allocate(bufferSize);
+        _buf.flip();
+        _nextRead = position;
+    }
+
+    /**
+     * @return the position in the channel of the next character to be read
+     */
+    long position() {
+        return _nextRead - _buf.remaining();
+    }
+
+    private boolean fill() throws IOException {
+        _buf.clear();
+        int n = _channel.read(_buf, _nextRead);
+        _buf.flip();
+        if (n <= 0) return false;
+        _nextRead += n;
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!_buf.hasRemaining() && !fill()) return -1;
+        return _buf.get() & 0xff;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (len == 0) return 0;
+        if (!_buf.hasRemaining() && !fill()) return -1;
+        int n = Math.min(len, _buf.remaining());
+        for (int i = 0; i < n; ++i) {
+            cbuf[off + i] = (char) (_buf.get() & 0xff);
+        }
+        return n;
+    }
+
+    @Override
+    public void close() {
+    }
+
+}
@@ -16,6 +16,8 @@ package com.martiansoftware.hex;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.text.ParseException;
 import java.util.Set;
 import java.util.function.Predicate;
@@ -28,7 +30,11 @@ import java.util.function.Predicate;
  */
 public class CharIgnoringHexDecoder extends HexDecoderAdapter {
 
+    private static final int TABLE_SIZE = 256;
+    
     private final Predicate<Character> _shouldIgnore;
+    private final boolean[] _ignoredChars = new boolean[TABLE_SIZE];
+    private final Strategy _strategy = new CharIgnoringStrategy();
     
     /**
      * Creates a new CharIgnoringHexDecoder that will ignore (between bytes)
@@ -50,6 +56,7 @@ public class CharIgnoringHexDecoder extends HexDecoderAdapter {
         Set<Character> toIgnore = new java.util.HashSet<>();
         for (char c : charsToIgnore) toIgnore.add(c);
         _shouldIgnore = c -> toIgnore.contains(c);
+        fillTable();
     }
 
     /**
@@ -57,23 +64,111 @@ public class CharIgnoringHexDecoder extends HexDecoderAdapter {
      * any characters for which the specified Predicate returns true
      * 
      * @param shouldIgnore a `Predicate` that determine which characters should
-     * be ignored between bytes
+     * be ignored between bytes.  Its result must depend only on the character
+     * tested, as results for common characters are computed once, up front.
      */
     public CharIgnoringHexDecoder(Predicate<Character> shouldIgnore) {
         _shouldIgnore = shouldIgnore;
+        fillTable();
+    }
+    
+    private void fillTable() {
+        for (int c = 0; c < TABLE_SIZE; ++c) {
+            _ignoredChars[c] = _shouldIgnore.test((char) c);
+        }
     }
     
     @Override
     protected Strategy newStrategy() {
-        return new CharIgnoringStrategy();
+        // the strategy is stateless, so a single instance is shared
+        return _strategy;
     }
 
-    private class CharIgnoringStrategy implements Strategy {
+    /**
+     * Decodes a range of the specified array directly into another array
+     * without allocating, unless a subclass provides its own Strategy.
+     * 
+     * @see HexDecoderAdapter#decode(char[], int, int, byte[], int)
+     */
+    @Override
+    public int decode(char[] in, int offset, int len, byte[] out, int outOffset) throws ParseException {
+        if (newStrategy() != _strategy) return super.decode(in, offset, len, out, outOffset);
+        if (offset < 0 || len < 0 || offset + len > in.length || outOffset < 0 || outOffset > out.length) {
+            return super.decode(in, offset, len, out, outOffset);   // reports the bad range
+        }
+        Object event = HexEvents.begin(len / 2);
+        if (event == null) return decodeDirect(in, offset, len, out, outOffset);
+        int n = 0;
+        boolean failed = false;
+        try {
+            return n = decodeDirect(in, offset, len, out, outOffset);
+        } catch (ParseException e) {
+            failed = true;
+            throw e;
+        } finally {
+            HexEvents.end(event, this, HexEvents.DECODE, n, len, failed);
+        }
+    }
+    
+    private int decodeDirect(char[] in, int offset, int len, byte[] out, int outOffset) throws ParseException {
+        final boolean[] ignored = _ignoredChars;
+        final byte[] digits = DIGIT_VALUES;
+        int o = outOffset;
+        for (int i = offset, end = offset + len; i < end; ++i) {
+            char c = in[i];
+            if (c < TABLE_SIZE ? ignored[c] : _shouldIgnore.test(c)) continue;
+            int hi = (c < digits.length) ? digits[c] : -1;
+            if (hi < 0) hi = valueOf(c, i);
+            if (++i == end) throw new ParseException(String.format("unexpected eof at position %d", end), end);
+            c = in[i];
+            int lo = (c < digits.length) ? digits[c] : -1;
+            if (lo < 0) lo = valueOf(c, i);
+            // keep validating past the end of out, as a ParseException takes precedence
+            if (o < out.length) out[o] = (byte) ((hi << 4) | lo);
+            ++o;
+        }
+        if (o > out.length) throw new BufferOverflowException();
+        return o - outOffset;
+    }
+
+    /**
+     * @return true if `countNybbles()` can be used to determine how many
+     * bytes input will decode to, which is not the case if a subclass
+     * provides its own Strategy
+     */
+    boolean countsNybbles() {
+        return newStrategy() == _strategy;
+    }
+
+    /**
+     * Counts the characters in a block of single-byte characters that are
+     * not ignored.  Each is one digit of a decoded byte (or else the input
+     * is invalid), so the count is twice the number of bytes the block
+     * decodes to if it begins and ends between bytes.
+     *
+     * @param in the characters to count, all of which are consumed
+     * @return the number of characters that are not ignored
+     */
+    long countNybbles(ByteBuffer in) {
+        final boolean[] ignored = _ignoredChars;
+        long n = 0;
+        while (in.hasRemaining()) {
+            if (!ignored[in.get() & 0xff]) ++n;
+        }
+        return n;
+    }
+
+    private class CharIgnoringStrategy implements CharTableStrategy {
         @Override public void start(OutputStream out) throws IOException {}
 
         @Override
         public boolean shouldIgnore(char c, long charIndexInStream, long charIndexInLine, OutputStream out) throws ParseException, IOException {
-            return _shouldIgnore.test(c);
+            return (c < TABLE_SIZE) ? _ignoredChars[c] : _shouldIgnore.test(c);
+        }
+
+        @Override
+        public boolean[] ignoredChars() {
+            return _ignoredChars;
         }
 
         @Override public void finish(long totalChars, long totalBytes, OutputStream out) throws ParseException, IOException {}        
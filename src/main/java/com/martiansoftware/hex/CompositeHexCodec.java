@@ -19,7 +19,11 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Path;
 import java.text.ParseException;
+import java.util.List;
 
 /**
  * A HexCodec that delegates all encoding and decoding calls to a HexEncoder
@@ -43,13 +47,103 @@ public class CompositeHexCodec implements HexCodec {
         _decoder = decoder;
     }
 
+    @Override
+    public String encode(byte[] b, int offset, int len) {
+        return _encoder.encode(b, offset, len);
+    }
+
     @Override
     public void encode(InputStream in, PrintWriter out) throws IOException {
         _encoder.encode(in, out);
     }
 
+    @Override
+    public void encode(ByteBuffer in, PrintWriter out) {
+        _encoder.encode(in, out);
+    }
+
+    @Override
+    public void encode(SeekableByteChannel in, long offset, long length, PrintWriter out) throws IOException {
+        _encoder.encode(in, offset, length, out);
+    }
+
+    @Override
+    public IncrementalHexEncoder newIncrementalEncoder() {
+        return _encoder.newIncrementalEncoder();
+    }
+
+    @Override
+    public IncrementalHexDecoder newIncrementalDecoder() {
+        return _decoder.newIncrementalDecoder();
+    }
+
+    @Override
+    public byte[] decode(String in) throws ParseException {
+        return _decoder.decode(in);
+    }
+
+    @Override
+    public byte[] decode(CharSequence in, int start, int end) throws ParseException {
+        return _decoder.decode(in, start, end);
+    }
+
+    @Override
+    public int decode(char[] in, int offset, int len, byte[] out, int outOffset) throws ParseException {
+        return _decoder.decode(in, offset, len, out, outOffset);
+    }
+
     @Override
     public void decode(Reader in, OutputStream out) throws ParseException, IOException {
         _decoder.decode(in, out);
     }
+
+    @Override
+    public void decode(Reader in, ByteBuffer out) throws ParseException, IOException {
+        _decoder.decode(in, out);
+    }
+
+    @Override
+    public void decode(ByteBuffer in, ByteBuffer out) throws ParseException, IOException {
+        _decoder.decode(in, out);
+    }
+
+    @Override
+    public long decode(Path in, Path out) throws ParseException, IOException {
+        return _decoder.decode(in, out);
+    }
+
+    @Override
+    public long decode(Path in, Path out, int threads) throws ParseException, IOException {
+        return _decoder.decode(in, out, threads);
+    }
+
+    @Override
+    public long decodedLength(CharSequence in) throws ParseException {
+        return _decoder.decodedLength(in);
+    }
+
+    @Override
+    public long decodedLength(Reader in) throws ParseException, IOException {
+        return _decoder.decodedLength(in);
+    }
+
+    @Override
+    public int validate(CharSequence in) {
+        return _decoder.validate(in);
+    }
+
+    @Override
+    public DecodeResult tryDecode(CharSequence in) {
+        return _decoder.tryDecode(in);
+    }
+
+    @Override
+    public DecodedBatch decodeBatch(List<? extends CharSequence> in) throws ParseException {
+        return _decoder.decodeBatch(in);
+    }
+
+    @Override
+    public DecodedBatch decodeBatch(List<? extends CharSequence> in, ByteBuffer arena) throws ParseException {
+        return _decoder.decodeBatch(in, arena);
+    }
 }
@@ -0,0 +1,88 @@
+package com.martiansoftware.hex;
+
+//   Copyright 2016 Martian Software, Inc.
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+/**
+ * The result of a call to `HexDecoder.tryDecode()`: either the decoded bytes,
+ * or the position and kind of the first error found in the input.
+ *
+ * @author <a href="http://martylamb.com">Marty Lamb</a>
+ */
+public class DecodeResult {
+
+    /**
+     * The kinds of errors that can prevent hex from being decoded
+     */
+    public enum Error {
+        /** A character that is neither a hex digit nor ignored by the decoder */
+        INVALID_CHARACTER,
+        /** The input ended in the middle of a byte */
+        UNEXPECTED_EOF,
+        /** The input violates the structure required by the decoder's format */
+        INVALID_FORMAT
+    }
+
+    private final byte[] _bytes;
+    private final long _errorPosition;
+    private final Error _error;
+
+    private DecodeResult(byte[] bytes, long errorPosition, Error error) {
+        _bytes = bytes;
+        _errorPosition = errorPosition;
+        _error = error;
+    }
+
+    static DecodeResult success(byte[] bytes) {
+        return new DecodeResult(bytes, -1, null);
+    }
+
+    static DecodeResult failure(long errorPosition, Error error) {
+        return new DecodeResult(null, errorPosition, error);
+    }
+
+    /**
+     * @return true if the input was decoded successfully
+     */
+    public boolean isValid() {
+        return _error == null;
+    }
+
+    /**
+     * @return the decoded bytes
+     * @throws IllegalStateException if the input could not be decoded
+     */
+    public byte[] bytes() {
+        if (_error != null) throw new IllegalStateException(String.format("input is not valid (%s at position %d)", _error, _errorPosition));
+        return _bytes;
+    }
+
+    /**
+     * @return the position in the input of the first error, or -1 if the
+     * input was decoded successfully.  Positions in streamed input may
+     * exceed the range of an int.
+     */
+    public long errorPosition() {
+        return _errorPosition;
+    }
+
+    /**
+     * @return the kind of the first error in the input, or null if the input
+     * was decoded successfully
+     */
+    public Error error() {
+        return _error;
+    }
+
+}
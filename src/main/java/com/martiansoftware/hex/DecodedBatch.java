@@ -0,0 +1,233 @@
+package com.martiansoftware.hex;
+
+//   Copyright 2016 Martian Software, Inc.
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The result of a call to `HexDecoder.decodeBatch()`: many decoded values
+ * laid out end to end in a single arena, with an index of where each begins.
+ *
+ * Decoding a batch allocates the arena, the index, and a scratch array sized
+ * to the longest value, rather than separate arrays for every value.  The
+ * built-in DefaultHexDecoder and StrictHexDecoder then decode each value
+ * without allocating at all.  Values are read through the accessors, or
+ * scanned directly via `arena()` and `offsets()`.
+ *
+ * ```
+ *   DecodedBatch batch = Hex.decodeBatch(hexColumn);
+ *   for (int i = 0; i < batch.size(); ++i) {
+ *       int offset = batch.offset(i), len = batch.length(i);
+ *       ...  // batch.arena().get(offset + j) for j < len
+ *   }
+ * ```
+ *
+ * @author <a href="http://martylamb.com">Marty Lamb</a>
+ */
+public class DecodedBatch {
+
+    private final ByteBuffer _arena;
+    private final int[] _offsets;
+
+    private DecodedBatch(ByteBuffer arena, int[] offsets) {
+        _arena = arena;
+        _offsets = offsets;
+    }
+
+    /**
+     * Decodes the specified values into a new heap arena
+     */
+    static DecodedBatch decode(HexDecoder d, List<? extends CharSequence> in) throws ParseException {
+        int[] offsets = new int[in.size() + 1];
+        int maxLen = 0;
+        long total = 0;
+        for (CharSequence s : in) {
+            maxLen = Math.max(maxLen, s.length());
+            total += s.length() / 2;
+        }
+        if (total > Integer.MAX_VALUE - 8) throw new IllegalArgumentException("batch is too large for a single array");
+
+        byte[] arena = new byte[(int) total];
+        char[] chars = new char[maxLen];
+        int i = 0, pos = 0;
+        for (CharSequence s : in) {
+            int len = copy(s, chars);
+            while (true) {
+                try {
+                    pos += d.decode(chars, 0, len, arena, pos);
+                    break;
+                } catch (BufferOverflowException e) {
+                    // only formats that expand (such as collapsed hex dumps) get here
+                    arena = Arrays.copyOf(arena, (int) Math.min(Integer.MAX_VALUE - 8, 2L * arena.length + len));
+                } catch (ParseException e) {
+                    throw error(e, i);
+                }
+            }
+            offsets[++i] = pos;
+        }
+        ByteBuffer b = ByteBuffer.wrap(arena);
+        b.limit(pos);
+        return new DecodedBatch(b, offsets);
+    }
+
+    /**
+     * Decodes the specified values into the remaining space of a
+     * caller-supplied arena, advancing its position past them
+     */
+    static DecodedBatch decode(HexDecoder d, List<? extends CharSequence> in, ByteBuffer arena) throws ParseException {
+        int[] offsets = new int[in.size() + 1];
+        int maxLen = 0;
+        for (CharSequence s : in) maxLen = Math.max(maxLen, s.length());
+
+        ByteBuffer start = arena.slice();
+        char[] chars = new char[maxLen];
+        byte[] scratch = new byte[maxLen / 2];
+        int i = 0;
+        for (CharSequence s : in) {
+            int len = copy(s, chars);
+            int n;
+            while (true) {
+                try {
+                    n = d.decode(chars, 0, len, scratch, 0);
+                    break;
+                } catch (BufferOverflowException e) {
+                    scratch = new byte[2 * scratch.length + len];
+                } catch (ParseException e) {
+                    throw error(e, i);
+                }
+            }
+            arena.put(scratch, 0, n);
+            offsets[i + 1] = offsets[i] + n;
+            ++i;
+        }
+        start.limit(offsets[i]);
+        return new DecodedBatch(start, offsets);
+    }
+
+    private static int copy(CharSequence s, char[] dst) {
+        int len = s.length();
+        if (s instanceof String) {
+            ((String) s).getChars(0, len, dst, 0);
+        } else if (s instanceof CharBuffer) {
+            ((CharBuffer) s).duplicate().get(dst, 0, len);
+        } else {
+            for (int i = 0; i < len; ++i) dst[i] = s.charAt(i);
+        }
+        return len;
+    }
+
+    private static ParseException error(ParseException e, int index) {
+        return new ParseException(String.format("%s in value %d", e.getMessage(), index), e.getErrorOffset());
+    }
+
+    /**
+     * @return the number of values in the batch
+     */
+    public int size() {
+        return _offsets.length - 1;
+    }
+
+    /**
+     * @return the total number of decoded bytes in the batch
+     */
+    public int totalBytes() {
+        return _offsets[_offsets.length - 1];
+    }
+
+    /**
+     * @param i the index of a value
+     * @return the position in the arena of the value's first byte
+     */
+    public int offset(int i) {
+        return _offsets[i];
+    }
+
+    /**
+     * @param i the index of a value
+     * @return the number of bytes in the value
+     */
+    public int length(int i) {
+        return _offsets[i + 1] - _offsets[i];
+    }
+
+    /**
+     * @param i the index of a value
+     * @param j the index of a byte within the value
+     * @return the byte
+     */
+    public byte get(int i, int j) {
+        if (j < 0 || j >= length(i)) throw new IndexOutOfBoundsException(String.format("index %d out of bounds for length %d", j, length(i)));
+        return _arena.get(_offsets[i] + j);
+    }
+
+    /**
+     * Copies a value into an array
+     * @param i the index of a value
+     * @param dst the array to copy the value into
+     * @param dstOffset the index in `dst` of the value's first byte
+     * @return the number of bytes copied
+     */
+    public int get(int i, byte[] dst, int dstOffset) {
+        ByteBuffer b = _arena.duplicate();
+        b.position(_offsets[i]);
+        b.get(dst, dstOffset, length(i));
+        return length(i);
+    }
+
+    /**
+     * @param i the index of a value
+     * @return a copy of the value
+     */
+    public byte[] bytes(int i) {
+        byte[] b = new byte[length(i)];
+        get(i, b, 0);
+        return b;
+    }
+
+    /**
+     * @param i the index of a value
+     * @return a read-only buffer sharing the value's bytes in the arena
+     */
+    public ByteBuffer slice(int i) {
+        ByteBuffer b = _arena.asReadOnlyBuffer();
+        b.limit(_offsets[i + 1]);
+        b.position(_offsets[i]);
+        return b.slice();
+    }
+
+    /**
+     * @return a read-only view of the whole arena, positioned at its start,
+     * with its limit at the end of the last value
+     */
+    public ByteBuffer arena() {
+        return _arena.asReadOnlyBuffer();
+    }
+
+    /**
+     * Provides the index of the arena without copying it.  Value `i` occupies
+     * positions `offsets()[i]` up to `offsets()[i + 1]`.  The array must not
+     * be modified.
+     *
+     * @return the start of each value in the arena, followed by the end of the last
+     */
+    public int[] offsets() {
+        return _offsets;
+    }
+}
@@ -17,21 +17,104 @@ package com.martiansoftware.hex;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintWriter;
+import java.nio.ByteBuffer;
 
 /**
  * The simplest encoder possible.  Straight hex, single line, non-delimited.
  * 
+ * Bytes are encoded a block at a time via a lookup table.  ByteBuffers,
+ * including direct and memory-mapped buffers, are read in place without
+ * being copied to the heap first.
+ * 
  * @author <a href="http://martylamb.com">Marty Lamb</a>
  */
 public class DefaultHexEncoder implements HexEncoder {
 
+    private static final int BUFFER_SIZE = 4096;
+    
+    @Override
+    public String encode(byte[] b, int offset, int len) {
+        Object event = HexEvents.begin(len);
+        char[] c = Hex.scratch(len * 2);
+        encode(b, offset, len, c);
+        String result = new String(c, 0, len * 2);
+        HexEvents.end(event, this, HexEvents.ENCODE, len, len * 2L, false);
+        return result;
+    }
+    
     @Override
     public void encode(InputStream in, PrintWriter out) throws IOException {
-        int b;
-        while ((b = in.read()) >= 0) {
-            out.print(Hex.of(b));
+        Object event = HexEvents.begin();
+        byte[] b = new byte[BUFFER_SIZE];
+        char[] c = new char[BUFFER_SIZE * 2];
+        long count = 0;
+        int n;
+        while ((n = in.read(b)) >= 0) {
+            encode(b, 0, n, c);
+            out.write(c, 0, n * 2);
+            count += n;
+        }
+        out.flush();
+        HexEvents.end(event, this, HexEvents.ENCODE, count, count * 2, false);
+    }
+
+    @Override
+    public void encode(ByteBuffer in, PrintWriter out) {
+        int len = in.remaining();
+        Object event = HexEvents.begin(len);
+        char[] c = new char[BUFFER_SIZE * 2];
+        while (in.hasRemaining()) {
+            int n = Math.min(BUFFER_SIZE, in.remaining());
+            for (int i = 0, j = 0; i < n; ++i) {
+                int v = in.get();
+                c[j++] = Hex.DIGITS[(v >> 4) & 0x0f];
+                c[j++] = Hex.DIGITS[v & 0x0f];
+            }
+            out.write(c, 0, n * 2);
         }
         out.flush();
+        HexEvents.end(event, this, HexEvents.ENCODE, len, len * 2L, false);
+    }
+    
+    @Override
+    public IncrementalHexEncoder newIncrementalEncoder() {
+        return new IncrementalHexEncoder(new BlockStrategy());
+    }
+    
+    private static void encode(byte[] b, int offset, int len, char[] out) {
+        for (int i = offset, end = offset + len, j = 0; i < end; ++i) {
+            int v = b[i];
+            out[j++] = Hex.DIGITS[(v >> 4) & 0x0f];
+            out[j++] = Hex.DIGITS[v & 0x0f];
+        }
+    }
+    
+    /**
+     * Collects the hex for each chunk in a block, written out when full or flushed
+     */
+    private static class BlockStrategy implements HexEncoderAdapter.Strategy {
+        private final char[] _buf = new char[BUFFER_SIZE * 2];
+        private int _len = 0;
+        
+        @Override public void start(PrintWriter out) {}
+
+        @Override
+        public void next(int b, long byteIndexInStream, PrintWriter out) {
+            if (_len == _buf.length) flush(out);
+            _buf[_len++] = Hex.DIGITS[(b >> 4) & 0x0f];
+            _buf[_len++] = Hex.DIGITS[b & 0x0f];
+        }
+
+        @Override
+        public void flush(PrintWriter out) {
+            out.write(_buf, 0, _len);
+            _len = 0;
+        }
+        
+        @Override
+        public void finish(long totalBytes, PrintWriter out) {
+            flush(out);
+        }
     }
     
 }
@@ -20,12 +20,19 @@ import java.io.PrintWriter;
 /**
  * A HexEncoder that can output multiple lines and add separators between bytes
  * 
+ * Encoded bytes, separators, and line breaks are collected in a block and
+ * written to the PrintWriter a block at a time.
+ * 
  * @author <a href="http://martylamb.com">Marty Lamb</a>
  */
 public class DelimitedMultilineHexEncoder extends HexEncoderAdapter {
 
+    private static final int BUFFER_SIZE = 4096;
+    private static final char[] LINE_SEPARATOR = System.lineSeparator().toCharArray();
+    
     private final int _bytesPerLine;
-    private final String _separator;
+    private final char[] _separator;
+    private final int _maxCharsPerByte;
     
     /**
      * Creates a new DelimitedHexEncoder with no delimiters that outputs all
@@ -69,7 +76,8 @@ public class DelimitedMultilineHexEncoder extends HexEncoderAdapter {
                             .named("bytesPerLine")
                             .isTrue(b -> b > 0, "bytesPerLine must be greater than zero")
                             .value();
-        _separator = separator;
+        _separator = (separator == null) ? new char[0] : separator.toCharArray();
+        _maxCharsPerByte = 2 + Math.max(_separator.length, LINE_SEPARATOR.length);
     }   
     
     @Override
@@ -78,24 +86,43 @@ public class DelimitedMultilineHexEncoder extends HexEncoderAdapter {
     }
     
     private class SimpleByteHandler implements Strategy {
+        private final char[] _buf = new char[Math.max(BUFFER_SIZE, _maxCharsPerByte)];
+        private int _len = 0;
+        private int _inLine = 0;
+        
         @Override
         public void start(PrintWriter p) {}
 
-        private void writeSeparator(PrintWriter w) {
-            if (_separator != null) w.print(_separator);
+        private void append(char[] c) {
+            System.arraycopy(c, 0, _buf, _len, c.length);
+            _len += c.length;
+        }
+        
+        @Override
+        public void flush(PrintWriter p) {
+            p.write(_buf, 0, _len);
+            _len = 0;
         }
         
         @Override
         public void next(int b, long byteIndexInStream, PrintWriter p) {
-            if (byteIndexInStream % _bytesPerLine == 0) {
-                if (byteIndexInStream > 0) p.println();
-            } else {
-                writeSeparator(p);
+            if (_buf.length - _len < _maxCharsPerByte) flush(p);
+            if (byteIndexInStream > 0) {
+                if (_inLine == _bytesPerLine) {
+                    append(LINE_SEPARATOR);
+                    _inLine = 0;
+                } else {
+                    append(_separator);
+                }
             }
-            p.print(Hex.of(b));
+            _buf[_len++] = Hex.DIGITS[(b >> 4) & 0x0f];
+            _buf[_len++] = Hex.DIGITS[b & 0x0f];
+            ++_inLine;
         }
 
         @Override
-        public void finish(long totalBytes, PrintWriter p) {}
+        public void finish(long totalBytes, PrintWriter p) {
+            flush(p);
+        }
     }
 }
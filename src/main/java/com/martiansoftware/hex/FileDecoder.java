@@ -0,0 +1,329 @@
+package com.martiansoftware.hex;
+
+//   Copyright 2016 Martian Software, Inc.
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+import com.martiansoftware.validation.Hope;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Decodes hex files to binary files, for `HexDecoder.decode(Path, Path)`.
+ *
+ * The input is memory-mapped a window at a time, and the output is written
+ * by large positional writes or through memory-mapped regions, so memory
+ * use does not depend on the size of either file.
+ *
+ * Large files are split into chunks that are decoded on multiple threads
+ * when the position of each chunk's output can be determined in advance:
+ *
+ * - For CharIgnoringHexDecoders (including the DefaultHexDecoder and
+ *   StrictHexDecoder), a first parallel pass counts the characters in each
+ *   chunk that are not ignored.  Every such character is one digit of a
+ *   byte, so the counts give the output offset of each chunk, and chunk
+ *   boundaries that fall between the two digits of a byte are moved forward
+ *   by one character.  A second parallel pass decodes each chunk directly
+ *   into its own mapped region of the output.
+ * - For HexDumpDecoders, chunks begin at data lines, whose addresses give
+ *   the output offsets, and are decoded via `decodeRange()` so that runs of
+ *   collapsed lines are expanded correctly.
+ *
+ * Other decoders decode the whole file on a single thread.  Either way, the
+ * ParseException thrown for invalid input is the first one in the file, with
+ * its position relative to the start of the file, and the output file's
+ * contents are unspecified.
+ *
+ * @author <a href="http://martylamb.com">Marty Lamb</a>
+ */
+final class FileDecoder {
+
+    /** The number of input characters in each chunk decoded in parallel */
+    static final int CHUNK_SIZE = 16 * 1024 * 1024;
+
+    private static final int MAP_SIZE = 64 * 1024 * 1024;
+    private static final int BLOCK_SIZE = 1024 * 1024;
+
+    private final HexDecoder _decoder;
+    private final FileChannel _in;
+    private final FileChannel _out;
+    private final int _threads;
+    private final int _chunkSize;
+
+    private FileDecoder(HexDecoder decoder, FileChannel in, FileChannel out, int threads, int chunkSize) {
+        _decoder = decoder;
+        _in = in;
+        _out = out;
+        _threads = threads;
+        _chunkSize = chunkSize;
+    }
+
+    static long decode(HexDecoder decoder, Path in, Path out, int threads) throws ParseException, IOException {
+        return decode(decoder, in, out, threads, CHUNK_SIZE);
+    }
+
+    /**
+     * @param chunkSize the number of input characters in each chunk decoded
+     * in parallel, which can be reduced to exercise chunking in tests
+     */
+    static long decode(HexDecoder decoder, Path in, Path out, int threads, int chunkSize) throws ParseException, IOException {
+        Hope.that(threads).named("threads").isTrue(n -> n > 0, "threads must be greater than zero");
+        try (FileChannel src = FileChannel.open(in, StandardOpenOption.READ);
+             FileChannel dst = FileChannel.open(out, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                                     StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            FileDecoder d = new FileDecoder(decoder, src, dst, threads, chunkSize);
+            boolean parallel = threads > 1 && src.size() > chunkSize;
+            if (parallel && decoder instanceof CharIgnoringHexDecoder && ((CharIgnoringHexDecoder) decoder).countsNybbles()) {
+                return d.decodeChunks((CharIgnoringHexDecoder) decoder);
+            }
+            if (parallel && decoder instanceof HexDumpDecoder) {
+                return d.decodeLines((HexDumpDecoder) decoder);
+            }
+            return d.decodeSequentially();
+        }
+    }
+
+    private long decodeSequentially() throws ParseException, IOException {
+        ChannelOutputStream out = new ChannelOutputStream(_out, 0);
+        _decoder.decode(new MappedReader(_in, 0, _in.size()), out);
+        out.flush();
+        return out.written();
+    }
+
+    /**
+     * Decodes a CharIgnoringHexDecoder's input in two parallel passes: one
+     * to count each chunk's digits, and one to decode each chunk into the
+     * output region that the counts determine
+     */
+    private long decodeChunks(CharIgnoringHexDecoder decoder) throws ParseException, IOException {
+        long size = _in.size();
+        int chunks = (int) ((size + _chunkSize - 1) / _chunkSize);
+        List<Callable<Long>> counts = new ArrayList<>(chunks);
+        for (int i = 0; i < chunks; ++i) {
+            long start = (long) i * _chunkSize;
+            long len = Math.min(_chunkSize, size - start);
+            counts.add(() -> decoder.countNybbles(_in.map(FileChannel.MapMode.READ_ONLY, start, len)));
+        }
+
+        // a chunk preceded by an odd number of digits begins with the second
+        // digit of a byte, which is moved to the end of the previous chunk
+        long[] starts = new long[chunks + 1];
+        long[] offsets = new long[chunks + 1];
+        long digits = 0;
+        int i = 0;
+        for (long n : run(counts)) {
+            starts[i] = (long) i * _chunkSize + (digits & 1);
+            offsets[i] = (digits + 1) / 2;
+            digits += n;
+            ++i;
+        }
+        starts[chunks] = size;
+        offsets[chunks] = (digits + 1) / 2;
+
+        List<Callable<Long>> decodes = new ArrayList<>(chunks);
+        for (int j = 0; j < chunks; ++j) {
+            long start = starts[j], end = starts[j + 1];
+            long offset = offsets[j], length = offsets[j + 1] - offset;
+            decodes.add(() -> {
+                IncrementalHexDecoder d = decoder.newIncrementalDecoder();
+                d.startAt(start);
+                MappedByteBuffer out = _out.map(FileChannel.MapMode.READ_WRITE, offset, length);
+                d.feed(_in.map(FileChannel.MapMode.READ_ONLY, start, end - start), out);
+                d.finish(out);
+                if (d.hasPending() || out.hasRemaining()) {
+                    throw new IllegalStateException(String.format("chunk at position %d did not decode to its expected length", start));
+                }
+                return length;
+            });
+        }
+        run(decodes);
+        return offsets[chunks];
+    }
+
+    /**
+     * Decodes a hex dump in parallel, splitting it at data lines and writing
+     * each chunk at the offset given by its first line's address
+     */
+    private long decodeLines(HexDumpDecoder decoder) throws ParseException, IOException {
+        HexDumpDecoder.DumpLine first = HexDumpDecoder.dataLineAt(_in, 0);
+        if (first == null) return decodeSequentially();
+        List<HexDumpDecoder.DumpLine> lines = new ArrayList<>();
+        lines.add(first);
+        for (long p = _chunkSize; p < _in.size(); p += _chunkSize) {
+            HexDumpDecoder.DumpLine line = HexDumpDecoder.dataLineAt(_in, p);
+            if (line == null) break;
+            if (line.address > lines.get(lines.size() - 1).address) lines.add(line);
+        }
+
+        List<Callable<Long>> decodes = new ArrayList<>(lines.size());
+        for (int i = 0; i < lines.size(); ++i) {
+            long address = lines.get(i).address;
+            long length = (i + 1 < lines.size()) ? lines.get(i + 1).address - address : Long.MAX_VALUE;
+            long offset = address - first.address;
+            decodes.add(() -> {
+                ChannelOutputStream out = new ChannelOutputStream(_out, offset);
+                long n = decoder.decodeRange(_in, address, length, out, BLOCK_SIZE);
+                out.flush();
+                return offset + n;
+            });
+        }
+        long end = 0;
+        for (long n : run(decodes)) end = Math.max(end, n);
+        return end;
+    }
+
+    /**
+     * Runs tasks on a pool of threads, limiting the number in flight
+     * @return the tasks' results, in order
+     * @throws ParseException the first one thrown, in task order
+     */
+    private List<Long> run(List<Callable<Long>> tasks) throws ParseException, IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(_threads, task -> {
+            Thread t = new Thread(task, "hex-decode");
+            t.setDaemon(true);
+            return t;
+        });
+        List<Long> results = new ArrayList<>(tasks.size());
+        Deque<Future<Long>> pending = new ArrayDeque<>();
+        try {
+            for (Callable<Long> task : tasks) {
+                pending.add(pool.submit(task));
+                while (pending.size() >= _threads * 2) results.add(get(pending.remove()));
+            }
+            while (!pending.isEmpty()) results.add(get(pending.remove()));
+        } finally {
+            pool.shutdownNow();
+        }
+        return results;
+    }
+
+    private static long get(Future<Long> result) throws ParseException, IOException {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof ParseException) throw (ParseException) cause;
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new RuntimeException(cause);
+        }
+    }
+
+    /**
+     * A Reader that reads single-byte (ASCII or ISO-8859-1) characters from
+     * a region of a FileChannel, mapping it a window at a time
+     */
+    private static class MappedReader extends Reader {
+        private final FileChannel _channel;
+        private long _position;
+        private final long _end;
+        private ByteBuffer _window = ByteBuffer.allocate(0);
+
+        MappedReader(FileChannel channel, long position, long end) {
+            _channel = channel;
+            _position = position;
+            _end = end;
+        }
+
+        private boolean fill() throws IOException {
+            if (_position >= _end) return false;
+            long len = Math.min(MAP_SIZE, _end - _position);
+            _window = _channel.map(FileChannel.MapMode.READ_ONLY, _position, len);
+            _position += len;
+            return true;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            if (!_window.hasRemaining() && !fill()) return -1;
+            ByteBuffer w = _window;
+            int n = Math.min(len, w.remaining());
+            for (int i = 0; i < n; ++i) {
+                cbuf[off + i] = (char) (w.get() & 0xff);
+            }
+            return n;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * An OutputStream that writes to a FileChannel via positional writes of
+     * a large block at a time, beginning at a specified position
+     */
+    private static class ChannelOutputStream extends OutputStream {
+        private final FileChannel _channel;
+        private final ByteBuffer _buf = ByteBuffer.allocateDirect(BLOCK_SIZE);
+        private long _position;
+        private long _written = 0;
+
+        ChannelOutputStream(FileChannel channel, long position) {
+            _channel = channel;
+            _position = position;
+        }
+
+        long written() {
+            return _written;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (!_buf.hasRemaining()) flush();
+            _buf.put((byte) b);
+            ++_written;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            _written += len;
+            while (len > 0) {
+                if (!_buf.hasRemaining()) flush();
+                int n = Math.min(len, _buf.remaining());
+                _buf.put(b, off, n);
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            _buf.flip();
+            while (_buf.hasRemaining()) {
+                _position += _channel.write(_buf, _position);
+            }
+            _buf.clear();
+        }
+    }
+}
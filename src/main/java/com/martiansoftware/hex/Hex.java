@@ -20,12 +20,29 @@ import java.io.OutputStream;
 import java.io.PrintStream;
 import java.io.PrintWriter;
 import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.security.MessageDigest;
 import java.text.ParseException;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.Checksum;
 
 /**
  * A utility class providing static accessors to the StandardHexCodecs.DEFAULT
  * HexCodec.
  * 
+ * Also provides fast paths for encoding and decoding primitive values and
+ * UUIDs as fixed-width hex, most significant digit first.  These work by
+ * shifting and table lookup rather than through the stream machinery, and
+ * allocate nothing but the resulting String or UUID.  Encoding writes
+ * lowercase digits; decoding accepts either case.
+ * 
+ * ```
+ *   String s = Hex.encode(0x1234L);          // "0000000000001234"
+ *   long id = Hex.decodeLong("id=0000000000001234", 3);
+ * ```
+ * 
  * @see HexEncoder
  * @see HexDecoder
  * 
@@ -33,8 +50,34 @@ import java.text.ParseException;
  */
 public class Hex {
 
+    static final char[] DIGITS = "0123456789abcdef".toCharArray();
+    
+    private static final int UUID_DIGITS = 32;
+    private static final int MAX_SCRATCH = 4096;
+    private static final ThreadLocal<char[]> SCRATCH = ThreadLocal.withInitial(() -> new char[UUID_DIGITS]);
+    
     private Hex() {}
     
+    /**
+     * Provides a per-thread array for building short results, so that
+     * encoding them allocates only the resulting String.  The array is
+     * reused by the next call on the same thread, so it must not be held
+     * across any call that might encode.  Requests beyond MAX_SCRATCH
+     * characters get a new array instead of growing the shared one.
+     * 
+     * @param len the minimum length of the array
+     * @return an array of at least the specified length
+     */
+    static char[] scratch(int len) {
+        if (len > MAX_SCRATCH) return new char[len];
+        char[] c = SCRATCH.get();
+        if (c.length < len) {
+            c = new char[Math.max(len, Math.min(MAX_SCRATCH, c.length * 2))];
+            SCRATCH.set(c);
+        }
+        return c;
+    }
+    
     /**
      * @see HexEncoder#encode(byte[])
      */
@@ -49,6 +92,20 @@ public class Hex {
         return StandardHexCodecs.DEFAULT.encode(b, offset, len);
     }
 
+    /**
+     * @see HexEncoder#encode(byte[],int,int,Checksum)
+     */
+    public static String encode(byte[] b, int offset, int len, Checksum checksum) {
+        return StandardHexCodecs.DEFAULT.encode(b, offset, len, checksum);
+    }
+
+    /**
+     * @see HexEncoder#encode(byte[],int,int,MessageDigest)
+     */
+    public static String encode(byte[] b, int offset, int len, MessageDigest digest) {
+        return StandardHexCodecs.DEFAULT.encode(b, offset, len, digest);
+    }
+
     /**
      * @see HexEncoder#encode(InputStream)
      */
@@ -56,6 +113,13 @@ public class Hex {
         return StandardHexCodecs.DEFAULT.encode(in);
     }
 
+    /**
+     * @see HexEncoder#encode(ByteBuffer)
+     */
+    public static String encode(ByteBuffer in) {
+        return StandardHexCodecs.DEFAULT.encode(in);
+    }
+
     /**
      * @see HexEncoder#encode(byte[],PrintWriter)
      */
@@ -77,6 +141,27 @@ public class Hex {
         StandardHexCodecs.DEFAULT.encode(in, out);
     }
     
+    /**
+     * @see HexEncoder#encode(ByteBuffer,PrintWriter)
+     */
+    public static void encode(ByteBuffer in, PrintWriter out) {
+        StandardHexCodecs.DEFAULT.encode(in, out);
+    }
+    
+    /**
+     * @see HexEncoder#encode(InputStream,PrintWriter,Checksum)
+     */
+    public static void encode(InputStream in, PrintWriter out, Checksum checksum) throws IOException {
+        StandardHexCodecs.DEFAULT.encode(in, out, checksum);
+    }
+    
+    /**
+     * @see HexEncoder#encode(InputStream,PrintWriter,MessageDigest)
+     */
+    public static void encode(InputStream in, PrintWriter out, MessageDigest digest) throws IOException {
+        StandardHexCodecs.DEFAULT.encode(in, out, digest);
+    }
+    
     /**
      * @see HexEncoder#encode(byte[],PrintStream)
      */
@@ -105,6 +190,20 @@ public class Hex {
         return StandardHexCodecs.DEFAULT.decode(in);
     }
     
+    /**
+     * @see HexDecoder#decode(CharSequence,int,int)
+     */
+    public static byte[] decode(CharSequence in, int start, int end) throws ParseException {
+        return StandardHexCodecs.DEFAULT.decode(in, start, end);
+    }
+    
+    /**
+     * @see HexDecoder#decode(char[],int,int,byte[],int)
+     */
+    public static int decode(char[] in, int offset, int len, byte[] out, int outOffset) throws ParseException {
+        return StandardHexCodecs.DEFAULT.decode(in, offset, len, out, outOffset);
+    }
+    
     /**
      * @see HexDecoder#decode(Reader)
      */
@@ -125,8 +224,265 @@ public class Hex {
     public static void decode(Reader in, OutputStream out) throws ParseException, IOException {
         StandardHexCodecs.DEFAULT.decode(in, out);
     }
+    
+    /**
+     * @see HexDecoder#decode(Reader,OutputStream,Checksum)
+     */
+    public static void decode(Reader in, OutputStream out, Checksum checksum) throws ParseException, IOException {
+        StandardHexCodecs.DEFAULT.decode(in, out, checksum);
+    }
+    
+    /**
+     * @see HexDecoder#decode(Reader,OutputStream,MessageDigest)
+     */
+    public static void decode(Reader in, OutputStream out, MessageDigest digest) throws ParseException, IOException {
+        StandardHexCodecs.DEFAULT.decode(in, out, digest);
+    }
+    
+    /**
+     * @see HexDecoder#decode(Reader,ByteBuffer)
+     */
+    public static void decode(Reader in, ByteBuffer out) throws ParseException, IOException {
+        StandardHexCodecs.DEFAULT.decode(in, out);
+    }
+    
+    /**
+     * @see HexDecoder#decode(ByteBuffer,ByteBuffer)
+     */
+    public static void decode(ByteBuffer in, ByteBuffer out) throws ParseException, IOException {
+        StandardHexCodecs.DEFAULT.decode(in, out);
+    }
+    
+    /**
+     * @see HexDecoder#decode(Path,Path)
+     */
+    public static long decode(Path in, Path out) throws ParseException, IOException {
+        return StandardHexCodecs.DEFAULT.decode(in, out);
+    }
+    
+    /**
+     * @see HexDecoder#decodedLength(CharSequence)
+     */
+    public static long decodedLength(CharSequence in) throws ParseException {
+        return StandardHexCodecs.DEFAULT.decodedLength(in);
+    }
+    
+    /**
+     * @see HexDecoder#decodedLength(Reader)
+     */
+    public static long decodedLength(Reader in) throws ParseException, IOException {
+        return StandardHexCodecs.DEFAULT.decodedLength(in);
+    }
+    
+    /**
+     * @see HexDecoder#validate(CharSequence)
+     */
+    public static int validate(CharSequence in) {
+        return StandardHexCodecs.DEFAULT.validate(in);
+    }
+    
+    /**
+     * @see HexDecoder#tryDecode(CharSequence)
+     */
+    public static DecodeResult tryDecode(CharSequence in) {
+        return StandardHexCodecs.DEFAULT.tryDecode(in);
+    }
+    
+    /**
+     * @see HexDecoder#decodeBatch(List)
+     */
+    public static DecodedBatch decodeBatch(List<? extends CharSequence> in) throws ParseException {
+        return StandardHexCodecs.DEFAULT.decodeBatch(in);
+    }
+    
+    /**
+     * @see HexDecoder#decodeBatch(List, ByteBuffer)
+     */
+    public static DecodedBatch decodeBatch(List<? extends CharSequence> in, ByteBuffer arena) throws ParseException {
+        return StandardHexCodecs.DEFAULT.decodeBatch(in, arena);
+    }
         
+    /**
+     * Encodes a long as 16 hex digits
+     * @param v the value to encode
+     * @return the encoded value
+     */
+    public static String encode(long v) {
+        return encode(v, 16);
+    }
+    
+    /**
+     * Encodes an int as 8 hex digits
+     * @param v the value to encode
+     * @return the encoded value
+     */
+    public static String encode(int v) {
+        return encode(v, 8);
+    }
+    
+    /**
+     * Encodes a short as 4 hex digits
+     * @param v the value to encode
+     * @return the encoded value
+     */
+    public static String encode(short v) {
+        return encode(v, 4);
+    }
+    
+    /**
+     * Encodes a UUID as 32 hex digits, without the dashes of `UUID.toString()`
+     * @param u the UUID to encode
+     * @return the encoded UUID
+     */
+    public static String encode(UUID u) {
+        char[] c = SCRATCH.get();
+        put(c, 0, u.getMostSignificantBits(), 16);
+        put(c, 16, u.getLeastSignificantBits(), 16);
+        return new String(c, 0, UUID_DIGITS);
+    }
+    
+    /**
+     * Appends a long as 16 hex digits
+     * @param out the destination to which the encoded value will be appended
+     * @param v the value to encode
+     * @return out
+     * @throws IOException if out throws one
+     */
+    public static <A extends Appendable> A appendTo(A out, long v) throws IOException {
+        return appendTo(out, v, 16);
+    }
+    
+    /**
+     * Appends an int as 8 hex digits
+     * @param out the destination to which the encoded value will be appended
+     * @param v the value to encode
+     * @return out
+     * @throws IOException if out throws one
+     */
+    public static <A extends Appendable> A appendTo(A out, int v) throws IOException {
+        return appendTo(out, v, 8);
+    }
+    
+    /**
+     * Appends a short as 4 hex digits
+     * @param out the destination to which the encoded value will be appended
+     * @param v the value to encode
+     * @return out
+     * @throws IOException if out throws one
+     */
+    public static <A extends Appendable> A appendTo(A out, short v) throws IOException {
+        return appendTo(out, v, 4);
+    }
+    
+    /**
+     * Appends a UUID as 32 hex digits, without the dashes of `UUID.toString()`
+     * @param out the destination to which the encoded UUID will be appended
+     * @param u the UUID to encode
+     * @return out
+     * @throws IOException if out throws one
+     */
+    public static <A extends Appendable> A appendTo(A out, UUID u) throws IOException {
+        appendTo(out, u.getMostSignificantBits(), 16);
+        return appendTo(out, u.getLeastSignificantBits(), 16);
+    }
+    
+    /**
+     * Decodes 16 hex digits to a long
+     * @param in the hex containing the digits
+     * @param start the position in the input of the first digit
+     * @return the decoded value
+     * @throws ParseException if the input contains fewer than 16 digits at
+     * the specified position
+     */
+    public static long decodeLong(CharSequence in, int start) throws ParseException {
+        return decodeDigits(in, start, 16);
+    }
+    
+    /**
+     * Decodes 8 hex digits to an int
+     * @param in the hex containing the digits
+     * @param start the position in the input of the first digit
+     * @return the decoded value
+     * @throws ParseException if the input contains fewer than 8 digits at
+     * the specified position
+     */
+    public static int decodeInt(CharSequence in, int start) throws ParseException {
+        return (int) decodeDigits(in, start, 8);
+    }
+    
+    /**
+     * Decodes 4 hex digits to a short
+     * @param in the hex containing the digits
+     * @param start the position in the input of the first digit
+     * @return the decoded value
+     * @throws ParseException if the input contains fewer than 4 digits at
+     * the specified position
+     */
+    public static short decodeShort(CharSequence in, int start) throws ParseException {
+        return (short) decodeDigits(in, start, 4);
+    }
+    
+    /**
+     * Decodes a UUID from either 32 hex digits or the dashed form written by
+     * `UUID.toString()`
+     * @param in the hex containing the UUID
+     * @param start the position in the input of the first digit
+     * @return the decoded UUID
+     * @throws ParseException if the input does not contain a UUID in either
+     * form at the specified position
+     */
+    public static UUID decodeUuid(CharSequence in, int start) throws ParseException {
+        if (in.length() > start + 8 && in.charAt(start + 8) == '-') {
+            long msb = decodeDigits(in, start, 8);
+            msb = (msb << 16) | decodeDigits(in, dash(in, start + 8), 4);
+            msb = (msb << 16) | decodeDigits(in, dash(in, start + 13), 4);
+            long lsb = decodeDigits(in, dash(in, start + 18), 4);
+            lsb = (lsb << 48) | decodeDigits(in, dash(in, start + 23), 12);
+            return new UUID(msb, lsb);
+        }
+        return new UUID(decodeDigits(in, start, 16), decodeDigits(in, start + 16, 16));
+    }
+    
+    private static int dash(CharSequence in, int pos) throws ParseException {
+        if (pos >= in.length()) throw new ParseException(String.format("unexpected eof at position %d", pos), pos);
+        if (in.charAt(pos) != '-') throw new ParseException(String.format("invalid character '%c' at position %d (expected '-')", in.charAt(pos), pos), pos);
+        return pos + 1;
+    }
+    
+    private static long decodeDigits(CharSequence in, int start, int digits) throws ParseException {
+        if (start < 0) throw new IllegalArgumentException("start must not be negative");
+        long v = 0;
+        for (int i = start, end = start + digits; i < end; ++i) {
+            if (i >= in.length()) throw new ParseException(String.format("unexpected eof at position %d", i), i);
+            char c = in.charAt(i);
+            int d = (c < 128) ? HexDecoderAdapter.DIGIT_VALUES[c] : -1;
+            if (d < 0) throw new ParseException(String.format("invalid character '%c' at position %d", c, i), i);
+            v = (v << 4) | d;
+        }
+        return v;
+    }
+    
+    private static String encode(long v, int digits) {
+        char[] c = SCRATCH.get();
+        put(c, 0, v, digits);
+        return new String(c, 0, digits);
+    }
+    
+    private static void put(char[] c, int pos, long v, int digits) {
+        for (int i = pos + digits - 1; i >= pos; --i) {
+            c[i] = DIGITS[(int) v & 0x0f];
+            v >>>= 4;
+        }
+    }
+    
+    private static <A extends Appendable> A appendTo(A out, long v, int digits) throws IOException {
+        for (int shift = (digits - 1) * 4; shift >= 0; shift -= 4) {
+            out.append(DIGITS[(int) (v >>> shift) & 0x0f]);
+        }
+        return out;
+    }
+    
     static String of(int i) {
-        return String.format("%02x", i & 0xff);
+        return new String(new char[] { DIGITS[(i >> 4) & 0x0f], DIGITS[i & 0x0f] });
     }
 }
@@ -18,8 +18,17 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.Reader;
+import java.io.InputStreamReader;
 import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
 import java.text.ParseException;
+import java.util.List;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.Checksum;
 
 /**
  * An interface providing hexadecimal-to-binary decoding.  This interface
@@ -31,6 +40,14 @@ import java.text.ParseException;
  * Implementations only need to implement the
  * `public void decode(Reader in, OutputStream out)` method.
  * 
+ * Decoded bytes can be written directly to a ByteBuffer, including direct and
+ * memory-mapped buffers, and hex held in a ByteBuffer as single-byte
+ * characters can be decoded without first being copied into a String.
+ * 
+ * A Checksum or MessageDigest can be updated with the decoded bytes as they
+ * are written, so that the integrity of a round trip can be checked without
+ * a second pass over the data.
+ * 
  * Alternatively, a SimpleBaseHexDecoder class is provided that may allow
  * for simpler implementations of more complex hex decodings such as the
  * one provided by HexDumpDecoder.
@@ -50,6 +67,49 @@ public interface HexDecoder {
         return decode(new StringReader(in));
     }    
 
+    /**
+     * Decodes a range of the specified characters to a byte array.  The
+     * default implementation decodes a copy of the range; the built-in
+     * decoders read the range in place.
+     * @param in the characters containing the hex to decode
+     * @param start the index of the first character to decode
+     * @param end the index following the last character to decode
+     * @return the decoded range as a byte array
+     * @throws ParseException with an error offset relative to the start of `in`
+     */
+    public default byte[] decode(CharSequence in, int start, int end) throws ParseException {
+        try {
+            return decode(in.subSequence(start, end).toString());
+        } catch (ParseException e) {
+            throw new ParseException(e.getMessage(), e.getErrorOffset() + start);
+        }
+    }
+    
+    /**
+     * Decodes a range of the specified character array into a byte array.
+     * The default implementation decodes a copy of the range; the built-in
+     * decoders read the range in place and write directly to `out`.
+     * @param in the array containing the hex to decode
+     * @param offset the index of the first character to decode
+     * @param len the number of characters to decode
+     * @param out the array to which the decoded bytes will be written
+     * @param outOffset the index in `out` of the first decoded byte
+     * @return the number of bytes decoded
+     * @throws ParseException with an error offset relative to the start of `in`
+     * @throws java.nio.BufferOverflowException if the decoded bytes do not
+     * fit in `out`
+     */
+    public default int decode(char[] in, int offset, int len, byte[] out, int outOffset) throws ParseException {
+        byte[] b;
+        try {
+            b = decode(new String(in, offset, len));
+        } catch (ParseException e) {
+            throw new ParseException(e.getMessage(), e.getErrorOffset() + offset);
+        }
+        ByteBuffer.wrap(out, outOffset, out.length - outOffset).put(b);
+        return b.length;
+    }
+    
     /**
      * Decodes the contents of the specified Reader to a byte array
      * @param in the Reader to read and decode
@@ -77,6 +137,218 @@ public interface HexDecoder {
         decode(new StringReader(in), out);
     }
     
+    /**
+     * Decodes the contents of the specified Reader to a ByteBuffer, starting
+     * at the buffer's position and advancing it past the decoded bytes.  The
+     * buffer may be a direct or memory-mapped buffer.
+     * @param in the Reader to read and decode
+     * @param out the destination to which the decoded bytes will be written
+     * @throws ParseException
+     * @throws IOException
+     * @throws java.nio.BufferOverflowException if the decoded bytes do not
+     * fit in the buffer's remaining space
+     */
+    public default void decode(Reader in, ByteBuffer out) throws ParseException, IOException {
+        decode(in, new ByteBufferOutputStream(out));
+    }
+    
+    /**
+     * Decodes hex held in a ByteBuffer as single-byte (ASCII or ISO-8859-1)
+     * characters to another ByteBuffer.  All remaining bytes of the input are
+     * consumed, and the output buffer's position is advanced past the decoded
+     * bytes.  Either buffer may be a direct or memory-mapped buffer.
+     * @param in the hex to decode
+     * @param out the destination to which the decoded bytes will be written
+     * @throws ParseException
+     * @throws IOException
+     * @throws java.nio.BufferOverflowException if the decoded bytes do not
+     * fit in the output buffer's remaining space
+     */
+    public default void decode(ByteBuffer in, ByteBuffer out) throws ParseException, IOException {
+        decode(new InputStreamReader(new ByteBufferInputStream(in), StandardCharsets.ISO_8859_1), out);
+    }
+    
+    /**
+     * Decodes a hex file to a binary file, replacing the binary file if it
+     * exists.  The hex file is memory-mapped and the binary file is written
+     * in large blocks, so memory use does not depend on the size of either.
+     * Large files are decoded on one thread per available processor where
+     * the format allows it.
+     * @param in the hex file to decode
+     * @param out the file to which the decoded bytes will be written
+     * @return the number of bytes written
+     * @throws ParseException for the first error in the hex file
+     * @throws IOException
+     */
+    public default long decode(Path in, Path out) throws ParseException, IOException {
+        return decode(in, out, Runtime.getRuntime().availableProcessors());
+    }
+    
+    /**
+     * Decodes a hex file to a binary file, replacing the binary file if it
+     * exists, using up to the specified number of threads.  Files are decoded
+     * in parallel only by CharIgnoringHexDecoders (including DefaultHexDecoder
+     * and StrictHexDecoder) and HexDumpDecoders, for which the position of
+     * each part of the output can be determined before it is decoded.
+     * @param in the hex file to decode
+     * @param out the file to which the decoded bytes will be written
+     * @param threads the maximum number of threads to decode with
+     * @return the number of bytes written
+     * @throws ParseException for the first error in the hex file
+     * @throws IOException
+     */
+    public default long decode(Path in, Path out, int threads) throws ParseException, IOException {
+        return FileDecoder.decode(this, in, out, threads);
+    }
+    
+    /**
+     * Decodes the contents of the specified Reader to an OutputStream,
+     * updating the specified Checksum with the decoded bytes as they are
+     * written
+     * @param in the Reader to read and decode
+     * @param out the destination to which the decoded Reader contents will be written
+     * @param checksum the Checksum to update with the decoded bytes
+     * @throws ParseException
+     * @throws IOException
+     */
+    public default void decode(Reader in, OutputStream out, Checksum checksum) throws ParseException, IOException {
+        decode(in, new CheckedOutputStream(out, checksum));
+    }
+    
+    /**
+     * Decodes the contents of the specified Reader to an OutputStream,
+     * updating the specified MessageDigest with the decoded bytes as they are
+     * written
+     * @param in the Reader to read and decode
+     * @param out the destination to which the decoded Reader contents will be written
+     * @param digest the MessageDigest to update with the decoded bytes
+     * @throws ParseException
+     * @throws IOException
+     */
+    public default void decode(Reader in, OutputStream out, MessageDigest digest) throws ParseException, IOException {
+        decode(in, new DigestOutputStream(out, digest));
+    }
+    
+    /**
+     * Determines how many bytes the specified hex decodes to, applying the
+     * same rules as decoding but without producing any output.
+     * @param in the hex to examine
+     * @return the number of bytes the hex decodes to
+     * @throws ParseException if the hex cannot be decoded
+     */
+    public default long decodedLength(CharSequence in) throws ParseException {
+        try {
+            return decodedLength(new StringReader(in.toString()));
+        } catch (IOException notExpected) {
+            throw new RuntimeException(notExpected);
+        }
+    }
+    
+    /**
+     * Determines how many bytes the contents of the specified Reader decode
+     * to, applying the same rules as decoding but without producing any output.
+     * @param in the Reader to read and examine
+     * @return the number of bytes the Reader's contents decode to
+     * @throws ParseException if the contents cannot be decoded
+     * @throws IOException
+     */
+    public default long decodedLength(Reader in) throws ParseException, IOException {
+        long[] count = new long[1];
+        decode(in, new OutputStream() {
+            @Override public void write(int b) { ++count[0]; }
+            @Override public void write(byte[] b, int off, int len) { count[0] += len; }
+        });
+        return count[0];
+    }
+    
+    /**
+     * Checks whether the specified hex can be decoded without throwing an
+     * exception if it cannot.
+     * @param in the hex to validate
+     * @return the position of the first error in the input, or -1 if the
+     * input is valid
+     */
+    public default int validate(CharSequence in) {
+        // positions within a CharSequence always fit in an int
+        return (int) tryDecode(in).errorPosition();
+    }
+    
+    /**
+     * Decodes many values into a single contiguous arena rather than a
+     * separate array for each.
+     * @param in the values to decode
+     * @return the decoded values and the index of where each begins
+     * @throws ParseException for the first invalid value, with an error
+     * offset relative to the start of that value
+     */
+    public default DecodedBatch decodeBatch(List<? extends CharSequence> in) throws ParseException {
+        return DecodedBatch.decode(this, in);
+    }
+    
+    /**
+     * Decodes many values end to end into the remaining space of the
+     * specified buffer, which may be direct, advancing its position past them.
+     * @param in the values to decode
+     * @param arena the buffer to decode into
+     * @return the decoded values and the index of where each begins,
+     * relative to the buffer's initial position
+     * @throws ParseException for the first invalid value, with an error
+     * offset relative to the start of that value
+     * @throws java.nio.BufferOverflowException if the decoded values do not fit in
+     * the buffer's remaining space
+     */
+    public default DecodedBatch decodeBatch(List<? extends CharSequence> in, ByteBuffer arena) throws ParseException {
+        return DecodedBatch.decode(this, in, arena);
+    }
+    
+    /**
+     * Decodes the specified hex without throwing an exception if it is
+     * invalid.  The default implementation catches the ParseException thrown
+     * by `decode(String)`; the built-in decoders override it to avoid creating
+     * exceptions at all.
+     * @param in the hex to decode
+     * @return the decoded bytes, or the position and kind of the first error
+     */
+    public default DecodeResult tryDecode(CharSequence in) {
+        try {
+            return DecodeResult.success(decode(in.toString()));
+        } catch (ParseException e) {
+            return DecodeResult.failure(e.getErrorOffset(),
+                                        e.getErrorOffset() >= in.length()
+                                            ? DecodeResult.Error.UNEXPECTED_EOF
+                                            : DecodeResult.Error.INVALID_CHARACTER);
+        }
+    }
+    
+    /**
+     * Creates a new IncrementalHexDecoder that decodes exactly as this
+     * HexDecoder does, but accepts its input in chunks pushed to it by the
+     * caller rather than pulling it from a Reader.  The default
+     * implementation holds all input until `finish()` and then decodes it at
+     * once; the built-in decoders override it to decode each chunk as it
+     * arrives.
+     * 
+     * @return a new IncrementalHexDecoder
+     */
+    public default IncrementalHexDecoder newIncrementalDecoder() {
+        return new IncrementalHexDecoder(new HexDecoderAdapter.Strategy() {
+            private final StringBuilder _chars = new StringBuilder();
+            
+            @Override public void start(OutputStream out) {}
+            
+            @Override
+            public boolean shouldIgnore(char c, long charIndexInStream, long charIndexInLine, OutputStream out) {
+                _chars.append(c);
+                return true;
+            }
+            
+            @Override
+            public void finish(long totalChars, long totalBytes, OutputStream out) throws ParseException, IOException {
+                out.write(decode(_chars.toString()));
+            }
+        });
+    }
+    
     /**
      * Decodes the contents of the specified Reader to an OutputStream.
      * Concrete implementations of this interface must implement this method.
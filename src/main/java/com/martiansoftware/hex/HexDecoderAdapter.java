@@ -17,7 +17,10 @@ package com.martiansoftware.hex;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.Reader;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.text.ParseException;
+import java.util.Arrays;
 
 /**
  * A base class for easily creating custom HexDecoders.  Subclasses must
@@ -31,10 +34,21 @@ import java.text.ParseException;
  */
 public abstract class HexDecoderAdapter implements HexDecoder {
 
-    private static final int CR = '\r';
-    private static final int LF = '\n';
+    private static final int BUFFER_SIZE = 8192;
     
-    private enum State { NEEDS_DIGIT_1, NEEDS_DIGIT_2 }
+    /**
+     * The values of the standard hex digits, indexed by character, with -1
+     * for characters below 128 that are not hex digits
+     */
+    static final byte[] DIGIT_VALUES = new byte[128];
+    static {
+        Arrays.fill(DIGIT_VALUES, (byte) -1);
+        for (int i = 0; i < 10; ++i) DIGIT_VALUES['0' + i] = (byte) i;
+        for (int i = 0; i < 6; ++i) {
+            DIGIT_VALUES['a' + i] = (byte) (10 + i);
+            DIGIT_VALUES['A' + i] = (byte) (10 + i);
+        }
+    }
 
     /**
      * Parses a character sequence into a byte array with behavior determined by
@@ -63,49 +77,215 @@ public abstract class HexDecoderAdapter implements HexDecoder {
      */
     @Override
     public void decode(Reader in, OutputStream out) throws IOException, ParseException {
-        Strategy o = newStrategy();
-        o.start(out);
-        
-        State state = State.NEEDS_DIGIT_1;
-        
-        long charIndexInStream = -1, charIndexInLine = 0, totalBytes = 0;
-        int b = 0;
-        outer:
-        while(true) {
-            int c = in.read();
-            ++charIndexInStream;
-
-            if (c == CR || c == LF) {
-                charIndexInLine = 0;
-            } else {
-                ++charIndexInLine;
+        IncrementalHexDecoder d = newIncrementalDecoder();
+        Object event = HexEvents.begin();
+        boolean failed = false;
+        try {
+            char[] buf = new char[BUFFER_SIZE];
+            int n;
+            while ((n = in.read(buf)) >= 0) {
+                d.feed(buf, 0, n, out);
+            }
+            d.finish(out);
+        } catch (ParseException e) {
+            failed = true;
+            throw e;
+        } finally {
+            HexEvents.end(event, this, HexEvents.DECODE, d.totalBytes(), d.totalChars(), failed);
+        }
+    }
+    
+    /**
+     * Decodes hex held in a ByteBuffer as single-byte characters directly
+     * into another ByteBuffer, holding no more than a small block of either
+     * on the heap.
+     * 
+     * @param in the hex to decode
+     * @param out the destination to which the decoded bytes will be written
+     * @throws ParseException
+     * @throws IOException
+     * @throws BufferOverflowException if the decoded bytes do not fit in the
+     * output buffer's remaining space
+     */
+    @Override
+    public void decode(ByteBuffer in, ByteBuffer out) throws ParseException, IOException {
+        IncrementalHexDecoder d = newIncrementalDecoder();
+        Object event = HexEvents.begin(in.remaining() / 2);
+        boolean failed = false;
+        try {
+            while (in.hasRemaining()) {
+                ByteBuffer chunk = in.slice();
+                chunk.limit(Math.min(BUFFER_SIZE, chunk.remaining()));
+                in.position(in.position() + chunk.remaining());
+                d.feed(chunk, out);
+                if (d.hasPending()) throw new BufferOverflowException();
             }
-            
-            switch(state) {
-                case NEEDS_DIGIT_1: if (c == -1) break outer;
-                                    if (o.shouldIgnore((char) c, charIndexInStream, charIndexInLine, out)) {
-                                        continue;                
-                                    }
-                                    b = 16 * valueOf((char) c, charIndexInStream);
-                                    state = State.NEEDS_DIGIT_2;
-                                    break;
-                                    
-                case NEEDS_DIGIT_2: if (c == -1) {
-                                        throw new ParseException(String.format("unexpected eof at position %d", charIndexInStream), (int) charIndexInStream);
-                                    }
-                                    b += valueOf((char) c, charIndexInStream);
-                                    out.write(b);
-                                    state = State.NEEDS_DIGIT_1;
-                                    break;
-            }            
+            d.finish(out);
+            if (d.hasPending()) throw new BufferOverflowException();
+        } catch (ParseException e) {
+            failed = true;
+            throw e;
+        } finally {
+            HexEvents.end(event, this, HexEvents.DECODE, d.totalBytes(), d.totalChars(), failed);
+        }
+    }
+    
+    @Override
+    public byte[] decode(String in) throws ParseException {
+        return decode(in, 0, in.length());
+    }
+    
+    /**
+     * Decodes a range of the specified characters, reading them in place
+     * without copying the range to a new String
+     * 
+     * @param in the characters containing the hex to decode
+     * @param start the index of the first character to decode
+     * @param end the index following the last character to decode
+     * @return the decoded bytes
+     * @throws ParseException with an error offset relative to the start of `in`
+     */
+    @Override
+    public byte[] decode(CharSequence in, int start, int end) throws ParseException {
+        checkRange(in.length(), start, end);
+        IncrementalHexDecoder d = newIncrementalDecoder();
+        Object event = HexEvents.begin((end - start) / 2);
+        boolean failed = false;
+        try {
+            return d.decodeFully(in, start, end);
+        } catch (IOException notExpected) {
+            throw new RuntimeException(notExpected);
+        } catch (ParseException e) {
+            failed = true;
+            throw e;
+        } finally {
+            HexEvents.end(event, this, HexEvents.DECODE, d.totalBytes(), d.totalChars() - start, failed);
+        }
+    }
+    
+    /**
+     * Decodes a range of the specified array directly into another array
+     * 
+     * @param in the array containing the hex to decode
+     * @param offset the index of the first character to decode
+     * @param len the number of characters to decode
+     * @param out the array to which the decoded bytes will be written
+     * @param outOffset the index in `out` of the first decoded byte
+     * @return the number of bytes decoded
+     * @throws ParseException with an error offset relative to the start of `in`
+     * @throws BufferOverflowException if the decoded bytes do not fit in `out`
+     */
+    @Override
+    public int decode(char[] in, int offset, int len, byte[] out, int outOffset) throws ParseException {
+        checkRange(in.length, offset, offset + len);
+        checkRange(out.length, outOffset, out.length);
+        ByteBuffer buf = ByteBuffer.wrap(out, outOffset, out.length - outOffset);
+        IncrementalHexDecoder d = newIncrementalDecoder();
+        d.startAt(offset);
+        Object event = HexEvents.begin(len / 2);
+        boolean failed = false;
+        try {
+            d.feed(in, offset, len, buf);
+            d.finish(buf);
+        } catch (IOException notExpected) {
+            throw new RuntimeException(notExpected);
+        } catch (ParseException e) {
+            failed = true;
+            throw e;
+        } finally {
+            HexEvents.end(event, this, HexEvents.DECODE, d.totalBytes(), d.totalChars() - offset, failed);
+        }
+        if (d.hasPending()) throw new BufferOverflowException();
+        return buf.position() - outOffset;
+    }
+    
+    private static void checkRange(int length, int start, int end) {
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException(String.format("range [%d, %d) out of bounds for length %d", start, end, length));
+        }
+    }
+    
+    @Override
+    public long decodedLength(CharSequence in) throws ParseException {
+        try {
+            return newIncrementalDecoder().countFully(in);
+        } catch (IOException notExpected) {
+            throw new RuntimeException(notExpected);
+        }
+    }
+    
+    @Override
+    public long decodedLength(Reader in) throws ParseException, IOException {
+        return newIncrementalDecoder().countFully(in);
+    }
+    
+    /**
+     * Checks whether the specified hex can be decoded, without producing
+     * any output or throwing any exceptions.  Uses the same lookup tables
+     * as `decode()`.
+     * 
+     * @param in the hex to validate
+     * @return the position of the first error in the input, or -1 if the
+     * input is valid
+     */
+    @Override
+    public int validate(CharSequence in) {
+        try {
+            IncrementalHexDecoder d = newIncrementalDecoder();
+            d.decodeQuietly(in, false);
+            return (int) d.errorPosition();
+        } catch (IOException notExpected) {
+            throw new RuntimeException(notExpected);
+        }
+    }
+    
+    /**
+     * Decodes the specified hex without throwing an exception for invalid input
+     * 
+     * @param in the hex to decode
+     * @return the decoded bytes, or the position and kind of the first error
+     */
+    @Override
+    public DecodeResult tryDecode(CharSequence in) {
+        try {
+            IncrementalHexDecoder d = newIncrementalDecoder();
+            d.decodeQuietly(in, true);
+            return d.result();
+        } catch (IOException notExpected) {
+            throw new RuntimeException(notExpected);
         }
-        o.finish(charIndexInStream, totalBytes, out);
     }
     
+    /**
+     * Creates a new IncrementalHexDecoder that decodes exactly as this
+     * HexDecoder does, but accepts its input in chunks pushed to it by the
+     * caller rather than pulling it from a Reader.
+     * 
+     * @return a new IncrementalHexDecoder
+     */
+    @Override
+    public IncrementalHexDecoder newIncrementalDecoder() {
+        return new IncrementalHexDecoder(this, newStrategy());
+    }
+    
+    /**
+     * Returns the value of a character that is not one of the standard hex
+     * digits (0-9, a-f, A-F), which are decoded via a lookup table.  The
+     * default implementation throws a ParseException; subclasses may override
+     * this to accept additional digit characters when decoding.  It is not
+     * consulted by `validate()` or `tryDecode()`.
+     * 
+     * @param c the character to convert
+     * @param index the position of the character in the stream
+     * @return the value of the character
+     * @throws ParseException if the character is not a hex digit
+     */
     protected int valueOf(char c, long index) throws ParseException {
-        if (c >= '0' && c <= '9') return c - '0';
-        if (c >= 'a' && c <= 'f') return c - 'a' + 10;
-        if (c >= 'A' && c <= 'F') return c - 'A' + 10;
+        return digitValueOf(c, index);
+    }
+    
+    static int digitValueOf(char c, long index) throws ParseException {
+        if (c < 128 && DIGIT_VALUES[c] >= 0) return DIGIT_VALUES[c];
         throw new ParseException(String.format("invalid character '%c' at position %d", c, index), (int) index);
     }    
     
@@ -121,13 +301,27 @@ public abstract class HexDecoderAdapter implements HexDecoder {
      * A simple strategy for reactively encoding data.  Lifecycle is:
      * 
      * <ul>
-     * <li>start() is always called first, exactly once</li>
+     * <li>wrap() is always called first, exactly once</li>
+     * <li>start() is then called exactly once</li>
      * <li>shouldIgnore() is then called zero or more times</li>
      * <li>finish() is then called once if no errors have occurred</li>
      * </ul>
      */
     public static interface Strategy {
         
+        /**
+         * Called before start() to allow the strategy to observe or add to
+         * the decoded output.  The returned OutputStream receives every decoded
+         * byte and is the `out` passed to all other methods of this Strategy.
+         * The default implementation returns `out` unchanged.
+         * 
+         * @param out the decoding destination
+         * @return the OutputStream to which decoded bytes should be written
+         */
+        public default OutputStream wrap(OutputStream out) {
+            return out;
+        }
+        
         /**
          * Called before any bytes are processed
          * @param out the decoding destination
@@ -162,4 +356,20 @@ public abstract class HexDecoderAdapter implements HexDecoder {
         public void finish(long totalChars, long totalBytes, OutputStream out) throws ParseException, IOException;
     }
     
+    /**
+     * Implemented by Strategies whose shouldIgnore() depends only on the
+     * character examined (and not on its position or any other state), allowing
+     * decoders to look characters up in a table rather than asking the Strategy
+     * about each one.  shouldIgnore() is still called for characters beyond
+     * the end of the table.
+     */
+    static interface CharTableStrategy extends Strategy {
+        
+        /**
+         * @return a table, indexed by character, of whether shouldIgnore() returns
+         * true for that character
+         */
+        public boolean[] ignoredChars();
+    }
+    
 }
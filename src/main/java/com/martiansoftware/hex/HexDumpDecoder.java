@@ -14,8 +14,12 @@ package com.martiansoftware.hex;
 //   See the License for the specific language governing permissions and
 //   limitations under the License.
 
+import com.martiansoftware.validation.Hope;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.text.ParseException;
 
 /**
  * A HexDecoder capable of decoding the output of a HexDumpEncoder (which
@@ -30,30 +34,349 @@ import java.io.OutputStream;
  *   00000030: 46 7b 52 f8 71 cf 91 22   34 a6 53 22 a7 4f 75 1e   F{R.q.."4.S".Ou.
  * ```
  * 
+ * Runs of identical lines collapsed to a single `*` line (as written by a
+ * HexDumpEncoder created with collapsing enabled) are expanded by repeating
+ * the line preceding the `*` until the address of the next line is reached.
+ * 
+ * A range of bytes can be decoded from a large hex dump file without parsing
+ * the file from the beginning via `decodeRange()`, which locates the line
+ * containing the start of the range using the address at the start of each
+ * line.
+ * 
  * @author <a href="http://martylamb.com">Marty Lamb</a>
  */
 public class HexDumpDecoder extends HexDecoderAdapter {
 
+    private static final int BYTES_PER_LINE = 16;
+    private static final int PROBE_BUFFER_SIZE = 256;
+    private static final int DECODE_BUFFER_SIZE = 8192;
+    
     @Override
     protected Strategy newStrategy() {
         return new DumpStrategy();
     }
     
+    /**
+     * Decodes a range of bytes from a hex dump file, reading only the portion
+     * of the file containing the requested range.  The file is read via
+     * positional reads, and the channel's own position is not changed.
+     * 
+     * The line containing the start of the range is located by computing its
+     * file offset from the width of the first line, falling back to a binary
+     * search on line addresses if the dump's lines vary in width (for example,
+     * if repeated lines have been collapsed).
+     * 
+     * @param in the hex dump file to decode
+     * @param address the address (as written in the dump) of the first byte to decode
+     * @param length the maximum number of bytes to decode
+     * @param out the destination to which the decoded bytes will be written
+     * @return the number of bytes decoded, which is less than `length` if
+     * the dump ends before the end of the range
+     * @throws ParseException with an error offset relative to the start of the file
+     * @throws IOException 
+     */
+    public long decodeRange(FileChannel in, long address, long length, OutputStream out) throws ParseException, IOException {
+        return decodeRange(in, address, length, out, DECODE_BUFFER_SIZE);
+    }
+    
+    /**
+     * Decodes a range of bytes from a hex dump file, reading the file in
+     * blocks of the specified size
+     * 
+     * @see #decodeRange(FileChannel, long, long, OutputStream)
+     */
+    long decodeRange(FileChannel in, long address, long length, OutputStream out, int bufferSize) throws ParseException, IOException {
+        Hope.that(length).named("length").isTrue(n -> n >= 0, "length must not be negative");
+        DumpLine first = dataLineAt(in, 0);
+        if (first == null || length == 0) return 0;
+        Hope.that(address).named("address").isTrue(a -> a >= first.address, "address precedes the start of the dump");
+        
+        DumpLine line = findLine(in, first, address);
+        RangeSink sink = new RangeSink(out, address - line.address, length);
+        IncrementalHexDecoder d = newIncrementalDecoder();
+        d.startAt(line.start);
+        ChannelReader r = new ChannelReader(in, line.start, bufferSize);
+        char[] buf = new char[bufferSize];
+        int n;
+        while ((n = r.read(buf, 0, buf.length)) >= 0) {
+            for (int off = 0; off < n; ) {
+                int end = pieceEnd(buf, off, n, sink.remaining());
+                d.feed(buf, off, end - off, sink);
+                if (sink.remaining() == 0) return sink.written();
+                off = end;
+            }
+        }
+        d.finish(sink);
+        return sink.written();
+    }
+    
+    /**
+     * Decoded bytes reach the RangeSink only at the end of each call to
+     * feed(), so input is fed in pieces that are unlikely to decode to much
+     * more than the remaining bytes of the range, ending at line boundaries.
+     * The pieces shrink as the range nears completion, so decoding stops
+     * within a line of its end without feeding each line separately.
+     * 
+     * @return the end of the next piece of buf to feed
+     */
+    private static int pieceEnd(char[] buf, int off, int len, long remaining) {
+        long limit = off + Math.max(HexDumpEncoder.LINE_COLUMNS, remaining / BYTES_PER_LINE * HexDumpEncoder.LINE_COLUMNS);
+        if (limit >= len) return len;
+        int end = (int) limit;
+        while (end < len && buf[end++] != '\n');
+        return end;
+    }
+    
+    /**
+     * Finds the last data line in the dump whose address is less than or
+     * equal to the specified address.
+     */
+    private DumpLine findLine(FileChannel in, DumpLine first, long address) throws IOException {
+        DumpLine second = dataLineAt(in, first.start + 1);
+        if (second == null || second.address > address) return first;
+        
+        long lineIndex = (address - first.address) / BYTES_PER_LINE;
+        long guess = first.start + lineIndex * (second.start - first.start);
+        if (guess < in.size()) {
+            DumpLine line = dataLineAt(in, guess);
+            if (line != null && line.start == guess && line.address == first.address + lineIndex * BYTES_PER_LINE) {
+                return line;
+            }
+        }
+        
+        DumpLine best = first;
+        long lo = first.start + 1, hi = in.size();
+        while (lo < hi) {
+            long mid = lo + (hi - lo) / 2;
+            DumpLine line = dataLineAt(in, mid);
+            if (line != null && line.address <= address) {
+                best = line;
+                lo = line.start + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return best;
+    }
+    
+    /**
+     * Finds the first line beginning at or after the specified position that
+     * starts with an address followed by a colon, skipping collapsed-run and
+     * address-only lines.
+     * 
+     * @return the line found, or null if the end of the file is reached first
+     */
+    static DumpLine dataLineAt(FileChannel in, long position) throws IOException {
+        ChannelReader r = new ChannelReader(in, Math.max(0, position - 1), PROBE_BUFFER_SIZE);
+        int c;
+        if (position > 0) {
+            while ((c = r.read()) != '\n') {
+                if (c == -1) return null;
+            }
+        }
+        
+        while (true) {
+            long start = r.position();
+            long address = 0;
+            int digits = 0, v;
+            while ((v = hexValue((char) (c = r.read()))) >= 0 && digits < 16) {
+                address = (address << 4) | v;
+                ++digits;
+            }
+            if (c == ':' && digits > 0) return new DumpLine(start, address);
+            while (c != '\n') {
+                if (c == -1) return null;
+                c = r.read();
+            }
+        }
+    }
+    
+    private static int hexValue(char c) {
+        if (c >= '0' && c <= '9') return c - '0';
+        if (c >= 'a' && c <= 'f') return c - 'a' + 10;
+        if (c >= 'A' && c <= 'F') return c - 'A' + 10;
+        return -1;
+    }
+    
     private class DumpStrategy implements Strategy {
+        
+        private LineRecorder _recorder;
+        private boolean _inAddress = false;
+        private int _addressDigits = 0;
+        private long _address = 0;
+        private long _firstAddress = -1;
+        private long _colon = 9;
+        private boolean _runPending = false;
+        
+        @Override
+        public OutputStream wrap(OutputStream out) {
+            _recorder = new LineRecorder(out);
+            return _recorder;
+        }
+        
         @Override
         public void start(OutputStream out) throws IOException {
         }
 
         @Override
-        public boolean shouldIgnore(char c, long charIndexInStream, long charIndexInLine, OutputStream out) throws IOException {
-            return (charIndexInLine < 10
-                    || charIndexInLine > 58
+        public boolean shouldIgnore(char c, long charIndexInStream, long charIndexInLine, OutputStream out) throws ParseException, IOException {
+            if (charIndexInLine == 0) {
+                if (_inAddress) endAddress(charIndexInStream);
+                return true;
+            }
+            
+            if (charIndexInLine == 1) {
+                _addressDigits = 0;
+                _address = 0;
+                _colon = 9;
+                if (c == '*') {
+                    _runPending = true;
+                    return true;
+                }
+                _inAddress = true;
+            }
+            
+            if (_inAddress) {
+                int v = hexValue(c);
+                if (v >= 0 && _addressDigits < 16) {
+                    _address = (_address << 4) | v;
+                    ++_addressDigits;
+                    return true;
+                }
+                if (c == ':') {
+                    _colon = charIndexInLine;
+                    endAddress(charIndexInStream);
+                    return true;
+                }
+                _inAddress = false;
+            }
+            
+            return (charIndexInLine <= _colon
+                    || charIndexInLine > _colon + 49
                     || Character.isWhitespace(c));
         }
 
+        /**
+         * Called when the address at the start of a line has been read.  If
+         * the previous line was a collapsed run, the line preceding the run
+         * is repeated until the new address is reached.
+         */
+        private void endAddress(long charIndexInStream) throws ParseException, IOException {
+            _inAddress = false;
+            if (_addressDigits == 0) return;
+            if (_firstAddress < 0) _firstAddress = _address;
+            if (!_runPending) return;
+            
+            _runPending = false;
+            long count = _recorder.count();
+            long remaining = _address - _firstAddress - count;
+            if (count == 0 || count % BYTES_PER_LINE != 0 || remaining < 0 || remaining % BYTES_PER_LINE != 0) {
+                throw new ParseException(String.format("collapsed run does not end on a line boundary at position %d", charIndexInStream), (int) charIndexInStream);
+            }
+            for (; remaining > 0; remaining -= BYTES_PER_LINE) {
+                _recorder.repeatLastLine();
+            }
+        }
+        
+        @Override
+        public void finish(long totalChars, long totalBytes, OutputStream out) throws ParseException, IOException {
+            if (_inAddress) endAddress(totalChars);
+            if (_runPending) {
+                throw new ParseException(String.format("collapsed run has no terminating address at position %d", totalChars), (int) totalChars);
+            }
+        }
+        
+    }
+    
+    static class DumpLine {
+        final long start;
+        final long address;
+        
+        DumpLine(long start, long address) {
+            this.start = start;
+            this.address = address;
+        }
+    }
+    
+    /**
+     * Discards decoded bytes preceding a requested range and passes the bytes
+     * in the range through to the decoding destination.
+     */
+    private static class RangeSink extends OutputStream {
+        
+        private final OutputStream _out;
+        private long _skip;
+        private long _remaining;
+        private long _written = 0;
+        
+        RangeSink(OutputStream out, long skip, long length) {
+            _out = out;
+            _skip = skip;
+            _remaining = length;
+        }
+        
+        long written() {
+            return _written;
+        }
+        
+        /**
+         * @return the number of bytes still to be written to complete the range
+         */
+        long remaining() {
+            return _remaining;
+        }
+        
+        @Override
+        public void write(int b) throws IOException {
+            if (_skip > 0) {
+                --_skip;
+                return;
+            }
+            if (_remaining == 0) return;
+            _out.write(b);
+            ++_written;
+            --_remaining;
+        }
+
         @Override
-        public void finish(long totalChars, long totalBytes, OutputStream out) throws IOException {
+        public void write(byte[] b, int off, int len) throws IOException {
+            int skipped = (int) Math.min(len, _skip);
+            _skip -= skipped;
+            int n = (int) Math.min(len - skipped, _remaining);
+            if (n > 0) {
+                _out.write(b, off + skipped, n);
+                _remaining -= n;
+                _written += n;
+            }
         }
+    }
+    
+    /**
+     * Passes decoded bytes through to the decoding destination while
+     * remembering the most recently completed line so that it can be repeated.
+     */
+    private static class LineRecorder extends FilterOutputStream {
+
+        private final byte[] _lastLine = new byte[BYTES_PER_LINE];
+        private long _count = 0;
         
+        LineRecorder(OutputStream out) {
+            super(out);
+        }
+        
+        long count() {
+            return _count;
+        }
+        
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            _lastLine[(int) (_count++ % BYTES_PER_LINE)] = (byte) b;
+        }
+        
+        void repeatLastLine() throws IOException {
+            out.write(_lastLine, 0, BYTES_PER_LINE);
+            _count += BYTES_PER_LINE;
+        }
     }
 }
@@ -0,0 +1,243 @@
+package com.martiansoftware.hex;
+
+//   Copyright 2016 Martian Software, Inc.
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+import com.martiansoftware.validation.Hope;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Compares two streams of binary data and renders only the lines that differ,
+ * in the format written by HexDumpEncoder.  The inputs are compared a 16-byte
+ * line at a time, eight bytes per comparison, so long unchanged regions are
+ * skipped quickly and never rendered.  Files are memory-mapped a window at a
+ * time rather than read onto the heap.
+ *
+ * Differences can be shown in a unified layout, with the first input's line
+ * prefixed by `-` and the second's by `+`:
+ *
+ * ```
+ *   -00000010: 57 69 6b 69 70 65 64 69   61 2c 20 74 68 65 20 66   Wikipedia, the f
+ *   +00000010: 57 69 6b 69 70 45 44 49   61 2c 20 74 68 65 20 66   WikipEDIa, the f
+ * ```
+ *
+ * or side by side, with the first input on the left:
+ *
+ * ```
+ *   00000010: 57 69 6b 69 70 65 64 69   61 2c 20 74 68 65 20 66   Wikipedia, the f | 57 69 6b 69 70 45 44 49   61 2c 20 74 68 65 20 66   WikipEDIa, the f
+ * ```
+ *
+ * If one input is longer than the other, its extra lines are shown alone
+ * (prefixed by `+` or `-` in the unified layout, or opposite a blank column in
+ * the side-by-side layout).
+ *
+ * @author <a href="http://martylamb.com">Marty Lamb</a>
+ */
+public class HexDumpDiff {
+
+    /**
+     * The layouts in which differing lines can be rendered
+     */
+    public enum Style {
+        /** Each differing line of the first input, prefixed by `-`, followed by the second's, prefixed by `+` */
+        UNIFIED,
+        /** Differing lines of both inputs on a single line, separated by `|` */
+        SIDE_BY_SIDE
+    }
+
+    private static final int BYTES_PER_LINE = 16;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long WINDOW_SIZE = 64L * 1024 * 1024;
+
+    private final Style _style;
+
+    /**
+     * Creates a new HexDumpDiff that renders differences in the unified layout
+     */
+    public HexDumpDiff() {
+        this(Style.UNIFIED);
+    }
+
+    /**
+     * Creates a new HexDumpDiff that renders differences in the specified layout
+     * @param style the layout in which to render differing lines
+     */
+    public HexDumpDiff(Style style) {
+        _style = Hope.that(style).named("style").isNotNull().value();
+    }
+
+    /**
+     * Compares the contents of two InputStreams, writing the lines that differ
+     * to a PrintWriter
+     * @param a the first input
+     * @param b the second input
+     * @param out the destination to which differing lines will be written
+     * @return the number of differing lines
+     * @throws IOException
+     */
+    public long diff(InputStream a, InputStream b, PrintWriter out) throws IOException {
+        Comparison c = new Comparison(HexDumpEncoder.addressDigits(0), out);
+        byte[] bufA = new byte[BUFFER_SIZE];
+        byte[] bufB = new byte[BUFFER_SIZE];
+        long address = 0;
+        while (true) {
+            int na = readFully(a, bufA);
+            int nb = readFully(b, bufB);
+            if (na == 0 && nb == 0) break;
+            c.compare(ByteBuffer.wrap(bufA, 0, na), ByteBuffer.wrap(bufB, 0, nb), address);
+            address += Math.max(na, nb);
+        }
+        out.flush();
+        return c._differingLines;
+    }
+
+    /**
+     * Compares the contents of two files, writing the lines that differ to a
+     * PrintWriter.  The files are memory-mapped a window at a time.
+     * @param a the first file
+     * @param b the second file
+     * @param out the destination to which differing lines will be written
+     * @return the number of differing lines
+     * @throws IOException
+     */
+    public long diff(Path a, Path b, PrintWriter out) throws IOException {
+        try (FileChannel ca = FileChannel.open(a, StandardOpenOption.READ);
+             FileChannel cb = FileChannel.open(b, StandardOpenOption.READ)) {
+            return diff(ca, cb, out);
+        }
+    }
+
+    /**
+     * Compares the entire contents of two FileChannels, writing the lines that
+     * differ to a PrintWriter.  The channels are memory-mapped a window at a
+     * time, and their positions are not changed.
+     * @param a the first channel
+     * @param b the second channel
+     * @param out the destination to which differing lines will be written
+     * @return the number of differing lines
+     * @throws IOException
+     */
+    public long diff(FileChannel a, FileChannel b, PrintWriter out) throws IOException {
+        long sizeA = a.size();
+        long sizeB = b.size();
+        long size = Math.max(sizeA, sizeB);
+        Comparison c = new Comparison(HexDumpEncoder.addressDigits(Math.max(0, size - 1)), out);
+        for (long address = 0; address < size; address += WINDOW_SIZE) {
+            c.compare(map(a, address, sizeA), map(b, address, sizeB), address);
+        }
+        out.flush();
+        return c._differingLines;
+    }
+
+    private static ByteBuffer map(FileChannel channel, long address, long size) throws IOException {
+        long len = Math.max(0, Math.min(WINDOW_SIZE, size - address));
+        return (len == 0) ? ByteBuffer.allocate(0) : channel.map(FileChannel.MapMode.READ_ONLY, address, len);
+    }
+
+    private static int readFully(InputStream in, byte[] buf) throws IOException {
+        int len = 0, n;
+        while (len < buf.length && (n = in.read(buf, len, buf.length - len)) >= 0) {
+            len += n;
+        }
+        return len;
+    }
+
+    /**
+     * Compares corresponding blocks of the two inputs and renders the lines
+     * that differ
+     */
+    private class Comparison {
+        private final int _addressDigits;
+        private final PrintWriter _out;
+        private final StringBuilder _buf = new StringBuilder();
+        private final char[] _chars = new char[HexDumpEncoder.LINE_COLUMNS + 16];
+        private final byte[] _lineA = new byte[BYTES_PER_LINE];
+        private final byte[] _lineB = new byte[BYTES_PER_LINE];
+        private long _differingLines = 0;
+
+        Comparison(int addressDigits, PrintWriter out) {
+            _addressDigits = addressDigits;
+            _out = out;
+        }
+
+        /**
+         * Compares two blocks beginning at the same address.  Blocks other
+         * than the last in each input contain a whole number of lines.
+         */
+        void compare(ByteBuffer a, ByteBuffer b, long address) {
+            int pa = a.position(), la = a.limit();
+            int pb = b.position(), lb = b.limit();
+            int len = Math.max(la - pa, lb - pb);
+            for (int i = 0; i < len; i += BYTES_PER_LINE) {
+                int na = Math.max(0, Math.min(BYTES_PER_LINE, la - pa - i));
+                int nb = Math.max(0, Math.min(BYTES_PER_LINE, lb - pb - i));
+                if (na == BYTES_PER_LINE && nb == BYTES_PER_LINE
+                        && a.getLong(pa + i) == b.getLong(pb + i)
+                        && a.getLong(pa + i + 8) == b.getLong(pb + i + 8)) continue;
+                for (int j = 0; j < na; ++j) _lineA[j] = a.get(pa + i + j);
+                for (int j = 0; j < nb; ++j) _lineB[j] = b.get(pb + i + j);
+                if (na == nb && equal(na)) continue;
+                render(address + i, na, nb);
+            }
+        }
+
+        private boolean equal(int len) {
+            for (int i = 0; i < len; ++i) {
+                if (_lineA[i] != _lineB[i]) return false;
+            }
+            return true;
+        }
+
+        private void render(long address, int na, int nb) {
+            _buf.setLength(0);
+            if (_style == Style.UNIFIED) {
+                if (na > 0) appendUnified('-', address, _lineA, na);
+                if (nb > 0) appendUnified('+', address, _lineB, nb);
+            } else {
+                newLine();
+                appendAddress(address);
+                appendLine(_lineA, na);
+                _buf.append(" | ");
+                appendLine(_lineB, nb);
+            }
+            _out.print(_buf);
+            ++_differingLines;
+        }
+
+        private void appendUnified(char prefix, long address, byte[] line, int len) {
+            newLine();
+            _buf.append(prefix);
+            appendAddress(address);
+            appendLine(line, len);
+        }
+
+        private void appendAddress(long address) {
+            _buf.append(_chars, 0, HexDumpEncoder.putAddress(_chars, 0, address, _addressDigits)).append(": ");
+        }
+
+        private void appendLine(byte[] line, int len) {
+            _buf.append(_chars, 0, HexDumpEncoder.putLine(_chars, 0, line, 0, len));
+        }
+
+        private void newLine() {
+            if (_differingLines > 0 || _buf.length() > 0) _buf.append(System.lineSeparator());
+        }
+    }
+}
@@ -14,7 +14,12 @@ package com.martiansoftware.hex;
 //   See the License for the specific language governing permissions and
 //   limitations under the License.
 
+import com.martiansoftware.validation.Hope;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.PrintWriter;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Arrays;
 
 /**
  * A HexEncoder that provides a formatted "hex dump" of the bytes provided,
@@ -29,13 +34,141 @@ import java.io.PrintWriter;
  *   00000030: 46 7b 52 f8 71 cf 91 22   34 a6 53 22 a7 4f 75 1e   F{R.q.."4.S".Ou.
  * ```
  * 
+ * Optionally, runs of identical lines can be collapsed in the style of
+ * `hexdump -C`: the first line of the run is written normally, the rest of
+ * the run is replaced by a single `*` line, and the address of the following
+ * line shows how much was skipped.  If the data ends within a collapsed run,
+ * a final line containing only the end address is written.
+ * 
+ * Regions of large files can be dumped with their absolute addresses via
+ * `encode(SeekableByteChannel, long, long, PrintWriter)`.  Addresses are
+ * written with at least eight hex digits, and with more if needed.
+ * 
+ * ```
+ *   00000000: 00 00 00 00 00 00 00 00   00 00 00 00 00 00 00 00   ................
+ *   *
+ *   00000400: 46 7b 52 f8 71 cf 91 22   34 a6 53 22 a7 4f 75 1e   F{R.q.."4.S".Ou.
+ * ```
+ * 
  * @author <a href="http://martylamb.com">Marty Lamb</a>
  */
 public class HexDumpEncoder extends HexEncoderAdapter {
 
+    private static final int BYTES_PER_LINE = 16;
+    private static final int MIN_ADDRESS_DIGITS = 8;
+    private static final int MAX_ADDRESS_DIGITS = 16;
+    private static final char[] LINE_SEPARATOR = System.lineSeparator().toCharArray();
+    
+    /** The width of the hex and ASCII columns of a line */
+    static final int LINE_COLUMNS = BYTES_PER_LINE * 3 + 2 + 2 + BYTES_PER_LINE;
+    
+    private final boolean _collapseDuplicateLines;
+    
+    /**
+     * Creates a new HexDumpEncoder that writes every line of the dump
+     */
+    public HexDumpEncoder() {
+        this(false);
+    }
+    
+    /**
+     * Creates a new HexDumpEncoder that optionally collapses runs of
+     * identical lines into a single `*` line
+     * 
+     * @param collapseDuplicateLines if true, consecutive lines containing
+     * identical bytes are collapsed
+     */
+    public HexDumpEncoder(boolean collapseDuplicateLines) {
+        _collapseDuplicateLines = collapseDuplicateLines;
+    }
+    
     @Override
     protected Strategy newStrategy() {
-        return new DumpStrategy();
+        return new DumpStrategy(0, MIN_ADDRESS_DIGITS);
+    }
+    
+    /**
+     * Encodes a region of the specified channel to a PrintWriter, labeling
+     * each line with its absolute address in the channel.  FileChannels are
+     * read via positional reads that do not change the channel's position;
+     * other channels are positioned once at the start of the region and then
+     * read sequentially.  All addresses in the dump are written with the same
+     * number of digits.
+     * 
+     * @param in the channel to read and encode
+     * @param offset the position in the channel of the first byte to encode
+     * @param length the maximum number of bytes to encode
+     * @param out the destination to which the encoded region will be written
+     * @throws IOException 
+     */
+    @Override
+    public void encode(SeekableByteChannel in, long offset, long length, PrintWriter out) throws IOException {
+        Hope.that(offset).named("offset").isTrue(n -> n >= 0, "offset must not be negative");
+        Hope.that(length).named("length").isTrue(n -> n >= 0, "length must not be negative");
+        long len = Math.min(length, Math.max(0, in.size() - offset));
+        encode(new ChannelInputStream(in, offset, len), out,
+                new DumpStrategy(offset, addressDigits(offset + Math.max(0, len - 1))));
+    }
+    
+    /**
+     * Encodes the contents of the specified InputStream to a PrintWriter,
+     * labeling its first byte with the specified address and writing all
+     * addresses with at least the specified number of digits.  Used to render
+     * separate portions of a single dump independently.
+     */
+    void encode(InputStream in, long startAddress, int addressDigits, PrintWriter out) throws IOException {
+        encode(in, out, new DumpStrategy(startAddress, addressDigits));
+    }
+    
+    static int addressDigits(long address) {
+        return Math.max(MIN_ADDRESS_DIGITS, (64 - Long.numberOfLeadingZeros(address) + 3) / 4);
+    }
+    
+    /**
+     * Writes an address in hex, using at least the specified number of digits
+     * @return the index following the last character written
+     */
+    static int putAddress(char[] dst, int pos, long address, int minDigits) {
+        int digits = Math.max(minDigits, addressDigits(address));
+        for (int shift = (digits - 1) * 4; shift >= 0; shift -= 4) {
+            dst[pos++] = Hex.DIGITS[(int) (address >>> shift) & 0x0f];
+        }
+        return pos;
+    }
+    
+    /**
+     * Writes the hex and ASCII columns of a single line of a dump.  Lines
+     * shorter than 16 bytes are padded with spaces to the full width of
+     * LINE_COLUMNS characters.
+     * @return the index following the last character written
+     */
+    static int putLine(char[] dst, int pos, byte[] line, int offset, int len) {
+        for (int i = 0; i < BYTES_PER_LINE; ++i) {
+            if (i == 8) {
+                dst[pos++] = ' ';
+                dst[pos++] = ' ';
+            }
+            if (i < len) {
+                int b = line[offset + i];
+                dst[pos++] = Hex.DIGITS[(b >> 4) & 0x0f];
+                dst[pos++] = Hex.DIGITS[b & 0x0f];
+            } else {
+                dst[pos++] = ' ';
+                dst[pos++] = ' ';
+            }
+            dst[pos++] = ' ';
+        }
+        dst[pos++] = ' ';
+        dst[pos++] = ' ';
+        for (int i = 0; i < BYTES_PER_LINE; ++i) {
+            dst[pos++] = (i < len) ? ascii(line[offset + i]) : ' ';
+        }
+        return pos;
+    }
+    
+    private static char ascii(int b) {
+        if (b < 0x20 || b > 0x7e) return '.';
+        return (char) b;
     }
     
     //           1         2         3         4         5         6         7     
@@ -44,47 +177,88 @@ public class HexDumpEncoder extends HexEncoderAdapter {
     
     private class DumpStrategy implements Strategy {
 
-        private long _address = 0;
-        private final StringBuilder _buf = new StringBuilder();
-        private final StringBuilder _asciiBuf = new StringBuilder();
+        private long _address;
+        private final int _addressDigits;
+        private final byte[] _line = new byte[BYTES_PER_LINE];
+        private final byte[] _previousLine = new byte[BYTES_PER_LINE];
+        private int _lineLength = 0;
+        private boolean _hasPreviousLine = false;
+        private boolean _inRun = false;
+        private boolean _wroteLine = false;
+        private final char[] _chars = new char[LINE_SEPARATOR.length + MAX_ADDRESS_DIGITS + 2 + LINE_COLUMNS];
+        
+        DumpStrategy(long startAddress, int addressDigits) {
+            _address = startAddress;
+            _addressDigits = addressDigits;
+        }
         
         @Override
         public void start(PrintWriter out) {
         }
 
-        private void flush(PrintWriter out) {
-            if (_address > 0) out.println();
-            while (_buf.length() < 62) _buf.append(' ');
-            while (_asciiBuf.length() < 16) _asciiBuf.append(' ');
-            out.print(_buf.toString());
-            out.print(_asciiBuf.toString());
-            out.flush();
-            _address += 16;
-            _buf.setLength(0);
-            _asciiBuf.setLength(0);
+        private void newLine(PrintWriter out) {
+            if (_wroteLine) out.println();
+            _wroteLine = true;
+        }
+        
+        private boolean isRepeatedLine() {
+            return _collapseDuplicateLines
+                    && _hasPreviousLine
+                    && _lineLength == BYTES_PER_LINE
+                    && Arrays.equals(_line, _previousLine);
+        }
+        
+        private void endLine(PrintWriter out) {
+            if (isRepeatedLine()) {
+                if (!_inRun) {
+                    newLine(out);
+                    out.print('*');
+                    _inRun = true;
+                }
+            } else {
+                render(out);
+                _inRun = false;
+                if (_collapseDuplicateLines) {
+                    System.arraycopy(_line, 0, _previousLine, 0, BYTES_PER_LINE);
+                    _hasPreviousLine = (_lineLength == BYTES_PER_LINE);
+                }
+            }
+            _address += _lineLength;
+            _lineLength = 0;
         }
 
-        private char ascii(int b) {
-            if (b < 0x20 || b > 0x7e) return '.';
-            return (char) b;
+        private int startLine() {
+            int pos = 0;
+            if (_wroteLine) {
+                System.arraycopy(LINE_SEPARATOR, 0, _chars, 0, LINE_SEPARATOR.length);
+                pos = LINE_SEPARATOR.length;
+            }
+            _wroteLine = true;
+            return putAddress(_chars, pos, _address, _addressDigits);
+        }
+        
+        private void render(PrintWriter out) {
+            int pos = startLine();
+            _chars[pos++] = ':';
+            _chars[pos++] = ' ';
+            pos = putLine(_chars, pos, _line, 0, _lineLength);
+            out.write(_chars, 0, pos);
         }
         
         @Override
         public void next(int b, long byteIndexInStream, PrintWriter out) {
-            long indexInLine = byteIndexInStream % 16;
-            if (indexInLine == 0) {
-                if (byteIndexInStream > 0) flush(out);
-                _buf.append(String.format("%08x: ", _address));
-            }
-            if (indexInLine == 8) _buf.append("  ");
-            _buf.append(Hex.of(b));
-            _buf.append(' ');
-            _asciiBuf.append(ascii(b));
+            _line[_lineLength++] = (byte) b;
+            if (_lineLength == BYTES_PER_LINE) endLine(out);
         }
 
         @Override
         public void finish(long totalBytes, PrintWriter out) {
-            if (_asciiBuf.length() > 0) flush(out);
+            if (_lineLength > 0) {
+                endLine(out);
+            } else if (_inRun) {
+                out.write(_chars, 0, startLine());
+            }
+            out.flush();
         }
         
     }
@@ -14,12 +14,20 @@ package com.martiansoftware.hex;
 //   See the License for the specific language governing permissions and
 //   limitations under the License.
 
+import com.martiansoftware.validation.Hope;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Checksum;
 
 /**
  * An interface providing binary-to-hexadecimal encoding.  This interface
@@ -31,6 +39,15 @@ import java.io.StringWriter;
  * Implementations only need to implement the
  * `public void encode(InputStream in, PrintWriter out)` method.
  * 
+ * Binary data held outside the Java heap can be encoded without first copying
+ * it into a byte array: direct and memory-mapped ByteBuffers are encoded from
+ * their remaining bytes, and regions of channels (including regions of files
+ * larger than 2GB) are encoded via `long` offsets.
+ * 
+ * A Checksum (such as a CRC32) or MessageDigest (such as SHA-256) can be
+ * updated with the bytes being encoded as each block is read, so that the
+ * data does not need to be read a second time to compute it.
+ * 
  * Alternatively, a SimpleBaseHexEncoder class is provided that may allow
  * for simpler implementations of more complex hex encodings such as the
  * one provided by HexDumpEncoder.
@@ -77,6 +94,49 @@ public interface HexEncoder {
         return s.toString();
     }
 
+    /**
+     * Encodes a portion of the specified byte array to a String, updating
+     * the specified Checksum with the same bytes as they are encoded
+     * @param b the byte array to encode
+     * @param offset the beginning index in the byte array to encode
+     * @param len the number of bytes to encode
+     * @param checksum the Checksum to update with the encoded bytes
+     * @return the encoded portion of the byte array as a String
+     */
+    public default String encode(byte[] b, int offset, int len, Checksum checksum) {
+        checksum.update(b, offset, len);
+        return encode(b, offset, len);
+    }
+    
+    /**
+     * Encodes a portion of the specified byte array to a String, updating
+     * the specified MessageDigest with the same bytes as they are encoded
+     * @param b the byte array to encode
+     * @param offset the beginning index in the byte array to encode
+     * @param len the number of bytes to encode
+     * @param digest the MessageDigest to update with the encoded bytes
+     * @return the encoded portion of the byte array as a String
+     */
+    public default String encode(byte[] b, int offset, int len, MessageDigest digest) {
+        digest.update(b, offset, len);
+        return encode(b, offset, len);
+    }
+    
+    /**
+     * Encodes the remaining bytes of the specified ByteBuffer to a String,
+     * advancing the buffer's position to its limit.  The buffer may be a
+     * direct or memory-mapped buffer.
+     * @param in the ByteBuffer to encode
+     * @return the encoded bytes as a String
+     */
+    public default String encode(ByteBuffer in) {
+        StringWriter s = new StringWriter();
+        try (PrintWriter p = new PrintWriter(s)) {
+            encode(in, p);
+        }
+        return s.toString();
+    }
+
     /**
      * Encodes the specified byte array to a PrintWriter
      * @param b the byte array to encode
@@ -127,6 +187,40 @@ public interface HexEncoder {
         }
     }
     
+    /**
+     * Encodes the remaining bytes of the specified ByteBuffer to a PrintWriter,
+     * advancing the buffer's position to its limit.  The buffer may be a
+     * direct or memory-mapped buffer; its contents are read in place, a block
+     * at a time, so heap usage does not grow with the size of the buffer.
+     * @param in the ByteBuffer to encode
+     * @param out the destination to which the encoded bytes will be written
+     */
+    public default void encode(ByteBuffer in, PrintWriter out) {
+        try {
+            encode(new ByteBufferInputStream(in), out);
+        } catch (IOException notExpected) {
+            throw new RuntimeException(notExpected);
+        }
+    }
+    
+    /**
+     * Encodes a region of the specified channel to a PrintWriter.  FileChannels
+     * are read via positional reads that do not change the channel's position;
+     * other channels are positioned once at the start of the region and then
+     * read sequentially.  The region is read a block at a time, so heap usage
+     * does not grow with its length.
+     * @param in the channel to read and encode
+     * @param offset the position in the channel of the first byte to encode
+     * @param length the maximum number of bytes to encode
+     * @param out the destination to which the encoded region will be written
+     * @throws IOException 
+     */
+    public default void encode(SeekableByteChannel in, long offset, long length, PrintWriter out) throws IOException {
+        Hope.that(offset).named("offset").isTrue(n -> n >= 0, "offset must not be negative");
+        Hope.that(length).named("length").isTrue(n -> n >= 0, "length must not be negative");
+        encode(new ChannelInputStream(in, offset, length), out);
+    }
+    
     /**
      * Encodes the contents of the specified InputStream to a PrintStream
      * @param in the InputStream to read and encode
@@ -140,6 +234,62 @@ public interface HexEncoder {
         }
     }
 
+    /**
+     * Encodes the contents of the specified InputStream to a PrintWriter,
+     * updating the specified Checksum with each block of bytes as it is read
+     * for encoding
+     * @param in the InputStream to read and encode
+     * @param out the destination to which the encoded contents of the InputStream
+     * will be written
+     * @param checksum the Checksum to update with the encoded bytes
+     * @throws IOException 
+     */
+    public default void encode(InputStream in, PrintWriter out, Checksum checksum) throws IOException {
+        encode(new CheckedInputStream(in, checksum), out);
+    }
+    
+    /**
+     * Encodes the contents of the specified InputStream to a PrintWriter,
+     * updating the specified MessageDigest with each block of bytes as it is
+     * read for encoding
+     * @param in the InputStream to read and encode
+     * @param out the destination to which the encoded contents of the InputStream
+     * will be written
+     * @param digest the MessageDigest to update with the encoded bytes
+     * @throws IOException 
+     */
+    public default void encode(InputStream in, PrintWriter out, MessageDigest digest) throws IOException {
+        encode(new DigestInputStream(in, digest), out);
+    }
+    
+    /**
+     * Creates a new IncrementalHexEncoder that encodes exactly as this
+     * HexEncoder does, but accepts its input in chunks pushed to it by the
+     * caller rather than pulling it from an InputStream.  The default
+     * implementation holds all input until `finish()` and then encodes it at
+     * once; the built-in encoders override it to encode each chunk as it
+     * arrives.
+     * 
+     * @return a new IncrementalHexEncoder
+     */
+    public default IncrementalHexEncoder newIncrementalEncoder() {
+        return new IncrementalHexEncoder(new HexEncoderAdapter.Strategy() {
+            private final ByteArrayOutputStream _bytes = new ByteArrayOutputStream();
+            
+            @Override public void start(PrintWriter out) {}
+            
+            @Override
+            public void next(int b, long byteIndexInStream, PrintWriter out) {
+                _bytes.write(b);
+            }
+            
+            @Override
+            public void finish(long totalBytes, PrintWriter out) {
+                out.write(encode(_bytes.toByteArray()));
+            }
+        });
+    }
+    
     /**
      * Encodes the contents of the specified InputStream to a PrintWriter.
      * Concrete implementations of this interface must implement this method.
@@ -27,15 +27,60 @@ import java.io.PrintWriter;
  */
 public abstract class HexEncoderAdapter implements HexEncoder {
     
+    private static final int BUFFER_SIZE = 8192;
+    
     @Override
     public void encode(InputStream in, PrintWriter out) throws IOException {
-        Strategy h = newStrategy();
+        encode(in, out, newStrategy());
+    }
+
+    /**
+     * Encodes the contents of the specified InputStream to a PrintWriter
+     * using the specified Strategy.  The stream is read a block at a time.
+     * 
+     * @param in the InputStream to read and encode
+     * @param out the destination to which the encoded contents of the
+     * InputStream will be written
+     * @param h the Strategy used to encode each byte
+     * @throws IOException 
+     */
+    protected void encode(InputStream in, PrintWriter out, Strategy h) throws IOException {
+        Object event = HexEvents.begin();
+        if (event == null) {
+            encodeAll(in, out, h);
+        } else {
+            HexEvents.CharCounter chars = new HexEvents.CharCounter(out);
+            PrintWriter counted = new PrintWriter(chars);
+            long bytes = encodeAll(in, counted, h);
+            counted.flush();
+            HexEvents.end(event, this, HexEvents.ENCODE, bytes, chars.count(), false);
+        }
+    }
+    
+    private long encodeAll(InputStream in, PrintWriter out, Strategy h) throws IOException {
         h.start(out);
-        int b, count = 0;
-        while ((b = in.read()) >= 0) {
-            h.next((byte) b, count++, out);
+        byte[] buf = new byte[BUFFER_SIZE];
+        long count = 0;
+        int n;
+        while ((n = in.read(buf)) >= 0) {
+            for (int i = 0; i < n; ++i) {
+                h.next(buf[i], count++, out);
+            }
         }
-        h.finish(count, out);        
+        h.finish(count, out);
+        return count;
+    }
+
+    /**
+     * Creates a new IncrementalHexEncoder that encodes exactly as this
+     * HexEncoder does, but accepts its input in chunks pushed to it by the
+     * caller rather than pulling it from an InputStream.
+     * 
+     * @return a new IncrementalHexEncoder
+     */
+    @Override
+    public IncrementalHexEncoder newIncrementalEncoder() {
+        return new IncrementalHexEncoder(newStrategy());
     }
 
     /**
@@ -73,6 +118,16 @@ public abstract class HexEncoderAdapter implements HexEncoder {
          */
         public void next(int b, long byteIndexInStream, PrintWriter out);
         
+        /**
+         * Called when the caller needs all of the output that can be produced
+         * from the bytes received so far, such as at the end of each chunk
+         * fed to an IncrementalHexEncoder.  Strategies that collect output in
+         * a buffer should write it out; output that depends on bytes not yet
+         * received (such as the rest of a hex dump line) may still be held.
+         * @param out the encoding destination
+         */
+        public default void flush(PrintWriter out) {}
+        
         /**
          * Called after successfully encoding the stream.  Not called
          * if an error is encountered.
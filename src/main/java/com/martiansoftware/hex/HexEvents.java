@@ -0,0 +1,214 @@
+package com.martiansoftware.hex;
+
+//   Copyright 2016 Martian Software, Inc.
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * Emits a JDK Flight Recorder event (see HexEvent) for each encode or decode
+ * of at least a threshold number of bytes, by default 64KB.  The threshold
+ * can be changed via the `com.martiansoftware.hex.jfr.threshold` system
+ * property.
+ *
+ * Codecs call `begin()` before an operation and pass the returned token to
+ * `end()` afterward.  The token is null, and nothing is allocated or timed,
+ * when the JFR API is not present, when Flight Recorder has not been
+ * started, when no recording has the event enabled, or when the operation's
+ * size is known in advance to be below the threshold.
+ *
+ * HexEvent is compiled separately (from `src/main/java11`) against the JFR
+ * API, so that the rest of the library is compiled for and runs on Java 8.
+ * This class reaches it only through the Recorder interface, which it
+ * loads by name the first time an operation begins after Flight Recorder
+ * has been started.  Until then, each operation costs only a call to
+ * `FlightRecorder.isInitialized()`, and none of the JFR event machinery is
+ * loaded.
+ *
+ * ```
+ *   java -XX:StartFlightRecording=filename=hex.jfr \
+ *        -Dcom.martiansoftware.hex.jfr.threshold=1048576 ...
+ * ```
+ *
+ * @author <a href="http://martylamb.com">Marty Lamb</a>
+ */
+final class HexEvents {
+
+    static final String THRESHOLD_PROPERTY = "com.martiansoftware.hex.jfr.threshold";
+    static final boolean ENCODE = false;
+    static final boolean DECODE = true;
+
+    private static final MethodHandle IS_INITIALIZED = isInitialized();
+    private static volatile long _threshold = Long.getLong(THRESHOLD_PROPERTY, 64 * 1024);
+
+    private HexEvents() {}
+
+    /**
+     * Starts and commits events; implemented by HexEvent.Recorder
+     */
+    interface Recorder {
+        /**
+         * @return a new event with its timing started, or null if the event
+         * is not enabled in any running recording
+         */
+        Object start();
+
+        /**
+         * Ends timing an event and commits it if its recording requires it
+         */
+        void end(Object event, Class<?> codec, String direction, long bytes, long chars, boolean failed);
+    }
+
+    /**
+     * Holds the Recorder, so that it is loaded only when first needed
+     */
+    private static class Loaded {
+        static final Recorder RECORDER = recorder();
+
+        private static Recorder recorder() {
+            try {
+                return (Recorder) Class.forName("com.martiansoftware.hex.HexEvent$Recorder").getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError | SecurityException e) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * @return a handle to `FlightRecorder.isInitialized()`, or null if the
+     * JFR API is not present
+     */
+    private static MethodHandle isInitialized() {
+        try {
+            Class<?> c = Class.forName("jdk.jfr.FlightRecorder", false, HexEvents.class.getClassLoader());
+            return MethodHandles.publicLookup().findStatic(c, "isInitialized", MethodType.methodType(boolean.class));
+        } catch (ReflectiveOperationException | LinkageError | SecurityException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return true if Flight Recorder has been started, so that a recording
+     * may exist
+     */
+    private static boolean recording() {
+        if (IS_INITIALIZED == null) return false;
+        try {
+            return (boolean) IS_INITIALIZED.invokeExact();
+        } catch (Throwable t) {
+            return false;
+        }
+    }
+
+    /**
+     * @return the minimum number of bytes an operation must process to be recorded
+     */
+    static long threshold() {
+        return _threshold;
+    }
+
+    /**
+     * Changes the threshold at runtime, primarily for testing
+     *
+     * @param bytes the minimum number of bytes an operation must process to be recorded
+     */
+    static void threshold(long bytes) {
+        _threshold = bytes;
+    }
+
+    /**
+     * Begins timing an operation whose size is not known in advance
+     *
+     * @return a token to pass to `end()`, or null if nothing is being recorded
+     */
+    static Object begin() {
+        if (!recording()) return null;
+        Recorder r = Loaded.RECORDER;
+        return (r == null) ? null : r.start();
+    }
+
+    /**
+     * Begins timing an operation of a known size
+     *
+     * @param bytes the number of bytes the operation will process
+     * @return a token to pass to `end()`, or null if nothing is being recorded
+     */
+    static Object begin(long bytes) {
+        return (bytes < _threshold) ? null : begin();
+    }
+
+    /**
+     * Ends timing an operation and records it if it was large enough
+     *
+     * @param token the token returned by `begin()`, possibly null
+     * @param codec the encoder or decoder that performed the operation
+     * @param decoding DECODE or ENCODE
+     * @param bytes the number of binary bytes read or written
+     * @param chars the number of hex characters read or written
+     * @param failed true if the operation ended in a ParseException
+     */
+    static void end(Object token, Object codec, boolean decoding, long bytes, long chars, boolean failed) {
+        if (token == null || Math.max(bytes, chars / 2) < _threshold) return;
+        Loaded.RECORDER.end(token, codec.getClass(), decoding ? "decode" : "encode", bytes, chars, failed);
+    }
+
+    /**
+     * Counts the characters written through it, for encoders that do not
+     * otherwise know how many they produced
+     */
+    static class CharCounter extends Writer {
+        private final Writer _out;
+        private long _count = 0;
+
+        CharCounter(Writer out) {
+            _out = out;
+        }
+
+        long count() {
+            return _count;
+        }
+
+        @Override
+        public void write(int c) throws IOException {
+            _out.write(c);
+            ++_count;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            _out.write(cbuf, off, len);
+            _count += len;
+        }
+
+        @Override
+        public void write(String str, int off, int len) throws IOException {
+            _out.write(str, off, len);
+            _count += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            _out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            _out.close();
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package com.martiansoftware.hex;
+
+//   Copyright 2016 Martian Software, Inc.
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+import com.martiansoftware.validation.Hope;
+
+/**
+ * A description of a simple hex layout: the case of the hex digits, an
+ * optional prefix and suffix for each byte (such as `0x`), separators between
+ * bytes and between groups of bytes, and the number of bytes per line.
+ *
+ * Layouts are created via a Builder and compiled into a matching
+ * LayoutHexEncoder and LayoutHexDecoder.  Both work from the delimiters
+ * precomputed here, so neither needs to examine the layout while processing
+ * each byte.  The decoder is strict: it accepts only hex in exactly this layout.
+ *
+ * ```
+ *   HexLayout layout = HexLayout.builder()
+ *                          .bytePrefix("0x")
+ *                          .byteSeparator(", ")
+ *                          .bytesPerLine(8)
+ *                          .build();
+ *   String s = layout.encoder().encode(b);   // 0x00, 0x01, 0x02, ...
+ *   byte[] b2 = layout.decoder().decode(s);
+ * ```
+ *
+ * @author <a href="http://martylamb.com">Marty Lamb</a>
+ */
+public class HexLayout {
+
+    private final boolean _upperCase;
+    private final int _bytesPerLine;
+    private final int _groupSize;
+    private final char[] _first;
+    private final char[] _byteJoin;
+    private final char[] _groupJoin;
+    private final char[] _lineJoin;
+    private final char[] _last;
+
+    private HexLayout(Builder b) {
+        _upperCase = b._upperCase;
+        _bytesPerLine = b._bytesPerLine;
+        _groupSize = (b._groupSize == 0) ? Integer.MAX_VALUE : b._groupSize;
+        _first = b._bytePrefix.toCharArray();
+        _byteJoin = (b._byteSuffix + b._byteSeparator + b._bytePrefix).toCharArray();
+        _groupJoin = (b._groupSize == 0) ? _byteJoin : (b._byteSuffix + b._groupSeparator + b._bytePrefix).toCharArray();
+        _lineJoin = (b._byteSuffix + b._lineSeparator + b._bytePrefix).toCharArray();
+        _last = b._byteSuffix.toCharArray();
+    }
+
+    /**
+     * @return a new Builder for a layout that is initially equivalent to
+     * DefaultHexEncoder's: lowercase, with no prefixes, suffixes, or separators,
+     * and all bytes on a single line
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return a new LayoutHexEncoder that encodes hex in this layout
+     */
+    public LayoutHexEncoder encoder() {
+        return new LayoutHexEncoder(this);
+    }
+
+    /**
+     * @return a new LayoutHexDecoder that decodes hex in exactly this layout
+     */
+    public LayoutHexDecoder decoder() {
+        return new LayoutHexDecoder(this);
+    }
+
+    boolean upperCase() {
+        return _upperCase;
+    }
+
+    /**
+     * @return the delimiter following the last byte
+     */
+    char[] last() {
+        return _last;
+    }
+
+    /**
+     * @return the length of the longest delimiter preceding a byte
+     */
+    int maxJoinLength() {
+        return Math.max(Math.max(_first.length, _byteJoin.length), Math.max(_groupJoin.length, _lineJoin.length));
+    }
+
+    /**
+     * @return a new Position at the start of a stream in this layout
+     */
+    Position start() {
+        return new Position();
+    }
+
+    /**
+     * Tracks the position of the next byte within its line and group so
+     * that the delimiter preceding it can be determined without division.
+     */
+    class Position {
+        private boolean _started = false;
+        private int _inLine = 0;
+        private int _inGroup = 0;
+
+        /**
+         * @return true if at least one byte has been passed
+         */
+        boolean started() {
+            return _started;
+        }
+
+        /**
+         * Advances past the next byte
+         * @return the delimiter (prefix, and suffix and separator of the
+         * previous byte) that precedes the next byte
+         */
+        char[] next() {
+            if (!_started) {
+                _started = true;
+                _inLine = _inGroup = 1;
+                return _first;
+            }
+            if (_inLine == _bytesPerLine) {
+                _inLine = _inGroup = 1;
+                return _lineJoin;
+            }
+            ++_inLine;
+            if (_inGroup == _groupSize) {
+                _inGroup = 1;
+                return _groupJoin;
+            }
+            ++_inGroup;
+            return _byteJoin;
+        }
+    }
+
+    /**
+     * Builds HexLayouts
+     */
+    public static class Builder {
+
+        private boolean _upperCase = false;
+        private String _bytePrefix = "";
+        private String _byteSuffix = "";
+        private String _byteSeparator = "";
+        private int _groupSize = 0;
+        private String _groupSeparator = "";
+        private int _bytesPerLine = Integer.MAX_VALUE;
+        private String _lineSeparator = System.lineSeparator();
+
+        private Builder() {}
+
+        /**
+         * @param upperCase true to encode hex digits a-f as uppercase
+         * @return this Builder
+         */
+        public Builder upperCase(boolean upperCase) {
+            _upperCase = upperCase;
+            return this;
+        }
+
+        /**
+         * @param prefix the text preceding each byte's hex digits (for example, "0x")
+         * @return this Builder
+         */
+        public Builder bytePrefix(String prefix) {
+            _bytePrefix = Hope.that(prefix).named("prefix").isNotNull().value();
+            return this;
+        }
+
+        /**
+         * @param suffix the text following each byte's hex digits
+         * @return this Builder
+         */
+        public Builder byteSuffix(String suffix) {
+            _byteSuffix = Hope.that(suffix).named("suffix").isNotNull().value();
+            return this;
+        }
+
+        /**
+         * @param separator the text between consecutive bytes on the same line
+         * @return this Builder
+         */
+        public Builder byteSeparator(String separator) {
+            _byteSeparator = Hope.that(separator).named("separator").isNotNull().value();
+            return this;
+        }
+
+        /**
+         * Groups bytes within each line, separating groups with a different
+         * separator than the bytes within them.  Groups restart at the
+         * beginning of each line.
+         *
+         * @param groupSize the number of bytes in each group
+         * @param separator the text between consecutive groups on the same line
+         * @return this Builder
+         */
+        public Builder group(int groupSize, String separator) {
+            _groupSize = Hope.that(groupSize)
+                            .named("groupSize")
+                            .isTrue(n -> n > 0, "groupSize must be greater than zero")
+                            .value();
+            _groupSeparator = Hope.that(separator).named("separator").isNotNull().value();
+            return this;
+        }
+
+        /**
+         * @param bytesPerLine the maximum number of bytes to encode to a single line
+         * @return this Builder
+         */
+        public Builder bytesPerLine(int bytesPerLine) {
+            _bytesPerLine = Hope.that(bytesPerLine)
+                                .named("bytesPerLine")
+                                .isTrue(n -> n > 0, "bytesPerLine must be greater than zero")
+                                .value();
+            return this;
+        }
+
+        /**
+         * @param lineSeparator the text between lines (by default, the
+         * system line separator)
+         * @return this Builder
+         */
+        public Builder lineSeparator(String lineSeparator) {
+            _lineSeparator = Hope.that(lineSeparator).named("lineSeparator").isNotNull().value();
+            return this;
+        }
+
+        /**
+         * @return a new HexLayout as configured by this Builder
+         */
+        public HexLayout build() {
+            return new HexLayout(this);
+        }
+    }
+}
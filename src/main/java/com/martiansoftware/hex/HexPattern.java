@@ -0,0 +1,329 @@
+package com.martiansoftware.hex;
+
+//   Copyright 2016 Martian Software, Inc.
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+import com.martiansoftware.validation.Hope;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.LongConsumer;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A sequence of bytes to search for, written in hex, in which `??` matches
+ * any single byte.  Patterns are parsed by the same rules as DefaultHexDecoder,
+ * so bytes may be separated by whitespace or the '.', '-', and ':' characters.
+ *
+ * Searches use a Horspool skip table that accounts for the wildcards, and
+ * return the offsets of all (possibly overlapping) matches lazily, in order,
+ * as a LongStream.  Files are memory-mapped and searched in parallel, a
+ * segment at a time.
+ *
+ * ```
+ *   HexPattern p = HexPattern.compile("de ad ?? ef");
+ *   long first = p.search(bytes).findFirst().orElse(-1);
+ *   try (LongStream hits = p.search(Paths.get("capture.bin"))) {
+ *       hits.forEachOrdered(offset -> ...);
+ *   }
+ * ```
+ *
+ * @author <a href="http://martylamb.com">Marty Lamb</a>
+ */
+public class HexPattern {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long SEGMENT_SIZE = 16L * 1024 * 1024;
+    private static final DefaultHexDecoder DECODER = new DefaultHexDecoder();
+    private static final char[] WILDCARD_PLACEHOLDER = { '0', '0' };
+
+    private final String _pattern;
+    private final byte[] _bytes;
+    private final boolean[] _wildcards;
+    private final int[] _shift = new int[256];
+
+    private HexPattern(String pattern, byte[] bytes, boolean[] wildcards) {
+        _pattern = pattern;
+        _bytes = bytes;
+        _wildcards = wildcards;
+        int last = bytes.length - 1;
+        int maxShift = bytes.length;
+        for (int i = 0; i < last; ++i) {
+            if (wildcards[i]) maxShift = last - i;
+        }
+        Arrays.fill(_shift, maxShift);
+        for (int i = 0; i < last; ++i) {
+            if (!wildcards[i]) {
+                int b = bytes[i] & 0xff;
+                _shift[b] = Math.min(_shift[b], last - i);
+            }
+        }
+    }
+
+    /**
+     * Parses a pattern
+     * @param pattern the bytes to search for, in hex, with `??` matching any byte
+     * @return the parsed pattern
+     * @throws ParseException if the pattern is empty or is not valid hex, or
+     * if a wildcard appears within a byte
+     */
+    public static HexPattern compile(String pattern) throws ParseException {
+        Hope.that(pattern).named("pattern").isNotNull();
+        char[] c = pattern.toCharArray();
+        IncrementalHexDecoder d = DECODER.newIncrementalDecoder();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        boolean[] wildcards = new boolean[c.length / 2];
+        try {
+            int start = 0;
+            for (int i = 0; i < c.length; ++i) {
+                if (c[i] != '?') continue;
+                d.feed(c, start, i - start, out);
+                if (d.midByte() || i + 1 == c.length || c[i + 1] != '?') {
+                    throw new ParseException(String.format("incomplete wildcard at position %d", i), i);
+                }
+                wildcards[(int) d.totalBytes()] = true;
+                d.feed(WILDCARD_PLACEHOLDER, 0, 2, out);
+                start = ++i + 1;
+            }
+            d.feed(c, start, c.length - start, out);
+            d.finish(out);
+        } catch (IOException notExpected) {
+            throw new RuntimeException(notExpected);
+        }
+        if (out.size() == 0) throw new ParseException("empty pattern", 0);
+        return new HexPattern(pattern, out.toByteArray(), Arrays.copyOf(wildcards, out.size()));
+    }
+
+    /**
+     * @return the number of bytes matched by this pattern
+     */
+    public int length() {
+        return _bytes.length;
+    }
+
+    @Override
+    public String toString() {
+        return _pattern;
+    }
+
+    /**
+     * Checks whether this pattern matches the specified bytes at the
+     * specified offset
+     * @param b the bytes to check
+     * @param offset the offset in the array at which to check for a match
+     * @return true if the pattern matches at the offset
+     */
+    public boolean matches(byte[] b, int offset) {
+        return offset >= 0 && offset <= b.length - _bytes.length && matchesAt(ByteBuffer.wrap(b), offset);
+    }
+
+    /**
+     * Searches the specified byte array
+     * @param b the bytes to search
+     * @return the offsets of all matches, in order
+     */
+    public LongStream search(byte[] b) {
+        return stream(new BufferSearch(ByteBuffer.wrap(b), b.length, 0));
+    }
+
+    /**
+     * Searches the remaining contents of the specified InputStream, reading
+     * it only as far as needed to produce the offsets consumed from the
+     * returned stream.  IOExceptions are rethrown as UncheckedIOExceptions.
+     * @param in the InputStream to search
+     * @return the offsets of all matches relative to the current position of
+     * the InputStream, in order
+     */
+    public LongStream search(InputStream in) {
+        return stream(new StreamSearch(in));
+    }
+
+    /**
+     * Searches the specified file by memory-mapping and searching segments of
+     * it in parallel.  The returned stream must be closed to close the file.
+     * @param path the file to search
+     * @return a parallel stream of the offsets of all matches, in encounter order
+     * @throws IOException
+     */
+    public LongStream search(Path path) throws IOException {
+        FileChannel in = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return search(in).onClose(() -> {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (IOException | RuntimeException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Searches the entire contents of the specified FileChannel by
+     * memory-mapping and searching segments of it in parallel.  The channel's
+     * position is not changed.  IOExceptions encountered while mapping
+     * segments are rethrown as UncheckedIOExceptions.
+     * @param in the channel to search
+     * @return a parallel stream of the offsets of all matches, in encounter order
+     * @throws IOException
+     */
+    public LongStream search(FileChannel in) throws IOException {
+        long size = in.size();
+        long segments = (size + SEGMENT_SIZE - 1) / SEGMENT_SIZE;
+        return LongStream.range(0, segments)
+                         .parallel()
+                         .flatMap(i -> searchSegment(in, i * SEGMENT_SIZE, size));
+    }
+
+    private LongStream searchSegment(FileChannel in, long start, long size) {
+        long len = Math.min(size - start, SEGMENT_SIZE + _bytes.length - 1);
+        if (len < _bytes.length) return LongStream.empty();
+        try {
+            ByteBuffer buf = in.map(FileChannel.MapMode.READ_ONLY, start, len);
+            return stream(new BufferSearch(buf, (int) Math.min(len, SEGMENT_SIZE), start));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes a match, and the specified number of lines before and after it,
+     * to a PrintWriter in the format written by HexDumpEncoder, with the
+     * absolute addresses of the lines.
+     * @param in the channel in which the match was found
+     * @param offset the offset of the match in the channel
+     * @param contextLines the number of lines to include before and after
+     * the lines containing the match
+     * @param out the destination to which the lines will be written
+     * @throws IOException
+     */
+    public void dump(SeekableByteChannel in, long offset, int contextLines, PrintWriter out) throws IOException {
+        Hope.that(contextLines).named("contextLines").isTrue(n -> n >= 0, "contextLines must not be negative");
+        long start = Math.max(0, (offset & ~15L) - 16L * contextLines);
+        long end = ((offset + _bytes.length + 15) & ~15L) + 16L * contextLines;
+        new HexDumpEncoder().encode(in, start, end - start, out);
+    }
+
+    private static LongStream stream(Spliterator.OfLong s) {
+        return StreamSupport.longStream(s, false);
+    }
+
+    private boolean matchesAt(ByteBuffer buf, int i) {
+        for (int j = _bytes.length - 1; j >= 0; --j) {
+            if (!_wildcards[j] && buf.get(i + j) != _bytes[j]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Finds the first match starting at or after `from` and before `end` that
+     * lies entirely before `limit`
+     * @return the index of the match, or -1 if there is none
+     */
+    private int indexOf(ByteBuffer buf, int from, int end, int limit) {
+        int last = _bytes.length - 1;
+        int stop = Math.min(end - 1, limit - _bytes.length);
+        for (int i = from; i <= stop; i += _shift[buf.get(i + last) & 0xff]) {
+            if (matchesAt(buf, i)) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Lazily searches a buffer for matches starting before a specified index
+     */
+    private class BufferSearch extends Spliterators.AbstractLongSpliterator {
+        private final ByteBuffer _buf;
+        private final int _end;
+        private final long _base;
+        private int _next = 0;
+
+        BufferSearch(ByteBuffer buf, int end, long base) {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            _buf = buf;
+            _end = end;
+            _base = base;
+        }
+
+        @Override
+        public boolean tryAdvance(LongConsumer action) {
+            int i = indexOf(_buf, _next, _end, _buf.limit());
+            if (i < 0) {
+                _next = _end;
+                return false;
+            }
+            _next = i + 1;
+            action.accept(_base + i);
+            return true;
+        }
+    }
+
+    /**
+     * Lazily searches an InputStream a block at a time, keeping enough of
+     * each block to find matches that span blocks
+     */
+    private class StreamSearch extends Spliterators.AbstractLongSpliterator {
+        private final InputStream _in;
+        private final byte[] _buf = new byte[Math.max(BUFFER_SIZE, 2 * _bytes.length)];
+        private final ByteBuffer _wrapped = ByteBuffer.wrap(_buf);
+        private int _len = 0;
+        private int _next = 0;
+        private long _base = 0;
+        private boolean _eof = false;
+
+        StreamSearch(InputStream in) {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            _in = in;
+        }
+
+        @Override
+        public boolean tryAdvance(LongConsumer action) {
+            while (true) {
+                int i = indexOf(_wrapped, _next, _len, _len);
+                if (i >= 0) {
+                    _next = i + 1;
+                    action.accept(_base + i);
+                    return true;
+                }
+                if (_eof) return false;
+                int keep = Math.min(_len, Math.max(_next, _len - _bytes.length + 1));
+                System.arraycopy(_buf, keep, _buf, 0, _len - keep);
+                _base += keep;
+                _len -= keep;
+                _next = Math.max(0, _next - keep);
+                try {
+                    int n = _in.read(_buf, _len, _buf.length - _len);
+                    if (n < 0) _eof = true; else _len += n;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,543 @@
+package com.martiansoftware.hex;
+
+//   Copyright 2016 Martian Software, Inc.
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A command-line tool for encoding, dumping, and decoding hex in the formats
+ * provided by StandardHexCodecs, in the spirit of `xxd`.
+ *
+ * ```
+ *   hex dump firmware.bin                    # hex dump with addresses and ASCII
+ *   hex dump -s 0x1000 -l 256 firmware.bin   # a region, with absolute addresses
+ *   hex encode -f simple data.bin            # 16 colon-separated bytes per line
+ *   hex dump -r firmware.txt firmware.bin    # reverse a hex dump
+ * ```
+ *
+ * Files are memory-mapped and split into chunks that are rendered on
+ * multiple threads and written in order.  Decoding one file to another
+ * uses `HexDecoder.decode(Path, Path, int)`, which also decodes on multiple
+ * threads where the format allows it.  Only the encoder or decoder for the
+ * requested format is created, and no reflection is used, so the tool starts
+ * quickly; see the `appcds` build profile for a class data sharing archive
+ * that reduces startup time further.
+ *
+ * @author <a href="http://martylamb.com">Marty Lamb</a>
+ */
+public class HexTool {
+
+    private static final int CHUNK_SIZE = 1024 * 1024;
+    private static final int IO_BUFFER_SIZE = 64 * 1024;
+
+    private static final String USAGE = String.join(System.lineSeparator(),
+        "usage: hex encode [options] [infile [outfile]]",
+        "       hex dump   [options] [infile [outfile]]",
+        "       hex decode [options] [infile [outfile]]",
+        "",
+        "  -f FORMAT   default, strict, simple, or hexdump (dump: hexdump, otherwise: default);",
+        "              when decoding, also auto to detect the format from the first line",
+        "  -r          reverse: decode the format instead of encoding it",
+        "  -s OFFSET   when encoding, the position of the first input byte to encode;",
+        "              when decoding, the address (hexdump) or position of the first",
+        "              decoded byte to write.  Decimal, or hex with a 0x prefix.",
+        "  -l LENGTH   encode or write at most LENGTH bytes",
+        "  -c          collapse runs of identical lines (hexdump only)",
+        "  -t THREADS  number of threads used to encode large inputs or decode large files",
+        "  -h          show this help",
+        "",
+        "Reads from stdin and writes to stdout if no file, or \"-\", is given.");
+
+    private HexTool() {}
+
+    public static void main(String[] args) {
+        int status = run(args, System.in, System.out, System.err);
+        if (status != 0) System.exit(status);
+    }
+
+    /**
+     * Runs the tool
+     * @return the process exit status: 0 for success, 1 for an error
+     * reading, writing, or decoding, and 2 for a usage error
+     */
+    static int run(String[] args, InputStream stdin, PrintStream stdout, PrintStream stderr) {
+        Options o;
+        try {
+            o = Options.parse(args);
+        } catch (IllegalArgumentException e) {
+            stderr.println("hex: " + e.getMessage());
+            stderr.println(USAGE);
+            return 2;
+        }
+        if (o._help) {
+            stdout.println(USAGE);
+            return 0;
+        }
+        try {
+            if (o._decode) {
+                decode(o, stdin, stdout);
+            } else {
+                encode(o, stdin, stdout);
+            }
+            return 0;
+        } catch (ParseException e) {
+            stderr.println("hex: invalid input: " + e.getMessage());
+        } catch (IOException e) {
+            stderr.println("hex: " + e.getMessage());
+        } catch (UncheckedIOException e) {
+            stderr.println("hex: " + e.getCause().getMessage());
+        }
+        return 1;
+    }
+
+    private static void encode(Options o, InputStream stdin, OutputStream stdout) throws IOException {
+        try (Source in = (o._in == null) ? new StreamSource(stdin, o._offset, o._length)
+                                         : new FileSource(o._in, o._offset, o._length);
+             OutputStream out = output(o, stdout)) {
+            Renderer r = renderer(o, in.addressDigits());
+            PrintWriter w = new PrintWriter(new OutputStreamWriter(out, StandardCharsets.US_ASCII));
+            boolean any = (o._threads > 1 && !o._collapse) ? encodeChunks(r, in, o._offset, o._threads, w)
+                                                          : encodeStream(r, in, o._offset, w);
+            if (any) w.println();
+            w.flush();
+        }
+    }
+
+    private static boolean encodeStream(Renderer r, Source in, long address, PrintWriter out) throws IOException {
+        ChunkInputStream s = new ChunkInputStream(in);
+        r.render(s, address, out);
+        return s._count > 0;
+    }
+
+    /**
+     * Renders chunks of the input on a pool of threads, writing the results
+     * in order and limiting the number of chunks in flight.  Input that fits
+     * in a single chunk is rendered on the calling thread.
+     */
+    private static boolean encodeChunks(Renderer r, Source in, long address, int threads, PrintWriter out) throws IOException {
+        ByteBuffer chunk = in.next();
+        if (chunk == null) return false;
+        ByteBuffer next = in.next();
+        if (next == null) {
+            r.render(new ByteBufferInputStream(chunk), address, out);
+            return true;
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads, task -> {
+            Thread t = new Thread(task, "hex-render");
+            t.setDaemon(true);
+            return t;
+        });
+        Deque<Future<String>> pending = new ArrayDeque<>();
+        boolean first = true;
+        try {
+            for (; chunk != null; chunk = next, next = (next == null) ? null : in.next()) {
+                ByteBuffer b = chunk;
+                long a = address;
+                address += chunk.remaining();
+                pending.add(pool.submit(() -> {
+                    StringWriter s = new StringWriter(b.remaining() * 4);
+                    try (PrintWriter p = new PrintWriter(s)) {
+                        r.render(new ByteBufferInputStream(b), a, p);
+                    }
+                    return s.toString();
+                }));
+                while (pending.size() >= threads * 2) {
+                    write(pending.remove(), first ? "" : r.separator(), out);
+                    first = false;
+                }
+            }
+            while (!pending.isEmpty()) {
+                write(pending.remove(), first ? "" : r.separator(), out);
+                first = false;
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return !first;
+    }
+
+    private static void write(Future<String> rendered, String separator, PrintWriter out) throws IOException {
+        try {
+            String s = rendered.get();
+            out.write(separator);
+            out.write(s);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new RuntimeException(cause);
+        }
+    }
+
+    private static void decode(Options o, InputStream stdin, OutputStream stdout) throws ParseException, IOException {
+        HexDecoder d = decoder(o._format);
+        boolean ranged = o._offset > 0 || o._length != Long.MAX_VALUE;
+        if (o._in != null && o._out != null && !ranged) {
+            d.decode(Paths.get(o._in), Paths.get(o._out), o._threads);
+            return;
+        }
+        try (OutputStream out = output(o, stdout)) {
+            if (o._in == null) {
+                d.decode(new InputStreamReader(stdin, StandardCharsets.ISO_8859_1), ranged ? new RangeOutputStream(out, o._offset, o._length) : out);
+            } else {
+                try (FileChannel fc = FileChannel.open(Paths.get(o._in), StandardOpenOption.READ)) {
+                    if (d instanceof AutoDetectingHexDecoder) d = detect((AutoDetectingHexDecoder) d, fc);
+                    if (ranged && d instanceof HexDumpDecoder) {
+                        ((HexDumpDecoder) d).decodeRange(fc, o._offset, o._length, out);
+                    } else {
+                        Reader r = new ChannelReader(fc, 0, IO_BUFFER_SIZE);
+                        d.decode(r, ranged ? new RangeOutputStream(out, o._offset, o._length) : out);
+                    }
+                }
+            }
+            out.flush();
+        }
+    }
+
+    private static OutputStream output(Options o, OutputStream stdout) throws IOException {
+        if (o._out != null) return new BufferedOutputStream(new FileOutputStream(o._out), IO_BUFFER_SIZE);
+        return new BufferedOutputStream(stdout, IO_BUFFER_SIZE) {
+            @Override public void close() throws IOException { flush(); }
+        };
+    }
+
+    /**
+     * Resolves auto-detection for a file up front, so that the detected
+     * decoder's own file support (such as hex dump ranges) can be used
+     */
+    private static HexDecoder detect(AutoDetectingHexDecoder d, FileChannel fc) throws IOException {
+        char[] prefix = new char[AutoDetectingHexDecoder.SNIFF_LENGTH];
+        int n = new ChannelReader(fc, 0, prefix.length).read(prefix, 0, prefix.length);
+        return d.decoderFor(AutoDetectingHexDecoder.detect(CharBuffer.wrap(prefix, 0, Math.max(0, n))));
+    }
+
+    private static HexDecoder decoder(String format) {
+        switch (format) {
+            case "default": return new DefaultHexDecoder();
+            case "strict": return new StrictHexDecoder();
+            case "simple": return new DefaultHexDecoder();
+            case "hexdump": return new HexDumpDecoder();
+            case "auto": return new AutoDetectingHexDecoder();
+            default: throw new IllegalStateException(format);
+        }
+    }
+
+    private static Renderer renderer(Options o, int addressDigits) {
+        switch (o._format) {
+            case "default":
+            case "strict": {
+                DefaultHexEncoder e = new DefaultHexEncoder();
+                return new Renderer("", (in, address, out) -> e.encode(in, out));
+            }
+            case "simple": {
+                LayoutHexEncoder e = HexLayout.builder().byteSeparator(":").bytesPerLine(16).build().encoder();
+                return new Renderer(System.lineSeparator(), (in, address, out) -> e.encode(in, out));
+            }
+            case "hexdump": {
+                HexDumpEncoder e = new HexDumpEncoder(o._collapse);
+                return new Renderer(System.lineSeparator(), (in, address, out) -> e.encode(in, address, addressDigits, out));
+            }
+            default: throw new IllegalStateException(o._format);
+        }
+    }
+
+    private interface Render {
+        void render(InputStream in, long address, PrintWriter out) throws IOException;
+    }
+
+    /**
+     * Renders input in one format.  Chunks of input that begin on line
+     * boundaries can be rendered independently and joined with the separator.
+     */
+    private static class Renderer {
+        private final String _separator;
+        private final Render _render;
+
+        Renderer(String separator, Render render) {
+            _separator = separator;
+            _render = render;
+        }
+
+        String separator() {
+            return _separator;
+        }
+
+        void render(InputStream in, long address, PrintWriter out) throws IOException {
+            _render.render(in, address, out);
+        }
+    }
+
+    /**
+     * Input to be encoded, provided in chunks that are a whole number of lines
+     * long in every format (except for the last chunk)
+     */
+    private interface Source extends Closeable {
+        /**
+         * @return the next chunk of input, or null if there is none
+         */
+        ByteBuffer next() throws IOException;
+
+        /**
+         * @return the minimum number of digits needed to write every address
+         * in the input
+         */
+        int addressDigits();
+    }
+
+    private static class FileSource implements Source {
+        private final FileChannel _channel;
+        private long _position;
+        private final long _end;
+
+        FileSource(String path, long offset, long length) throws IOException {
+            _channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+            _position = Math.min(offset, _channel.size());
+            _end = _position + Math.min(length, _channel.size() - _position);
+        }
+
+        @Override
+        public ByteBuffer next() throws IOException {
+            if (_position >= _end) return null;
+            long len = Math.min(CHUNK_SIZE, _end - _position);
+            ByteBuffer b = _channel.map(FileChannel.MapMode.READ_ONLY, _position, len);
+            _position += len;
+            return b;
+        }
+
+        @Override
+        public int addressDigits() {
+            return HexDumpEncoder.addressDigits(Math.max(0, _end - 1));
+        }
+
+        @Override
+        public void close() throws IOException {
+            _channel.close();
+        }
+    }
+
+    private static class StreamSource implements Source {
+        private final InputStream _in;
+        private long _skip;
+        private long _remaining;
+        private final long _offset;
+
+        StreamSource(InputStream in, long offset, long length) {
+            _in = in;
+            _skip = offset;
+            _offset = offset;
+            _remaining = length;
+        }
+
+        @Override
+        public ByteBuffer next() throws IOException {
+            byte[] discard = null;
+            while (_skip > 0) {
+                if (discard == null) discard = new byte[IO_BUFFER_SIZE];
+                int n = _in.read(discard, 0, (int) Math.min(discard.length, _skip));
+                if (n < 0) return null;
+                _skip -= n;
+            }
+            byte[] b = new byte[(int) Math.min(CHUNK_SIZE, _remaining)];
+            int len = 0, n;
+            while (len < b.length && (n = _in.read(b, len, b.length - len)) >= 0) {
+                len += n;
+            }
+            _remaining -= len;
+            return (len == 0) ? null : ByteBuffer.wrap(b, 0, len);
+        }
+
+        @Override
+        public int addressDigits() {
+            return HexDumpEncoder.addressDigits(_offset);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * Reads the chunks of a Source as a single stream
+     */
+    private static class ChunkInputStream extends InputStream {
+        private final Source _source;
+        private ByteBuffer _chunk = ByteBuffer.allocate(0);
+        private long _count = 0;
+
+        ChunkInputStream(Source source) {
+            _source = source;
+        }
+
+        private boolean fill() throws IOException {
+            while (!_chunk.hasRemaining()) {
+                ByteBuffer next = _source.next();
+                if (next == null) return false;
+                _chunk = next;
+            }
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!fill()) return -1;
+            ++_count;
+            return _chunk.get() & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            if (!fill()) return -1;
+            int n = Math.min(len, _chunk.remaining());
+            _chunk.get(b, off, n);
+            _count += n;
+            return n;
+        }
+    }
+
+    /**
+     * Passes through only a range of the bytes written to it
+     */
+    private static class RangeOutputStream extends FilterOutputStream {
+        private long _skip;
+        private long _remaining;
+
+        RangeOutputStream(OutputStream out, long offset, long length) {
+            super(out);
+            _skip = offset;
+            _remaining = length;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (_skip > 0) {
+                --_skip;
+            } else if (_remaining > 0) {
+                --_remaining;
+                out.write(b);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            int skipped = (int) Math.min(len, _skip);
+            _skip -= skipped;
+            int n = (int) Math.min(len - skipped, _remaining);
+            _remaining -= n;
+            if (n > 0) out.write(b, off + skipped, n);
+        }
+    }
+
+    private static class Options {
+        private boolean _help = false;
+        private boolean _decode = false;
+        private String _format = null;
+        private long _offset = 0;
+        private long _length = Long.MAX_VALUE;
+        private boolean _collapse = false;
+        private int _threads = Runtime.getRuntime().availableProcessors();
+        private String _in = null;
+        private String _out = null;
+
+        static Options parse(String[] args) {
+            Options o = new Options();
+            if (args.length == 0) throw new IllegalArgumentException("no command specified");
+            String command = args[0];
+            switch (command) {
+                case "-h":
+                case "--help": o._help = true; return o;
+                case "encode": break;
+                case "dump": o._format = "hexdump"; break;
+                case "decode": o._decode = true; break;
+                default: throw new IllegalArgumentException("unknown command: " + command);
+            }
+            int files = 0;
+            for (int i = 1; i < args.length; ++i) {
+                String a = args[i];
+                switch (a) {
+                    case "-h": o._help = true; break;
+                    case "-r": o._decode = true; break;
+                    case "-c": o._collapse = true; break;
+                    case "-f": o._format = value(args, ++i, a); break;
+                    case "-s": o._offset = number(value(args, ++i, a), a); break;
+                    case "-l": o._length = number(value(args, ++i, a), a); break;
+                    case "-t": o._threads = (int) Math.max(1, Math.min(1024, number(value(args, ++i, a), a))); break;
+                    default:
+                        if (a.startsWith("-") && a.length() > 1) throw new IllegalArgumentException("unknown option: " + a);
+                        String path = a.equals("-") ? null : a;
+                        if (files == 0) o._in = path;
+                        else if (files == 1) o._out = path;
+                        else throw new IllegalArgumentException("too many files specified");
+                        ++files;
+                }
+            }
+            if (o._format == null) o._format = "default";
+            switch (o._format) {
+                case "default": case "strict": case "simple": case "hexdump": break;
+                case "auto":
+                    if (!o._decode) throw new IllegalArgumentException("auto is only supported for decoding");
+                    break;
+                default: throw new IllegalArgumentException("unknown format: " + o._format);
+            }
+            if (o._collapse && !o._format.equals("hexdump")) throw new IllegalArgumentException("-c is only supported for hexdump");
+            return o;
+        }
+
+        private static String value(String[] args, int i, String option) {
+            if (i >= args.length) throw new IllegalArgumentException("missing value for " + option);
+            return args[i];
+        }
+
+        private static long number(String s, String option) {
+            try {
+                long n = s.startsWith("0x") || s.startsWith("0X") ? Long.parseLong(s.substring(2), 16) : Long.parseLong(s);
+                if (n < 0) throw new NumberFormatException();
+                return n;
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("invalid value for " + option + ": " + s);
+            }
+        }
+    }
+}
@@ -0,0 +1,644 @@
+package com.martiansoftware.hex;
+
+//   Copyright 2016 Martian Software, Inc.
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+import com.martiansoftware.validation.Hope;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.text.ParseException;
+import java.util.Arrays;
+
+/**
+ * A push-based hex decoder that accepts its input in arbitrary chunks, for use
+ * where blocking on a Reader is not an option (such as on a non-blocking
+ * server's event loop).  Decoding behavior is determined by a
+ * HexDecoderAdapter.Strategy, exactly as for the HexDecoderAdapter that
+ * created it.
+ *
+ * Any state needed to continue decoding (a byte split across two chunks, the
+ * current position in the stream and line) is kept between calls to `feed()`.
+ * Once all input has been fed, `finish()` must be called to complete decoding.
+ *
+ * Decoded bytes are written to the ByteBuffer provided with each call.  If it
+ * fills up, the remaining decoded bytes are held until the next call to
+ * `feed()`, `finish()`, or `drain()`; `hasPending()` indicates whether any
+ * such bytes remain.
+ *
+ * Instances are not thread-safe, and each instance decodes a single stream.
+ *
+ * ```
+ *   IncrementalHexDecoder d = new DefaultHexDecoder().newIncrementalDecoder();
+ *   d.feed("48656c", out);
+ *   d.feed("6c6f", out);
+ *   d.finish(out);   // out now contains "Hello"
+ * ```
+ *
+ * @author <a href="http://martylamb.com">Marty Lamb</a>
+ */
+public class IncrementalHexDecoder {
+
+    private static final char CR = '\r';
+    private static final char LF = '\n';
+    private static final int SCRATCH_SIZE = 4096;
+
+    private final HexDecoderAdapter _adapter;
+    private final HexDecoderAdapter.Strategy _strategy;
+    private final Sink _sink = new Sink();
+    private final OutputStream _out;
+    private final boolean[] _ignoredChars;
+    private char[] _scratch = null;
+
+    private boolean _started = false;
+    private boolean _finished = false;
+    private boolean _needsDigit2 = false;
+    private int _b = 0;
+    private long _charIndexInStream = 0;
+    private long _charIndexInLine = 0;
+    private long _totalBytes = 0;
+    private boolean _throwing = true;
+    private DecodeResult.Error _error = null;
+    private long _errorPosition = -1;
+
+    /**
+     * Creates a new IncrementalHexDecoder that decodes according to the
+     * specified Strategy
+     *
+     * @param strategy the Strategy determining which characters are ignored
+     * and handling decoding lifecycle events
+     */
+    public IncrementalHexDecoder(HexDecoderAdapter.Strategy strategy) {
+        this(null, strategy);
+    }
+
+    IncrementalHexDecoder(HexDecoderAdapter adapter, HexDecoderAdapter.Strategy strategy) {
+        _adapter = adapter;
+        _strategy = Hope.that(strategy).named("strategy").isNotNull().value();
+        _out = _strategy.wrap(_sink);
+        _ignoredChars = (_strategy instanceof HexDecoderAdapter.CharTableStrategy)
+                        ? ((HexDecoderAdapter.CharTableStrategy) _strategy).ignoredChars()
+                        : null;
+    }
+
+    /**
+     * Decodes a chunk of hex
+     * @param chunk the characters to decode
+     * @param out the destination for decoded bytes
+     * @throws ParseException
+     * @throws IOException
+     */
+    public void feed(CharSequence chunk, ByteBuffer out) throws ParseException, IOException {
+        _sink.target(out);
+        try {
+            feed(chunk);
+        } finally {
+            _sink.drain();
+        }
+    }
+
+    /**
+     * Decodes a chunk of hex
+     * @param chunk an array containing the characters to decode
+     * @param offset the index in the array of the first character to decode
+     * @param len the number of characters to decode
+     * @param out the destination for decoded bytes
+     * @throws ParseException
+     * @throws IOException
+     */
+    public void feed(char[] chunk, int offset, int len, ByteBuffer out) throws ParseException, IOException {
+        _sink.target(out);
+        try {
+            feed(chunk, offset, len);
+        } finally {
+            _sink.drain();
+        }
+    }
+
+    /**
+     * Decodes a chunk of hex provided as single-byte (ASCII or ISO-8859-1)
+     * characters.  All remaining bytes in the chunk are consumed.
+     * @param chunk the buffer containing the characters to decode
+     * @param out the destination for decoded bytes
+     * @throws ParseException
+     * @throws IOException
+     */
+    public void feed(ByteBuffer chunk, ByteBuffer out) throws ParseException, IOException {
+        _sink.target(out);
+        try {
+            char[] c = scratch(chunk.remaining());
+            while (chunk.hasRemaining()) {
+                int n = Math.min(c.length, chunk.remaining());
+                for (int i = 0; i < n; ++i) c[i] = (char) (chunk.get() & 0xff);
+                feed(c, 0, n);
+            }
+        } finally {
+            _sink.drain();
+        }
+    }
+
+    /**
+     * Completes decoding after all input has been fed
+     * @param out the destination for any remaining decoded bytes
+     * @throws ParseException if the input ended in the middle of a byte, or
+     * if the Strategy rejects the end of the input
+     * @throws IOException
+     */
+    public void finish(ByteBuffer out) throws ParseException, IOException {
+        _sink.target(out);
+        try {
+            finish();
+        } finally {
+            _sink.drain();
+        }
+    }
+
+    /**
+     * Writes as many held decoded bytes as will fit to the specified buffer
+     * @param out the destination for decoded bytes
+     */
+    public void drain(ByteBuffer out) {
+        _sink.target(out);
+        _sink.drainToBuffer();
+    }
+
+    /**
+     * @return true if decoded bytes are being held because a previous
+     * destination buffer was full
+     */
+    public boolean hasPending() {
+        return _sink.pending() > 0;
+    }
+
+    /**
+     * @return the number of characters fed so far
+     */
+    public long totalChars() {
+        return _charIndexInStream;
+    }
+
+    /**
+     * @return the number of bytes decoded so far
+     */
+    public long totalBytes() {
+        return _totalBytes;
+    }
+
+    void feed(char[] chunk, int offset, int len, OutputStream out) throws ParseException, IOException {
+        _sink.target(out);
+        try {
+            feed(chunk, offset, len);
+        } finally {
+            _sink.drain();
+        }
+    }
+
+    /**
+     * @return true if the first digit of a byte has been read but not the second
+     */
+    boolean midByte() {
+        return _needsDigit2;
+    }
+
+    void finish(OutputStream out) throws ParseException, IOException {
+        _sink.target(out);
+        try {
+            finish();
+        } finally {
+            _sink.drain();
+        }
+    }
+
+    /**
+     * @param needed the number of characters about to be copied
+     * @return a scratch array for copying input, sized to the input (up to
+     * SCRATCH_SIZE) so that decoding short input does not allocate a full block
+     */
+    private char[] scratch(int needed) {
+        if (_scratch == null || (_scratch.length < needed && _scratch.length < SCRATCH_SIZE)) {
+            _scratch = new char[Math.max(1, Math.min(SCRATCH_SIZE, needed))];
+        }
+        return _scratch;
+    }
+
+    private static void copy(CharSequence src, int pos, int n, char[] dst) {
+        if (src instanceof String) {
+            ((String) src).getChars(pos, pos + n, dst, 0);
+        } else if (src instanceof CharBuffer && ((CharBuffer) src).hasArray()) {
+            CharBuffer c = (CharBuffer) src;
+            System.arraycopy(c.array(), c.arrayOffset() + c.position() + pos, dst, 0, n);
+        } else {
+            for (int i = 0; i < n; ++i) dst[i] = src.charAt(pos + i);
+        }
+    }
+
+    private void feed(CharSequence chunk) throws ParseException, IOException {
+        feed(chunk, 0, chunk.length());
+    }
+
+    private void feed(CharSequence chunk, int start, int end) throws ParseException, IOException {
+        char[] c = scratch(end - start);
+        for (int pos = start; pos < end; pos += c.length) {
+            int n = Math.min(c.length, end - pos);
+            copy(chunk, pos, n, c);
+            feed(c, 0, n);
+        }
+    }
+
+    private void start() throws IOException {
+        if (_finished) throw new IllegalStateException("decoding has already finished");
+        if (!_started) {
+            _started = true;
+            _strategy.start(_out);
+        }
+    }
+
+    private void feed(char[] chunk, int offset, int len) throws ParseException, IOException {
+        if (!decode(chunk, offset, len)) throw new IllegalStateException("decoding has failed");
+    }
+
+    /**
+     * Decodes a chunk of characters.  Characters that are neither ignored
+     * nor standard hex digits are passed to the adapter's valueOf() when
+     * throwing, and otherwise recorded as the error that stops decoding.
+     *
+     * @return true if the chunk was decoded, false if an error was recorded
+     */
+    private boolean decode(char[] chunk, int offset, int len) throws ParseException, IOException {
+        start();
+        if (_error != null) return false;
+        if (_ignoredChars != null && _sink.discarding()) {
+            int n = count(chunk, offset, len);
+            offset += n;
+            len -= n;
+        }
+
+        final boolean[] ignored = _ignoredChars;
+        final OutputStream out = _out;
+        long index = _charIndexInStream, indexInLine = _charIndexInLine;
+        int b = _b;
+        boolean needsDigit2 = _needsDigit2;
+        try {
+            for (int i = offset, end = offset + len; i < end; ++i, ++index) {
+                char c = chunk[i];
+                if (c == CR || c == LF) {
+                    indexInLine = 0;
+                } else {
+                    ++indexInLine;
+                }
+
+                int v = (c < 128) ? HexDecoderAdapter.DIGIT_VALUES[c] : -1;
+                if (!needsDigit2) {
+                    if (ignored != null && c < ignored.length ? ignored[c] : _strategy.shouldIgnore(c, index, indexInLine, out)) continue;
+                    if (v < 0 && (v = invalidCharacter(c, index)) < 0) return false;
+                    b = v << 4;
+                    needsDigit2 = true;
+                } else {
+                    if (v < 0 && (v = invalidCharacter(c, index)) < 0) return false;
+                    out.write(b | v);
+                    ++_totalBytes;
+                    needsDigit2 = false;
+                }
+            }
+            return true;
+        } finally {
+            _charIndexInStream = index;
+            _charIndexInLine = indexInLine;
+            _b = b;
+            _needsDigit2 = needsDigit2;
+        }
+    }
+
+    /**
+     * Counts decoded bytes without producing them, for CharTableStrategies
+     * when output is being discarded.  Stops at the first character that
+     * is neither in the ignore table nor a standard hex digit, leaving it
+     * (and any error handling) to the general decoding loop.
+     *
+     * @return the number of characters consumed
+     */
+    private int count(char[] chunk, int offset, int len) {
+        final boolean[] ignored = _ignoredChars;
+        final byte[] digits = HexDecoderAdapter.DIGIT_VALUES;
+        boolean needsDigit2 = _needsDigit2;
+        long bytes = 0;
+        int i = offset, end = offset + len;
+        for (; i < end; ++i) {
+            char c = chunk[i];
+            if (c >= digits.length && (needsDigit2 || c >= ignored.length)) break;
+            if (needsDigit2) {
+                if (digits[c] < 0) break;
+                ++bytes;
+                needsDigit2 = false;
+            } else if (!ignored[c]) {
+                if (c >= digits.length || digits[c] < 0) break;
+                needsDigit2 = true;
+            }
+        }
+        _needsDigit2 = needsDigit2;
+        _totalBytes += bytes;
+        _sink.countSkipped(bytes);
+        _charIndexInStream += i - offset;
+        return i - offset;
+    }
+
+    private int invalidCharacter(char c, long index) throws ParseException {
+        if (_throwing) {
+            return (_adapter == null) ? HexDecoderAdapter.digitValueOf(c, index) : _adapter.valueOf(c, index);
+        }
+        _error = DecodeResult.Error.INVALID_CHARACTER;
+        _errorPosition = index;
+        return -1;
+    }
+
+    private void finish() throws ParseException, IOException {
+        if (!completeDecoding()) throw new IllegalStateException("decoding has failed");
+    }
+
+    private boolean completeDecoding() throws ParseException, IOException {
+        start();
+        if (_error != null) return false;
+        if (_needsDigit2) {
+            if (_throwing) {
+                throw new ParseException(String.format("unexpected eof at position %d", _charIndexInStream), (int) _charIndexInStream);
+            }
+            _error = DecodeResult.Error.UNEXPECTED_EOF;
+            _errorPosition = _charIndexInStream;
+            return false;
+        }
+        _finished = true;
+        _strategy.finish(_charIndexInStream, _totalBytes, _out);
+        return true;
+    }
+
+    /**
+     * Decodes the entire specified input, either collecting or discarding
+     * the decoded bytes, and records rather than throws any error found.
+     *
+     * @param in the characters to decode
+     * @param collect true if the decoded bytes should be collected (and
+     * made available via collected()), false if they should be discarded
+     * @return true if the input was decoded successfully
+     */
+    boolean decodeQuietly(CharSequence in, boolean collect) throws IOException {
+        _throwing = false;
+        if (collect) {
+            _sink.collect(in.length() / 2);
+        } else {
+            _sink.discard();
+        }
+        try {
+            int len = in.length();
+            char[] c = scratch(len);
+            for (int pos = 0; pos < len; pos += c.length) {
+                int n = Math.min(c.length, len - pos);
+                copy(in, pos, n, c);
+                if (!decode(c, 0, n)) return false;
+            }
+            return completeDecoding();
+        } catch (ParseException e) {
+            _error = DecodeResult.Error.INVALID_FORMAT;
+            _errorPosition = e.getErrorOffset();
+            return false;
+        }
+    }
+
+    /**
+     * Decodes the entire specified input, throwing a ParseException for
+     * the first error found
+     *
+     * @param in the characters to decode
+     * @return the decoded bytes
+     */
+    byte[] decodeFully(CharSequence in) throws ParseException, IOException {
+        _sink.collect(in.length() / 2);
+        feed(in);
+        finish();
+        return collected();
+    }
+
+    /**
+     * Decodes a range of the specified input, throwing a ParseException for
+     * the first error found.  Error positions are relative to the start of
+     * the whole input rather than the range.
+     *
+     * @param in the characters to decode
+     * @param start the index of the first character to decode
+     * @param end the index following the last character to decode
+     * @return the decoded bytes
+     */
+    byte[] decodeFully(CharSequence in, int start, int end) throws ParseException, IOException {
+        startAt(start);
+        _sink.collect((end - start) / 2);
+        feed(in, start, end);
+        finish();
+        return collected();
+    }
+
+    /**
+     * Sets the position reported for the first character to be fed, so
+     * that errors in a range of a larger input are reported relative to the
+     * whole input.  Must be called before any input is fed.
+     *
+     * @param position the position of the first character
+     */
+    void startAt(long position) {
+        if (_started) throw new IllegalStateException("decoding has already started");
+        _charIndexInStream = position;
+    }
+
+    /**
+     * Counts the bytes the entire specified input decodes to without
+     * producing them, throwing a ParseException for the first error found
+     *
+     * @param in the characters to decode
+     * @return the number of decoded bytes
+     */
+    long countFully(CharSequence in) throws ParseException, IOException {
+        _sink.discard();
+        feed(in);
+        finish();
+        return _sink.count();
+    }
+
+    /**
+     * Counts the bytes the entire contents of the specified Reader decode to
+     * without producing them, throwing a ParseException for the first error found
+     *
+     * @param in the Reader to read
+     * @return the number of decoded bytes
+     */
+    long countFully(Reader in) throws ParseException, IOException {
+        _sink.discard();
+        char[] c = scratch(SCRATCH_SIZE);
+        int n;
+        while ((n = in.read(c)) >= 0) {
+            feed(c, 0, n);
+        }
+        finish();
+        return _sink.count();
+    }
+
+    byte[] collected() {
+        return _sink.toByteArray();
+    }
+
+    DecodeResult result() {
+        return (_error == null) ? DecodeResult.success(collected()) : DecodeResult.failure(_errorPosition, _error);
+    }
+
+    long errorPosition() {
+        return (_error == null) ? -1 : _errorPosition;
+    }
+
+    /**
+     * Collects decoded bytes in blocks and delivers them to either an
+     * OutputStream or a ByteBuffer.  Bytes are written straight to a
+     * ByteBuffer while it has room, and those that do not fit are held until
+     * the next delivery.  With no destination, bytes are either collected in
+     * memory or discarded.  The block is allocated only once it is needed, so
+     * discarding, or decoding into a large enough ByteBuffer, allocates nothing.
+     */
+    private static class Sink extends OutputStream {
+
+        private static final int BLOCK_SIZE = 8192;
+        private static final byte[] EMPTY = new byte[0];
+
+        private byte[] _buf = EMPTY;
+        private int _start = 0, _end = 0;
+        private OutputStream _stream = null;
+        private ByteBuffer _buffer = null;
+        private boolean _discard = false;
+        private long _count = 0;
+
+        void target(OutputStream out) {
+            _stream = out;
+            _buffer = null;
+        }
+
+        void target(ByteBuffer out) {
+            _stream = null;
+            _buffer = out;
+        }
+
+        void collect(int expectedSize) {
+            _stream = null;
+            _buffer = null;
+            if (_buf.length < expectedSize) _buf = new byte[expectedSize];
+        }
+
+        void discard() {
+            _stream = null;
+            _buffer = null;
+            _discard = true;
+        }
+
+        byte[] toByteArray() {
+            return (_start == 0 && _end == _buf.length) ? _buf : Arrays.copyOfRange(_buf, _start, _end);
+        }
+
+        int pending() {
+            return _end - _start;
+        }
+
+        boolean discarding() {
+            return _discard;
+        }
+
+        /**
+         * @return the total number of bytes written to this Sink
+         */
+        long count() {
+            return _count;
+        }
+
+        void countSkipped(long n) {
+            _count += n;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            ++_count;
+            if (_end < _buf.length) {
+                _buf[_end++] = (byte) b;
+                return;
+            }
+            if (_discard) return;
+            if (_buffer != null && _start == _end && _buffer.hasRemaining()) {
+                _buffer.put((byte) b);
+                return;
+            }
+            makeRoom();
+            _buf[_end++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            _count += len;
+            if (_discard) return;
+            while (len > 0) {
+                if (_end == _buf.length) makeRoom();
+                int n = Math.min(len, _buf.length - _end);
+                System.arraycopy(b, off, _buf, _end, n);
+                _end += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        private void makeRoom() throws IOException {
+            if (_discard) {
+                _start = _end = 0;
+                return;
+            }
+            if (_buf.length == 0) {
+                _buf = new byte[BLOCK_SIZE];
+                return;
+            }
+            if (_stream != null) {
+                _stream.write(_buf, _start, _end - _start);
+                _start = _end = 0;
+                return;
+            }
+            drainToBuffer();
+            if (_start > 0) {
+                System.arraycopy(_buf, _start, _buf, 0, _end - _start);
+                _end -= _start;
+                _start = 0;
+            }
+            if (_end == _buf.length) {
+                _buf = Arrays.copyOf(_buf, _buf.length * 2);
+            }
+        }
+
+        void drain() throws IOException {
+            if (_stream == null) {
+                drainToBuffer();
+            } else if (pending() > 0) {
+                _stream.write(_buf, _start, pending());
+                _start = _end = 0;
+            }
+        }
+
+        void drainToBuffer() {
+            if (_buffer == null) return;
+            int n = Math.min(pending(), _buffer.remaining());
+            _buffer.put(_buf, _start, n);
+            _start += n;
+            if (_start == _end) _start = _end = 0;
+        }
+    }
+}
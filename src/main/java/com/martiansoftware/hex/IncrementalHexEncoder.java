@@ -0,0 +1,252 @@
+package com.martiansoftware.hex;
+
+//   Copyright 2016 Martian Software, Inc.
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+import com.martiansoftware.validation.Hope;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+
+/**
+ * A push-based hex encoder that accepts its input in arbitrary chunks and
+ * writes its output to caller-supplied CharBuffers, for use where blocking on
+ * an InputStream is not an option (such as in a reactive pipeline).
+ * Encoding behavior is determined by a HexEncoderAdapter.Strategy, exactly as
+ * for the HexEncoder that created it.
+ *
+ * Any state needed to continue encoding (the position within a line, a
+ * partially filled line of a hex dump) is kept between calls to `feed()`.
+ * Once all input has been fed, `finish()` must be called to complete encoding.
+ *
+ * Encoded characters are written to the CharBuffer provided with each call.
+ * If it fills up, the remaining characters are held until the next call to
+ * `feed()`, `finish()`, or `drain()`; `hasPending()` indicates whether any
+ * such characters remain.  A consumer that can accept only a limited number
+ * of characters therefore passes a buffer of that size and calls `drain()`
+ * rather than `feed()` while `hasPending()` is true.  Buffers are reused
+ * between calls, so a long-lived stream whose output buffers keep up with its
+ * input does not allocate per chunk.
+ *
+ * Instances are not thread-safe, and each instance encodes a single stream.
+ *
+ * ```
+ *   IncrementalHexEncoder e = new DefaultHexEncoder().newIncrementalEncoder();
+ *   CharBuffer out = CharBuffer.allocate(64);
+ *   e.feed(ByteBuffer.wrap("Hel".getBytes()), out);
+ *   e.feed(ByteBuffer.wrap("lo".getBytes()), out);
+ *   e.finish(out);   // out now contains "48656c6c6f"
+ * ```
+ *
+ * @author <a href="http://martylamb.com">Marty Lamb</a>
+ */
+public class IncrementalHexEncoder {
+
+    private final HexEncoderAdapter.Strategy _strategy;
+    private final Sink _sink = new Sink();
+    private final PrintWriter _out = new PrintWriter(_sink);
+
+    private boolean _started = false;
+    private boolean _finished = false;
+    private long _totalBytes = 0;
+
+    /**
+     * Creates a new IncrementalHexEncoder that encodes according to the
+     * specified Strategy
+     *
+     * @param strategy the Strategy used to encode each byte
+     */
+    public IncrementalHexEncoder(HexEncoderAdapter.Strategy strategy) {
+        _strategy = Hope.that(strategy).named("strategy").isNotNull().value();
+    }
+
+    /**
+     * Encodes a chunk of bytes.  All remaining bytes in the chunk are consumed.
+     * @param chunk the bytes to encode
+     * @param out the destination for encoded characters
+     */
+    public void feed(ByteBuffer chunk, CharBuffer out) {
+        _sink.target(out);
+        try {
+            start();
+            if (chunk.hasArray()) {
+                int n = chunk.remaining();
+                next(chunk.array(), chunk.arrayOffset() + chunk.position(), n);
+                chunk.position(chunk.position() + n);
+            } else {
+                while (chunk.hasRemaining()) _strategy.next(chunk.get(), _totalBytes++, _out);
+            }
+            _strategy.flush(_out);
+        } finally {
+            _sink.drain();
+        }
+    }
+
+    /**
+     * Encodes a chunk of bytes
+     * @param chunk an array containing the bytes to encode
+     * @param offset the index in the array of the first byte to encode
+     * @param len the number of bytes to encode
+     * @param out the destination for encoded characters
+     */
+    public void feed(byte[] chunk, int offset, int len, CharBuffer out) {
+        _sink.target(out);
+        try {
+            start();
+            next(chunk, offset, len);
+            _strategy.flush(_out);
+        } finally {
+            _sink.drain();
+        }
+    }
+
+    /**
+     * Completes encoding after all input has been fed
+     * @param out the destination for any remaining encoded characters
+     */
+    public void finish(CharBuffer out) {
+        _sink.target(out);
+        try {
+            start();
+            _finished = true;
+            _strategy.finish(_totalBytes, _out);
+        } finally {
+            _sink.drain();
+        }
+    }
+
+    /**
+     * Writes as many held encoded characters as will fit to the specified buffer
+     * @param out the destination for encoded characters
+     */
+    public void drain(CharBuffer out) {
+        _sink.target(out);
+        _sink.drain();
+    }
+
+    /**
+     * @return true if encoded characters are being held because a previous
+     * destination buffer was full
+     */
+    public boolean hasPending() {
+        return _sink.pending() > 0;
+    }
+
+    /**
+     * @return the number of bytes fed so far
+     */
+    public long totalBytes() {
+        return _totalBytes;
+    }
+
+    private void start() {
+        if (_finished) throw new IllegalStateException("encoding has already finished");
+        if (!_started) {
+            _started = true;
+            _strategy.start(_out);
+        }
+    }
+
+    private void next(byte[] b, int offset, int len) {
+        final HexEncoderAdapter.Strategy strategy = _strategy;
+        final PrintWriter out = _out;
+        long index = _totalBytes;
+        for (int i = offset, end = offset + len; i < end; ++i) {
+            strategy.next(b[i], index++, out);
+        }
+        _totalBytes = index;
+    }
+
+    /**
+     * Writes characters straight to a CharBuffer while it has room, and holds
+     * any that do not fit until the next delivery.  The holding array is
+     * allocated only when a buffer fills up, and is then reused.
+     */
+    private static class Sink extends Writer {
+
+        private static final int BLOCK_SIZE = 4096;
+        private static final char[] EMPTY = new char[0];
+
+        private char[] _held = EMPTY;
+        private int _start = 0, _end = 0;
+        private CharBuffer _buffer = null;
+
+        void target(CharBuffer out) {
+            _buffer = out;
+            drain();
+        }
+
+        int pending() {
+            return _end - _start;
+        }
+
+        @Override
+        public void write(int c) {
+            if (_start == _end && _buffer.hasRemaining()) {
+                _buffer.put((char) c);
+            } else {
+                hold(1);
+                _held[_end++] = (char) c;
+            }
+        }
+
+        @Override
+        public void write(char[] c, int off, int len) {
+            if (_start == _end) {
+                int n = Math.min(len, _buffer.remaining());
+                _buffer.put(c, off, n);
+                off += n;
+                len -= n;
+            }
+            if (len > 0) {
+                hold(len);
+                System.arraycopy(c, off, _held, _end, len);
+                _end += len;
+            }
+        }
+
+        @Override
+        public void write(String s, int off, int len) {
+            for (int i = off, end = off + len; i < end; ++i) write(s.charAt(i));
+        }
+
+        /**
+         * Makes room to hold the specified number of additional characters
+         */
+        private void hold(int len) {
+            if (_held.length - _end >= len) return;
+            int pending = pending();
+            if (_held.length - pending < len) {
+                char[] c = new char[Math.max(BLOCK_SIZE, Math.max(2 * _held.length, pending + len))];
+                System.arraycopy(_held, _start, c, 0, pending);
+                _held = c;
+            } else {
+                System.arraycopy(_held, _start, _held, 0, pending);
+            }
+            _start = 0;
+            _end = pending;
+        }
+
+        void drain() {
+            int n = Math.min(pending(), _buffer.remaining());
+            _buffer.put(_held, _start, n);
+            _start += n;
+            if (_start == _end) _start = _end = 0;
+        }
+
+        @Override public void flush() {}
+        @Override public void close() {}
+    }
+}
@@ -0,0 +1,113 @@
+package com.martiansoftware.hex;
+
+//   Copyright 2016 Martian Software, Inc.
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+import java.io.IOException;
+import java.text.ParseException;
+
+/**
+ * Decodes Intel HEX records, verifying each record's checksum.  Data,
+ * end-of-file, extended segment address, and extended linear address records
+ * are interpreted; start address records are checked and otherwise ignored.
+ * No records may follow an end-of-file record.
+ *
+ * When decoding to an OutputStream, gaps between records are filled with
+ * 0xff (the value of erased flash) unless another fill byte is specified.
+ * To place each record at its own position in a file instead, use
+ * `decode(Reader, SeekableByteChannel, long)`.
+ *
+ * @see IntelHexEncoder
+ * @author <a href="http://martylamb.com">Marty Lamb</a>
+ */
+public class IntelHexDecoder extends RecordHexDecoder {
+
+    private static final int HEADER_BYTES = 4;
+
+    /**
+     * Creates a new IntelHexDecoder that fills gaps with 0xff
+     */
+    public IntelHexDecoder() {
+        this((byte) 0xff);
+    }
+
+    /**
+     * Creates a new IntelHexDecoder
+     *
+     * @param fill the byte used to fill gaps between records when decoding
+     * to an OutputStream
+     */
+    public IntelHexDecoder(byte fill) {
+        super(':', false, fill);
+    }
+
+    @Override
+    RecordHandler newRecordHandler() {
+        return new IntelHexHandler();
+    }
+
+    private static class IntelHexHandler implements RecordHandler {
+
+        private long _base = 0;
+        private boolean _ended = false;
+
+        @Override
+        public int length(int count) {
+            return HEADER_BYTES + count + 1;
+        }
+
+        @Override
+        public void record(char type, byte[] record, int len, long position, Target out) throws ParseException, IOException {
+            int sum = 0;
+            for (int i = 0; i < len; ++i) sum += record[i];
+            if ((sum & 0xff) != 0) throw error("bad checksum in record", position);
+            if (_ended) throw error("record follows end-of-file record", position);
+
+            int count = record[0] & 0xff;
+            int offset = ((record[1] & 0xff) << 8) | (record[2] & 0xff);
+            int kind = record[3] & 0xff;
+            switch (kind) {
+                case IntelHexEncoder.DATA:
+                    out.write(_base + offset, record, HEADER_BYTES, count, position);
+                    break;
+                case IntelHexEncoder.END_OF_FILE:
+                    expectCount(count, 0, position);
+                    _ended = true;
+                    break;
+                case IntelHexEncoder.EXTENDED_SEGMENT_ADDRESS:
+                    expectCount(count, 2, position);
+                    _base = (long) word(record) << 4;
+                    break;
+                case IntelHexEncoder.EXTENDED_LINEAR_ADDRESS:
+                    expectCount(count, 2, position);
+                    _base = (long) word(record) << 16;
+                    break;
+                case IntelHexEncoder.START_SEGMENT_ADDRESS:
+                case IntelHexEncoder.START_LINEAR_ADDRESS:
+                    expectCount(count, 4, position);
+                    break;
+                default:
+                    throw error(String.format("unknown record type %02x", kind), position);
+            }
+        }
+
+        private static int word(byte[] record) {
+            return ((record[HEADER_BYTES] & 0xff) << 8) | (record[HEADER_BYTES + 1] & 0xff);
+        }
+
+        private static void expectCount(int count, int expected, long position) throws ParseException {
+            if (count != expected) throw error(String.format("byte count %d should be %d", count, expected), position);
+        }
+    }
+}
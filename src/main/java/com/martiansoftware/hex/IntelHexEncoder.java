@@ -0,0 +1,113 @@
+package com.martiansoftware.hex;
+
+//   Copyright 2016 Martian Software, Inc.
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+/**
+ * Encodes data as Intel HEX records.  Data records hold up to 16 bytes by
+ * default and never cross a 64K boundary; an extended linear address record
+ * precedes the first data record of each 64K segment above the first, and
+ * an end-of-file record follows the last.
+ *
+ * ```
+ *   :10000000000102030405060708090A0B0C0D0E0F78
+ *   :00000001FF
+ * ```
+ *
+ * @see IntelHexDecoder
+ * @author <a href="http://martylamb.com">Marty Lamb</a>
+ */
+public class IntelHexEncoder extends RecordHexEncoder {
+
+    private static final int DEFAULT_BYTES_PER_RECORD = 16;
+    private static final int MAX_BYTES_PER_RECORD = 255;
+    private static final long MAX_ADDRESS = 0xffffffffL;
+    private static final int SEGMENT_SIZE = 0x10000;
+
+    static final int DATA = 0x00;
+    static final int END_OF_FILE = 0x01;
+    static final int EXTENDED_SEGMENT_ADDRESS = 0x02;
+    static final int START_SEGMENT_ADDRESS = 0x03;
+    static final int EXTENDED_LINEAR_ADDRESS = 0x04;
+    static final int START_LINEAR_ADDRESS = 0x05;
+
+    /**
+     * Creates a new IntelHexEncoder that encodes streams starting at address
+     * zero, with 16 bytes per record
+     */
+    public IntelHexEncoder() {
+        this(0, DEFAULT_BYTES_PER_RECORD);
+    }
+
+    /**
+     * Creates a new IntelHexEncoder
+     *
+     * @param startAddress the address of the first byte of each encoded stream
+     * @param bytesPerRecord the maximum number of data bytes per record (1-255)
+     */
+    public IntelHexEncoder(long startAddress, int bytesPerRecord) {
+        super(startAddress, bytesPerRecord, MAX_BYTES_PER_RECORD);
+    }
+
+    @Override
+    RecordFormatter newRecordFormatter() {
+        return new IntelHexFormatter();
+    }
+
+    private static class IntelHexFormatter implements RecordFormatter {
+
+        private long _segment = 0;
+
+        @Override
+        public int limit(long address, int bytesPerRecord) {
+            return (int) Math.min(bytesPerRecord, SEGMENT_SIZE - (address & (SEGMENT_SIZE - 1)));
+        }
+
+        @Override
+        public void data(RecordWriter w, long address, byte[] b, int off, int len) {
+            if (address + len - 1 > MAX_ADDRESS) {
+                throw new IllegalArgumentException(String.format("address %x exceeds the 32-bit range of Intel HEX", address + len - 1));
+            }
+            long segment = address >>> 16;
+            if (segment != _segment) {
+                record(w, EXTENDED_LINEAR_ADDRESS, 0, null, 0, 0, segment);
+                _segment = segment;
+            }
+            record(w, DATA, address & 0xffff, b, off, len, -1);
+        }
+
+        @Override
+        public void finish(RecordWriter w) {
+            record(w, END_OF_FILE, 0, null, 0, 0, -1);
+        }
+
+        /**
+         * Writes a record whose data is either a range of an array or, for an
+         * extended linear address record, a 16-bit segment number
+         */
+        private void record(RecordWriter w, int type, long offset, byte[] b, int off, int len, long segment) {
+            w.begin(":");
+            w.put((segment < 0) ? len : 2);
+            w.put(offset, 2);
+            w.put(type);
+            if (segment < 0) {
+                w.put(b, off, len);
+            } else {
+                w.put(segment, 2);
+            }
+            w.put(-w.sum());
+            w.end();
+        }
+    }
+}
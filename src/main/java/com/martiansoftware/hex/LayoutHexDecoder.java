@@ -0,0 +1,82 @@
+package com.martiansoftware.hex;
+
+//   Copyright 2016 Martian Software, Inc.
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+import com.martiansoftware.validation.Hope;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.text.ParseException;
+
+/**
+ * A strict HexDecoder that accepts only hex in exactly the layout described
+ * by a HexLayout.  Rather than deciding character by character whether to
+ * ignore input, it knows which delimiter must appear before each byte and
+ * rejects anything else.
+ * 
+ * @author <a href="http://martylamb.com">Marty Lamb</a>
+ */
+public class LayoutHexDecoder extends HexDecoderAdapter {
+
+    private final HexLayout _layout;
+    
+    /**
+     * Creates a new LayoutHexDecoder for the specified layout
+     * @param layout the layout of the hex to decode
+     */
+    public LayoutHexDecoder(HexLayout layout) {
+        _layout = Hope.that(layout).named("layout").isNotNull().value();
+    }
+    
+    @Override
+    protected Strategy newStrategy() {
+        return new LayoutStrategy();
+    }
+    
+    private class LayoutStrategy implements Strategy {
+        
+        private final HexLayout.Position _position = _layout.start();
+        private char[] _expected = _position.next();
+        private int _matched = 0;
+        
+        @Override
+        public void start(OutputStream out) throws IOException {
+        }
+
+        @Override
+        public boolean shouldIgnore(char c, long charIndexInStream, long charIndexInLine, OutputStream out) throws ParseException, IOException {
+            if (_matched < _expected.length) {
+                if (c != _expected[_matched]) {
+                    throw new ParseException(String.format("unexpected character '%c' at position %d (expected '%c')", c, charIndexInStream, _expected[_matched]), (int) charIndexInStream);
+                }
+                ++_matched;
+                return true;
+            }
+            
+            // the delimiter is complete, so this character begins the next byte
+            _expected = _position.next();
+            _matched = 0;
+            return false;
+        }
+
+        @Override
+        public void finish(long totalChars, long totalBytes, OutputStream out) throws ParseException, IOException {
+            // after the last byte, only its suffix may appear
+            int required = (totalBytes == 0) ? 0 : _layout.last().length;
+            if (_matched != required) {
+                throw new ParseException(String.format("incomplete delimiter at position %d", totalChars), (int) totalChars);
+            }
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.martiansoftware.hex;
+
+//   Copyright 2016 Martian Software, Inc.
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+import com.martiansoftware.validation.Hope;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+/**
+ * A HexEncoder that encodes hex in the layout described by a HexLayout.
+ * Bytes are read and encoded in blocks, with the delimiters preceding each
+ * byte taken from the layout's precomputed delimiters.
+ * 
+ * @author <a href="http://martylamb.com">Marty Lamb</a>
+ */
+public class LayoutHexEncoder implements HexEncoder {
+
+    private static final int BUFFER_SIZE = 4096;
+    private static final int MAX_BUFFER_CHARS = BUFFER_SIZE * 64;
+    private static final long MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
+    private static final char[] UPPER_DIGITS = "0123456789ABCDEF".toCharArray();
+    
+    private final HexLayout _layout;
+    private final char[] _digits;
+    private final int _maxCharsPerByte;
+    private final int _blockSize;
+    
+    /**
+     * Creates a new LayoutHexEncoder for the specified layout
+     * @param layout the layout of the encoded hex
+     */
+    public LayoutHexEncoder(HexLayout layout) {
+        _layout = Hope.that(layout).named("layout").isNotNull().value();
+        _digits = layout.upperCase() ? UPPER_DIGITS : Hex.DIGITS;
+        _maxCharsPerByte = 2 + layout.maxJoinLength();
+        _blockSize = Math.max(1, Math.min(BUFFER_SIZE, MAX_BUFFER_CHARS / _maxCharsPerByte));
+    }
+    
+    @Override
+    public String encode(byte[] b, int offset, int len) {
+        if ((long) len * _maxCharsPerByte + _layout.last().length > MAX_ARRAY_LENGTH) {
+            // the result cannot be sized for the longest delimiters up front, so encode it in blocks
+            StringWriter s = new StringWriter();
+            encode(b, offset, len, new PrintWriter(s));
+            return s.toString();
+        }
+        Object event = HexEvents.begin(len);
+        char[] out = new char[len * _maxCharsPerByte + _layout.last().length];
+        HexLayout.Position p = _layout.start();
+        int n = encode(b, offset, len, p, out);
+        if (p.started()) n = append(_layout.last(), out, n);
+        HexEvents.end(event, this, HexEvents.ENCODE, len, n, false);
+        return new String(out, 0, n);
+    }
+
+    @Override
+    public void encode(InputStream in, PrintWriter out) throws IOException {
+        byte[] b = new byte[_blockSize];
+        char[] c = new char[_blockSize * _maxCharsPerByte];
+        HexLayout.Position p = _layout.start();
+        Object event = HexEvents.begin();
+        long bytes = 0;
+        long chars = 0;
+        int n;
+        while ((n = in.read(b)) >= 0) {
+            int m = encode(b, 0, n, p, c);
+            out.write(c, 0, m);
+            bytes += n;
+            chars += m;
+        }
+        if (p.started()) {
+            out.write(_layout.last());
+            chars += _layout.last().length;
+        }
+        out.flush();
+        HexEvents.end(event, this, HexEvents.ENCODE, bytes, chars, false);
+    }
+    
+    @Override
+    public IncrementalHexEncoder newIncrementalEncoder() {
+        return new IncrementalHexEncoder(new LayoutStrategy());
+    }
+    
+    private int encode(byte[] b, int offset, int len, HexLayout.Position p, char[] out) {
+        final char[] digits = _digits;
+        int n = 0;
+        for (int i = offset, end = offset + len; i < end; ++i) {
+            n = append(p.next(), out, n);
+            out[n++] = digits[(b[i] >> 4) & 0x0f];
+            out[n++] = digits[b[i] & 0x0f];
+        }
+        return n;
+    }
+    
+    private static int append(char[] delimiter, char[] out, int n) {
+        for (char c : delimiter) out[n++] = c;
+        return n;
+    }
+    
+    /**
+     * Collects the hex for each chunk in a block, written out when full or flushed
+     */
+    private class LayoutStrategy implements HexEncoderAdapter.Strategy {
+        private final char[] _buf = new char[_blockSize * _maxCharsPerByte];
+        private final HexLayout.Position _position = _layout.start();
+        private int _len = 0;
+        
+        @Override public void start(PrintWriter out) {}
+
+        @Override
+        public void next(int b, long byteIndexInStream, PrintWriter out) {
+            if (_buf.length - _len < _maxCharsPerByte) flush(out);
+            _len = append(_position.next(), _buf, _len);
+            _buf[_len++] = _digits[(b >> 4) & 0x0f];
+            _buf[_len++] = _digits[b & 0x0f];
+        }
+
+        @Override
+        public void flush(PrintWriter out) {
+            out.write(_buf, 0, _len);
+            _len = 0;
+        }
+        
+        @Override
+        public void finish(long totalBytes, PrintWriter out) {
+            flush(out);
+            if (_position.started()) out.write(_layout.last());
+        }
+    }
+}
@@ -0,0 +1,302 @@
+package com.martiansoftware.hex;
+
+//   Copyright 2016 Martian Software, Inc.
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.text.ParseException;
+import java.util.Arrays;
+
+/**
+ * A base class for decoders of hex record formats (such as Intel HEX and
+ * Motorola S-records), in which each line holds one record: a start
+ * character, an optional record type character, and then hex bytes
+ * containing a byte count, a load address, data, and a checksum.
+ *
+ * The record bytes are decoded by the usual HexDecoderAdapter machinery and
+ * collected one record at a time, so memory use is bounded by the size of a
+ * single record no matter how large the input.  Each record is checked and
+ * interpreted by a RecordHandler when its line ends.
+ *
+ * Decoding to an OutputStream produces the data from the lowest address
+ * onward, filling any gaps between records with a fill byte.  Records must
+ * then appear in increasing address order.  Decoding to a channel instead
+ * writes each record's data at its own position, so records may appear in
+ * any order and gaps are simply skipped.
+ *
+ * @author <a href="http://martylamb.com">Marty Lamb</a>
+ */
+abstract class RecordHexDecoder extends HexDecoderAdapter {
+
+    private static final int MAX_RECORD_BYTES = 262;
+    private static final int FILL_BLOCK_SIZE = 256;
+    private static final int BUFFER_SIZE = 8192;
+
+    private final char _start;
+    private final boolean _typed;
+    private final byte[] _fillBlock = new byte[FILL_BLOCK_SIZE];
+
+    /**
+     * @param start the character that begins each record
+     * @param typed true if the start character is followed by a record type
+     * character that is not part of the record's hex
+     * @param fill the byte used to fill gaps between records when decoding
+     * to a stream
+     */
+    RecordHexDecoder(char start, boolean typed, byte fill) {
+        _start = start;
+        _typed = typed;
+        Arrays.fill(_fillBlock, fill);
+    }
+
+    /**
+     * @return a new RecordHandler to interpret the records of a single stream
+     */
+    abstract RecordHandler newRecordHandler();
+
+    @Override
+    protected Strategy newStrategy() {
+        return new RecordStrategy(null);
+    }
+
+    /**
+     * Decodes records, writing the data of each to the specified channel at
+     * the position of its address relative to a base address.  Records may
+     * appear in any order, and gaps between them are left unwritten.
+     *
+     * @param in the Reader from which to read records
+     * @param out the channel to which decoded data will be written
+     * @param baseAddress the address corresponding to position zero in the channel
+     * @return the number of data bytes written
+     * @throws ParseException if the input is not valid, or if a record's
+     * address precedes the base address
+     * @throws IOException
+     */
+    public long decode(Reader in, SeekableByteChannel out, long baseAddress) throws ParseException, IOException {
+        ChannelTarget target = new ChannelTarget(out, baseAddress);
+        IncrementalHexDecoder d = new IncrementalHexDecoder(this, new RecordStrategy(target));
+        OutputStream unused = new OutputStream() {
+            @Override public void write(int b) {}
+        };
+        char[] buf = new char[BUFFER_SIZE];
+        int n;
+        while ((n = in.read(buf)) >= 0) {
+            d.feed(buf, 0, n, unused);
+        }
+        d.finish(unused);
+        return target.written();
+    }
+
+    static ParseException error(String message, long position) {
+        return new ParseException(String.format("%s at position %d", message, position), (int) position);
+    }
+
+    /**
+     * Interprets the records of a single stream
+     */
+    interface RecordHandler {
+
+        /**
+         * @param count the first byte of a record
+         * @return the total number of bytes in the record
+         */
+        int length(int count);
+
+        /**
+         * Checks and interprets a complete record
+         *
+         * @param type the record type character, or 0 for untyped records
+         * @param record the record's bytes, beginning with its count
+         * @param len the number of bytes in the record
+         * @param position the position in the input of the record's start character
+         * @param out the destination for the record's data
+         * @throws ParseException if the record is not valid
+         * @throws IOException
+         */
+        void record(char type, byte[] record, int len, long position, Target out) throws ParseException, IOException;
+
+        /**
+         * Called once all records have been read
+         *
+         * @param position the position of the end of the input
+         * @throws ParseException if the records are incomplete
+         */
+        default void finish(long position) throws ParseException {}
+    }
+
+    /**
+     * A destination for data at specific addresses
+     */
+    interface Target {
+        void write(long address, byte[] b, int off, int len, long position) throws ParseException, IOException;
+    }
+
+    /**
+     * Writes data sequentially, filling any gaps between records
+     */
+    private class StreamTarget implements Target {
+
+        private final OutputStream _out;
+        private long _next = -1;
+
+        StreamTarget(OutputStream out) {
+            _out = out;
+        }
+
+        @Override
+        public void write(long address, byte[] b, int off, int len, long position) throws ParseException, IOException {
+            if (len == 0) return;
+            if (_next < 0) _next = address;
+            if (address < _next) throw error(String.format("record address %x precedes the end of earlier data", address), position);
+            while (_next < address) {
+                int n = (int) Math.min(FILL_BLOCK_SIZE, address - _next);
+                _out.write(_fillBlock, 0, n);
+                _next += n;
+            }
+            _out.write(b, off, len);
+            _next += len;
+        }
+    }
+
+    /**
+     * Writes data at positions in a channel
+     */
+    private static class ChannelTarget implements Target {
+
+        private final SeekableByteChannel _channel;
+        private final long _baseAddress;
+        private long _written = 0;
+
+        ChannelTarget(SeekableByteChannel channel, long baseAddress) {
+            _channel = channel;
+            _baseAddress = baseAddress;
+        }
+
+        long written() {
+            return _written;
+        }
+
+        @Override
+        public void write(long address, byte[] b, int off, int len, long position) throws ParseException, IOException {
+            if (len == 0) return;
+            if (address < _baseAddress) throw error(String.format("record address %x precedes the base address", address), position);
+            long pos = address - _baseAddress;
+            ByteBuffer buf = ByteBuffer.wrap(b, off, len);
+            if (_channel instanceof FileChannel) {
+                FileChannel fc = (FileChannel) _channel;
+                while (buf.hasRemaining()) pos += fc.write(buf, pos);
+            } else {
+                _channel.position(pos);
+                while (buf.hasRemaining()) _channel.write(buf);
+            }
+            _written += len;
+        }
+    }
+
+    /**
+     * Tracks the structure of each line, leaving the record's hex digits to
+     * be decoded into a RecordBuffer
+     */
+    private class RecordStrategy implements Strategy {
+
+        private final RecordHandler _handler = newRecordHandler();
+        private final RecordBuffer _record = new RecordBuffer();
+        private Target _target;
+        private boolean _open = false;
+        private char _type = 0;
+        private long _recordStart = 0;
+
+        /**
+         * @param target the destination for decoded data, or null to write
+         * it to the decoder's output stream
+         */
+        RecordStrategy(Target target) {
+            _target = target;
+        }
+
+        @Override
+        public OutputStream wrap(OutputStream out) {
+            if (_target == null) _target = new StreamTarget(out);
+            return _record;
+        }
+
+        @Override
+        public void start(OutputStream out) {}
+
+        @Override
+        public boolean shouldIgnore(char c, long charIndexInStream, long charIndexInLine, OutputStream out) throws ParseException, IOException {
+            if (charIndexInLine == 0) {
+                endRecord();
+                return true;
+            }
+            if (charIndexInLine == 1 && c == _start) {
+                _open = true;
+                _type = 0;
+                _recordStart = charIndexInStream;
+                _record.reset();
+                return true;
+            }
+            if (charIndexInLine == 2 && _typed && _open) {
+                _type = c;
+                return true;
+            }
+            if (_open && !_record.complete()) return false;
+            if (Character.isWhitespace(c)) return true;
+            throw error(String.format("unexpected character '%c'", c), charIndexInStream);
+        }
+
+        private void endRecord() throws ParseException, IOException {
+            if (!_open) return;
+            _open = false;
+            if (!_record.complete()) throw error("incomplete record", _recordStart);
+            _handler.record(_type, _record._bytes, _record._len, _recordStart, _target);
+        }
+
+        @Override
+        public void finish(long totalChars, long totalBytes, OutputStream out) throws ParseException, IOException {
+            endRecord();
+            _handler.finish(totalChars);
+        }
+
+        /**
+         * Collects the bytes of a single record
+         */
+        private class RecordBuffer extends OutputStream {
+
+            private final byte[] _bytes = new byte[MAX_RECORD_BYTES];
+            private int _len = 0;
+            private int _expected = -1;
+
+            void reset() {
+                _len = 0;
+                _expected = -1;
+            }
+
+            boolean complete() {
+                return _len == _expected;
+            }
+
+            @Override
+            public void write(int b) {
+                _bytes[_len++] = (byte) b;
+                if (_len == 1) _expected = _handler.length(b & 0xff);
+            }
+        }
+    }
+}
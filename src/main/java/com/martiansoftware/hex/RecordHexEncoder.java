@@ -0,0 +1,287 @@
+package com.martiansoftware.hex;
+
+//   Copyright 2016 Martian Software, Inc.
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+import com.martiansoftware.validation.Hope;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.channels.SeekableByteChannel;
+
+/**
+ * A base class for encoders of hex record formats (such as Intel HEX and
+ * Motorola S-records), in which each line holds one record: a start
+ * character, an optional record type character, and then hex bytes
+ * containing a byte count, a load address, data, and a checksum.
+ *
+ * Input is encoded a record at a time as it is read, with each record
+ * rendered into a reusable line buffer, so memory use does not depend on the
+ * size of the input.  Encoding a stream labels its first byte with the
+ * encoder's start address; encoding a channel region labels it with the start
+ * address plus the region's offset.  Images made of separate regions can be
+ * encoded without filling the gaps between them via a RecordWriter:
+ *
+ * ```
+ *   try (RecordHexEncoder.RecordWriter w = new IntelHexEncoder().newRecordWriter(out)) {
+ *       w.write(0x08000000L, bootloader);
+ *       w.write(0x08020000L, application);
+ *   }
+ * ```
+ *
+ * @author <a href="http://martylamb.com">Marty Lamb</a>
+ */
+public abstract class RecordHexEncoder extends HexEncoderAdapter {
+
+    static final char[] UPPER_DIGITS = "0123456789ABCDEF".toCharArray();
+    private static final char[] LINE_SEPARATOR = System.lineSeparator().toCharArray();
+    private static final int MAX_RECORD_CHARS = 2 + 2 * 262;
+
+    private final long _startAddress;
+    private final int _bytesPerRecord;
+
+    RecordHexEncoder(long startAddress, int bytesPerRecord, int maxBytesPerRecord) {
+        _startAddress = Hope.that(startAddress)
+                            .named("startAddress")
+                            .isTrue(a -> a >= 0, "startAddress must not be negative")
+                            .value();
+        _bytesPerRecord = Hope.that(bytesPerRecord)
+                            .named("bytesPerRecord")
+                            .isTrue(n -> n > 0 && n <= maxBytesPerRecord, "bytesPerRecord must be between 1 and " + maxBytesPerRecord)
+                            .value();
+    }
+
+    /**
+     * @return a new RecordFormatter to render the records of a single stream
+     */
+    abstract RecordFormatter newRecordFormatter();
+
+    /**
+     * Creates a RecordWriter that encodes data at arbitrary addresses to the
+     * specified PrintWriter.  Closing the RecordWriter writes the format's
+     * terminating record and flushes, but does not close, the PrintWriter.
+     *
+     * @param out the destination to which records will be written
+     * @return a new RecordWriter
+     */
+    public RecordWriter newRecordWriter(PrintWriter out) {
+        return new RecordWriter(out, newRecordFormatter());
+    }
+
+    @Override
+    protected Strategy newStrategy() {
+        return new RecordStrategy(_startAddress);
+    }
+
+    /**
+     * Encodes a region of the specified channel, labeling its first byte with
+     * this encoder's start address plus the region's offset
+     *
+     * @see HexEncoder#encode(SeekableByteChannel, long, long, PrintWriter)
+     */
+    @Override
+    public void encode(SeekableByteChannel in, long offset, long length, PrintWriter out) throws IOException {
+        Hope.that(offset).named("offset").isTrue(n -> n >= 0, "offset must not be negative");
+        Hope.that(length).named("length").isTrue(n -> n >= 0, "length must not be negative");
+        long len = Math.min(length, Math.max(0, in.size() - offset));
+        encode(new ChannelInputStream(in, offset, len), out, new RecordStrategy(_startAddress + offset));
+    }
+
+    /**
+     * Renders the records of a single stream in a particular format
+     */
+    interface RecordFormatter {
+
+        /**
+         * @param address the address of the first byte of a record
+         * @param bytesPerRecord the configured maximum number of bytes per record
+         * @return the number of bytes that may be placed in a record
+         * beginning at the specified address
+         */
+        default int limit(long address, int bytesPerRecord) {
+            return bytesPerRecord;
+        }
+
+        /**
+         * Writes a data record, preceded by any other records it requires
+         */
+        void data(RecordWriter w, long address, byte[] b, int off, int len);
+
+        /**
+         * Writes any terminating records
+         */
+        void finish(RecordWriter w);
+    }
+
+    /**
+     * Writes data at arbitrary addresses as records.  Data is split into
+     * records of at most the encoder's configured size; nothing is written
+     * for the gaps between writes.
+     */
+    public class RecordWriter implements AutoCloseable {
+
+        private final PrintWriter _out;
+        private final RecordFormatter _formatter;
+        private final char[] _line = new char[LINE_SEPARATOR.length + MAX_RECORD_CHARS];
+        private boolean _first = true;
+        private boolean _closed = false;
+        private int _pos = 0;
+        private int _sum = 0;
+        private long _records = 0;
+
+        RecordWriter(PrintWriter out, RecordFormatter formatter) {
+            _out = out;
+            _formatter = formatter;
+        }
+
+        /**
+         * Encodes data at the specified address
+         *
+         * @param address the address of the first byte
+         * @param b the data to encode
+         */
+        public void write(long address, byte[] b) {
+            write(address, b, 0, b.length);
+        }
+
+        /**
+         * Encodes data at the specified address
+         *
+         * @param address the address of the first byte
+         * @param b an array containing the data to encode
+         * @param off the index of the first byte to encode
+         * @param len the number of bytes to encode
+         */
+        public void write(long address, byte[] b, int off, int len) {
+            if (_closed) throw new IllegalStateException("RecordWriter is closed");
+            Hope.that(address).named("address").isTrue(a -> a >= 0, "address must not be negative");
+            while (len > 0) {
+                int n = Math.min(len, _formatter.limit(address, _bytesPerRecord));
+                _formatter.data(this, address, b, off, n);
+                address += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        /**
+         * @return the number of records written so far
+         */
+        public long records() {
+            return _records;
+        }
+
+        /**
+         * Writes the terminating records and flushes the underlying PrintWriter
+         */
+        @Override
+        public void close() {
+            if (_closed) return;
+            _formatter.finish(this);
+            _closed = true;
+            _out.flush();
+        }
+
+        /**
+         * Begins a record, preceding it with a line separator if it is not the first
+         * @param start the record's start (and type) characters
+         */
+        void begin(String start) {
+            _pos = 0;
+            if (!_first) {
+                System.arraycopy(LINE_SEPARATOR, 0, _line, 0, LINE_SEPARATOR.length);
+                _pos = LINE_SEPARATOR.length;
+            }
+            _first = false;
+            for (int i = 0; i < start.length(); ++i) _line[_pos++] = start.charAt(i);
+            _sum = 0;
+        }
+
+        /**
+         * Appends a byte to the current record and adds it to the record's sum
+         */
+        void put(int b) {
+            _line[_pos++] = UPPER_DIGITS[(b >> 4) & 0x0f];
+            _line[_pos++] = UPPER_DIGITS[b & 0x0f];
+            _sum += b & 0xff;
+        }
+
+        /**
+         * Appends the specified number of low-order bytes of a value, most significant first
+         */
+        void put(long v, int bytes) {
+            for (int shift = (bytes - 1) * 8; shift >= 0; shift -= 8) put((int) (v >>> shift));
+        }
+
+        void put(byte[] b, int off, int len) {
+            for (int i = off, end = off + len; i < end; ++i) put(b[i]);
+        }
+
+        /**
+         * @return the sum of the bytes put in the current record so far
+         */
+        int sum() {
+            return _sum;
+        }
+
+        /**
+         * Writes the current record
+         */
+        void end() {
+            _out.write(_line, 0, _pos);
+            ++_records;
+        }
+    }
+
+    /**
+     * Collects streamed bytes into records at consecutive addresses
+     */
+    private class RecordStrategy implements Strategy {
+
+        private final byte[] _buf = new byte[_bytesPerRecord];
+        private long _address;
+        private int _len = 0;
+        private int _limit;
+        private RecordWriter _writer;
+
+        RecordStrategy(long startAddress) {
+            _address = startAddress;
+        }
+
+        @Override
+        public void start(PrintWriter out) {
+            _writer = newRecordWriter(out);
+            _limit = _writer._formatter.limit(_address, _bytesPerRecord);
+        }
+
+        @Override
+        public void next(int b, long byteIndexInStream, PrintWriter out) {
+            _buf[_len++] = (byte) b;
+            if (_len == _limit) flush();
+        }
+
+        private void flush() {
+            if (_len == 0) return;
+            _writer.write(_address, _buf, 0, _len);
+            _address += _len;
+            _len = 0;
+            _limit = _writer._formatter.limit(_address, _bytesPerRecord);
+        }
+
+        @Override
+        public void finish(long totalBytes, PrintWriter out) {
+            flush();
+            _writer.close();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.martiansoftware.hex;
+
+//   Copyright 2016 Martian Software, Inc.
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+import java.io.IOException;
+import java.text.ParseException;
+
+/**
+ * Decodes Motorola S-records, verifying each record's checksum.  Data
+ * records (S1, S2, and S3) are decoded, record counts (S5 and S6) are checked
+ * against the number of data records that precede them, and header (S0) and
+ * termination (S7, S8, and S9) records are checked and otherwise ignored.
+ * No records may follow a termination record.
+ *
+ * When decoding to an OutputStream, gaps between records are filled with
+ * 0xff (the value of erased flash) unless another fill byte is specified.
+ * To place each record at its own position in a file instead, use
+ * `decode(Reader, SeekableByteChannel, long)`.
+ *
+ * @see SRecordEncoder
+ * @author <a href="http://martylamb.com">Marty Lamb</a>
+ */
+public class SRecordDecoder extends RecordHexDecoder {
+
+    /**
+     * Creates a new SRecordDecoder that fills gaps with 0xff
+     */
+    public SRecordDecoder() {
+        this((byte) 0xff);
+    }
+
+    /**
+     * Creates a new SRecordDecoder
+     *
+     * @param fill the byte used to fill gaps between records when decoding
+     * to an OutputStream
+     */
+    public SRecordDecoder(byte fill) {
+        super('S', true, fill);
+    }
+
+    @Override
+    RecordHandler newRecordHandler() {
+        return new SRecordHandler();
+    }
+
+    private static class SRecordHandler implements RecordHandler {
+
+        private long _dataRecords = 0;
+        private boolean _terminated = false;
+
+        @Override
+        public int length(int count) {
+            return count + 1;
+        }
+
+        @Override
+        public void record(char type, byte[] record, int len, long position, Target out) throws ParseException, IOException {
+            int sum = 0;
+            for (int i = 0; i < len - 1; ++i) sum += record[i];
+            if (((sum + record[len - 1]) & 0xff) != 0xff) throw error("bad checksum in record", position);
+            if (_terminated) throw error("record follows termination record", position);
+
+            int count = record[0] & 0xff;
+            switch (type) {
+                case '0':
+                    expectAddress(count, 2, position);
+                    break;
+                case '1':
+                case '2':
+                case '3': {
+                    int addressBytes = type - '0' + 1;
+                    expectAddress(count, addressBytes, position);
+                    out.write(address(record, addressBytes), record, 1 + addressBytes, count - addressBytes - 1, position);
+                    ++_dataRecords;
+                    break;
+                }
+                case '5':
+                case '6': {
+                    int countBytes = type - '5' + 2;
+                    if (count != countBytes + 1) throw error(String.format("byte count %d should be %d", count, countBytes + 1), position);
+                    long expected = address(record, countBytes);
+                    if (expected != _dataRecords) {
+                        throw error(String.format("record count %d does not match %d data records", expected, _dataRecords), position);
+                    }
+                    break;
+                }
+                case '7':
+                case '8':
+                case '9':
+                    expectAddress(count, 11 - (type - '0'), position);
+                    _terminated = true;
+                    break;
+                default:
+                    throw error(String.format("unknown record type 'S%c'", type), position);
+            }
+        }
+
+        private static long address(byte[] record, int bytes) {
+            long a = 0;
+            for (int i = 1; i <= bytes; ++i) a = (a << 8) | (record[i] & 0xff);
+            return a;
+        }
+
+        private static void expectAddress(int count, int addressBytes, long position) throws ParseException {
+            if (count < addressBytes + 1) {
+                throw error(String.format("byte count %d is too small for a %d-byte address", count, addressBytes), position);
+            }
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.martiansoftware.hex;
+
+//   Copyright 2016 Martian Software, Inc.
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+import com.martiansoftware.validation.Hope;
+
+/**
+ * Encodes data as Motorola S-records.  Data records use 16-, 24-, or 32-bit
+ * addresses (S1, S2, or S3 records) as configured, and are followed by a
+ * record count (S5 or S6) and the matching termination record (S9, S8,
+ * or S7).
+ *
+ * ```
+ *   S31500000000000102030405060708090A0B0C0D0E0F72
+ *   S5030001FB
+ *   S70500000000FA
+ * ```
+ *
+ * @see SRecordDecoder
+ * @author <a href="http://martylamb.com">Marty Lamb</a>
+ */
+public class SRecordEncoder extends RecordHexEncoder {
+
+    private static final int DEFAULT_BYTES_PER_RECORD = 16;
+    private static final int DEFAULT_ADDRESS_BYTES = 4;
+    private static final int MAX_COUNT = 255;
+
+    private final int _addressBytes;
+
+    /**
+     * Creates a new SRecordEncoder that encodes streams starting at address
+     * zero as S3 records with 32-bit addresses and 16 bytes per record
+     */
+    public SRecordEncoder() {
+        this(0, DEFAULT_BYTES_PER_RECORD, DEFAULT_ADDRESS_BYTES);
+    }
+
+    /**
+     * Creates a new SRecordEncoder
+     *
+     * @param startAddress the address of the first byte of each encoded stream
+     * @param bytesPerRecord the maximum number of data bytes per record
+     * @param addressBytes the size of each address in bytes: 2 for S1
+     * records, 3 for S2 records, or 4 for S3 records
+     */
+    public SRecordEncoder(long startAddress, int bytesPerRecord, int addressBytes) {
+        super(startAddress, bytesPerRecord, MAX_COUNT - 1 - checkAddressBytes(addressBytes));
+        _addressBytes = addressBytes;
+    }
+
+    private static int checkAddressBytes(int addressBytes) {
+        return Hope.that(addressBytes)
+                    .named("addressBytes")
+                    .isTrue(n -> n >= 2 && n <= 4, "addressBytes must be 2, 3, or 4")
+                    .value();
+    }
+
+    @Override
+    RecordFormatter newRecordFormatter() {
+        return new SRecordFormatter();
+    }
+
+    private class SRecordFormatter implements RecordFormatter {
+
+        private final String _dataStart = "S" + (_addressBytes - 1);
+        private final long _maxAddress = (1L << (8 * _addressBytes)) - 1;
+        private long _dataRecords = 0;
+
+        @Override
+        public void data(RecordWriter w, long address, byte[] b, int off, int len) {
+            if (address + len - 1 > _maxAddress) {
+                throw new IllegalArgumentException(String.format("address %x exceeds the %d-bit range of %s records", address + len - 1, 8 * _addressBytes, _dataStart));
+            }
+            w.begin(_dataStart);
+            w.put(_addressBytes + len + 1);
+            w.put(address, _addressBytes);
+            w.put(b, off, len);
+            w.put(~w.sum());
+            w.end();
+            ++_dataRecords;
+        }
+
+        @Override
+        public void finish(RecordWriter w) {
+            if (_dataRecords <= 0xffffff) {
+                int countBytes = (_dataRecords <= 0xffff) ? 2 : 3;
+                w.begin((countBytes == 2) ? "S5" : "S6");
+                w.put(countBytes + 1);
+                w.put(_dataRecords, countBytes);
+                w.put(~w.sum());
+                w.end();
+            }
+            w.begin("S" + (11 - _addressBytes));
+            w.put(_addressBytes + 1);
+            w.put(0, _addressBytes);
+            w.put(~w.sum());
+            w.end();
+        }
+    }
+}
@@ -45,9 +45,28 @@ public class StandardHexCodecs {
     /**
      * A `HexEncoder` that outputs 16 bytes per line, delimited by colons, and a `HexDecoder` that ignores whitespace
      * and some common hex delimiters
-     * @see DelimitedMultilineHexEncoder
-     * @see DefaultHexEncoder
+     * @see HexLayout
+     * @see DefaultHexDecoder
+     */
+    public static final HexCodec SIMPLE = new CompositeHexCodec(HexLayout.builder()
+                                                                    .byteSeparator(":")
+                                                                    .bytesPerLine(16)
+                                                                    .build()
+                                                                    .encoder(),
+                                                                new DefaultHexDecoder());
+
+    /**
+     * A `HexCodec` for Intel HEX records with 16 data bytes per record, starting at address zero
+     * @see IntelHexEncoder
+     * @see IntelHexDecoder
+     */
+    public static final HexCodec INTEL_HEX = new CompositeHexCodec(new IntelHexEncoder(), new IntelHexDecoder());
+
+    /**
+     * A `HexCodec` for Motorola S-records with 32-bit addresses and 16 data bytes per record, starting at address zero
+     * @see SRecordEncoder
+     * @see SRecordDecoder
      */
-    public static final HexCodec SIMPLE = new CompositeHexCodec(new DelimitedMultilineHexEncoder(16, ":"), new DefaultHexDecoder());
+    public static final HexCodec SREC = new CompositeHexCodec(new SRecordEncoder(), new SRecordDecoder());
     
 }
@@ -0,0 +1,244 @@
+package com.martiansoftware.hex;
+
+//   Copyright 2016 Martian Software, Inc.
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+import com.martiansoftware.validation.Hope;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+
+/**
+ * A HexEncoder that renders only the first and last bytes of its input with
+ * another HexEncoder, replacing the rest with a single line noting how many
+ * bytes were skipped.  Useful for logging payloads that may be very large.
+ *
+ * Inputs no longer than the head and tail together are encoded in full,
+ * exactly as the underlying encoder would encode them.  Byte arrays,
+ * ByteBuffers, and channels are read only where the head and tail lie, so
+ * the cost of encoding them does not depend on their size.  InputStreams
+ * must be read to the end, but hold no more than the tail in memory.
+ *
+ * When the underlying encoder is a HexDumpEncoder, the tail's addresses
+ * are its true offsets in the input, and all addresses are written with the
+ * same number of digits:
+ *
+ * ```
+ *   00000000: 89 50 4e 47 0d 0a 1a 0a   00 00 00 0d 49 48 44 52   .PNG........IHDR
+ *   ... 104857568 bytes skipped ...
+ *   06400010: 00 00 00 00 49 45 4e 44   ae 42 60 82               ....IEND.B`.
+ * ```
+ *
+ * The elided output is meant to be read, and is not accepted by any of the
+ * decoders.
+ *
+ * @author <a href="http://martylamb.com">Marty Lamb</a>
+ */
+public class TruncatingHexEncoder implements HexEncoder {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final HexEncoder _encoder;
+    private final int _head;
+    private final int _tail;
+
+    /**
+     * Creates a new TruncatingHexEncoder
+     *
+     * @param encoder the HexEncoder used to render the head and tail
+     * @param head the number of bytes to render from the start of the input
+     * @param tail the number of bytes to render from the end of the input
+     */
+    public TruncatingHexEncoder(HexEncoder encoder, int head, int tail) {
+        _encoder = Hope.that(encoder).named("encoder").isNotNull().value();
+        _head = Hope.that(head).named("head").isTrue(n -> n >= 0, "head must not be negative").value();
+        _tail = Hope.that(tail).named("tail").isTrue(n -> n >= 0, "tail must not be negative").value();
+    }
+
+    /**
+     * @return the line written in place of the skipped bytes
+     */
+    static String marker(long skipped) {
+        return String.format("... %d bytes skipped ...", skipped);
+    }
+
+    private boolean fits(long len) {
+        return len <= (long) _head + _tail;
+    }
+
+    @Override
+    public String encode(byte[] b, int offset, int len) {
+        if (fits(len)) return _encoder.encode(b, offset, len);
+        return HexEncoder.super.encode(b, offset, len);
+    }
+
+    @Override
+    public void encode(byte[] b, int offset, int len, PrintWriter out) {
+        if (fits(len)) {
+            _encoder.encode(b, offset, len, out);
+            return;
+        }
+        if (offset < 0 || len < 0 || offset + len > b.length) {
+            throw new IndexOutOfBoundsException(String.format("range [%d, %d) out of bounds for length %d", offset, offset + len, b.length));
+        }
+        try {
+            if (isDump()) {
+                long last = len - 1;
+                dump(new ByteArrayInputStream(b, offset, _head), 0, last, out);
+                elide(len, out);
+                dump(new ByteArrayInputStream(b, offset + len - _tail, _tail), len - _tail, last, out);
+            } else {
+                _encoder.encode(b, offset, _head, out);
+                elide(len, out);
+                _encoder.encode(b, offset + len - _tail, _tail, out);
+            }
+        } catch (IOException notExpected) {
+            throw new RuntimeException(notExpected);
+        }
+    }
+
+    @Override
+    public void encode(ByteBuffer in, PrintWriter out) {
+        int len = in.remaining();
+        if (fits(len)) {
+            _encoder.encode(in, out);
+            return;
+        }
+        ByteBuffer head = in.duplicate();
+        head.limit(head.position() + _head);
+        ByteBuffer tail = in.duplicate();
+        tail.position(tail.limit() - _tail);
+        in.position(in.limit());
+        try {
+            if (isDump()) {
+                long last = len - 1;
+                dump(new ByteBufferInputStream(head), 0, last, out);
+                elide(len, out);
+                dump(new ByteBufferInputStream(tail), len - _tail, last, out);
+            } else {
+                _encoder.encode(head, out);
+                elide(len, out);
+                _encoder.encode(tail, out);
+            }
+        } catch (IOException notExpected) {
+            throw new RuntimeException(notExpected);
+        }
+    }
+
+    /**
+     * Encodes the head and tail of a region of the specified channel,
+     * reading nothing in between.  When the underlying encoder is a
+     * HexDumpEncoder, lines are labeled with their absolute addresses in
+     * the channel.
+     *
+     * @param in the channel to read and encode
+     * @param offset the position in the channel of the first byte to encode
+     * @param length the maximum number of bytes to encode
+     * @param out the destination to which the encoded region will be written
+     * @throws IOException
+     */
+    @Override
+    public void encode(SeekableByteChannel in, long offset, long length, PrintWriter out) throws IOException {
+        Hope.that(offset).named("offset").isTrue(n -> n >= 0, "offset must not be negative");
+        Hope.that(length).named("length").isTrue(n -> n >= 0, "length must not be negative");
+        long len = Math.min(length, Math.max(0, in.size() - offset));
+        if (fits(len)) {
+            _encoder.encode(in, offset, len, out);
+            return;
+        }
+        long tailStart = offset + len - _tail;
+        if (isDump()) {
+            long last = offset + len - 1;
+            dump(new ChannelInputStream(in, offset, _head), offset, last, out);
+            elide(len, out);
+            dump(new ChannelInputStream(in, tailStart, _tail), tailStart, last, out);
+        } else {
+            _encoder.encode(in, offset, _head, out);
+            elide(len, out);
+            _encoder.encode(in, tailStart, _tail, out);
+        }
+    }
+
+    /**
+     * Reads the entire stream, keeping only the head and the most recent
+     * tail-length bytes, and encodes them once the stream ends.
+     */
+    @Override
+    public void encode(InputStream in, PrintWriter out) throws IOException {
+        byte[] head = new byte[_head];
+        int headLength = readFully(in, head);
+        byte[] ring = new byte[_tail];
+        byte[] discard = (_tail == 0) ? new byte[BUFFER_SIZE] : null;
+        long rest = 0;
+        int pos = 0;
+        while (headLength == _head) {
+            int n = (_tail == 0) ? in.read(discard) : in.read(ring, pos, ring.length - pos);
+            if (n < 0) break;
+            rest += n;
+            if (_tail > 0) pos = (pos + n) % ring.length;
+        }
+
+        // once the ring has wrapped, its oldest byte is at pos
+        int oldest = (rest > _tail) ? pos : 0;
+        byte[] tail = new byte[(int) Math.min(rest, _tail)];
+        int first = Math.min(tail.length, ring.length - oldest);
+        System.arraycopy(ring, oldest, tail, 0, first);
+        System.arraycopy(ring, 0, tail, first, tail.length - first);
+
+        long len = headLength + rest;
+        if (fits(len)) {
+            byte[] all = new byte[(int) len];
+            System.arraycopy(head, 0, all, 0, headLength);
+            System.arraycopy(tail, 0, all, headLength, tail.length);
+            _encoder.encode(all, 0, all.length, out);
+        } else if (isDump()) {
+            long last = len - 1;
+            dump(new ByteArrayInputStream(head), 0, last, out);
+            elide(len, out);
+            dump(new ByteArrayInputStream(tail), len - _tail, last, out);
+        } else {
+            _encoder.encode(head, 0, head.length, out);
+            elide(len, out);
+            _encoder.encode(tail, 0, tail.length, out);
+        }
+    }
+
+    private static int readFully(InputStream in, byte[] b) throws IOException {
+        int len = 0;
+        int n;
+        while (len < b.length && (n = in.read(b, len, b.length - len)) >= 0) {
+            len += n;
+        }
+        return len;
+    }
+
+    private boolean isDump() {
+        return _encoder instanceof HexDumpEncoder;
+    }
+
+    private void dump(InputStream in, long address, long lastAddress, PrintWriter out) throws IOException {
+        ((HexDumpEncoder) _encoder).encode(in, address, HexDumpEncoder.addressDigits(lastAddress), out);
+    }
+
+    private void elide(long len, PrintWriter out) {
+        if (_head > 0) out.println();
+        out.print(marker(len - _head - _tail));
+        if (_tail > 0) out.println();
+        out.flush();
+    }
+
+}
@@ -0,0 +1,123 @@
+package com.martiansoftware.hex;
+
+//   Copyright 2016 Martian Software, Inc.
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+import com.martiansoftware.validation.Hope;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+
+/**
+ * A `Flow.Processor` that decodes a stream of CharBuffers of hex into a
+ * stream of ByteBuffers, for use in reactive pipelines.  Any HexDecoder
+ * can be used, and hex may be split between CharBuffers anywhere, even
+ * within a byte.  If the hex cannot be decoded, the
+ * subscriber receives the ParseException via `onError()` and the publisher's
+ * subscription is cancelled.
+ *
+ * Work is driven by the subscriber's demand: each chunk of output (of at
+ * most `chunkSize` bytes) is produced only when requested, a new input buffer
+ * is requested from the publisher only when the previous one has been
+ * consumed, and each input buffer is decoded in slices no longer than the
+ * chunk size.  Memory use is therefore bounded no matter how far the
+ * publisher outpaces the subscriber, except that a collapsed run in a hex
+ * dump is held in full once its closing line has been read, and that a
+ * decoder without its own incremental decoding (see
+ * `HexDecoder.newIncrementalDecoder()`) holds all input until the publisher
+ * completes.  Input buffers are not modified.
+ *
+ * A subscriber that hands each ByteBuffer back via `recycle()` once it has
+ * read it lets the processor reuse it, so that a long-lived stream does not
+ * allocate for each chunk of output.
+ *
+ * This class requires Java 9 or later, unlike the rest of the library.
+ *
+ * ```
+ *   HexDecodingProcessor bin = new HexDecodingProcessor(new DefaultHexDecoder());
+ *   publisher.subscribe(bin);
+ *   bin.subscribe(subscriber);
+ * ```
+ *
+ * @author <a href="http://martylamb.com">Marty Lamb</a>
+ */
+public class HexDecodingProcessor extends HexFlowProcessor<CharBuffer, ByteBuffer> {
+
+    private final IncrementalHexDecoder _decoder;
+    private CharBuffer _in = null;
+    private int _pos = 0;
+    private char[] _scratch = null;
+    private boolean _finishing = false;
+
+    /**
+     * Creates a new HexDecodingProcessor that produces chunks of up to 8192 bytes
+     * @param decoder the decoder for the format of the hex
+     */
+    public HexDecodingProcessor(HexDecoder decoder) {
+        this(decoder, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Creates a new HexDecodingProcessor
+     * @param decoder the decoder for the format of the hex
+     * @param chunkSize the maximum number of bytes in each ByteBuffer passed
+     * to the subscriber
+     */
+    public HexDecodingProcessor(HexDecoder decoder, int chunkSize) {
+        super(chunkSize);
+        _decoder = Hope.that(decoder).named("decoder").isNotNull().value().newIncrementalDecoder();
+    }
+
+    @Override
+    ByteBuffer produce(boolean upstreamDone) throws Exception {
+        while (!outputFull()) {
+            if (_decoder.hasPending()) {
+                _decoder.drain(output());
+            } else if (_in == null && input() != null) {
+                _in = input();
+                _pos = _in.position();
+            } else if (_in != null && _pos < _in.limit()) {
+                int n = Math.min(_in.limit() - _pos, _chunkSize);
+                if (_in.hasArray()) {
+                    _decoder.feed(_in.array(), _in.arrayOffset() + _pos, n, output());
+                } else {
+                    // copied by absolute index, leaving the input's position alone
+                    if (_scratch == null) _scratch = new char[_chunkSize];
+                    for (int i = 0; i < n; ++i) _scratch[i] = _in.get(_pos + i);
+                    _decoder.feed(_scratch, 0, n, output());
+                }
+                _pos += n;
+            } else if (_in != null) {
+                _in = null;
+                inputConsumed();
+            } else if (upstreamDone && !_finishing) {
+                _finishing = true;
+                _decoder.finish(output());
+            } else {
+                break;
+            }
+        }
+        return takeOutput();
+    }
+
+    @Override
+    ByteBuffer allocate(int capacity) {
+        return ByteBuffer.allocate(capacity);
+    }
+
+    @Override
+    boolean finished() {
+        return _finishing && !_decoder.hasPending();
+    }
+
+}
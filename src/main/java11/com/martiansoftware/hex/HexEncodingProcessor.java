@@ -0,0 +1,122 @@
+package com.martiansoftware.hex;
+
+//   Copyright 2016 Martian Software, Inc.
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+import com.martiansoftware.validation.Hope;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+
+/**
+ * A `Flow.Processor` that encodes a stream of ByteBuffers into a stream of
+ * CharBuffers of hex, for use in reactive pipelines.  Any HexEncoder can be
+ * used; output is identical to encoding the concatenated input at once.
+ *
+ * Work is driven by the subscriber's demand: each chunk of output (of at
+ * most `chunkSize` characters) is produced only when requested, a new input
+ * buffer is requested from the publisher only when the previous one has been
+ * consumed, and each input buffer is encoded in slices small enough that
+ * little encoded output is ever held.  Memory use is therefore bounded no
+ * matter how far the publisher outpaces the subscriber.  Input buffers are
+ * not modified.
+ *
+ * A subscriber that hands each CharBuffer back via `recycle()` once it has
+ * read it lets the processor reuse it, so that a long-lived stream does not
+ * allocate for each chunk of output.
+ *
+ * This class requires Java 9 or later, unlike the rest of the library.
+ *
+ * ```
+ *   HexEncodingProcessor hex = new HexEncodingProcessor(new HexDumpEncoder());
+ *   publisher.subscribe(hex);
+ *   hex.subscribe(subscriber);
+ * ```
+ *
+ * @author <a href="http://martylamb.com">Marty Lamb</a>
+ */
+public class HexEncodingProcessor extends HexFlowProcessor<ByteBuffer, CharBuffer> {
+
+    /** Bytes per slice, relative to the chunk size, leaving room for the widest formats */
+    private static final int CHARS_PER_SLICE_BYTE = 8;
+
+    private final IncrementalHexEncoder _encoder;
+    private final int _sliceSize;
+    private ByteBuffer _in = null;
+    private int _pos = 0;
+    private byte[] _scratch = null;
+    private boolean _finishing = false;
+
+    /**
+     * Creates a new HexEncodingProcessor that produces chunks of up to 8192 characters
+     * @param encoder the encoder whose format will be produced
+     */
+    public HexEncodingProcessor(HexEncoder encoder) {
+        this(encoder, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Creates a new HexEncodingProcessor
+     * @param encoder the encoder whose format will be produced
+     * @param chunkSize the maximum number of characters in each CharBuffer
+     * passed to the subscriber
+     */
+    public HexEncodingProcessor(HexEncoder encoder, int chunkSize) {
+        super(chunkSize);
+        _encoder = Hope.that(encoder).named("encoder").isNotNull().value().newIncrementalEncoder();
+        _sliceSize = Math.max(1, chunkSize / CHARS_PER_SLICE_BYTE);
+    }
+
+    @Override
+    CharBuffer produce(boolean upstreamDone) {
+        while (!outputFull()) {
+            if (_encoder.hasPending()) {
+                _encoder.drain(output());
+            } else if (_in == null && input() != null) {
+                _in = input();
+                _pos = _in.position();
+            } else if (_in != null && _pos < _in.limit()) {
+                int n = Math.min(_in.limit() - _pos, _sliceSize);
+                if (_in.hasArray()) {
+                    _encoder.feed(_in.array(), _in.arrayOffset() + _pos, n, output());
+                } else {
+                    // copied by absolute index, leaving the input's position alone
+                    if (_scratch == null) _scratch = new byte[_sliceSize];
+                    for (int i = 0; i < n; ++i) _scratch[i] = _in.get(_pos + i);
+                    _encoder.feed(_scratch, 0, n, output());
+                }
+                _pos += n;
+            } else if (_in != null) {
+                _in = null;
+                inputConsumed();
+            } else if (upstreamDone && !_finishing) {
+                _finishing = true;
+                _encoder.finish(output());
+            } else {
+                break;
+            }
+        }
+        return takeOutput();
+    }
+
+    @Override
+    CharBuffer allocate(int capacity) {
+        return CharBuffer.allocate(capacity);
+    }
+
+    @Override
+    boolean finished() {
+        return _finishing && !_encoder.hasPending();
+    }
+
+}
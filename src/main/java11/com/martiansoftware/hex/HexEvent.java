@@ -0,0 +1,98 @@
+package com.martiansoftware.hex;
+
+//   Copyright 2016 Martian Software, Inc.
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A JDK Flight Recorder event describing a single large encode or decode
+ * operation.  This class is compiled separately from the rest of the
+ * library, which reaches it only through HexEvents.Recorder and only once
+ * Flight Recorder has been started, so the library still runs on JVMs
+ * without the JFR API and does not load it when nothing is recording.
+ *
+ * @author <a href="http://martylamb.com">Marty Lamb</a>
+ */
+@Name("com.martiansoftware.hex.Operation")
+@Label("Hex Operation")
+@Category({"Martian Software", "Hex"})
+@Description("A hex encode or decode of at least the configured number of bytes")
+class HexEvent extends Event {
+
+    private static final EventType TYPE = EventType.getEventType(HexEvent.class);
+
+    @Label("Codec")
+    @Description("The class of the encoder or decoder")
+    Class<?> codec;
+
+    @Label("Direction")
+    @Description("encode or decode")
+    String direction;
+
+    @Label("Bytes")
+    @Description("The number of binary bytes read or written")
+    @DataAmount
+    long bytes;
+
+    @Label("Characters")
+    @Description("The number of hex characters read or written")
+    long chars;
+
+    @Label("Parse Failed")
+    @Description("Whether the operation ended in a ParseException")
+    boolean failed;
+
+    /**
+     * @return a new event with its timing started, or null if the event
+     * is not enabled in any running recording
+     */
+    static HexEvent start() {
+        if (!TYPE.isEnabled()) return null;
+        HexEvent e = new HexEvent();
+        e.begin();
+        return e;
+    }
+
+    /**
+     * Loaded by name by HexEvents
+     */
+    static class Recorder implements HexEvents.Recorder {
+
+        @Override
+        public Object start() {
+            return HexEvent.start();
+        }
+
+        @Override
+        public void end(Object event, Class<?> codec, String direction, long bytes, long chars, boolean failed) {
+            HexEvent e = (HexEvent) event;
+            e.end();
+            if (!e.shouldCommit()) return;
+            e.codec = codec;
+            e.direction = direction;
+            e.bytes = bytes;
+            e.chars = chars;
+            e.failed = failed;
+            e.commit();
+        }
+    }
+
+}
@@ -0,0 +1,287 @@
+package com.martiansoftware.hex;
+
+//   Copyright 2016 Martian Software, Inc.
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+import com.martiansoftware.validation.Hope;
+import java.nio.Buffer;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The subscription and demand handling shared by HexEncodingProcessor and
+ * HexDecodingProcessor.  Subclasses convert buffered input into chunks of
+ * output in `produce()`, which is called only while the subscriber has
+ * outstanding demand.  A single item is requested from upstream at a time,
+ * and only once `produce()` has consumed the previous one and needs more, so
+ * at most one input chunk (plus whatever output the incremental codec holds)
+ * is buffered regardless of how fast the publisher is.
+ *
+ * Signals may arrive on any thread.  All work is done in `drain()`, which is
+ * entered by one thread at a time; a thread that finds it busy leaves a
+ * note for the thread inside to loop again.  Nothing is signalled to the
+ * subscriber until its `onSubscribe()` has returned.
+ *
+ * Subclasses write output to the buffer returned by `output()`, which is
+ * taken from the buffers returned by the subscriber via `recycle()` when
+ * there are any and allocated otherwise, and is kept for the next call if
+ * `produce()` writes nothing to it.
+ *
+ * @author <a href="http://martylamb.com">Marty Lamb</a>
+ */
+abstract class HexFlowProcessor<T extends Buffer, R extends Buffer> implements Flow.Processor<T, R>, Flow.Subscription {
+
+    /** The default maximum number of bytes or characters in each output chunk */
+    static final int DEFAULT_CHUNK_SIZE = 8192;
+
+    /** The maximum number of recycled buffers held for reuse */
+    private static final int RECYCLED_BUFFERS = 4;
+
+    private final AtomicInteger _wip = new AtomicInteger();
+    private final AtomicLong _requested = new AtomicLong();
+    private volatile Flow.Subscription _upstream = null;
+    private final AtomicReference<Flow.Subscriber<? super R>> _downstream = new AtomicReference<>();
+    private volatile boolean _downstreamReady = false;
+    private volatile T _input = null;
+    private volatile boolean _upstreamDone = false;
+    private volatile Throwable _error = null;
+    private volatile boolean _cancelled = false;
+    private final ArrayBlockingQueue<R> _recycled = new ArrayBlockingQueue<>(RECYCLED_BUFFERS);
+
+    // accessed only within drain()
+    private boolean _awaitingInput = false;
+    private boolean _terminated = false;
+    private R _out = null;
+
+    /** The maximum number of bytes or characters in each output chunk */
+    final int _chunkSize;
+
+    HexFlowProcessor(int chunkSize) {
+        _chunkSize = Hope.that(chunkSize).named("chunkSize").isTrue(n -> n > 0, "chunkSize must be greater than zero").value();
+    }
+
+    /**
+     * Hands a buffer received from this processor back to it once the
+     * subscriber has finished reading it, so that it is refilled rather than
+     * a new buffer allocated for later output.  This is optional: buffers that
+     * are not recycled are simply left to the garbage collector.  A buffer
+     * must be recycled at most once, and must not be used by the subscriber
+     * afterwards.  Only a few recycled buffers are held; any others are
+     * dropped.  May be called from any thread.
+     *
+     * @param buffer a buffer passed to the subscriber's `onNext()`
+     */
+    public void recycle(R buffer) {
+        Hope.that(buffer)
+            .named("buffer")
+            .isNotNull()
+            .isTrue(b -> b.capacity() == _chunkSize && !b.isReadOnly(), "buffer was not produced by this processor");
+        _recycled.offer(buffer);
+    }
+
+    /**
+     * Produces the next chunk of output from the current input, writing it
+     * to `output()` and returning it via `takeOutput()`
+     *
+     * @param upstreamDone true if the publisher has completed, so no more
+     * input will arrive once the current input has been consumed
+     * @return the next chunk of output, ready to be read, or null if more
+     * input is needed or all output has been produced
+     * @throws Exception if the input cannot be converted
+     */
+    abstract R produce(boolean upstreamDone) throws Exception;
+
+    /**
+     * @param capacity the capacity of the new buffer
+     * @return a new, empty output buffer
+     */
+    abstract R allocate(int capacity);
+
+    /**
+     * @return the buffer to which the next chunk of output is written,
+     * obtained only when first needed
+     */
+    final R output() {
+        if (_out == null) {
+            _out = _recycled.poll();
+            if (_out == null) {
+                _out = allocate(_chunkSize);
+            } else {
+                _out.clear();
+            }
+        }
+        return _out;
+    }
+
+    /**
+     * @return true if the current output buffer has no room left
+     */
+    final boolean outputFull() {
+        return _out != null && !_out.hasRemaining();
+    }
+
+    /**
+     * @return the output written so far, ready to be read, or null if there
+     * is none, in which case the output buffer is kept for the next chunk
+     */
+    final R takeOutput() {
+        R out = _out;
+        if (out == null || out.position() == 0) return null;
+        _out = null;
+        out.flip();
+        return out;
+    }
+
+    /**
+     * @return true once all output has been produced and delivered
+     */
+    abstract boolean finished();
+
+    /**
+     * @return the current input chunk, or null if none has arrived since the
+     * previous one was consumed
+     */
+    final T input() {
+        return _input;
+    }
+
+    /**
+     * Marks the current input chunk as consumed, so that another is requested
+     */
+    final void inputConsumed() {
+        _input = null;
+        _awaitingInput = false;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super R> subscriber) {
+        Objects.requireNonNull(subscriber, "subscriber");   // as required by the Flow specification
+        if (_downstream.compareAndSet(null, subscriber)) {
+            subscriber.onSubscribe(this);
+            _downstreamReady = true;
+            drain();
+            return;
+        }
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override public void request(long n) {}
+            @Override public void cancel() {}
+        });
+        subscriber.onError(new IllegalStateException("this processor already has a subscriber"));
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        if (_upstream != null || _cancelled) {
+            subscription.cancel();
+            return;
+        }
+        _upstream = subscription;
+        drain();
+    }
+
+    @Override
+    public void onNext(T item) {
+        _input = Objects.requireNonNull(item, "item");
+        drain();
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        _error = t;
+        drain();
+    }
+
+    @Override
+    public void onComplete() {
+        _upstreamDone = true;
+        drain();
+    }
+
+    @Override
+    public void request(long n) {
+        if (n <= 0) {
+            fail(new IllegalArgumentException("non-positive request: " + n));
+        } else {
+            _requested.accumulateAndGet(n, (a, b) -> (a + b < 0) ? Long.MAX_VALUE : a + b);
+        }
+        drain();
+    }
+
+    @Override
+    public void cancel() {
+        _cancelled = true;
+        Flow.Subscription upstream = _upstream;
+        if (upstream != null) upstream.cancel();
+        drain();
+    }
+
+    private void fail(Throwable t) {
+        if (_error == null) _error = t;
+        Flow.Subscription upstream = _upstream;
+        if (upstream != null) upstream.cancel();
+    }
+
+    private void drain() {
+        if (_wip.getAndIncrement() != 0) return;
+        int missed = 1;
+        do {
+            if (_cancelled) {
+                _input = null;
+            } else if (_downstreamReady && (_upstream != null || _error != null)) {
+                emit(_downstream.get());
+            }
+            missed = _wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private void emit(Flow.Subscriber<? super R> downstream) {
+        while (!_terminated && !_cancelled) {
+            Throwable error = _error;
+            if (error != null) {
+                _terminated = true;
+                _input = null;
+                downstream.onError(error);
+                return;
+            }
+            long requested = _requested.get();
+            if (requested == 0) return;
+
+            boolean upstreamDone = _upstreamDone;
+            R out;
+            try {
+                out = produce(upstreamDone);
+            } catch (Exception e) {
+                fail(e);
+                continue;
+            }
+            if (out != null) {
+                if (requested != Long.MAX_VALUE) _requested.decrementAndGet();
+                downstream.onNext(out);
+            } else if (finished()) {
+                _terminated = true;
+                downstream.onComplete();
+            } else {
+                if (!_awaitingInput && !upstreamDone) {
+                    _awaitingInput = true;
+                    _upstream.request(1);
+                }
+                return;
+            }
+        }
+    }
+}
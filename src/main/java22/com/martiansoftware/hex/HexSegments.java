@@ -0,0 +1,196 @@
+package com.martiansoftware.hex;
+
+//   Copyright 2016 Martian Software, Inc.
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+import com.martiansoftware.validation.Hope;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.text.ParseException;
+import java.util.Objects;
+
+/**
+ * Encodes and decodes hex held in MemorySegments, such as memory-mapped
+ * files or memory allocated outside the Java heap, without first copying
+ * them onto the heap.  Offsets and lengths are `long`s, so regions beyond
+ * 2GB can be processed, and segments are read and written a block at a
+ * time, so heap usage does not depend on their size.  Hex held in a segment
+ * is stored as single-byte (ASCII or ISO-8859-1) characters.
+ *
+ * Any HexEncoder or HexDecoder can be used, via its incremental encoder or
+ * decoder; output is identical to encoding or decoding the whole region at
+ * once.
+ *
+ * This class requires Java 22 or later, unlike the rest of the library.
+ *
+ * ```
+ *   try (Arena arena = Arena.ofConfined(); FileChannel c = FileChannel.open(path)) {
+ *       MemorySegment data = c.map(FileChannel.MapMode.READ_ONLY, 0, c.size(), arena);
+ *       HexSegments.encode(new HexDumpEncoder(), data, 0, data.byteSize(), out);
+ *   }
+ * ```
+ *
+ * @author <a href="http://martylamb.com">Marty Lamb</a>
+ */
+public final class HexSegments {
+
+    /** The number of bytes read from or written to a segment at a time */
+    private static final int BLOCK_SIZE = 64 * 1024;
+
+    private HexSegments() {}
+
+    /**
+     * Receives encoded characters a block at a time
+     */
+    private interface CharSink {
+        void write(char[] c, int len);
+    }
+
+    /**
+     * Writes encoded characters to a segment as single bytes
+     */
+    private static class SegmentSink implements CharSink {
+        private final MemorySegment _out;
+        private final byte[] _block = new byte[BLOCK_SIZE];
+        private long _pos;
+
+        SegmentSink(MemorySegment out, long offset) {
+            _out = out;
+            _pos = offset;
+        }
+
+        @Override
+        public void write(char[] c, int len) {
+            for (int i = 0; i < len; ++i) _block[i] = (byte) (c[i] <= 0xff ? c[i] : '?');
+            MemorySegment.copy(_block, 0, _out, ValueLayout.JAVA_BYTE, _pos, len);
+            _pos += len;
+        }
+    }
+
+    /**
+     * Encodes a region of a MemorySegment to a PrintWriter
+     * @param encoder the encoder whose format will be produced
+     * @param in the segment containing the bytes to encode
+     * @param offset the offset in the segment of the first byte to encode
+     * @param length the number of bytes to encode
+     * @param out the destination to which the encoded bytes will be written
+     * @throws IndexOutOfBoundsException if the region is not within the segment
+     */
+    public static void encode(HexEncoder encoder, MemorySegment in, long offset, long length, PrintWriter out) {
+        Hope.that(out).named("out").isNotNull();
+        encode(encoder, in, offset, length, (c, len) -> out.write(c, 0, len));
+    }
+
+    /**
+     * Encodes a region of a MemorySegment to another MemorySegment, as
+     * single-byte characters.  Characters outside ISO-8859-1, which only a
+     * custom layout could produce, are written as '?'.
+     * @param encoder the encoder whose format will be produced
+     * @param in the segment containing the bytes to encode
+     * @param offset the offset in the segment of the first byte to encode
+     * @param length the number of bytes to encode
+     * @param out the segment to which the hex will be written
+     * @param outOffset the offset in the output segment at which to write
+     * the hex
+     * @return the number of characters written
+     * @throws IndexOutOfBoundsException if the region is not within the
+     * input segment, or if the hex does not fit in the output segment
+     */
+    public static long encode(HexEncoder encoder, MemorySegment in, long offset, long length, MemorySegment out, long outOffset) {
+        Hope.that(out).named("out").isNotNull();
+        Objects.checkFromIndexSize(outOffset, 0, out.byteSize());
+        SegmentSink sink = new SegmentSink(out, outOffset);
+        encode(encoder, in, offset, length, sink);
+        return sink._pos - outOffset;
+    }
+
+    private static void encode(HexEncoder encoder, MemorySegment in, long offset, long length, CharSink sink) {
+        Hope.that(encoder).named("encoder").isNotNull();
+        Hope.that(in).named("in").isNotNull();
+        Objects.checkFromIndexSize(offset, length, in.byteSize());
+        IncrementalHexEncoder inc = encoder.newIncrementalEncoder();
+        byte[] block = new byte[BLOCK_SIZE];
+        CharBuffer chars = CharBuffer.allocate(BLOCK_SIZE);
+        for (long pos = offset, end = offset + length; pos < end; ) {
+            int n = (int) Math.min(end - pos, BLOCK_SIZE);
+            MemorySegment.copy(in, ValueLayout.JAVA_BYTE, pos, block, 0, n);
+            inc.feed(block, 0, n, chars);
+            drain(inc, chars, sink);
+            pos += n;
+        }
+        inc.finish(chars);
+        drain(inc, chars, sink);
+    }
+
+    private static void drain(IncrementalHexEncoder inc, CharBuffer chars, CharSink sink) {
+        while (true) {
+            sink.write(chars.array(), chars.position());
+            chars.clear();
+            if (!inc.hasPending()) return;
+            inc.drain(chars);
+        }
+    }
+
+    /**
+     * Decodes hex held in a region of a MemorySegment as single-byte
+     * characters to another MemorySegment.  Error positions are relative to
+     * the start of the region.
+     * @param decoder the decoder for the format of the hex
+     * @param in the segment containing the hex to decode
+     * @param offset the offset in the segment of the first character to decode
+     * @param length the number of characters to decode
+     * @param out the segment to which the decoded bytes will be written
+     * @param outOffset the offset in the output segment at which to write
+     * the decoded bytes
+     * @return the number of bytes written
+     * @throws ParseException
+     * @throws IOException
+     * @throws IndexOutOfBoundsException if the region is not within the
+     * input segment, or if the decoded bytes do not fit in the output segment
+     */
+    public static long decode(HexDecoder decoder, MemorySegment in, long offset, long length, MemorySegment out, long outOffset) throws ParseException, IOException {
+        Hope.that(decoder).named("decoder").isNotNull();
+        Hope.that(in).named("in").isNotNull();
+        Hope.that(out).named("out").isNotNull();
+        Objects.checkFromIndexSize(offset, length, in.byteSize());
+        Objects.checkFromIndexSize(outOffset, 0, out.byteSize());
+        IncrementalHexDecoder inc = decoder.newIncrementalDecoder();
+        char[] block = new char[BLOCK_SIZE];
+        ByteBuffer bytes = ByteBuffer.allocate(BLOCK_SIZE);
+        long outPos = outOffset;
+        for (long pos = offset, end = offset + length; pos < end; ) {
+            int n = (int) Math.min(end - pos, BLOCK_SIZE);
+            for (int i = 0; i < n; ++i) block[i] = (char) (in.get(ValueLayout.JAVA_BYTE, pos + i) & 0xff);
+            inc.feed(block, 0, n, bytes);
+            outPos = drain(inc, bytes, out, outPos);
+            pos += n;
+        }
+        inc.finish(bytes);
+        return drain(inc, bytes, out, outPos) - outOffset;
+    }
+
+    private static long drain(IncrementalHexDecoder inc, ByteBuffer bytes, MemorySegment out, long pos) {
+        while (true) {
+            MemorySegment.copy(bytes.array(), 0, out, ValueLayout.JAVA_BYTE, pos, bytes.position());
+            pos += bytes.position();
+            bytes.clear();
+            if (!inc.hasPending()) return pos;
+            inc.drain(bytes);
+        }
+    }
+}
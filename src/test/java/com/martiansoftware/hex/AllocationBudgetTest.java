@@ -0,0 +1,207 @@
+package com.martiansoftware.hex;
+
+//   Copyright 2016 Martian Software, Inc.
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import junit.framework.TestCase;
+
+/**
+ * Guards the allocation behavior of the hot encode and decode paths, as
+ * reported by the JVM's per-thread allocated-bytes counter.  Each path is
+ * warmed up first so that the measurements reflect compiled code.  Skipped
+ * on JVMs that do not support the counter.
+ */
+public class AllocationBudgetTest extends TestCase {
+
+    private static final int WARMUP = 20000;
+    private static final int CALLS = 10000;
+    private static final int STREAM_WARMUP = 20;
+    private static final int STREAM_CALLS = 5;
+    private static final int STREAM_SIZE = 1 << 20;
+
+    // fixed per-call allowance for stream paths: buffers, strategies, wrappers
+    private static final long PER_CALL_BUDGET = 64 * 1024;
+    private static final long PER_LINE_BUDGET = 8;
+    
+    private static final com.sun.management.ThreadMXBean THREADS = threadBean();
+
+    private interface Task {
+        void run() throws Exception;
+    }
+
+    private static com.sun.management.ThreadMXBean threadBean() {
+        try {
+            java.lang.management.ThreadMXBean t = ManagementFactory.getThreadMXBean();
+            if (!(t instanceof com.sun.management.ThreadMXBean)) return null;
+            com.sun.management.ThreadMXBean s = (com.sun.management.ThreadMXBean) t;
+            if (!s.isThreadAllocatedMemorySupported()) return null;
+            if (!s.isThreadAllocatedMemoryEnabled()) s.setThreadAllocatedMemoryEnabled(true);
+            return s;
+        } catch (LinkageError | UnsupportedOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the average number of bytes allocated by the current thread
+     * per run of the task, after warming it up
+     */
+    private static long allocatedPerCall(int warmup, int calls, Task t) throws Exception {
+        for (int i = 0; i < warmup; ++i) t.run();
+        long id = Thread.currentThread().getId();
+        long before = THREADS.getThreadAllocatedBytes(id);
+        for (int i = 0; i < calls; ++i) t.run();
+        return (THREADS.getThreadAllocatedBytes(id) - before) / calls;
+    }
+
+    private static void assertBudget(String what, long budget, long allocated) {
+        assertTrue(String.format("%s allocated %d bytes per call, budget is %d", what, allocated, budget), allocated <= budget);
+    }
+
+    private static byte[] randomBytes(int len) {
+        byte[] b = new byte[len];
+        new Random(42).nextBytes(b);
+        return b;
+    }
+
+    private static PrintWriter nullWriter() {
+        return new PrintWriter(new Writer() {
+            @Override public void write(char[] cbuf, int off, int len) {}
+            @Override public void write(int c) {}
+            @Override public void write(String str, int off, int len) {}
+            @Override public void flush() {}
+            @Override public void close() {}
+        });
+    }
+
+    private static OutputStream nullStream() {
+        return new OutputStream() {
+            @Override public void write(int b) {}
+            @Override public void write(byte[] b, int off, int len) {}
+        };
+    }
+
+    /**
+     * @return an upper bound on the size of a String of the specified number
+     * of Latin-1 characters, with or without compact strings
+     */
+    private static long stringSize(int chars) {
+        return 2L * chars + 64;
+    }
+
+    public void testEncodeAllocatesOnlyResult() throws Exception {
+        if (THREADS == null) return;
+        HexEncoder e = new DefaultHexEncoder();
+        for (int len : new int[] { 1, 16, 64, 1024 }) {
+            byte[] b = randomBytes(len);
+            assertBudget("Hex.encode(byte[" + len + "])", stringSize(len * 2), allocatedPerCall(WARMUP, CALLS, () -> Hex.encode(b)));
+            assertBudget("DefaultHexEncoder.encode(byte[" + len + "], 0, " + len + ")", stringSize(len * 2),
+                            allocatedPerCall(WARMUP, CALLS, () -> e.encode(b, 0, len)));
+        }
+    }
+
+    public void testDecodeIntoArrayAllocatesNothing() throws Exception {
+        if (THREADS == null) return;
+        for (HexDecoder d : new HexDecoder[] { new DefaultHexDecoder(), new StrictHexDecoder() }) {
+            for (int len : new int[] { 1, 16, 1024 }) {
+                byte[] b = randomBytes(len);
+                char[] hex = Hex.encode(b).toCharArray();
+                byte[] out = new byte[len];
+                assertBudget(d.getClass().getSimpleName() + ".decode(char[" + hex.length + "], ..., byte[], 0)", 0,
+                                allocatedPerCall(WARMUP, CALLS, () -> d.decode(hex, 0, hex.length, out, 0)));
+            }
+        }
+    }
+
+    public void testBatchDecodeAllocatesPerBatchNotPerValue() throws Exception {
+        if (THREADS == null) return;
+        List<String> hex = new ArrayList<>();
+        for (int i = 0; i < 10000; ++i) hex.add(Hex.encode(randomBytes(16)));
+        // the arena, the index, and a scratch copy of the longest value
+        long budget = 10000 * 16 + 4 * 10001 + 2 * 32 + 1024;
+        assertBudget("Hex.decodeBatch(10000 values)", budget, allocatedPerCall(50, 20, () -> Hex.decodeBatch(hex)));
+    }
+
+    public void testDecodeStringAllocationIsBounded() throws Exception {
+        if (THREADS == null) return;
+        for (HexDecoder d : new HexDecoder[] { new DefaultHexDecoder(), new StrictHexDecoder() }) {
+            for (int len : new int[] { 1, 16, 1024 }) {
+                String hex = Hex.encode(randomBytes(len));
+                // the result, a scratch copy of the input, and the decoder's own state
+                long budget = len + 2L * hex.length() + 512;
+                assertBudget(d.getClass().getSimpleName() + ".decode(String[" + hex.length() + "])", budget,
+                                allocatedPerCall(WARMUP, CALLS, () -> d.decode(hex)));
+            }
+        }
+    }
+
+    public void testIncrementalEncodingAllocatesNothingPerChunk() throws Exception {
+        if (THREADS == null) return;
+        byte[] b = randomBytes(1024);
+        CharBuffer out = CharBuffer.allocate(4096);   // room for every chunk, so nothing is held
+        for (HexEncoder e : new HexEncoder[] { new DefaultHexEncoder(), new DelimitedMultilineHexEncoder(32, " ") }) {
+            IncrementalHexEncoder inc = e.newIncrementalEncoder();
+            assertBudget(e.getClass().getSimpleName() + " IncrementalHexEncoder.feed()", 0,
+                            allocatedPerCall(WARMUP, CALLS, () -> {
+                                out.clear();
+                                inc.feed(b, 0, b.length, out);
+                            }));
+            assertFalse(inc.hasPending());
+        }
+    }
+
+    public void testStreamEncodersAllocatePerCallNotPerByte() throws Exception {
+        if (THREADS == null) return;
+        byte[] b = randomBytes(STREAM_SIZE);
+        PrintWriter out = nullWriter();
+        HexEncoder[] encoders = { new DefaultHexEncoder(), new DelimitedMultilineHexEncoder(32, " "), new HexDumpEncoder(false) };
+        for (HexEncoder e : encoders) {
+            long budget = PER_CALL_BUDGET;
+            if (e instanceof HexDumpEncoder) budget += (STREAM_SIZE / 16) * PER_LINE_BUDGET;
+            assertBudget(e.getClass().getSimpleName() + ".encode(InputStream, PrintWriter)", budget,
+                            allocatedPerCall(STREAM_WARMUP, STREAM_CALLS, () -> e.encode(new ByteArrayInputStream(b), out)));
+        }
+    }
+
+    public void testStreamDecodersAllocatePerCallNotPerByte() throws Exception {
+        if (THREADS == null) return;
+        byte[] b = randomBytes(STREAM_SIZE);
+        OutputStream out = nullStream();
+        HexCodec[] codecs = { StandardHexCodecs.DEFAULT, StandardHexCodecs.STRICT, StandardHexCodecs.HEXDUMP };
+        String[] names = { "DefaultHexDecoder", "StrictHexDecoder", "HexDumpDecoder" };
+        for (int i = 0; i < codecs.length; ++i) {
+            HexCodec c = codecs[i];
+            StringWriter w = new StringWriter();
+            try (PrintWriter pw = new PrintWriter(w)) {
+                c.encode(new ByteArrayInputStream(b), pw);
+            }
+            String hex = w.toString();
+            long budget = PER_CALL_BUDGET;
+            if (c == StandardHexCodecs.HEXDUMP) budget += (STREAM_SIZE / 16) * PER_LINE_BUDGET;
+            assertBudget(names[i] + ".decode(Reader, OutputStream)", budget,
+                            allocatedPerCall(STREAM_WARMUP, STREAM_CALLS, () -> c.decode(new StringReader(hex), out)));
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.martiansoftware.hex;
+
+//   Copyright 2016 Martian Software, Inc.
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+import com.martiansoftware.hex.AutoDetectingHexDecoder.Format;
+import java.io.ByteArrayOutputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.Random;
+import junit.framework.TestCase;
+
+/**
+ * Tests AutoDetectingHexDecoder
+ */
+public class AutoDetectingHexDecoderTest extends TestCase {
+
+    private static byte[] bytes(int len) {
+        byte[] b = new byte[len];
+        new Random(44).nextBytes(b);
+        return b;
+    }
+
+    public void testDetect() {
+        byte[] b = bytes(100);
+        assertEquals(Format.STRICT, AutoDetectingHexDecoder.detect(Hex.encode(b)));
+        assertEquals(Format.DEFAULT, AutoDetectingHexDecoder.detect("de ad be ef"));
+        assertEquals(Format.DEFAULT, AutoDetectingHexDecoder.detect("dead:beef"));
+        assertEquals(Format.DEFAULT, AutoDetectingHexDecoder.detect(""));
+        assertEquals(Format.SIMPLE, AutoDetectingHexDecoder.detect(StandardHexCodecs.SIMPLE.encode(b)));
+        assertEquals(Format.SIMPLE, AutoDetectingHexDecoder.detect("de:ad:be:ef"));
+        assertEquals(Format.HEXDUMP, AutoDetectingHexDecoder.detect(StandardHexCodecs.HEXDUMP.encode(b)));
+        assertEquals(Format.HEXDUMP, AutoDetectingHexDecoder.detect("\n\n  " + StandardHexCodecs.HEXDUMP.encode(b)));
+        assertEquals(Format.INTEL_HEX, AutoDetectingHexDecoder.detect(StandardHexCodecs.INTEL_HEX.encode(b)));
+        assertEquals(Format.SREC, AutoDetectingHexDecoder.detect(StandardHexCodecs.SREC.encode(b)));
+    }
+
+    public void testDecode() throws Exception {
+        HexCodec[] codecs = { StandardHexCodecs.DEFAULT, StandardHexCodecs.SIMPLE, StandardHexCodecs.HEXDUMP,
+                              StandardHexCodecs.INTEL_HEX, StandardHexCodecs.SREC,
+                              new CompositeHexCodec(new DelimitedMultilineHexEncoder(8, " "), new DefaultHexDecoder()) };
+        AutoDetectingHexDecoder d = new AutoDetectingHexDecoder();
+        for (int len : new int[] { 0, 1, 16, 17, 1000, 10000 }) {
+            byte[] b = bytes(len);
+            for (HexCodec c : codecs) {
+                String s = c.encode(b);
+                assertTrue(Arrays.equals(b, d.decode(s)));
+                assertTrue(Arrays.equals(b, d.decode("xx" + s + "yy", 2, s.length() + 2)));
+                assertTrue(Arrays.equals(b, d.decode(reader(s))));
+                assertEquals(len, d.decodedLength(s));
+                assertEquals(-1, d.validate(s));
+
+                char[] chars = s.toCharArray();
+                byte[] out = new byte[len];
+                assertEquals(len, d.decode(chars, 0, chars.length, out, 0));
+                assertTrue(Arrays.equals(b, out));
+
+                ByteBuffer buf = ByteBuffer.allocate(len);
+                d.decode(ByteBuffer.wrap(s.getBytes(StandardCharsets.ISO_8859_1)), buf);
+                assertTrue(Arrays.equals(b, buf.array()));
+            }
+        }
+    }
+
+    /**
+     * @return a Reader that returns at most a few characters per read, so
+     * that the prefix used for detection spans several reads
+     */
+    private static Reader reader(String s) {
+        return new StringReader(s) {
+            @Override
+            public int read(char[] cbuf, int off, int len) throws java.io.IOException {
+                return super.read(cbuf, off, Math.min(len, 7));
+            }
+        };
+    }
+
+    public void testMixedLayoutsStillDecode() throws Exception {
+        // the first line is plain hex, but later lines are delimited
+        String s = "00112233\n44 55 66 77\n88:99:aa:bb";
+        byte[] expected = Hex.decode("00112233445566778899aabb");
+        AutoDetectingHexDecoder d = new AutoDetectingHexDecoder();
+        assertEquals(Format.STRICT, AutoDetectingHexDecoder.detect(s));
+        assertTrue(Arrays.equals(expected, d.decode(s)));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        d.decode(new StringReader(s), out);
+        assertTrue(Arrays.equals(expected, out.toByteArray()));
+    }
+
+    public void testLongIntelHexRecords() throws Exception {
+        // records longer than the characters examined for detection
+        AutoDetectingHexDecoder d = new AutoDetectingHexDecoder();
+        byte[] b = bytes(400);
+        for (int bytesPerRecord : new int[] { 123, 200, 255 }) {
+            String s = new IntelHexEncoder(0, bytesPerRecord).encode(b);
+            assertEquals(Format.INTEL_HEX, AutoDetectingHexDecoder.detect(s));
+            assertTrue(Arrays.equals(b, d.decode(s)));
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            d.decode(reader(s), out);
+            assertTrue(Arrays.equals(b, out.toByteArray()));
+
+            Path in = Files.createTempFile("intelhex", ".hex");
+            Path decoded = Files.createTempFile("intelhex", ".bin");
+            try {
+                Files.write(in, s.getBytes(StandardCharsets.US_ASCII));
+                d.decode(in, decoded);
+                assertTrue(Arrays.equals(b, Files.readAllBytes(decoded)));
+            } finally {
+                Files.delete(in);
+                Files.delete(decoded);
+            }
+        }
+    }
+
+    public void testErrorPositions() throws Exception {
+        AutoDetectingHexDecoder d = new AutoDetectingHexDecoder();
+        try {
+            d.decode("0011223g");
+            fail("decoded invalid input");
+        } catch (ParseException expected) {
+            assertEquals(7, expected.getErrorOffset());
+        }
+        assertEquals(0, d.validate(":03000000000102FB"));
+        assertFalse(d.tryDecode(":03000000000102FB").isValid());
+    }
+}
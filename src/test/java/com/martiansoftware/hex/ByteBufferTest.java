@@ -0,0 +1,101 @@
+package com.martiansoftware.hex;
+
+//   Copyright 2016 Martian Software, Inc.
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+import junit.framework.TestCase;
+
+public class ByteBufferTest extends TestCase {
+
+    private static final byte[] b = new byte[20000];
+    static {
+        new Random(33).nextBytes(b);
+    }
+
+    private static ByteBuffer direct(byte[] src) {
+        ByteBuffer buf = ByteBuffer.allocateDirect(src.length);
+        buf.put(src).flip();
+        return buf;
+    }
+
+    public void testEncodeDirect() {
+        ByteBuffer in = direct(b);
+        assertEquals(Hex.encode(b), Hex.encode(in));
+        assertFalse(in.hasRemaining());
+
+        for (HexCodec c : new HexCodec[] { StandardHexCodecs.SIMPLE, StandardHexCodecs.HEXDUMP, StandardHexCodecs.STRICT }) {
+            assertEquals(c.encode(b), c.encode(direct(b)));
+        }
+    }
+
+    public void testDecodeDirect() throws Exception {
+        String s = Hex.encode(b);
+        ByteBuffer out = ByteBuffer.allocateDirect(b.length + 10);
+        Hex.decode(direct(s.getBytes(StandardCharsets.US_ASCII)), out);
+        assertEquals(b.length, out.position());
+        byte[] decoded = new byte[b.length];
+        out.flip();
+        out.get(decoded);
+        assertTrue(Arrays.equals(b, decoded));
+
+        out.clear();
+        StandardHexCodecs.SIMPLE.decode(new StringReader(StandardHexCodecs.SIMPLE.encode(b)), out);
+        assertEquals(b.length, out.position());
+
+        out.clear();
+        StandardHexCodecs.HEXDUMP.decode(direct(StandardHexCodecs.HEXDUMP.encode(b).getBytes(StandardCharsets.US_ASCII)), out);
+        assertEquals(b.length, out.position());
+    }
+
+    public void testDecodeOverflow() throws Exception {
+        try {
+            Hex.decode(direct("0102030405".getBytes(StandardCharsets.US_ASCII)), ByteBuffer.allocateDirect(4));
+            fail("decoded past the end of the buffer");
+        } catch (BufferOverflowException expected) {}
+        try {
+            Hex.decode(new StringReader("0102030405"), ByteBuffer.allocate(4));
+            fail("decoded past the end of the buffer");
+        } catch (BufferOverflowException expected) {}
+    }
+
+    public void testEncodeChannelRegion() throws Exception {
+        File f = File.createTempFile("hex", ".bin");
+        f.deleteOnExit();
+        Files.write(f.toPath(), b);
+        try (FileChannel fc = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+            StringWriter s = new StringWriter();
+            Hex.encode(b, 1000, 9000, new PrintWriter(s));
+            StringWriter s2 = new StringWriter();
+            StandardHexCodecs.DEFAULT.encode(fc, 1000, 9000, new PrintWriter(s2));
+            assertEquals(s.toString(), s2.toString());
+            assertEquals(0, fc.position());
+
+            s2 = new StringWriter();
+            StandardHexCodecs.DEFAULT.encode(fc, 19990, 100, new PrintWriter(s2));
+            assertEquals(Hex.encode(b, 19990, 10), s2.toString());
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.martiansoftware.hex;
+
+//   Copyright 2016 Martian Software, Inc.
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import junit.framework.TestCase;
+
+public class CachingHexEncoderTest extends TestCase {
+
+    private static byte[] uuid(UUID u) {
+        return ByteBuffer.allocate(16).putLong(u.getMostSignificantBits()).putLong(u.getLeastSignificantBits()).array();
+    }
+
+    public void testHitsAndMisses() {
+        AtomicInteger calls = new AtomicInteger();
+        HexEncoder counting = new DefaultHexEncoder() {
+            @Override public String encode(byte[] b, int offset, int len) {
+                calls.incrementAndGet();
+                return super.encode(b, offset, len);
+            }
+        };
+        CachingHexEncoder c = new CachingHexEncoder(counting, 64);
+        byte[] id = uuid(UUID.randomUUID());
+        String s = c.encode(id);
+        assertEquals(Hex.encode(id), s);
+        assertSame(s, c.encode(id.clone()));
+        assertSame(s, c.encode(id));
+        assertEquals(1, calls.get());
+        assertEquals(2, c.hits());
+        assertEquals(1, c.misses());
+
+        byte[] b = new byte[20];
+        System.arraycopy(id, 0, b, 4, 16);
+        assertSame(s, c.encode(b, 4, 16));
+        assertEquals(Hex.encode(b, 3, 16), c.encode(b, 3, 16));
+
+        byte[] big = new byte[CachingHexEncoder.MAX_CACHED_LENGTH + 1];
+        c.encode(big);
+        c.encode(big);
+        assertEquals(2, c.misses());
+
+        c.clear();
+        assertEquals(0, c.hits());
+        c.encode(id);
+        assertEquals(1, c.misses());
+    }
+
+    public void testBounded() {
+        for (CachingHexEncoder.Eviction e : CachingHexEncoder.Eviction.values()) {
+            CachingHexEncoder c = new CachingHexEncoder(new DefaultHexEncoder(), 100, e);
+            assertTrue(c.capacity() <= 100);
+            List<byte[]> ids = new ArrayList<>();
+            for (int i = 0; i < 1000; ++i) ids.add(uuid(UUID.randomUUID()));
+            for (byte[] id : ids) assertEquals(Hex.encode(id), c.encode(id));
+            int hits = 0;
+            for (byte[] id : ids) {
+                long before = c.hits();
+                assertEquals(Hex.encode(id), c.encode(id));
+                hits += c.hits() - before;
+            }
+            assertTrue(e + ": " + hits, hits <= c.capacity());
+        }
+    }
+
+    public void testLeastRecentlyUsed() {
+        CachingHexEncoder c = new CachingHexEncoder(new DefaultHexEncoder(), 4, CachingHexEncoder.Eviction.LEAST_RECENTLY_USED);
+        byte[][] ids = new byte[5][];
+        for (int i = 0; i < ids.length; ++i) ids[i] = new byte[] { (byte) i };
+        for (int i = 0; i < 4; ++i) c.encode(ids[i]);
+        c.encode(ids[0]);
+        c.encode(ids[4]);
+        long hits = c.hits();
+        c.encode(ids[0]);
+        assertEquals(hits + 1, c.hits());
+        c.encode(ids[1]);
+        assertEquals(hits + 1, c.hits());
+    }
+
+    public void testFirstInFirstOut() {
+        CachingHexEncoder c = new CachingHexEncoder(new DefaultHexEncoder(), 4, CachingHexEncoder.Eviction.FIRST_IN_FIRST_OUT);
+        byte[][] ids = new byte[6][];
+        for (int i = 0; i < ids.length; ++i) ids[i] = new byte[] { (byte) i };
+        for (int i = 0; i < 4; ++i) c.encode(ids[i]);
+        c.encode(ids[0]);
+        c.encode(ids[4]);
+        c.encode(ids[5]);
+        long hits = c.hits();
+        c.encode(ids[2]);
+        assertEquals(hits + 1, c.hits());
+        c.encode(ids[0]);
+        c.encode(ids[1]);
+        assertEquals(hits + 1, c.hits());
+    }
+
+    public void testConcurrent() throws Exception {
+        CachingHexEncoder c = new CachingHexEncoder(new DefaultHexEncoder(), 256);
+        byte[][] ids = new byte[512][];
+        Random r = new Random(38);
+        for (int i = 0; i < ids.length; ++i) {
+            ids[i] = new byte[16];
+            r.nextBytes(ids[i]);
+        }
+        AtomicInteger failures = new AtomicInteger();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; ++t) {
+            int seed = t;
+            threads[t] = new Thread(() -> {
+                Random tr = new Random(seed);
+                for (int i = 0; i < 50000; ++i) {
+                    byte[] id = ids[tr.nextInt(tr.nextBoolean() ? 64 : ids.length)];
+                    if (!Hex.encode(id).equals(c.encode(id))) failures.incrementAndGet();
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread t : threads) t.join();
+        assertEquals(0, failures.get());
+        assertEquals(200000, c.hits() + c.misses());
+    }
+}
@@ -0,0 +1,183 @@
+package com.martiansoftware.hex;
+
+//   Copyright 2016 Martian Software, Inc.
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import junit.framework.TestCase;
+
+/**
+ * Checks that every built-in codec can be shared by many threads at once,
+ * and (when enabled) that throughput grows with the number of threads.
+ */
+public class ConcurrencyTest extends TestCase {
+
+    private static final int CORES = Runtime.getRuntime().availableProcessors();
+    private static final int THREADS = Math.max(8, 2 * CORES);
+    private static final int ITERATIONS = 300;
+    private static final double MIN_EFFICIENCY = 0.25;
+    private static final int WARMUP_ROUNDS = 200;
+    private static final String SCALING_PROPERTY = "hex.scaling";
+
+    private static List<HexCodec> codecs() {
+        HexLayout layout = HexLayout.builder().bytePrefix("0x").byteSeparator(", ").bytesPerLine(8).build();
+        return Arrays.asList(
+            StandardHexCodecs.DEFAULT,
+            StandardHexCodecs.STRICT,
+            StandardHexCodecs.HEXDUMP,
+            StandardHexCodecs.SIMPLE,
+            new CompositeHexCodec(new DelimitedMultilineHexEncoder(8, ":"), new DefaultHexDecoder()),
+            new CompositeHexCodec(new HexDumpEncoder(true), new HexDumpDecoder()),
+            new CompositeHexCodec(layout.encoder(), layout.decoder()),
+            new CompositeHexCodec(new CachingHexEncoder(new DefaultHexEncoder(), 64), new StrictHexDecoder()));
+    }
+
+    private static List<byte[]> inputs() {
+        Random r = new Random(41);
+        List<byte[]> inputs = new ArrayList<>();
+        for (int len : new int[] { 0, 1, 15, 16, 17, 32, 100, 1000, 5000, 20000 }) {
+            byte[] b = new byte[len];
+            r.nextBytes(b);
+            if (len > 100) Arrays.fill(b, 40, 90, (byte) 7);
+            inputs.add(b);
+        }
+        return inputs;
+    }
+
+    /**
+     * Exercises one codec with one input through several entry points
+     * @return a description of the first mismatch, or null
+     */
+    private static String exercise(HexCodec c, byte[] b, String expected) throws Exception {
+        if (!expected.equals(c.encode(b))) return "encode(byte[])";
+        if (!expected.equals(c.encode(ByteBuffer.wrap(b)))) return "encode(ByteBuffer)";
+        if (!Arrays.equals(b, c.decode(expected))) return "decode(String)";
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        c.decode(new StringReader(expected), out);
+        if (!Arrays.equals(b, out.toByteArray())) return "decode(Reader, OutputStream)";
+        if (c.decodedLength(expected) != b.length) return "decodedLength";
+        if (c.validate(expected) != -1) return "validate";
+        if (!Arrays.equals(b, c.tryDecode(expected).bytes())) return "tryDecode";
+        return null;
+    }
+
+    public void testSharedCodecs() throws Exception {
+        List<HexCodec> codecs = codecs();
+        List<byte[]> inputs = inputs();
+        String[][] expected = new String[codecs.size()][inputs.size()];
+        for (int i = 0; i < codecs.size(); ++i) {
+            for (int j = 0; j < inputs.size(); ++j) {
+                expected[i][j] = codecs.get(i).encode(inputs.get(j));
+            }
+        }
+
+        CyclicBarrier start = new CyclicBarrier(THREADS);
+        AtomicReference<String> failure = new AtomicReference<>();
+        Thread[] threads = new Thread[THREADS];
+        for (int t = 0; t < THREADS; ++t) {
+            int seed = t;
+            threads[t] = new Thread(() -> {
+                Random r = new Random(seed);
+                try {
+                    start.await();
+                    for (int n = 0; n < ITERATIONS && failure.get() == null; ++n) {
+                        int i = r.nextInt(codecs.size());
+                        int j = r.nextInt(inputs.size());
+                        String f = exercise(codecs.get(i), inputs.get(j), expected[i][j]);
+                        if (f != null) failure.compareAndSet(null, "codec " + i + ", input " + j + ": " + f);
+                    }
+                } catch (Exception e) {
+                    failure.compareAndSet(null, e.toString());
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread t : threads) t.join();
+        assertNull(failure.get(), failure.get());
+    }
+
+    /**
+     * Runs the mixed workload on the specified number of threads until the
+     * deadline, or for the specified number of rounds if there is none
+     * @return the total number of operations completed
+     */
+    private static long run(List<HexCodec> codecs, byte[] b, String[] expected, int threads, long deadline, long rounds) throws Exception {
+        AtomicLong ops = new AtomicLong();
+        AtomicReference<String> failure = new AtomicReference<>();
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; ++t) {
+            workers[t] = new Thread(() -> {
+                try {
+                    long count = 0;
+                    for (long round = 0; (deadline == 0) ? round < rounds : System.nanoTime() < deadline; ++round) {
+                        for (int i = 0; i < codecs.size(); ++i) {
+                            String f = exercise(codecs.get(i), b, expected[i]);
+                            if (f != null) failure.compareAndSet(null, f);
+                            ++count;
+                        }
+                    }
+                    ops.addAndGet(count);
+                } catch (Exception e) {
+                    failure.compareAndSet(null, e.toString());
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread t : workers) t.join();
+        assertNull(failure.get(), failure.get());
+        return ops.get();
+    }
+
+    /**
+     * Runs a mixed workload over all codecs at 1, 2, 4, ... threads (up to
+     * the number of available processors) and checks that scaling efficiency
+     * relative to a single thread stays above a deliberately loose floor, so
+     * that only contention between threads (rather than noise) fails it.
+     *
+     * Wall-clock timing is unreliable on loaded build machines, so this only
+     * runs when the `hex.scaling` system property is set to true.  An untimed
+     * warmup pass first gives the JIT compiler a chance to compile the
+     * workload, so that the single-thread rate is not measured on cold code.
+     */
+    public void testScaling() throws Exception {
+        if (!Boolean.getBoolean(SCALING_PROPERTY)) return;
+        List<HexCodec> codecs = codecs();
+        byte[] b = inputs().get(8);
+        String[] expected = new String[codecs.size()];
+        for (int i = 0; i < expected.length; ++i) expected[i] = codecs.get(i).encode(b);
+
+        run(codecs, b, expected, 1, 0, WARMUP_ROUNDS);
+
+        double single = 0, worst = 1;
+        StringBuilder report = new StringBuilder("threads  ops/s  efficiency");
+        for (int n = 1; n <= CORES; n *= 2) {
+            long begin = System.nanoTime();
+            long ops = run(codecs, b, expected, n, begin + 200_000_000L, 0);
+            double rate = ops * 1e9 / (System.nanoTime() - begin);
+            if (n == 1) single = rate;
+            worst = Math.min(worst, rate / (single * n));
+            report.append(String.format("%n%7d  %5.0f  %9.0f%%", n, rate, 100 * rate / (single * n)));
+        }
+        assertTrue(report.toString(), worst >= MIN_EFFICIENCY);
+    }
+}
@@ -0,0 +1,101 @@
+package com.martiansoftware.hex;
+
+//   Copyright 2016 Martian Software, Inc.
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+import java.io.OutputStream;
+import java.io.Reader;
+import java.text.ParseException;
+import java.util.Arrays;
+import junit.framework.TestCase;
+
+public class DecodeResultTest extends TestCase {
+
+    private static final byte[] b = "The quick brown fox jumps over the lazy dog.".getBytes();
+    private static final String s = "54 6865207175    69:63-6B2062.726F  - ::.776e\n\n20666f78206a756d7073206f76657220746865206c617a7920646f672e";
+
+    public void testValidate() {
+        assertEquals(-1, Hex.validate(s));
+        assertEquals(-1, Hex.validate(""));
+        assertEquals(2, Hex.validate("ab+12"));
+        assertEquals(1, Hex.validate("a"));
+        assertEquals(4, Hex.validate("01 2"));
+        assertEquals(4, StandardHexCodecs.STRICT.validate("0102 03"));
+        assertEquals(-1, StandardHexCodecs.STRICT.validate("010203"));
+    }
+
+    public void testTryDecode() {
+        DecodeResult r = Hex.tryDecode(s);
+        assertTrue(r.isValid());
+        assertTrue(Arrays.equals(b, r.bytes()));
+        assertEquals(-1, r.errorPosition());
+        assertNull(r.error());
+
+        r = Hex.tryDecode("ab+12");
+        assertFalse(r.isValid());
+        assertEquals(2, r.errorPosition());
+        assertEquals(DecodeResult.Error.INVALID_CHARACTER, r.error());
+        try {
+            r.bytes();
+            fail("returned bytes for invalid input");
+        } catch (IllegalStateException expected) {}
+
+        r = Hex.tryDecode("abc");
+        assertEquals(3, r.errorPosition());
+        assertEquals(DecodeResult.Error.UNEXPECTED_EOF, r.error());
+
+        r = StandardHexCodecs.HEXDUMP.tryDecode("00000000: 00 00 00 00 00 00 00 00   00 00 00 00 00 00 00 00   ................\n*\n");
+        assertEquals(DecodeResult.Error.INVALID_FORMAT, r.error());
+    }
+
+    public void testPositionBeyond2GB() throws Exception {
+        IncrementalHexDecoder d = new DefaultHexDecoder().newIncrementalDecoder();
+        d.startAt(0x300000000L);
+        assertFalse(d.decodeQuietly("01 0g", true));
+        DecodeResult r = d.result();
+        assertEquals(0x300000004L, r.errorPosition());
+        assertEquals(DecodeResult.Error.INVALID_CHARACTER, r.error());
+    }
+
+    public void testAgreesWithDecode() {
+        String[] inputs = { "", "0", "00", "0g", "g0", "0 0", "00 11\n22", "zz", "00-11-2", "é0102" };
+        HexDecoder[] decoders = { StandardHexCodecs.DEFAULT, StandardHexCodecs.STRICT, StandardHexCodecs.HEXDUMP };
+        for (HexDecoder d : decoders) {
+            for (String in : inputs) {
+                DecodeResult r = d.tryDecode(in);
+                try {
+                    byte[] decoded = d.decode(in);
+                    assertTrue(r.isValid());
+                    assertTrue(Arrays.equals(decoded, r.bytes()));
+                } catch (ParseException e) {
+                    assertEquals(e.getErrorOffset(), r.errorPosition());
+                    assertEquals(e.getErrorOffset(), d.validate(in));
+                }
+            }
+        }
+    }
+
+    public void testDefaultImplementation() {
+        // a HexDecoder that only implements the required method uses the defaults
+        HexDecoder d = new HexDecoder() {
+            @Override
+            public void decode(Reader in, OutputStream out) throws ParseException, java.io.IOException {
+                StandardHexCodecs.STRICT.decode(in, out);
+            }
+        };
+        assertEquals(-1, d.validate("0102"));
+        assertEquals(2, d.validate("01 02"));
+        assertEquals(DecodeResult.Error.UNEXPECTED_EOF, d.tryDecode("010").error());
+    }
+}
@@ -0,0 +1,113 @@
+package com.martiansoftware.hex;
+
+//   Copyright 2016 Martian Software, Inc.
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import junit.framework.TestCase;
+
+public class DecodedBatchTest extends TestCase {
+
+    private static List<byte[]> values(int count) {
+        Random r = new Random(46);
+        List<byte[]> values = new ArrayList<>();
+        for (int i = 0; i < count; ++i) {
+            byte[] b = new byte[r.nextInt(40)];
+            r.nextBytes(b);
+            values.add(b);
+        }
+        return values;
+    }
+
+    private static List<CharSequence> encode(HexEncoder e, List<byte[]> values) {
+        List<CharSequence> hex = new LinkedList<>();
+        for (byte[] b : values) hex.add(e.encode(b));
+        return hex;
+    }
+
+    private static void assertBatch(List<byte[]> expected, DecodedBatch batch) {
+        assertEquals(expected.size(), batch.size());
+        int total = 0;
+        for (int i = 0; i < expected.size(); ++i) {
+            byte[] b = expected.get(i);
+            assertEquals(total, batch.offset(i));
+            assertEquals(b.length, batch.length(i));
+            assertTrue(Arrays.equals(b, batch.bytes(i)));
+            ByteBuffer slice = batch.slice(i);
+            assertEquals(b.length, slice.remaining());
+            for (int j = 0; j < b.length; ++j) {
+                assertEquals(b[j], batch.get(i, j));
+                assertEquals(b[j], slice.get(j));
+                assertEquals(b[j], batch.arena().get(batch.offsets()[i] + j));
+            }
+            total += b.length;
+        }
+        assertEquals(total, batch.totalBytes());
+        assertEquals(total, batch.arena().remaining());
+    }
+
+    public void testDecodeBatch() throws Exception {
+        List<byte[]> values = values(1000);
+        assertBatch(values, Hex.decodeBatch(encode(new DefaultHexEncoder(), values)));
+        assertBatch(values, new StrictHexDecoder().decodeBatch(encode(new DefaultHexEncoder(), values)));
+        assertBatch(values, StandardHexCodecs.SIMPLE.decodeBatch(encode(StandardHexCodecs.SIMPLE, values)));
+        assertBatch(values, StandardHexCodecs.HEXDUMP.decodeBatch(encode(StandardHexCodecs.HEXDUMP, values)));
+        assertBatch(values, new AutoDetectingHexDecoder().decodeBatch(encode(StandardHexCodecs.INTEL_HEX, values)));
+        assertBatch(Collections.emptyList(), Hex.decodeBatch(Collections.emptyList()));
+    }
+
+    public void testExpandingValues() throws Exception {
+        // collapsed hex dumps decode to more bytes than half their length
+        List<byte[]> values = Arrays.asList(new byte[1000], new byte[3], new byte[5000]);
+        assertBatch(values, StandardHexCodecs.HEXDUMP.decodeBatch(encode(new HexDumpEncoder(true), values)));
+        assertBatch(values, StandardHexCodecs.HEXDUMP.decodeBatch(encode(new HexDumpEncoder(true), values), ByteBuffer.allocate(6003)));
+    }
+
+    public void testDecodeBatchIntoBuffer() throws Exception {
+        List<byte[]> values = values(100);
+        List<CharSequence> hex = encode(new DefaultHexEncoder(), values);
+        hex.set(3, CharBuffer.wrap(hex.get(3)));
+        hex.set(4, new StringBuilder(hex.get(4)));
+        for (ByteBuffer arena : new ByteBuffer[] { ByteBuffer.allocate(5000), ByteBuffer.allocateDirect(5000) }) {
+            arena.position(7);
+            DecodedBatch batch = Hex.decodeBatch(hex, arena);
+            assertBatch(values, batch);
+            assertEquals(7 + batch.totalBytes(), arena.position());
+            assertEquals(values.get(0)[0], arena.get(7));
+        }
+        try {
+            Hex.decodeBatch(hex, ByteBuffer.allocate(10));
+            fail("decoded past the end of the arena");
+        } catch (BufferOverflowException expected) {}
+    }
+
+    public void testInvalidValue() throws Exception {
+        try {
+            Hex.decodeBatch(Arrays.asList("00", "0011", "00g1"));
+            fail("decoded an invalid value");
+        } catch (ParseException expected) {
+            assertEquals(2, expected.getErrorOffset());
+            assertTrue(expected.getMessage().endsWith("in value 2"));
+        }
+    }
+}
@@ -1,5 +1,10 @@
 package com.martiansoftware.hex;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.BufferOverflowException;
 import java.text.ParseException;
 import java.util.Arrays;
 import junit.framework.TestCase;
@@ -26,4 +31,64 @@ public class DefaultHexDecoderTest extends TestCase {
         assertEquals(0, d.decode("").length);
     }
     
+    public void testDecodedLength() throws Exception {
+        HexDecoder d = StandardHexCodecs.DEFAULT;
+        assertEquals(b.length, d.decodedLength(s));
+        assertEquals(b.length, d.decodedLength(new StringReader(s)));
+        assertEquals(0, d.decodedLength(""));
+        assertEquals(2, d.decodedLength("\u3000ab\u3000cd\u3000"));
+        
+        try {
+            d.decodedLength("ab+12");
+            fail("counted a hex string with an illegal character");
+        } catch (ParseException expected) {
+            assertEquals(2, expected.getErrorOffset());
+        }
+        
+        try {
+            d.decodedLength("abc");
+            fail("counted a hex string with a trailing half byte");
+        } catch (ParseException expected) {
+            assertEquals(3, expected.getErrorOffset());
+        }
+        
+        byte[] zeros = new byte[1000];
+        assertEquals(zeros.length, StandardHexCodecs.HEXDUMP.decodedLength(new HexDumpEncoder(true).encode(zeros)));
+    }
+    
+
+    public void testDecodeRange() throws Exception {
+        String line = "id=" + s + ",status=ok";
+        int start = 3, end = 3 + s.length();
+        for (HexDecoder d : new HexDecoder[] { StandardHexCodecs.DEFAULT, new DefaultHexDecoder(), new HexDecoder() {
+                @Override public void decode(Reader in, OutputStream out) throws ParseException, IOException {
+                    new DefaultHexDecoder().decode(in, out);
+                }
+            } }) {
+            assertTrue(Arrays.equals(b, d.decode(line, start, end)));
+            assertEquals(0, d.decode(line, 3, 3).length);
+
+            char[] c = line.toCharArray();
+            byte[] out = new byte[b.length + 4];
+            assertEquals(b.length, d.decode(c, start, end - start, out, 2));
+            assertTrue(Arrays.equals(b, Arrays.copyOfRange(out, 2, 2 + b.length)));
+
+            try {
+                d.decode(line, 0, end);
+                fail("decoded an invalid range");
+            } catch (ParseException expected) {
+                assertEquals(0, expected.getErrorOffset());
+            }
+            try {
+                d.decode(c, start, end - start - 1, out, 0);
+                fail("decoded an incomplete range");
+            } catch (ParseException expected) {
+                assertEquals(end - 1, expected.getErrorOffset());
+            }
+            try {
+                d.decode(c, start, end - start, new byte[b.length - 1], 0);
+                fail("decoded past the end of the destination");
+            } catch (BufferOverflowException expected) {}
+        }
+    }
 }
@@ -0,0 +1,954 @@
+package com.martiansoftware.hex;
+
+//   Copyright 2016 Martian Software, Inc.
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import junit.framework.TestCase;
+
+/**
+ * Runs every optimized encoding and decoding entry point against simple,
+ * byte-at-a-time and character-at-a-time reference implementations of the
+ * same formats, on randomly generated input: random sizes and contents,
+ * offsets into larger arrays, reads and chunks split at random boundaries,
+ * random separators and line lengths, and malformed hex with the resulting
+ * error positions and messages.
+ *
+ * The reference implementations below are deliberately naive and frozen;
+ * they must not be changed to match new behavior of the library.  The
+ * reference decoders are copies of the original character-at-a-time
+ * decoders, independent of the library's own Strategies.  Any
+ * disagreement is shrunk to a minimal input before being reported, along
+ * with the seed that reproduces it.  The seed and number of cases can be
+ * set with the `hex.fuzz.seed` and `hex.fuzz.cases` system properties.
+ */
+public class DifferentialFuzzTest extends TestCase {
+
+    private static final long SEED = Long.getLong("hex.fuzz.seed", 2016);
+    private static final int CASES = Integer.getInteger("hex.fuzz.cases", 150);
+    private static final int MAX_SHRINK_ATTEMPTS = 5000;
+    private static final String NEWLINE = System.lineSeparator();
+
+    // ------------------------------------------------------------------
+    // reference encoders
+
+    private static String hex(int b) {
+        return "" + Character.forDigit((b >> 4) & 0x0f, 16) + Character.forDigit(b & 0x0f, 16);
+    }
+
+    static String referenceDefault(byte[] b) {
+        StringBuilder s = new StringBuilder();
+        for (byte x : b) s.append(hex(x));
+        return s.toString();
+    }
+
+    static String referenceDelimited(byte[] b, int bytesPerLine, String separator) {
+        StringBuilder s = new StringBuilder();
+        for (int i = 0; i < b.length; ++i) {
+            if (i > 0) {
+                if (i % bytesPerLine == 0) {
+                    s.append(NEWLINE);
+                } else if (separator != null) {
+                    s.append(separator);
+                }
+            }
+            s.append(hex(b[i]));
+        }
+        return s.toString();
+    }
+
+    private static String address(long address, int minDigits) {
+        String a = Long.toHexString(address);
+        while (a.length() < Math.max(8, minDigits)) a = "0" + a;
+        return a;
+    }
+
+    private static String dumpLine(byte[] line) {
+        StringBuilder s = new StringBuilder();
+        for (int i = 0; i < 16; ++i) {
+            if (i == 8) s.append("  ");
+            s.append(i < line.length ? hex(line[i]) : "  ").append(' ');
+        }
+        s.append("  ");
+        for (int i = 0; i < 16; ++i) {
+            if (i >= line.length) {
+                s.append(' ');
+            } else {
+                s.append((line[i] < 0x20 || line[i] > 0x7e) ? '.' : (char) line[i]);
+            }
+        }
+        return s.toString();
+    }
+
+    static String referenceDump(byte[] b, long startAddress, int minDigits, boolean collapse) {
+        List<String> lines = new ArrayList<>();
+        byte[] previous = null;
+        boolean inRun = false;
+        for (int offset = 0; offset < b.length; offset += 16) {
+            byte[] line = Arrays.copyOfRange(b, offset, Math.min(b.length, offset + 16));
+            if (collapse && previous != null && line.length == 16 && Arrays.equals(line, previous)) {
+                if (!inRun) lines.add("*");
+                inRun = true;
+                continue;
+            }
+            lines.add(address(startAddress + offset, minDigits) + ": " + dumpLine(line));
+            inRun = false;
+            previous = (line.length == 16) ? line : null;
+        }
+        if (inRun) lines.add(address(startAddress + b.length, minDigits));
+        return String.join(NEWLINE, lines);
+    }
+
+    // ------------------------------------------------------------------
+    // reference decoders
+    //
+    // Copies of the HexDecoderAdapter decoding loop and the Strategies of
+    // DefaultHexDecoder, StrictHexDecoder, CharIgnoringHexDecoder and
+    // HexDumpDecoder as they were before any optimized paths were added.
+
+    private static final int CR = '\r';
+    private static final int LF = '\n';
+
+    private enum State { NEEDS_DIGIT_1, NEEDS_DIGIT_2 }
+
+    /**
+     * The original HexDecoderAdapter.Strategy
+     */
+    private interface FrozenStrategy {
+        void start(OutputStream out) throws IOException;
+        boolean shouldIgnore(char c, long charIndexInStream, long charIndexInLine, OutputStream out) throws ParseException, IOException;
+        void finish(long totalChars, long totalBytes, OutputStream out) throws ParseException, IOException;
+    }
+
+    private static final String NON_WS_CHARS_TO_IGNORE = ".-:";
+
+    private static FrozenStrategy frozenDefault() {
+        return new FrozenCharIgnoringStrategy(c -> Character.isWhitespace(c)
+                                                || NON_WS_CHARS_TO_IGNORE.indexOf(c) >= 0);
+    }
+
+    private static FrozenStrategy frozenStrict() {
+        return new FrozenCharIgnoringStrategy(c -> false);
+    }
+
+    private static class FrozenCharIgnoringStrategy implements FrozenStrategy {
+        private final Predicate<Character> _shouldIgnore;
+
+        FrozenCharIgnoringStrategy(String charsToIgnore) {
+            Set<Character> toIgnore = new java.util.HashSet<>();
+            for (char c : charsToIgnore.toCharArray()) toIgnore.add(c);
+            _shouldIgnore = c -> toIgnore.contains(c);
+        }
+
+        FrozenCharIgnoringStrategy(Predicate<Character> shouldIgnore) {
+            _shouldIgnore = shouldIgnore;
+        }
+
+        @Override public void start(OutputStream out) throws IOException {}
+
+        @Override
+        public boolean shouldIgnore(char c, long charIndexInStream, long charIndexInLine, OutputStream out) throws ParseException, IOException {
+            return _shouldIgnore.test(c);
+        }
+
+        @Override public void finish(long totalChars, long totalBytes, OutputStream out) throws ParseException, IOException {}
+    }
+
+    private static class FrozenDumpStrategy implements FrozenStrategy {
+        @Override
+        public void start(OutputStream out) throws IOException {
+        }
+
+        @Override
+        public boolean shouldIgnore(char c, long charIndexInStream, long charIndexInLine, OutputStream out) throws IOException {
+            return (charIndexInLine < 10
+                    || charIndexInLine > 58
+                    || Character.isWhitespace(c));
+        }
+
+        @Override
+        public void finish(long totalChars, long totalBytes, OutputStream out) throws IOException {
+        }
+    }
+
+    private static int frozenValueOf(char c, long index) throws ParseException {
+        if (c >= '0' && c <= '9') return c - '0';
+        if (c >= 'a' && c <= 'f') return c - 'a' + 10;
+        if (c >= 'A' && c <= 'F') return c - 'A' + 10;
+        throw new ParseException(String.format("invalid character '%c' at position %d", c, index), (int) index);
+    }
+
+    /**
+     * The original HexDecoderAdapter.decode(), reading a range of the input
+     * and reporting positions relative to the start of the whole input
+     */
+    private static void frozenDecode(FrozenStrategy o, CharSequence in, int start, int end, OutputStream out) throws IOException, ParseException {
+        o.start(out);
+
+        State state = State.NEEDS_DIGIT_1;
+
+        long charIndexInStream = start - 1, charIndexInLine = 0, totalBytes = 0;
+        int b = 0;
+        outer:
+        while(true) {
+            int c = (charIndexInStream + 1 < end) ? in.charAt((int) charIndexInStream + 1) : -1;
+            ++charIndexInStream;
+
+            if (c == CR || c == LF) {
+                charIndexInLine = 0;
+            } else {
+                ++charIndexInLine;
+            }
+
+            switch(state) {
+                case NEEDS_DIGIT_1: if (c == -1) break outer;
+                                    if (o.shouldIgnore((char) c, charIndexInStream, charIndexInLine, out)) {
+                                        continue;
+                                    }
+                                    b = 16 * frozenValueOf((char) c, charIndexInStream);
+                                    state = State.NEEDS_DIGIT_2;
+                                    break;
+
+                case NEEDS_DIGIT_2: if (c == -1) {
+                                        throw new ParseException(String.format("unexpected eof at position %d", charIndexInStream), (int) charIndexInStream);
+                                    }
+                                    b += frozenValueOf((char) c, charIndexInStream);
+                                    out.write(b);
+                                    state = State.NEEDS_DIGIT_1;
+                                    break;
+            }
+        }
+        o.finish(charIndexInStream, totalBytes, out);
+    }
+
+    /**
+     * The outcome of decoding: either the decoded bytes or an error
+     */
+    static class Outcome {
+        final byte[] bytes;
+        final String error;
+        final Throwable cause;
+
+        private Outcome(byte[] bytes, String error, Throwable cause) {
+            this.bytes = bytes;
+            this.error = error;
+            this.cause = cause;
+        }
+
+        static Outcome of(byte[] bytes) {
+            return new Outcome(bytes, null, null);
+        }
+
+        static Outcome of(Throwable t) {
+            if (t instanceof ParseException) {
+                return new Outcome(null, String.format("ParseException at %d: %s", ((ParseException) t).getErrorOffset(), t.getMessage()), t);
+            }
+            return new Outcome(null, t.getClass().getSimpleName() + ": " + t.getMessage(), t);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            Outcome other = (Outcome) o;
+            return Arrays.equals(bytes, other.bytes) && (error == null ? other.error == null : error.equals(other.error));
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(bytes);
+        }
+
+        @Override
+        public String toString() {
+            return (error != null) ? error : "bytes " + referenceDefault(bytes);
+        }
+    }
+
+    static Outcome frozenOutcome(FrozenStrategy o, CharSequence in, int start, int end) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            frozenDecode(o, in, start, end, bytes);
+            return Outcome.of(bytes.toByteArray());
+        } catch (ParseException | IOException | RuntimeException e) {
+            return Outcome.of(e);
+        }
+    }
+
+    /**
+     * The expected outcome of decoding with a production decoder
+     */
+    private interface ReferenceDecoder {
+        /**
+         * @return the outcome of decoding the specified range of the input,
+         * or null if the reference does not define one for this input
+         */
+        Outcome decode(CharSequence in, int start, int end);
+    }
+
+    private static ReferenceDecoder frozen(Supplier<FrozenStrategy> strategy) {
+        return (in, start, end) -> frozenOutcome(strategy.get(), in, start, end);
+    }
+
+    private static String[] lines(String s) {
+        return s.split("\r\n|\r|\n", -1);
+    }
+
+    /**
+     * Collapsed runs and addresses wider than eight digits are newer than the
+     * original HexDumpDecoder, which decodes every other dump.  A collapsed
+     * dump is compared only if it is exactly the dump of some bytes, which
+     * must then decode to the same bytes as the equivalent dump with every
+     * line written out.
+     */
+    private static final ReferenceDecoder DUMP = (in, start, end) -> {
+        String s = in.subSequence(start, end).toString();
+        boolean collapsed = false;
+        for (String line : lines(s)) {
+            int digits = 0;
+            while (digits < line.length() && digits <= 16 && "0123456789abcdefABCDEF".indexOf(line.charAt(digits)) >= 0) ++digits;
+            if (digits != 8 && digits <= 16 && digits < line.length() && line.charAt(digits) == ':') return null;
+            collapsed |= line.startsWith("*");
+        }
+        if (!collapsed) return frozenOutcome(new FrozenDumpStrategy(), in, start, end);
+
+        String expanded = expandCollapsed(s);
+        if (expanded == null) return null;
+        Outcome o = frozenOutcome(new FrozenDumpStrategy(), expanded, 0, expanded.length());
+        return (o.bytes != null && referenceDump(o.bytes, 0, 8, true).equalsIgnoreCase(s)) ? o : null;
+    };
+
+    /**
+     * Writes out the lines of a collapsed dump that each `*` line stands for,
+     * by repeating the preceding line at each address up to that of the next
+     * line.
+     *
+     * @return the expanded dump, or null if the runs cannot be expanded
+     */
+    static String expandCollapsed(String dump) {
+        String[] lines = lines(dump);
+        List<String> expanded = new ArrayList<>();
+        for (int i = 0; i < lines.length; ++i) {
+            if (!lines[i].equals("*")) {
+                expanded.add(lines[i]);
+                continue;
+            }
+            if (i == 0 || i + 1 == lines.length || lines[i - 1].length() < 8 || lines[i + 1].length() < 8) return null;
+            try {
+                long from = Long.parseLong(lines[i - 1].substring(0, 8), 16);
+                long to = Long.parseLong(lines[i + 1].substring(0, 8), 16);
+                for (long a = from + 16; a < to; a += 16) expanded.add(address(a, 8) + lines[i - 1].substring(8));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return String.join(NEWLINE, expanded);
+    }
+
+    /**
+     * LayoutHexDecoder is newer than the original decoders, so only the exact
+     * layout of some bytes is compared, against the original
+     * CharIgnoringHexDecoder ignoring the layout's delimiters.
+     */
+    private static ReferenceDecoder layout(int bytesPerLine, String separator, boolean upperCase) {
+        return (in, start, end) -> {
+            String s = in.subSequence(start, end).toString();
+            Outcome o = frozenOutcome(new FrozenCharIgnoringStrategy(separator + NEWLINE), s, 0, s.length());
+            if (o.bytes == null) return null;
+            String expected = referenceDelimited(o.bytes, bytesPerLine, separator);
+            return (upperCase ? expected.toUpperCase() : expected).equals(s) ? o : null;
+        };
+    }
+
+    /**
+     * @return the result `tryDecode()` should produce for the reference outcome
+     */
+    static DecodeResult referenceResult(Outcome o, CharSequence in) {
+        if (o.error == null) return DecodeResult.success(o.bytes);
+        int position = ((ParseException) o.cause).getErrorOffset();
+        if (position == in.length() && o.error.contains("unexpected eof")) return DecodeResult.failure(position, DecodeResult.Error.UNEXPECTED_EOF);
+        if (o.error.contains("invalid character")) return DecodeResult.failure(position, DecodeResult.Error.INVALID_CHARACTER);
+        return DecodeResult.failure(position, DecodeResult.Error.INVALID_FORMAT);
+    }
+
+    // ------------------------------------------------------------------
+    // shrinking
+
+    /**
+     * A property of an input that holds for correct implementations
+     */
+    private interface Property {
+        /**
+         * @return a description of the disagreement found, or null if none
+         */
+        String check(char[] input);
+    }
+
+    private static String safeCheck(Property p, char[] input) {
+        try {
+            return p.check(input);
+        } catch (RuntimeException | AssertionError e) {
+            return "unexpected " + e;
+        }
+    }
+
+    /**
+     * Repeatedly removes runs of the input, and then simplifies single
+     * characters, for as long as the property still fails
+     */
+    private static char[] shrink(char[] input, Property p, char simplest) {
+        char[] current = input;
+        int attempts = 0;
+        boolean progress = true;
+        while (progress && attempts < MAX_SHRINK_ATTEMPTS) {
+            progress = false;
+            for (int size = Math.max(1, current.length / 2); size >= 1 && attempts < MAX_SHRINK_ATTEMPTS; size /= 2) {
+                for (int start = 0; start + size <= current.length && attempts < MAX_SHRINK_ATTEMPTS; ++attempts) {
+                    char[] candidate = new char[current.length - size];
+                    System.arraycopy(current, 0, candidate, 0, start);
+                    System.arraycopy(current, start + size, candidate, start, current.length - start - size);
+                    if (safeCheck(p, candidate) != null) {
+                        current = candidate;
+                        progress = true;
+                    } else {
+                        start += size;
+                    }
+                }
+            }
+            for (int i = 0; i < current.length && attempts < MAX_SHRINK_ATTEMPTS; ++i) {
+                if (current[i] == simplest) continue;
+                ++attempts;
+                char[] candidate = current.clone();
+                candidate[i] = simplest;
+                if (safeCheck(p, candidate) != null) {
+                    current = candidate;
+                    progress = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    private static String escape(char[] c) {
+        StringBuilder s = new StringBuilder("\"");
+        for (char x : c) {
+            if (x >= 0x20 && x < 0x7f && x != '"' && x != '\\') {
+                s.append(x);
+            } else {
+                s.append(String.format("\\u%04x", (int) x));
+            }
+        }
+        return s.append('"').toString();
+    }
+
+    private static void verify(String what, int caseIndex, char[] input, Property p, char simplest, boolean binary) {
+        String failure = safeCheck(p, input);
+        if (failure == null) return;
+        char[] minimal = shrink(input, p, simplest);
+        String shown = binary ? "bytes " + referenceDefault(toBytes(minimal)) : "chars " + escape(minimal);
+        fail(String.format("%s (seed %d, case %d) disagrees with the reference for %s: %s",
+                            what, SEED, caseIndex, shown, safeCheck(p, minimal)));
+    }
+
+    private static byte[] toBytes(char[] c) {
+        byte[] b = new byte[c.length];
+        for (int i = 0; i < c.length; ++i) b[i] = (byte) c[i];
+        return b;
+    }
+
+    private static char[] toChars(byte[] b) {
+        char[] c = new char[b.length];
+        for (int i = 0; i < b.length; ++i) c[i] = (char) (b[i] & 0xff);
+        return c;
+    }
+
+    // ------------------------------------------------------------------
+    // input generation
+
+    private static byte[] randomBytes(Random r) {
+        int len;
+        switch (r.nextInt(4)) {
+            case 0: len = r.nextInt(20); break;
+            case 1: len = r.nextInt(200); break;
+            case 2: len = r.nextInt(5000); break;
+            default: len = 4096 * (1 + r.nextInt(3)) + r.nextInt(3) - 1;
+        }
+        byte[] b = new byte[len];
+        switch (r.nextInt(4)) {
+            case 0: r.nextBytes(b); break;
+            case 1:   // runs of identical lines
+                for (int i = 0; i < len; ++i) b[i] = (byte) ((i / (16 * (1 + r.nextInt(3)))) % 3 == 0 ? 0 : i % 16);
+                break;
+            case 2:   // printable
+                for (int i = 0; i < len; ++i) b[i] = (byte) (0x20 + r.nextInt(0x5f));
+                break;
+            default:
+                r.nextBytes(b);
+                if (len > 0) Arrays.fill(b, r.nextInt(len), len, (byte) r.nextInt(256));
+        }
+        return b;
+    }
+
+    private static final String SEPARATORS[] = { null, "", ":", " ", ", ", "-", "\t", "::" };
+    private static final char[] NOISE = "0123456789abcdefABCDEF \t\r\n:.-xgZ*é ０".toCharArray();
+
+    private static String mutate(String s, Random r) {
+        StringBuilder b = new StringBuilder(s);
+        for (int n = r.nextInt(3) + 1; n > 0; --n) {
+            int pos = r.nextInt(b.length() + 1);
+            char c = NOISE[r.nextInt(NOISE.length)];
+            switch (r.nextInt(4)) {
+                case 0: b.insert(pos, c); break;
+                case 1: if (pos < b.length()) b.setCharAt(pos, c); break;
+                case 2: if (pos < b.length()) b.deleteCharAt(pos); break;
+                default: b.setLength(pos);
+            }
+        }
+        return b.toString();
+    }
+
+    /**
+     * A stream that returns at most a few bytes from each read
+     */
+    private static class TricklingInputStream extends InputStream {
+        private final byte[] _b;
+        private final Random _r;
+        private int _pos = 0;
+
+        TricklingInputStream(byte[] b, Random r) {
+            _b = b;
+            _r = r;
+        }
+
+        @Override
+        public int read() {
+            return (_pos < _b.length) ? (_b[_pos++] & 0xff) : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) return 0;
+            if (_pos == _b.length) return -1;
+            int n = Math.min(Math.min(len, _b.length - _pos), 1 + _r.nextInt(_r.nextBoolean() ? 7 : 3000));
+            System.arraycopy(_b, _pos, b, off, n);
+            _pos += n;
+            return n;
+        }
+    }
+
+    /**
+     * A reader that returns at most a few characters from each read
+     */
+    private static class TricklingReader extends Reader {
+        private final CharSequence _s;
+        private final Random _r;
+        private int _pos = 0;
+
+        TricklingReader(CharSequence s, Random r) {
+            _s = s;
+            _r = r;
+        }
+
+        @Override
+        public int read(char[] c, int off, int len) {
+            if (len == 0) return 0;
+            if (_pos == _s.length()) return -1;
+            int n = Math.min(Math.min(len, _s.length() - _pos), 1 + _r.nextInt(_r.nextBoolean() ? 7 : 3000));
+            for (int i = 0; i < n; ++i) c[off + i] = _s.charAt(_pos++);
+            return n;
+        }
+
+        @Override
+        public void close() {}
+    }
+
+    /**
+     * A channel over a byte array that is not a FileChannel
+     */
+    private static class ArrayChannel implements SeekableByteChannel {
+        private final byte[] _b;
+        private long _position = 0;
+
+        ArrayChannel(byte[] b) {
+            _b = b;
+        }
+
+        @Override public int read(ByteBuffer dst) {
+            if (_position >= _b.length) return -1;
+            int n = (int) Math.min(dst.remaining(), _b.length - _position);
+            dst.put(_b, (int) _position, n);
+            _position += n;
+            return n;
+        }
+        @Override public int write(ByteBuffer src) { throw new UnsupportedOperationException(); }
+        @Override public long position() { return _position; }
+        @Override public SeekableByteChannel position(long p) { _position = p; return this; }
+        @Override public long size() { return _b.length; }
+        @Override public SeekableByteChannel truncate(long size) { throw new UnsupportedOperationException(); }
+        @Override public boolean isOpen() { return true; }
+        @Override public void close() {}
+    }
+
+    // ------------------------------------------------------------------
+    // encoders
+
+    private interface ReferenceEncoder {
+        String encode(byte[] b, long startAddress);
+    }
+
+    private static void checkEncoder(String name, HexEncoder e, ReferenceEncoder reference, Random r, int caseIndex, byte[] b) {
+        long seed = r.nextLong();
+        verify(name, caseIndex, toChars(b), input -> {
+            Random rr = new Random(seed);
+            byte[] bytes = toBytes(input);
+            String expected = reference.encode(bytes, 0);
+            String actual;
+
+            if (!expected.equals(actual = e.encode(bytes))) return "encode(byte[]) gave " + actual + " expected " + expected;
+
+            int pad = rr.nextInt(9);
+            byte[] padded = new byte[bytes.length + pad + rr.nextInt(9)];
+            rr.nextBytes(padded);
+            System.arraycopy(bytes, 0, padded, pad, bytes.length);
+            if (!expected.equals(actual = e.encode(padded, pad, bytes.length))) return "encode(byte[], int, int) gave " + actual;
+
+            StringWriter s = new StringWriter();
+            e.encode(padded, pad, bytes.length, new PrintWriter(s));
+            if (!expected.equals(actual = s.toString())) return "encode(byte[], int, int, PrintWriter) gave " + actual;
+
+            s = new StringWriter();
+            try {
+                e.encode(new TricklingInputStream(bytes, rr), new PrintWriter(s));
+            } catch (IOException notExpected) {
+                throw new RuntimeException(notExpected);
+            }
+            if (!expected.equals(actual = s.toString())) return "encode(InputStream, PrintWriter) gave " + actual;
+
+            ByteBuffer heap = ByteBuffer.wrap(padded, pad, bytes.length);
+            if (!expected.equals(actual = e.encode(heap))) return "encode(heap ByteBuffer) gave " + actual;
+            if (heap.hasRemaining()) return "encode(heap ByteBuffer) did not consume the buffer";
+            ByteBuffer direct = ByteBuffer.allocateDirect(padded.length);
+            direct.put(padded).position(pad).limit(pad + bytes.length);
+            if (!expected.equals(actual = e.encode(direct))) return "encode(direct ByteBuffer) gave " + actual;
+
+            String region = reference.encode(bytes, pad);
+            s = new StringWriter();
+            try {
+                e.encode(new ArrayChannel(padded), pad, bytes.length, new PrintWriter(s));
+            } catch (IOException notExpected) {
+                throw new RuntimeException(notExpected);
+            }
+            if (!region.equals(actual = s.toString())) return "encode(SeekableByteChannel, ...) gave " + actual + " expected " + region;
+
+            IncrementalHexEncoder inc = e.newIncrementalEncoder();
+            CharBuffer out = CharBuffer.allocate(1 + rr.nextInt(64));
+            StringBuilder collected = new StringBuilder();
+            for (int pos = 0; pos < bytes.length; ) {
+                int n = Math.min(bytes.length - pos, rr.nextInt(40));
+                if (rr.nextBoolean()) {
+                    inc.feed(bytes, pos, n, out);
+                } else {
+                    inc.feed(ByteBuffer.wrap(bytes, pos, n), out);
+                }
+                pos += n;
+                do {
+                    out.flip();
+                    collected.append(out);
+                    out.clear();
+                    inc.drain(out);
+                } while (inc.hasPending() || out.position() > 0);
+            }
+            inc.finish(out);
+            do {
+                out.flip();
+                collected.append(out);
+                out.clear();
+                inc.drain(out);
+            } while (inc.hasPending() || out.position() > 0);
+            if (!expected.equals(actual = collected.toString())) return "IncrementalHexEncoder gave " + actual;
+            return null;
+        }, (char) 0, true);
+    }
+
+    public void testDefaultEncoder() {
+        for (int i = 0; i < CASES; ++i) {
+            Random r = new Random(SEED + i);
+            byte[] b = randomBytes(r);
+            checkEncoder("DefaultHexEncoder", new DefaultHexEncoder(), (x, a) -> referenceDefault(x), r, i, b);
+            if (b.length <= CachingHexEncoder.MAX_CACHED_LENGTH) {
+                CachingHexEncoder c = new CachingHexEncoder(new DefaultHexEncoder(), 16);
+                checkEncoder("CachingHexEncoder", c, (x, a) -> referenceDefault(x), r, i, b);
+                checkEncoder("CachingHexEncoder (cached)", c, (x, a) -> referenceDefault(x), r, i, b);
+            }
+        }
+    }
+
+    public void testDelimitedEncoders() {
+        for (int i = 0; i < CASES; ++i) {
+            Random r = new Random(SEED + i);
+            byte[] b = randomBytes(r);
+            int bytesPerLine = r.nextBoolean() ? 1 + r.nextInt(40) : Integer.MAX_VALUE;
+            String separator = SEPARATORS[r.nextInt(SEPARATORS.length)];
+            String name = String.format("DelimitedMultilineHexEncoder(%d, %s)", bytesPerLine, separator);
+            checkEncoder(name, new DelimitedMultilineHexEncoder(bytesPerLine, separator),
+                            (x, a) -> referenceDelimited(x, bytesPerLine, separator), r, i, b);
+
+            HexLayout layout = HexLayout.builder()
+                                    .byteSeparator(separator == null ? "" : separator)
+                                    .bytesPerLine(bytesPerLine)
+                                    .build();
+            checkEncoder("LayoutHexEncoder for " + name, layout.encoder(),
+                            (x, a) -> referenceDelimited(x, bytesPerLine, separator), r, i, b);
+        }
+    }
+
+    public void testHexDumpEncoder() {
+        for (int i = 0; i < CASES; ++i) {
+            Random r = new Random(SEED + i);
+            byte[] b = randomBytes(r);
+            boolean collapse = r.nextBoolean();
+            checkEncoder("HexDumpEncoder(" + collapse + ")", new HexDumpEncoder(collapse), (x, a) -> {
+                int digits = Math.max(8, Long.toHexString(a + Math.max(0, x.length - 1)).length());
+                return referenceDump(x, a, a == 0 ? 8 : digits, collapse);
+            }, r, i, b);
+        }
+    }
+
+    // ------------------------------------------------------------------
+    // decoders
+
+    private static final String IGNORED = ":-é  ";
+
+    /**
+     * A production decoder, the reference it must agree with, and hex for it
+     * to decode
+     */
+    private static class DecoderCase {
+        final HexDecoderAdapter decoder;
+        final ReferenceDecoder reference;
+        final String hex;
+
+        DecoderCase(HexDecoderAdapter decoder, ReferenceDecoder reference, String hex) {
+            this.decoder = decoder;
+            this.reference = reference;
+            this.hex = hex;
+        }
+    }
+
+    private static String vary(String s, Random r) {
+        if (r.nextBoolean()) s = s.toUpperCase();
+        return r.nextBoolean() ? mutate(s, r) : s;
+    }
+
+    private static DecoderCase randomCase(Random r) {
+        byte[] b = randomBytes(r);
+        switch (r.nextInt(5)) {
+            case 0: return new DecoderCase(new DefaultHexDecoder(), frozen(DifferentialFuzzTest::frozenDefault),
+                                            vary(referenceDelimited(b, 1 + r.nextInt(40), r.nextBoolean() ? ":" : " "), r));
+            case 1: return new DecoderCase(new StrictHexDecoder(), frozen(DifferentialFuzzTest::frozenStrict),
+                                            vary(referenceDefault(b), r));
+            case 2: return new DecoderCase(new CharIgnoringHexDecoder(IGNORED), frozen(() -> new FrozenCharIgnoringStrategy(IGNORED)),
+                                            vary(referenceDelimited(b, 1 + r.nextInt(40), r.nextBoolean() ? ":" : " "), r));
+            case 3: return new DecoderCase(new HexDumpDecoder(), DUMP, vary(referenceDump(b, 0, 8, r.nextBoolean()), r));
+            default:
+                boolean upperCase = r.nextBoolean();
+                String separator = SEPARATORS[1 + r.nextInt(SEPARATORS.length - 1)];
+                int bytesPerLine = 1 + r.nextInt(20);
+                HexLayout layout = HexLayout.builder()
+                                        .upperCase(upperCase)
+                                        .byteSeparator(separator)
+                                        .bytesPerLine(bytesPerLine)
+                                        .build();
+                String hex = referenceDelimited(b, bytesPerLine, separator);
+                if (upperCase) hex = hex.toUpperCase();
+                return new DecoderCase(layout.decoder(), layout(bytesPerLine, separator, upperCase),
+                                        r.nextBoolean() ? mutate(hex, r) : hex);
+        }
+    }
+
+    private static Outcome outcome(Action a) {
+        try {
+            return Outcome.of(a.run());
+        } catch (Exception | AssertionError e) {
+            return Outcome.of(e);
+        }
+    }
+
+    private interface Action {
+        byte[] run() throws Exception;
+    }
+
+    private static boolean singleByte(char[] c) {
+        for (char x : c) if (x > 0xff) return false;
+        return true;
+    }
+
+    private static String compare(String what, Outcome expected, Outcome actual) {
+        return expected.equals(actual) ? null : String.format("%s gave %s, expected %s", what, actual, expected);
+    }
+
+    private static String firstDifference(String... differences) {
+        for (String d : differences) if (d != null) return d;
+        return null;
+    }
+
+    private static void checkDecoder(String name, HexDecoderAdapter d, ReferenceDecoder reference, Random r, int caseIndex, String hex, Path scratch) {
+        long seed = r.nextLong();
+        verify(name, caseIndex, hex.toCharArray(), input -> {
+            Random rr = new Random(seed);
+            String s = new String(input);
+            Outcome expected = reference.decode(s, 0, s.length());
+            if (expected == null) return null;
+
+            String prefix = rr.nextBoolean() ? "" : "zz";
+            String wrapped = prefix + s + (rr.nextBoolean() ? "" : "!");
+            Outcome expectedRange = reference.decode(wrapped, prefix.length(), prefix.length() + s.length());
+
+            String difference = firstDifference(
+                compare("decode(String)", expected, outcome(() -> d.decode(s))),
+                compare("decode(CharSequence, int, int)", expectedRange,
+                            outcome(() -> d.decode(new StringBuilder(wrapped), prefix.length(), prefix.length() + s.length()))),
+                compare("decode(Reader)", expected, outcome(() -> d.decode(new TricklingReader(s, rr)))),
+                compare("decodedLength(CharSequence)", (expected.bytes == null) ? expected : Outcome.of(new byte[expected.bytes.length]),
+                            outcome(() -> new byte[(int) d.decodedLength(s)])));
+            if (difference != null) return difference;
+
+            // decoding in place into an array, with and without enough room
+            char[] chars = wrapped.toCharArray();
+            int capacity = (expectedRange.bytes == null) ? s.length() : expectedRange.bytes.length;
+            int room = rr.nextBoolean() ? capacity : Math.max(0, capacity - 1 - rr.nextInt(3));
+            Outcome inPlace = outcome(() -> {
+                byte[] out = new byte[room + 2];
+                int n = d.decode(chars, prefix.length(), s.length(), out, 2);
+                return Arrays.copyOfRange(out, 2, 2 + n);
+            });
+            Outcome expectedInPlace = (expectedRange.bytes != null && expectedRange.bytes.length > room)
+                                        ? Outcome.of(new BufferOverflowException()) : expectedRange;
+            difference = compare("decode(char[], int, int, byte[], int) with room for " + room, expectedInPlace, inPlace);
+            if (difference != null) return difference;
+
+            // incremental decoding in random chunks through a small buffer
+            Outcome incremental = outcome(() -> {
+                IncrementalHexDecoder inc = d.newIncrementalDecoder();
+                ByteBuffer out = ByteBuffer.allocate(1 + rr.nextInt(50));
+                ByteArrayOutputStream collected = new ByteArrayOutputStream();
+                for (int pos = 0; pos < s.length(); ) {
+                    int n = Math.min(s.length() - pos, rr.nextInt(60));
+                    switch (rr.nextInt(3)) {
+                        case 0: inc.feed(s.subSequence(pos, pos + n), out); break;
+                        case 1: inc.feed(input, pos, n, out); break;
+                        default:
+                            if (!singleByte(input)) {
+                                inc.feed(CharBuffer.wrap(s, pos, pos + n), out);
+                            } else {
+                                inc.feed(ByteBuffer.wrap(s.substring(pos, pos + n).getBytes(StandardCharsets.ISO_8859_1)), out);
+                            }
+                    }
+                    pos += n;
+                    drain(inc, out, collected);
+                }
+                inc.finish(out);
+                drain(inc, out, collected);
+                return collected.toByteArray();
+            });
+            difference = compare("IncrementalHexDecoder", expected, incremental);
+            if (difference != null) return difference;
+
+            DecodeResult expectedResult = referenceResult(expected, s);
+            DecodeResult result = d.tryDecode(s);
+            if (result.isValid() != expectedResult.isValid()
+                    || result.errorPosition() != expectedResult.errorPosition()
+                    || result.error() != expectedResult.error()
+                    || (result.isValid() && !Arrays.equals(result.bytes(), expectedResult.bytes()))) {
+                return String.format("tryDecode gave %s at %d, expected %s at %d",
+                                        result.error(), result.errorPosition(), expectedResult.error(), expectedResult.errorPosition());
+            }
+            if (d.validate(s) != expectedResult.errorPosition()) {
+                return String.format("validate gave %d, expected %d", d.validate(s), expectedResult.errorPosition());
+            }
+
+            if (singleByte(input)) {
+                byte[] single = s.getBytes(StandardCharsets.ISO_8859_1);
+                ByteBuffer direct = ByteBuffer.allocateDirect(single.length);
+                direct.put(single).flip();
+                difference = compare("decode(ByteBuffer, ByteBuffer)", expected, outcome(() -> {
+                    ByteBuffer out = ByteBuffer.allocate((expected.bytes == null) ? single.length : expected.bytes.length);
+                    d.decode(direct, out);
+                    return Arrays.copyOf(out.array(), out.position());
+                }));
+                if (difference != null) return difference;
+
+                if (scratch != null) {
+                    Path in = scratch.resolve("in.txt"), out = scratch.resolve("out.bin");
+                    difference = compare("decode(Path, Path) on several threads", expected, outcome(() -> {
+                        Files.write(in, single);
+                        FileDecoder.decode(d, in, out, 3, 1 + rr.nextInt(200));
+                        return Files.readAllBytes(out);
+                    }));
+                    if (difference != null) return difference;
+                }
+            }
+            return null;
+        }, '0', false);
+    }
+
+    private static void drain(IncrementalHexDecoder inc, ByteBuffer out, ByteArrayOutputStream collected) {
+        do {
+            out.flip();
+            collected.write(out.array(), 0, out.limit());
+            out.clear();
+            inc.drain(out);
+        } while (inc.hasPending() || out.position() > 0);
+    }
+
+    public void testDecoders() throws Exception {
+        Path scratch = Files.createTempDirectory("hexfuzz");
+        try {
+            for (int i = 0; i < CASES * 2; ++i) {
+                Random r = new Random(SEED + i);
+                DecoderCase c = randomCase(r);
+                checkDecoder(c.decoder.getClass().getSimpleName(), c.decoder, c.reference, r, i, c.hex, (i % 8 == 0) ? scratch : null);
+            }
+        } finally {
+            for (Path p : Files.newDirectoryStream(scratch)) Files.delete(p);
+            Files.delete(scratch);
+        }
+    }
+
+    public void testShrinking() {
+        // a deliberately broken property shrinks to the smallest input that breaks it
+        char[] minimal = shrink("0123456789abcdefx0123".toCharArray(), c -> new String(c).contains("x") ? "has x" : null, '0');
+        assertEquals("x", new String(minimal));
+    }
+
+}
@@ -0,0 +1,174 @@
+package com.martiansoftware.hex;
+
+//   Copyright 2016 Martian Software, Inc.
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.Random;
+import junit.framework.TestCase;
+
+public class FileDecoderTest extends TestCase {
+
+    private static final String NEWLINE = System.lineSeparator();
+
+    private Path _in;
+    private Path _out;
+
+    @Override
+    protected void setUp() throws Exception {
+        _in = File.createTempFile("filedecoder", ".txt").toPath();
+        _out = File.createTempFile("filedecoder", ".bin").toPath();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        Files.deleteIfExists(_in);
+        Files.deleteIfExists(_out);
+    }
+
+    private static byte[] randomBytes(int len) {
+        byte[] b = new byte[len];
+        new Random(len).nextBytes(b);
+        return b;
+    }
+
+    private void write(String hex) throws Exception {
+        Files.write(_in, hex.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    /**
+     * Decodes the input file with a single thread and with many threads and
+     * small chunks, checking that both produce the expected bytes
+     */
+    private void assertDecodes(HexDecoder d, byte[] expected) throws Exception {
+        for (int threads : new int[] {1, 4}) {
+            for (int chunkSize : new int[] {997, 1000, 4096}) {
+                assertEquals(expected.length, FileDecoder.decode(d, _in, _out, threads, chunkSize));
+                assertTrue(Arrays.equals(expected, Files.readAllBytes(_out)));
+            }
+        }
+    }
+
+    /**
+     * Checks that decoding the input file fails at the same position with
+     * the same message with a single thread and with many threads
+     */
+    private void assertFails(HexDecoder d, int position) throws Exception {
+        for (int threads : new int[] {1, 4}) {
+            for (int chunkSize : new int[] {997, 1000}) {
+                try {
+                    FileDecoder.decode(d, _in, _out, threads, chunkSize);
+                    fail("expected ParseException");
+                } catch (ParseException e) {
+                    assertEquals(position, e.getErrorOffset());
+                    assertTrue(e.getMessage().contains("position " + position));
+                }
+            }
+        }
+    }
+
+    public void testStrict() throws Exception {
+        byte[] b = randomBytes(20000);
+        write(new DefaultHexEncoder().encode(b));
+        assertDecodes(new StrictHexDecoder(), b);
+        assertDecodes(new DefaultHexDecoder(), b);
+    }
+
+    public void testDelimited() throws Exception {
+        // SIMPLE layout, whose chunk boundaries fall between the digits of some bytes
+        byte[] b = randomBytes(20001);
+        write(StandardHexCodecs.SIMPLE.encode(b));
+        assertDecodes(StandardHexCodecs.SIMPLE, b);
+        write(new DelimitedMultilineHexEncoder(7, " ").encode(b));
+        assertDecodes(new DefaultHexDecoder(), b);
+    }
+
+    public void testHexDump() throws Exception {
+        byte[] b = randomBytes(10000);
+        write(new HexDumpEncoder().encode(b));
+        assertDecodes(new HexDumpDecoder(), b);
+
+        // long runs of collapsed lines spanning several chunks
+        byte[] runs = new byte[200000];
+        System.arraycopy(b, 0, runs, 50000, b.length);
+        System.arraycopy(b, 0, runs, 199000, 1000);
+        write(new HexDumpEncoder(true).encode(runs));
+        assertDecodes(new HexDumpDecoder(), runs);
+    }
+
+    public void testHexDumpNotStartingAtZero() throws Exception {
+        byte[] b = randomBytes(5000);
+        StringWriter s = new StringWriter();
+        new HexDumpEncoder().encode(new java.io.ByteArrayInputStream(b), 0x10000, 8, new PrintWriter(s));
+        write(s.toString());
+        assertDecodes(new HexDumpDecoder(), b);
+    }
+
+    public void testSequentialFormats() throws Exception {
+        byte[] b = randomBytes(3000);
+        write(new IntelHexEncoder().encode(b));
+        assertDecodes(new IntelHexDecoder(), b);
+        write(new HexDumpEncoder().encode(b));
+        assertDecodes(new AutoDetectingHexDecoder(), b);
+    }
+
+    public void testEmpty() throws Exception {
+        write("");
+        assertDecodes(new DefaultHexDecoder(), new byte[0]);
+        assertDecodes(new HexDumpDecoder(), new byte[0]);
+    }
+
+    public void testReplacesExistingOutput() throws Exception {
+        Files.write(_out, new byte[100000]);
+        byte[] b = randomBytes(10);
+        write(Hex.encode(b));
+        assertEquals(10, Hex.decode(_in, _out));
+        assertTrue(Arrays.equals(b, Files.readAllBytes(_out)));
+    }
+
+    public void testFirstErrorIsReported() throws Exception {
+        char[] hex = new DefaultHexEncoder().encode(randomBytes(10000)).toCharArray();
+        hex[15001] = 'x';
+        hex[5003] = 'x';
+        write(new String(hex));
+        assertFails(new StrictHexDecoder(), 5003);
+        assertFails(new DefaultHexDecoder(), 5003);
+
+        // a digit followed by an ignored character at a chunk boundary
+        hex = new DefaultHexEncoder().encode(randomBytes(10000)).toCharArray();
+        hex[2001] = ' ';
+        write(new String(hex));
+        assertFails(new DefaultHexDecoder(), 2001);
+    }
+
+    public void testUnexpectedEof() throws Exception {
+        write(new DefaultHexEncoder().encode(randomBytes(10000)) + "a");
+        assertFails(new StrictHexDecoder(), 20001);
+    }
+
+    public void testHexDumpError() throws Exception {
+        String dump = new HexDumpEncoder().encode(randomBytes(10000));
+        int bad = dump.indexOf("00000100: ") + 10;
+        write(dump.substring(0, bad) + "zz" + dump.substring(bad + 2));
+        assertFails(new HexDumpDecoder(), bad);
+    }
+
+}
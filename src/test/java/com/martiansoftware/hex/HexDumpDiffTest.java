@@ -0,0 +1,93 @@
+package com.martiansoftware.hex;
+
+//   Copyright 2016 Martian Software, Inc.
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import junit.framework.TestCase;
+
+public class HexDumpDiffTest extends TestCase {
+
+    private static final String NL = System.lineSeparator();
+
+    private static byte[] data(int len) {
+        byte[] b = new byte[len];
+        new Random(35).nextBytes(b);
+        return b;
+    }
+
+    private static String diff(HexDumpDiff d, byte[] a, byte[] b) throws Exception {
+        StringWriter s = new StringWriter();
+        d.diff(new ByteArrayInputStream(a), new ByteArrayInputStream(b), new PrintWriter(s));
+        return s.toString();
+    }
+
+    private static String line(byte[] b, int offset, int len) {
+        return StandardHexCodecs.HEXDUMP.encode(Arrays.copyOfRange(b, offset & ~15, (offset & ~15) + len))
+                .substring(8)
+                .replaceFirst("^", String.format("%08x", offset & ~15));
+    }
+
+    public void testIdentical() throws Exception {
+        byte[] a = data(200000);
+        assertEquals("", diff(new HexDumpDiff(), a, a.clone()));
+    }
+
+    public void testUnified() throws Exception {
+        byte[] a = data(200000);
+        byte[] b = a.clone();
+        b[0x10005] ^= 1;
+        b[0x1fff0] ^= 1;
+        String expected = "-" + line(a, 0x10005, 16) + NL + "+" + line(b, 0x10005, 16) + NL
+                        + "-" + line(a, 0x1fff0, 16) + NL + "+" + line(b, 0x1fff0, 16);
+        assertEquals(expected, diff(new HexDumpDiff(), a, b));
+    }
+
+    public void testDifferentLengths() throws Exception {
+        byte[] a = data(40);
+        byte[] b = Arrays.copyOf(a, 20);
+        String expected = "-" + line(a, 16, 16) + NL + "+" + line(b, 16, 4) + NL + "-" + line(a, 32, 8);
+        assertEquals(expected, diff(new HexDumpDiff(), a, b));
+    }
+
+    public void testSideBySide() throws Exception {
+        byte[] a = "Wikipedia, the free encyclopedia".getBytes();
+        byte[] b = "Wikipedia, the free Encyclopedia".getBytes();
+        String expected = "00000010: 72 65 65 20 65 6e 63 79   63 6c 6f 70 65 64 69 61   ree encyclopedia"
+                        + " | 72 65 65 20 45 6e 63 79   63 6c 6f 70 65 64 69 61   ree Encyclopedia";
+        assertEquals(expected, diff(new HexDumpDiff(HexDumpDiff.Style.SIDE_BY_SIDE), a, b));
+    }
+
+    public void testFiles() throws Exception {
+        byte[] a = data(300000);
+        byte[] b = Arrays.copyOf(a, 300010);
+        b[123456] = (byte) ~b[123456];
+        File fa = File.createTempFile("hexdiff", ".bin");
+        File fb = File.createTempFile("hexdiff", ".bin");
+        fa.deleteOnExit();
+        fb.deleteOnExit();
+        Files.write(fa.toPath(), a);
+        Files.write(fb.toPath(), b);
+
+        StringWriter s = new StringWriter();
+        assertEquals(2, new HexDumpDiff().diff(fa.toPath(), fb.toPath(), new PrintWriter(s)));
+        assertEquals(diff(new HexDumpDiff(), a, b), s.toString());
+    }
+}
@@ -1,6 +1,16 @@
 package com.martiansoftware.hex;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.text.ParseException;
 import java.util.Arrays;
+import java.util.Random;
 import junit.framework.TestCase;
 
 public class HexDumpTest extends TestCase {
@@ -20,4 +30,136 @@ public class HexDumpTest extends TestCase {
         HexDumpDecoder d = new HexDumpDecoder();
         assertTrue(Arrays.equals(b, d.decode(s)));
     }
+
+    public void testCollapsedHexDump() throws Exception {
+        byte[] b = new byte[100];
+        for (int i = 0; i < 8; ++i) b[48 + i] = (byte) ('a' + i);
+        
+        HexDumpEncoder e = new HexDumpEncoder(true);
+        String expected = "00000000: 00 00 00 00 00 00 00 00   00 00 00 00 00 00 00 00   ................" + NEWLINE
+                        + "*" + NEWLINE
+                        + "00000030: 61 62 63 64 65 66 67 68   00 00 00 00 00 00 00 00   abcdefgh........" + NEWLINE
+                        + "00000040: 00 00 00 00 00 00 00 00   00 00 00 00 00 00 00 00   ................" + NEWLINE
+                        + "*" + NEWLINE
+                        + "00000060: 00 00 00 00                                         ....            ";
+        assertEquals(expected, e.encode(b));
+        assertTrue(Arrays.equals(b, new HexDumpDecoder().decode(expected)));
+        
+        // collapsing does not affect dumps without repeated lines
+        assertEquals(s, e.encode(HexDumpTest.b));
+    }
+    
+    public void testCollapsedHexDumpEndingInRun() throws Exception {
+        byte[] b = new byte[64];
+        String encoded = new HexDumpEncoder(true).encode(b);
+        assertEquals("00000000: 00 00 00 00 00 00 00 00   00 00 00 00 00 00 00 00   ................" + NEWLINE
+                   + "*" + NEWLINE
+                   + "00000040", encoded);
+        assertTrue(Arrays.equals(b, new HexDumpDecoder().decode(encoded)));
+        
+        try {
+            new HexDumpDecoder().decode(encoded.substring(0, encoded.lastIndexOf(NEWLINE)));
+            fail("decoded a collapsed run without a terminating address");
+        } catch (ParseException expected) {}
+    }
+
+    private void assertRangesDecode(byte[] b, boolean collapse) throws Exception {
+        File f = File.createTempFile("hexdump", ".txt");
+        f.deleteOnExit();
+        try (PrintWriter out = new PrintWriter(f)) {
+            new HexDumpEncoder(collapse).encode(b, out);
+        }
+        
+        HexDumpDecoder d = new HexDumpDecoder();
+        try (FileChannel in = FileChannel.open(f.toPath())) {
+            int[][] ranges = { {0, 1}, {0, 16}, {5, 100}, {4000, 2000}, {4096, 1}, {8191, 1}, {8000, 500}, {b.length, 10} };
+            for (int[] range : ranges) {
+                ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+                long n = d.decodeRange(in, range[0], range[1], decoded);
+                int end = Math.min(b.length, range[0] + range[1]);
+                assertEquals(end - range[0], n);
+                assertTrue(Arrays.equals(Arrays.copyOfRange(b, range[0], end), decoded.toByteArray()));
+            }
+        }
+    }
+    
+    public void testDecodeRange() throws Exception {
+        byte[] b = new byte[8192];
+        new Random(1).nextBytes(b);
+        Arrays.fill(b, 1000, 5000, (byte) 0);
+        assertRangesDecode(b, false);
+        assertRangesDecode(b, true);
+    }
+
+    public void testDecodeRangeStopsAtEndOfRange() throws Exception {
+        byte[] b = new byte[4096];
+        new Random(3).nextBytes(b);
+        String dump = new HexDumpEncoder().encode(b);
+        int damaged = dump.indexOf("00000600: ") + 10;
+
+        File f = File.createTempFile("hexdump", ".txt");
+        f.deleteOnExit();
+        Files.write(f.toPath(), (dump.substring(0, damaged) + "zz" + dump.substring(damaged + 2)).getBytes());
+
+        HexDumpDecoder d = new HexDumpDecoder();
+        try (FileChannel in = FileChannel.open(f.toPath())) {
+            // the damaged line lies beyond the range, within the same block
+            ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+            assertEquals(1000, d.decodeRange(in, 100, 1000, decoded));
+            assertTrue(Arrays.equals(Arrays.copyOfRange(b, 100, 1100), decoded.toByteArray()));
+
+            try {
+                d.decodeRange(in, 100, 4000, new ByteArrayOutputStream());
+                fail("decoded a range containing a damaged line");
+            } catch (ParseException expected) {
+                assertEquals(damaged, expected.getErrorOffset());
+            }
+        }
+    }
+
+    public void testEncodeRegion() throws Exception {
+        File f = File.createTempFile("hexdump", ".bin");
+        f.deleteOnExit();
+        byte[] b = new byte[1000];
+        new Random(2).nextBytes(b);
+        Files.write(f.toPath(), b);
+        
+        try (FileChannel in = FileChannel.open(f.toPath())) {
+            StringWriter s = new StringWriter();
+            new HexDumpEncoder().encode(in, 100, 40, new PrintWriter(s));
+            assertTrue(s.toString().startsWith("00000064: "));
+            assertTrue(s.toString().contains(NEWLINE + "00000084: "));
+            assertTrue(Arrays.equals(Arrays.copyOfRange(b, 100, 140), new HexDumpDecoder().decode(s.toString())));
+            assertEquals(0, in.position());
+            
+            s = new StringWriter();
+            new HexDumpEncoder().encode(in, 990, 40, new PrintWriter(s));
+            assertTrue(Arrays.equals(Arrays.copyOfRange(b, 990, 1000), new HexDumpDecoder().decode(s.toString())));
+        }
+    }
+    
+    public void testEncodeRegionBeyond4GB() throws Exception {
+        // a channel of zeros large enough to require wider addresses
+        SeekableByteChannel zeros = new SeekableByteChannel() {
+            private long _position = 0;
+            @Override public int read(ByteBuffer dst) {
+                int n = dst.remaining();
+                dst.put(new byte[n]);
+                _position += n;
+                return n;
+            }
+            @Override public int write(ByteBuffer src) { throw new UnsupportedOperationException(); }
+            @Override public long position() { return _position; }
+            @Override public SeekableByteChannel position(long newPosition) { _position = newPosition; return this; }
+            @Override public long size() { return 0x10000000000L; }
+            @Override public SeekableByteChannel truncate(long size) { throw new UnsupportedOperationException(); }
+            @Override public boolean isOpen() { return true; }
+            @Override public void close() {}
+        };
+        
+        StringWriter s = new StringWriter();
+        new HexDumpEncoder().encode(zeros, 0xfffffff8L, 16, new PrintWriter(s));
+        assertEquals("0fffffff8: 00 00 00 00 00 00 00 00   00 00 00 00 00 00 00 00   ................", s.toString());
+        assertEquals(16, new HexDumpDecoder().decode(s.toString()).length);
+    }
 }
@@ -0,0 +1,132 @@
+package com.martiansoftware.hex;
+
+//   Copyright 2016 Martian Software, Inc.
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import junit.framework.TestCase;
+
+/**
+ * Checks the Flight Recorder events emitted for large operations
+ */
+public class HexEventsTest extends TestCase {
+
+    private static final String EVENT = "com.martiansoftware.hex.Operation";
+    private static final int THRESHOLD = 1024;
+
+    private long _savedThreshold;
+
+    @Override
+    protected void setUp() {
+        _savedThreshold = HexEvents.threshold();
+        HexEvents.threshold(THRESHOLD);
+    }
+
+    @Override
+    protected void tearDown() {
+        HexEvents.threshold(_savedThreshold);
+    }
+
+    private interface Task {
+        void run() throws Exception;
+    }
+
+    private static List<RecordedEvent> record(Task task) throws Exception {
+        File f = File.createTempFile("hex", ".jfr");
+        try (Recording r = new Recording()) {
+            r.enable(EVENT);
+            r.start();
+            task.run();
+            r.stop();
+            r.dump(f.toPath());
+            List<RecordedEvent> result = new ArrayList<>();
+            for (RecordedEvent e : RecordingFile.readAllEvents(f.toPath())) {
+                if (e.getEventType().getName().equals(EVENT)) result.add(e);
+            }
+            return result;
+        } finally {
+            f.delete();
+        }
+    }
+
+    private static byte[] randomBytes(int len) {
+        byte[] b = new byte[len];
+        new Random(len).nextBytes(b);
+        return b;
+    }
+
+    private static void assertEvent(RecordedEvent e, Class<?> codec, String direction, long bytes, long chars, boolean failed) {
+        assertEquals(codec.getName(), e.getClass("codec").getName());
+        assertEquals(direction, e.getString("direction"));
+        assertEquals(bytes, e.getLong("bytes"));
+        assertEquals(chars, e.getLong("chars"));
+        assertEquals(failed, e.getBoolean("failed"));
+    }
+
+    public void testNoTokenWithoutRecording() {
+        assertNull(HexEvents.begin());
+        assertNull(HexEvents.begin(1 << 20));
+    }
+
+    public void testFastPaths() throws Exception {
+        byte[] b = randomBytes(4096);
+        String hex = new DefaultHexEncoder().encode(b);
+        List<RecordedEvent> events = record(() -> {
+            new DefaultHexEncoder().encode(b);
+            new DefaultHexDecoder().decode(hex.toCharArray(), 0, hex.length(), new byte[b.length], 0);
+            new DefaultHexEncoder().encode(new byte[THRESHOLD - 1]);
+        });
+        assertEquals(2, events.size());
+        assertEvent(events.get(0), DefaultHexEncoder.class, "encode", 4096, 8192, false);
+        assertEvent(events.get(1), DefaultHexDecoder.class, "decode", 4096, 8192, false);
+        assertTrue(events.get(0).getDuration().toNanos() >= 0);
+    }
+
+    public void testAdapterStreams() throws Exception {
+        byte[] b = randomBytes(4096);
+        StringWriter dump = new StringWriter();
+        List<RecordedEvent> events = record(() -> {
+            new HexDumpEncoder().encode(new ByteArrayInputStream(b), new PrintWriter(dump));
+            new HexDumpDecoder().decode(new StringReader(dump.toString()), new ByteArrayOutputStream());
+        });
+        assertEquals(2, events.size());
+        assertEvent(events.get(0), HexDumpEncoder.class, "encode", 4096, dump.toString().length(), false);
+        assertEvent(events.get(1), HexDumpDecoder.class, "decode", 4096, dump.toString().length(), false);
+    }
+
+    public void testParseFailure() throws Exception {
+        String hex = new DefaultHexEncoder().encode(randomBytes(4096)) + "xx";
+        List<RecordedEvent> events = record(() -> {
+            try {
+                new StrictHexDecoder().decode(hex);
+                fail("expected ParseException");
+            } catch (ParseException expected) {}
+        });
+        assertEquals(1, events.size());
+        assertEvent(events.get(0), StrictHexDecoder.class, "decode", 4096, 8192, true);
+    }
+
+}
@@ -0,0 +1,352 @@
+package com.martiansoftware.hex;
+
+//   Copyright 2016 Martian Software, Inc.
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import junit.framework.TestCase;
+
+public class HexFlowProcessorTest extends TestCase {
+
+    /**
+     * Publishes a list of items as they are requested, recording demand
+     */
+    private static class ListPublisher<T> implements Flow.Publisher<T> {
+        private final List<T> _items;
+        private int _next = 0;
+        private long _demand = 0;
+        private long _requested = 0;
+        private boolean _emitting = false;
+        private boolean _done = false;
+        private boolean _cancelled = false;
+
+        ListPublisher(List<T> items) {
+            _items = items;
+        }
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super T> s) {
+            s.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                    _requested += n;
+                    _demand += n;
+                    if (_emitting) return;
+                    _emitting = true;
+                    while (_demand > 0 && _next < _items.size() && !_cancelled) {
+                        --_demand;
+                        s.onNext(_items.get(_next++));
+                    }
+                    if (_next == _items.size() && !_done && !_cancelled) {
+                        _done = true;
+                        s.onComplete();
+                    }
+                    _emitting = false;
+                }
+
+                @Override
+                public void cancel() {
+                    _cancelled = true;
+                }
+            });
+        }
+    }
+
+    /**
+     * Collects items, requesting a fixed number up front and then (optionally)
+     * one more as each arrives
+     */
+    private static class Collector<T> implements Flow.Subscriber<T> {
+        private final long _initial;
+        private final boolean _more;
+        private Flow.Subscription _subscription;
+        final List<T> items = new ArrayList<>();
+        Throwable error = null;
+        boolean complete = false;
+
+        Collector(long initial, boolean more) {
+            _initial = initial;
+            _more = more;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription s) {
+            _subscription = s;
+            s.request(_initial);
+        }
+
+        @Override
+        public void onNext(T item) {
+            items.add(item);
+            if (_more) _subscription.request(1);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            error = t;
+        }
+
+        @Override
+        public void onComplete() {
+            complete = true;
+        }
+    }
+
+    private static List<ByteBuffer> split(byte[] b, Random r) {
+        List<ByteBuffer> chunks = new ArrayList<>();
+        for (int pos = 0; pos < b.length; ) {
+            int n = Math.min(b.length - pos, r.nextInt(3000));
+            chunks.add(ByteBuffer.wrap(b, pos, n));
+            pos += n;
+        }
+        return chunks;
+    }
+
+    private static List<CharBuffer> split(String s, Random r) {
+        List<CharBuffer> chunks = new ArrayList<>();
+        for (int pos = 0; pos < s.length(); ) {
+            int n = Math.min(s.length() - pos, r.nextInt(3000));
+            chunks.add(CharBuffer.wrap(s, pos, pos + n));
+            pos += n;
+        }
+        return chunks;
+    }
+
+    private static String join(List<CharBuffer> chunks, int chunkSize) {
+        StringBuilder s = new StringBuilder();
+        for (CharBuffer c : chunks) {
+            assertTrue(c.remaining() > 0 && c.remaining() <= chunkSize);
+            s.append(c);
+        }
+        return s.toString();
+    }
+
+    private static byte[] join(List<ByteBuffer> chunks) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (ByteBuffer b : chunks) out.write(b.array(), b.arrayOffset() + b.position(), b.remaining());
+        return out.toByteArray();
+    }
+
+    public void testEncoding() {
+        Random r = new Random(45);
+        HexEncoder[] encoders = { new DefaultHexEncoder(), new HexDumpEncoder(true), new DelimitedMultilineHexEncoder(16, ":"),
+                                  HexLayout.builder().bytePrefix("0x").byteSeparator(", ").bytesPerLine(8).build().encoder() };
+        for (HexEncoder e : encoders) {
+            for (int len : new int[] { 0, 1, 100, 20000 }) {
+                byte[] b = new byte[len];
+                r.nextBytes(b);
+                for (int chunkSize : new int[] { 1, 7, 8192 }) {
+                    Collector<CharBuffer> c = new Collector<>(1 + r.nextInt(3), true);
+                    HexEncodingProcessor p = new HexEncodingProcessor(e, chunkSize);
+                    new ListPublisher<>(split(b, r)).subscribe(p);
+                    p.subscribe(c);
+                    assertTrue(c.complete);
+                    assertNull(c.error);
+                    assertEquals(e.encode(b), join(c.items, chunkSize));
+                }
+            }
+        }
+    }
+
+    public void testDecoding() {
+        Random r = new Random(46);
+        byte[] b = new byte[20000];
+        r.nextBytes(b);
+        HexEncoder[] encoders = { new DefaultHexEncoder(), new HexDumpEncoder(true), new DelimitedMultilineHexEncoder(16, ":"),
+                                  StandardHexCodecs.HEXDUMP, new HexDumpEncoder() };
+        HexDecoder[] decoders = { new StrictHexDecoder(), new HexDumpDecoder(), new DefaultHexDecoder(),
+                                  StandardHexCodecs.HEXDUMP, new AutoDetectingHexDecoder() };
+        for (int i = 0; i < encoders.length; ++i) {
+            for (int chunkSize : new int[] { 1, 7, 8192 }) {
+                Collector<ByteBuffer> c = new Collector<>(1, true);
+                HexDecodingProcessor p = new HexDecodingProcessor(decoders[i], chunkSize);
+                new ListPublisher<>(split(encoders[i].encode(b), r)).subscribe(p);
+                p.subscribe(c);
+                assertTrue(c.complete);
+                for (ByteBuffer out : c.items) assertTrue(out.remaining() > 0 && out.remaining() <= chunkSize);
+                assertTrue(Arrays.equals(b, join(c.items)));
+            }
+        }
+    }
+
+    public void testRoundTrip() {
+        byte[] b = new byte[50000];
+        new Random(47).nextBytes(b);
+        ListPublisher<ByteBuffer> source = new ListPublisher<>(split(b, new Random(48)));
+        HexEncodingProcessor encoding = new HexEncodingProcessor(new HexDumpEncoder(), 100);
+        HexDecodingProcessor decoding = new HexDecodingProcessor(new HexDumpDecoder(), 37);
+        Collector<ByteBuffer> c = new Collector<>(Long.MAX_VALUE, false);
+        source.subscribe(encoding);
+        encoding.subscribe(decoding);
+        decoding.subscribe(c);
+        assertTrue(c.complete);
+        assertTrue(Arrays.equals(b, join(c.items)));
+    }
+
+    public void testAsynchronous() throws Exception {
+        byte[] b = new byte[200000];
+        new Random(49).nextBytes(b);
+        HexEncodingProcessor encoding = new HexEncodingProcessor(new DefaultHexEncoder(), 64);
+        HexDecodingProcessor decoding = new HexDecodingProcessor(new DefaultHexDecoder(), 100);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        SubmissionPublisher<ByteBuffer> source = new SubmissionPublisher<>(pool, 4);
+        SubmissionPublisher<CharBuffer> hex = new SubmissionPublisher<>(pool, 4);
+        try {
+            // a second asynchronous hop between the processors
+            encoding.subscribe(new Flow.Subscriber<CharBuffer>() {
+                private Flow.Subscription _s;
+                @Override public void onSubscribe(Flow.Subscription s) { _s = s; s.request(1); }
+                @Override public void onNext(CharBuffer c) { hex.submit(c); _s.request(1); }
+                @Override public void onError(Throwable t) { hex.closeExceptionally(t); }
+                @Override public void onComplete() { hex.close(); }
+            });
+            hex.subscribe(decoding);
+            source.subscribe(encoding);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            CountDownLatch done = new CountDownLatch(1);
+            decoding.subscribe(new Flow.Subscriber<ByteBuffer>() {
+                private Flow.Subscription _s;
+                @Override public void onSubscribe(Flow.Subscription s) { _s = s; s.request(2); }
+                @Override public void onNext(ByteBuffer bytes) { out.write(bytes.array(), 0, bytes.limit()); _s.request(1); }
+                @Override public void onError(Throwable t) { done.countDown(); }
+                @Override public void onComplete() { done.countDown(); }
+            });
+            for (ByteBuffer chunk : split(b, new Random(50))) source.submit(chunk);
+            source.close();
+            assertTrue(done.await(30, TimeUnit.SECONDS));
+            assertTrue(Arrays.equals(b, out.toByteArray()));
+        } finally {
+            source.close();
+            hex.close();
+            pool.shutdown();
+        }
+    }
+
+    public void testRecycling() {
+        byte[] b = new byte[100000];
+        new Random(51).nextBytes(b);
+        List<ByteBuffer> chunks = new ArrayList<>();
+        for (ByteBuffer chunk : split(b, new Random(52))) {
+            // direct buffers have no array, so are read a byte at a time
+            ByteBuffer direct = ByteBuffer.allocateDirect(chunk.remaining());
+            direct.put(chunk.duplicate()).flip();
+            chunks.add(direct);
+        }
+        HexEncodingProcessor p = new HexEncodingProcessor(new DefaultHexEncoder(), 50);
+        StringBuilder hex = new StringBuilder();
+        Set<CharBuffer> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        new ListPublisher<>(chunks).subscribe(p);
+        p.subscribe(new Collector<CharBuffer>(1, true) {
+            @Override
+            public void onNext(CharBuffer c) {
+                hex.append(c);
+                seen.add(c);
+                p.recycle(c);
+                super.onNext(c);
+            }
+        });
+        assertEquals(new DefaultHexEncoder().encode(b), hex.toString());
+        assertEquals(1, seen.size());
+
+        try {
+            p.recycle(CharBuffer.allocate(49));
+            fail("recycled a buffer of the wrong size");
+        } catch (Exception expected) {}
+    }
+
+    public void testArrayBackedInput() {
+        byte[] b = new byte[5000];
+        new Random(53).nextBytes(b);
+        String s = new DefaultHexEncoder().encode(b);
+        List<CharBuffer> chunks = new ArrayList<>();
+        for (CharBuffer chunk : split(s, new Random(54))) {
+            // offset into a larger array, to check that the array offset is honored
+            char[] c = new char[chunk.remaining() + 3];
+            chunk.get(c, 2, c.length - 3);
+            chunks.add(CharBuffer.wrap(c, 2, c.length - 3).slice());
+        }
+        HexDecodingProcessor p = new HexDecodingProcessor(new DefaultHexDecoder(), 64);
+        Collector<ByteBuffer> c = new Collector<>(1, true);
+        new ListPublisher<>(chunks).subscribe(p);
+        p.subscribe(c);
+        assertTrue(c.complete);
+        assertTrue(Arrays.equals(b, join(c.items)));
+        for (CharBuffer chunk : chunks) assertEquals(0, chunk.position());
+    }
+
+    public void testDemandBoundsWork() {
+        List<ByteBuffer> chunks = new ArrayList<>();
+        for (int i = 0; i < 1000; ++i) chunks.add(ByteBuffer.wrap(new byte[1000]));
+        ListPublisher<ByteBuffer> source = new ListPublisher<>(chunks);
+        HexEncodingProcessor p = new HexEncodingProcessor(new DefaultHexEncoder(), 100);
+        Collector<CharBuffer> c = new Collector<>(3, false);
+        source.subscribe(p);
+        p.subscribe(c);
+
+        // three chunks of output need only the first chunk of input
+        assertEquals(3, c.items.size());
+        assertEquals(1, source._requested);
+        assertFalse(c.complete);
+
+        c._subscription.request(20);
+        assertEquals(23, c.items.size());
+        assertEquals(2, source._requested);
+
+        c._subscription.cancel();
+        assertTrue(source._cancelled);
+    }
+
+    public void testErrors() {
+        List<CharBuffer> chunks = new ArrayList<>();
+        chunks.add(CharBuffer.wrap("00112"));
+        chunks.add(CharBuffer.wrap("23g"));
+        chunks.add(CharBuffer.wrap("44"));
+        ListPublisher<CharBuffer> source = new ListPublisher<>(chunks);
+        HexDecodingProcessor p = new HexDecodingProcessor(new DefaultHexDecoder());
+        Collector<ByteBuffer> c = new Collector<>(1, true);
+        source.subscribe(p);
+        p.subscribe(c);
+        assertTrue(c.error instanceof ParseException);
+        assertEquals(7, ((ParseException) c.error).getErrorOffset());
+        assertTrue(source._cancelled);
+        assertFalse(c.complete);
+
+        Collector<ByteBuffer> second = new Collector<>(1, true);
+        p.subscribe(second);
+        assertTrue(second.error instanceof IllegalStateException);
+
+        Collector<CharBuffer> negative = new Collector<>(-1, true);
+        HexEncodingProcessor e = new HexEncodingProcessor(new DefaultHexEncoder());
+        new ListPublisher<>(new ArrayList<ByteBuffer>()).subscribe(e);
+        e.subscribe(negative);
+        assertTrue(negative.error instanceof IllegalArgumentException);
+    }
+}
@@ -0,0 +1,96 @@
+package com.martiansoftware.hex;
+
+//   Copyright 2016 Martian Software, Inc.
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+import java.io.ByteArrayInputStream;
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.Random;
+import junit.framework.TestCase;
+
+public class HexLayoutTest extends TestCase {
+
+    private static final byte[] b = {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15};
+    
+    public void testSimpleMatchesDelimitedMultiline() throws Exception {
+        HexEncoder original = new DelimitedMultilineHexEncoder(16, ":");
+        Random r = new Random(3);
+        for (int len : new int[] {0, 1, 15, 16, 17, 32, 100, 5000}) {
+            byte[] data = new byte[len];
+            r.nextBytes(data);
+            assertEquals(original.encode(data), StandardHexCodecs.SIMPLE.encode(data));
+            assertEquals(original.encode(data), StandardHexCodecs.SIMPLE.encode(new ByteArrayInputStream(data)));
+            assertTrue(Arrays.equals(data, StandardHexCodecs.SIMPLE.decode(StandardHexCodecs.SIMPLE.encode(data))));
+        }
+    }
+    
+    public void testLayouts() throws Exception {
+        HexLayout layout = HexLayout.builder()
+                                .upperCase(true)
+                                .bytePrefix("0x")
+                                .byteSuffix(",")
+                                .byteSeparator(" ")
+                                .bytesPerLine(6)
+                                .group(3, "  ")
+                                .lineSeparator("\n")
+                                .build();
+        String s = "0x00, 0x01, 0x02,  0x03, 0x04, 0x05,\n"
+                 + "0x06, 0x07, 0x08,  0x09, 0x0A, 0x0B,\n"
+                 + "0x0C, 0x0D, 0x0E,  0x0F,";
+        assertEquals(s, layout.encoder().encode(b));
+        assertTrue(Arrays.equals(b, layout.decoder().decode(s)));
+        assertEquals("0x0A,", layout.encoder().encode(b, 10, 1));
+        assertEquals("", layout.encoder().encode(new byte[0]));
+        assertEquals(0, layout.decoder().decode("").length);
+        
+        HexLayout plain = HexLayout.builder().build();
+        assertEquals(new DefaultHexEncoder().encode(b), plain.encoder().encode(b));
+    }
+    
+    public void testLongDelimiters() throws Exception {
+        // the line separator is never used, but bounds the chars per byte
+        char[] huge = new char[1 << 20];
+        Arrays.fill(huge, '-');
+        HexLayout layout = HexLayout.builder().byteSeparator(":").lineSeparator(new String(huge)).build();
+        byte[] data = new byte[5000];
+        new Random(4).nextBytes(data);
+        String expected = new DelimitedMultilineHexEncoder(":").encode(data);
+        assertEquals(expected, layout.encoder().encode(data));
+        assertEquals(expected, layout.encoder().encode(new ByteArrayInputStream(data)));
+        assertTrue(Arrays.equals(data, layout.decoder().decode(expected)));
+    }
+
+    public void testStrictDecoding() throws Exception {
+        HexLayout layout = HexLayout.builder().byteSeparator(":").bytesPerLine(4).lineSeparator("\n").build();
+        HexDecoder d = layout.decoder();
+        assertTrue(Arrays.equals(new byte[] {1, 2, 3, 4, 5}, d.decode("01:02:03:04\n05")));
+        
+        String[] bad = { "01 02", "01::02", "01:02:03:04:05", "01:02:03:04\n05:", "0102", ":01", "01:" };
+        for (String s : bad) {
+            try {
+                d.decode(s);
+                fail("decoded \"" + s + "\"");
+            } catch (ParseException expected) {}
+            assertFalse(d.tryDecode(s).isValid());
+        }
+    }
+    
+    public void testBadConstruction() {
+        try {
+            HexLayout.builder().bytesPerLine(0);
+            fail("created a HexLayout with zero bytes per line");
+        } catch (Exception expected) {}
+    }
+}
@@ -0,0 +1,120 @@
+package com.martiansoftware.hex;
+
+//   Copyright 2016 Martian Software, Inc.
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.LongStream;
+import junit.framework.TestCase;
+
+public class HexPatternTest extends TestCase {
+
+    private static long[] naive(HexPattern p, byte[] b) {
+        return LongStream.range(0, b.length).filter(i -> p.matches(b, (int) i)).toArray();
+    }
+
+    private static byte[] data(int len, long seed) {
+        // a small alphabet so that partial and overlapping matches are common
+        byte[] b = new byte[len];
+        Random r = new Random(seed);
+        for (int i = 0; i < len; ++i) b[i] = (byte) (0xdc + r.nextInt(4));
+        return b;
+    }
+
+    public void testCompile() throws Exception {
+        assertEquals(4, HexPattern.compile("de ad ?? ef").length());
+        assertEquals(3, HexPattern.compile("??:de-??").length());
+        assertTrue(HexPattern.compile("de ad ?? ef").matches(new byte[] { 0, (byte) 0xde, (byte) 0xad, 7, (byte) 0xef }, 1));
+        assertFalse(HexPattern.compile("de ad ?? ef").matches(new byte[] { (byte) 0xde, (byte) 0xad, 7, (byte) 0xee }, 0));
+        for (String bad : new String[] { "", " ", "d??e", "de ?", "de ?x", "de zz" }) {
+            try {
+                HexPattern.compile(bad);
+                fail("compiled " + bad);
+            } catch (ParseException expected) {}
+        }
+        try {
+            HexPattern.compile("de ad ?? zz");
+            fail("compiled invalid pattern");
+        } catch (ParseException expected) {
+            assertEquals(9, expected.getErrorOffset());
+        }
+    }
+
+    public void testSearchByteArray() throws Exception {
+        byte[] b = data(50000, 36);
+        for (String s : new String[] { "dd", "dc dd", "dd ?? dd", "?? dd de ??", "dc dd de df dc", "dd dd ?? dd dd" }) {
+            HexPattern p = HexPattern.compile(s);
+            assertTrue(s, Arrays.equals(naive(p, b), p.search(b).toArray()));
+        }
+        assertEquals(0, HexPattern.compile("00").search(b).count());
+    }
+
+    public void testSearchInputStream() throws Exception {
+        byte[] b = data(300000, 37);
+        HexPattern p = HexPattern.compile("dd de ?? ?? df dc dd");
+        assertTrue(Arrays.equals(naive(p, b), p.search(new ByteArrayInputStream(b)).toArray()));
+
+        // the stream is only read as far as needed
+        int[] read = new int[1];
+        InputStream in = new ByteArrayInputStream(b) {
+            @Override public synchronized int read(byte[] buf, int off, int len) {
+                int n = super.read(buf, off, len);
+                read[0] += Math.max(0, n);
+                return n;
+            }
+        };
+        assertEquals(naive(p, b)[0], HexPattern.compile("dd de ?? ?? df dc dd").search(in).findFirst().getAsLong());
+        assertTrue(read[0] < b.length);
+    }
+
+    public void testSearchFile() throws Exception {
+        byte[] b = data(40 * 1024 * 1024, 38);
+        File f = File.createTempFile("hexpattern", ".bin");
+        f.deleteOnExit();
+        Files.write(f.toPath(), b);
+        HexPattern p = HexPattern.compile("df df df df df df df df df ?? df");
+        try (LongStream hits = p.search(f.toPath())) {
+            assertTrue(Arrays.equals(p.search(b).toArray(), hits.toArray()));
+        }
+    }
+
+    public void testDump() throws Exception {
+        byte[] b = new byte[256];
+        for (int i = 0; i < b.length; ++i) b[i] = (byte) i;
+        File f = File.createTempFile("hexpattern", ".bin");
+        f.deleteOnExit();
+        Files.write(f.toPath(), b);
+        HexPattern p = HexPattern.compile("3e 3f 40");
+        try (FileChannel fc = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+            long offset = p.search(fc).findFirst().getAsLong();
+            assertEquals(0x3e, offset);
+            StringWriter s = new StringWriter();
+            p.dump(fc, offset, 1, new PrintWriter(s));
+            String[] lines = s.toString().split(System.lineSeparator());
+            assertEquals(4, lines.length);
+            assertTrue(lines[0].startsWith("00000020: 20 21"));
+            assertTrue(lines[3].startsWith("00000050: 50 51"));
+        }
+    }
+}
@@ -5,7 +5,13 @@ import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
 import java.io.PrintWriter;
 import java.io.StringReader;
+import java.io.StringWriter;
+import java.security.MessageDigest;
+import java.text.ParseException;
 import java.util.Arrays;
+import java.util.Random;
+import java.util.UUID;
+import java.util.zip.CRC32;
 import junit.framework.TestCase;
 
 public class HexTest extends TestCase {
@@ -80,4 +86,83 @@ public class HexTest extends TestCase {
     public void testEncodeToString2() throws Exception {
         assertEquals("0a0f", Hex.encode(b1, 1, 2));
     }
+
+    public void testEncodeWithChecksum() throws Exception {
+        byte[] b = new byte[30000];
+        new Random(34).nextBytes(b);
+        CRC32 expected = new CRC32();
+        expected.update(b, 100, 20000);
+
+        CRC32 crc = new CRC32();
+        assertEquals(Hex.encode(b, 100, 20000), Hex.encode(b, 100, 20000, crc));
+        assertEquals(expected.getValue(), crc.getValue());
+
+        crc = new CRC32();
+        StringWriter s = new StringWriter();
+        StandardHexCodecs.HEXDUMP.encode(new ByteArrayInputStream(b, 100, 20000), new PrintWriter(s), crc);
+        assertEquals(expected.getValue(), crc.getValue());
+        assertEquals(StandardHexCodecs.HEXDUMP.encode(b, 100, 20000), s.toString());
+    }
+
+    public void testRoundTripWithDigest() throws Exception {
+        byte[] b = new byte[30000];
+        new Random(35).nextBytes(b);
+        MessageDigest in = MessageDigest.getInstance("SHA-256");
+        String s = Hex.encode(b, 0, b.length, in);
+
+        MessageDigest out = MessageDigest.getInstance("SHA-256");
+        ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+        Hex.decode(new StringReader(s), decoded, out);
+        assertTrue(Arrays.equals(b, decoded.toByteArray()));
+        assertTrue(Arrays.equals(MessageDigest.getInstance("SHA-256").digest(b), in.digest()));
+        assertTrue(Arrays.equals(MessageDigest.getInstance("SHA-256").digest(b), out.digest()));
+
+        CRC32 crc = new CRC32();
+        StandardHexCodecs.HEXDUMP.decode(new StringReader(StandardHexCodecs.HEXDUMP.encode(b)), new ByteArrayOutputStream(), crc);
+        CRC32 expected = new CRC32();
+        expected.update(b);
+        assertEquals(expected.getValue(), crc.getValue());
+    }
+
+    public void testPrimitives() throws Exception {
+        assertEquals("0123456789abcdef", Hex.encode(0x0123456789abcdefL));
+        assertEquals("ffffffffffffffff", Hex.encode(-1L));
+        assertEquals("89abcdef", Hex.encode(0x89abcdef));
+        assertEquals("fffe", Hex.encode((short) -2));
+        UUID u = UUID.randomUUID();
+        assertEquals(u.toString().replace("-", ""), Hex.encode(u));
+        assertEquals("x0000000000000010ffffffff", Hex.appendTo(Hex.appendTo(new StringBuilder("x"), 16L), -1).toString());
+        assertEquals("0001" + Hex.encode(u), Hex.appendTo(Hex.appendTo(new StringBuilder(), (short) 1), u).toString());
+
+        assertEquals(0x0123456789abcdefL, Hex.decodeLong("0123456789ABCDEF", 0));
+        assertEquals(-1L, Hex.decodeLong("id=ffffffffffffffff", 3));
+        assertEquals(0x89abcdef, Hex.decodeInt("89abcdef", 0));
+        assertEquals((short) -2, Hex.decodeShort("..FFFE", 2));
+        assertEquals(u, Hex.decodeUuid(Hex.encode(u), 0));
+        assertEquals(u, Hex.decodeUuid(" " + u.toString().toUpperCase(), 1));
+        try {
+            Hex.decodeLong("0123456789abcde", 0);
+            fail("decoded a truncated long");
+        } catch (ParseException expected) {
+            assertEquals(15, expected.getErrorOffset());
+        }
+        try {
+            Hex.decodeInt("0123x567", 0);
+            fail("decoded an invalid int");
+        } catch (ParseException expected) {
+            assertEquals(4, expected.getErrorOffset());
+        }
+        try {
+            Hex.decodeUuid(u.toString().replace('-', ':'), 0);
+            fail("decoded an invalid uuid");
+        } catch (ParseException expected) {
+            assertEquals(8, expected.getErrorOffset());
+        }
+        try {
+            Hex.decodeUuid(u.toString().substring(0, 13) + "+" + u.toString().substring(14), 0);
+            fail("decoded an invalid uuid");
+        } catch (ParseException expected) {
+            assertEquals(13, expected.getErrorOffset());
+        }
+    }
 }
@@ -0,0 +1,142 @@
+package com.martiansoftware.hex;
+
+//   Copyright 2016 Martian Software, Inc.
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import junit.framework.TestCase;
+
+public class HexToolTest extends TestCase {
+
+    private static final String NL = System.lineSeparator();
+
+    private final ByteArrayOutputStream _out = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream _err = new ByteArrayOutputStream();
+
+    private int run(byte[] stdin, String... args) {
+        _out.reset();
+        _err.reset();
+        return HexTool.run(args, new ByteArrayInputStream(stdin), new PrintStream(_out), new PrintStream(_err));
+    }
+
+    private String out() {
+        return new String(_out.toByteArray(), StandardCharsets.US_ASCII);
+    }
+
+    private static File file(byte[] b) throws Exception {
+        File f = File.createTempFile("hextool", ".bin");
+        f.deleteOnExit();
+        Files.write(f.toPath(), b);
+        return f;
+    }
+
+    private static byte[] data(int len) {
+        byte[] b = new byte[len];
+        new Random(37).nextBytes(b);
+        Arrays.fill(b, 1000, 5000, (byte) 0);
+        return b;
+    }
+
+    public void testEncode() throws Exception {
+        byte[] b = data(3 * 1024 * 1024 + 5);
+        String f = file(b).getPath();
+        for (String format : new String[] { "default", "simple", "hexdump" }) {
+            HexCodec c = format.equals("default") ? StandardHexCodecs.DEFAULT
+                       : format.equals("simple") ? StandardHexCodecs.SIMPLE
+                       : StandardHexCodecs.HEXDUMP;
+            String expected = c.encode(b) + NL;
+            for (String threads : new String[] { "1", "4" }) {
+                assertEquals(0, run(new byte[0], "encode", "-f", format, "-t", threads, f));
+                assertEquals(format + "/" + threads, expected, out());
+                assertEquals(0, run(b, "encode", "-f", format, "-t", threads));
+                assertEquals(format + "/" + threads + "/stdin", expected, out());
+            }
+        }
+        assertEquals(0, run(new byte[0], "dump", "-c", f));
+        assertEquals(new HexDumpEncoder(true).encode(b) + NL, out());
+        assertEquals(0, run(new byte[0], "encode", file(new byte[0]).getPath()));
+        assertEquals("", out());
+    }
+
+    private static List<Thread> renderThreads() {
+        List<Thread> threads = new ArrayList<>();
+        for (Thread t : Thread.getAllStackTraces().keySet()) {
+            if (t.getName().equals("hex-render")) threads.add(t);
+        }
+        return threads;
+    }
+
+    public void testSmallInputIsNotSplit() throws Exception {
+        // wait for pools shut down by earlier tests to finish exiting
+        for (Thread t : renderThreads()) t.join();
+
+        byte[] b = data(10000);
+        String f = file(b).getPath();
+        assertEquals(0, run(new byte[0], "dump", "-t", "4", f));
+        assertEquals(StandardHexCodecs.HEXDUMP.encode(b) + NL, out());
+        assertTrue(renderThreads().isEmpty());
+    }
+
+    public void testRegion() throws Exception {
+        byte[] b = data(100000);
+        String f = file(b).getPath();
+        assertEquals(0, run(new byte[0], "dump", "-s", "0x100", "-l", "40", f));
+        assertEquals("00000100: " + StandardHexCodecs.HEXDUMP.encode(Arrays.copyOfRange(b, 0x100, 0x128)).substring(10)
+                        .replace(NL + "00000010: ", NL + "00000110: ")
+                        .replace(NL + "00000020: ", NL + "00000120: ") + NL,
+                     out());
+        assertEquals(0, run(b, "encode", "-s", "99990", "-l", "100"));
+        assertEquals(Hex.encode(b, 99990, 10) + NL, out());
+    }
+
+    public void testDecode() throws Exception {
+        byte[] b = data(200000);
+        String dump = StandardHexCodecs.HEXDUMP.encode(b);
+        String dumpFile = file(dump.getBytes(StandardCharsets.US_ASCII)).getPath();
+        assertEquals(0, run(new byte[0], "dump", "-r", dumpFile));
+        assertTrue(Arrays.equals(b, _out.toByteArray()));
+        assertEquals(0, run(new byte[0], "dump", "-r", "-s", "0x1234", "-l", "100", dumpFile));
+        assertTrue(Arrays.equals(Arrays.copyOfRange(b, 0x1234, 0x1234 + 100), _out.toByteArray()));
+        assertEquals(0, run(Hex.encode(b).getBytes(StandardCharsets.US_ASCII), "decode", "-s", "10", "-l", "5"));
+        assertTrue(Arrays.equals(Arrays.copyOfRange(b, 10, 15), _out.toByteArray()));
+        assertEquals(0, run(StandardHexCodecs.SIMPLE.encode(b).getBytes(StandardCharsets.US_ASCII), "decode", "-f", "simple"));
+        assertTrue(Arrays.equals(b, _out.toByteArray()));
+        assertEquals(0, run(new byte[0], "decode", "-f", "auto", "-s", "0x1234", "-l", "100", dumpFile));
+        assertTrue(Arrays.equals(Arrays.copyOfRange(b, 0x1234, 0x1234 + 100), _out.toByteArray()));
+        assertEquals(0, run(StandardHexCodecs.SIMPLE.encode(b).getBytes(StandardCharsets.US_ASCII), "decode", "-f", "auto"));
+        assertTrue(Arrays.equals(b, _out.toByteArray()));
+    }
+
+    public void testErrors() throws Exception {
+        assertEquals(2, run(new byte[0]));
+        assertEquals(2, run(new byte[0], "frobnicate"));
+        assertEquals(2, run(new byte[0], "encode", "-f", "base64"));
+        assertEquals(2, run(new byte[0], "encode", "-c"));
+        assertEquals(2, run(new byte[0], "encode", "-f", "auto"));
+        assertEquals(2, run(new byte[0], "encode", "-s", "x"));
+        assertEquals(0, run(new byte[0], "-h"));
+        assertEquals(1, run("0g".getBytes(StandardCharsets.US_ASCII), "decode"));
+        assertTrue(new String(_err.toByteArray(), StandardCharsets.US_ASCII).startsWith("hex: invalid input: "));
+        assertEquals(1, run(new byte[0], "encode", "/no/such/file"));
+    }
+}
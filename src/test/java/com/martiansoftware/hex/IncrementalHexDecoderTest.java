@@ -0,0 +1,148 @@
+package com.martiansoftware.hex;
+
+//   Copyright 2016 Martian Software, Inc.
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.text.ParseException;
+import java.util.Arrays;
+import junit.framework.TestCase;
+
+public class IncrementalHexDecoderTest extends TestCase {
+
+    private static final byte[] b = "The quick brown fox jumps over the lazy dog.".getBytes();
+    private static final String s = "54 6865207175    69:63-6B2062.726F  - ::.776e\n\n20666f78206a756d7073206f76657220746865206c617a7920646f672e";
+
+    private static byte[] bytes(ByteBuffer out) {
+        out.flip();
+        byte[] result = new byte[out.remaining()];
+        out.get(result);
+        return result;
+    }
+    
+    public void testEverySplitPoint() throws Exception {
+        for (int split = 0; split <= s.length(); ++split) {
+            IncrementalHexDecoder d = new DefaultHexDecoder().newIncrementalDecoder();
+            ByteBuffer out = ByteBuffer.allocate(b.length);
+            d.feed(s.substring(0, split), out);
+            d.feed(s.substring(split).toCharArray(), 0, s.length() - split, out);
+            d.finish(out);
+            assertTrue(Arrays.equals(b, bytes(out)));
+        }
+    }
+
+    public void testByteBufferInput() throws Exception {
+        IncrementalHexDecoder d = new DefaultHexDecoder().newIncrementalDecoder();
+        ByteBuffer out = ByteBuffer.allocate(b.length);
+        ByteBuffer in = ByteBuffer.wrap(s.getBytes("US-ASCII"));
+        d.feed(in, out);
+        d.finish(out);
+        assertFalse(in.hasRemaining());
+        assertTrue(Arrays.equals(b, bytes(out)));
+    }
+
+    public void testCharBufferInput() throws Exception {
+        IncrementalHexDecoder d = new DefaultHexDecoder().newIncrementalDecoder();
+        ByteBuffer out = ByteBuffer.allocate(b.length);
+        CharBuffer in = CharBuffer.wrap(("xx" + s).toCharArray());
+        in.position(2);
+        d.feed(in.slice(), out);
+        d.finish(out);
+        assertTrue(Arrays.equals(b, bytes(out)));
+    }
+
+    public void testFullOutputBuffer() throws Exception {
+        IncrementalHexDecoder d = new DefaultHexDecoder().newIncrementalDecoder();
+        ByteBuffer out = ByteBuffer.allocate(5);
+        d.feed(s, out);
+        assertTrue(d.hasPending());
+        assertEquals(5, out.position());
+        
+        ByteBuffer rest = ByteBuffer.allocate(b.length);
+        d.finish(rest);
+        assertFalse(d.hasPending());
+        
+        ByteBuffer all = ByteBuffer.allocate(b.length);
+        all.put(bytes(out)).put(bytes(rest));
+        assertTrue(Arrays.equals(b, all.array()));
+    }
+
+    public void testErrors() throws Exception {
+        IncrementalHexDecoder d = new StrictHexDecoder().newIncrementalDecoder();
+        ByteBuffer out = ByteBuffer.allocate(10);
+        d.feed("0a0", out);
+        try {
+            d.feed("b:", out);
+            fail("decoded an illegal character");
+        } catch (ParseException expected) {
+            assertEquals(4, expected.getErrorOffset());
+        }
+        
+        d = new StrictHexDecoder().newIncrementalDecoder();
+        d.feed("0a0", out);
+        try {
+            d.finish(out);
+            fail("finished in the middle of a byte");
+        } catch (ParseException expected) {
+            assertEquals(3, expected.getErrorOffset());
+        }
+    }
+    
+    public void testHexDump() throws Exception {
+        byte[] zeros = new byte[256];
+        String dump = new HexDumpEncoder(true).encode(zeros);
+        IncrementalHexDecoder d = new HexDumpDecoder().newIncrementalDecoder();
+        ByteBuffer out = ByteBuffer.allocate(zeros.length);
+        for (char c : dump.toCharArray()) d.feed(String.valueOf(c), out);
+        d.finish(out);
+        assertEquals(zeros.length, out.position());
+    }
+
+    public void testDefaultImplementation() throws Exception {
+        // a HexDecoder without its own incremental decoding decodes everything at the end
+        HexDecoder strict = new HexDecoder() {
+            @Override
+            public void decode(Reader in, OutputStream out) throws ParseException, IOException {
+                StandardHexCodecs.STRICT.decode(in, out);
+            }
+        };
+        IncrementalHexDecoder d = strict.newIncrementalDecoder();
+        ByteBuffer out = ByteBuffer.allocate(4);
+        d.feed("0a0", out);
+        d.feed("b0c".toCharArray(), 0, 3, out);
+        assertEquals(0, out.position());
+        d.finish(out);
+        assertTrue(Arrays.equals(new byte[] { 0x0a, 0x0b, 0x0c }, bytes(out)));
+
+        d = strict.newIncrementalDecoder();
+        d.feed("0a0", out);
+        try {
+            d.finish(out);
+            fail("finished in the middle of a byte");
+        } catch (ParseException expected) {
+            assertEquals(3, expected.getErrorOffset());
+        }
+    }
+
+    public void testDelegation() throws Exception {
+        IncrementalHexDecoder d = StandardHexCodecs.STRICT.newIncrementalDecoder();
+        ByteBuffer out = ByteBuffer.allocate(4);
+        d.feed("0a0b", out);
+        assertEquals(2, out.position());
+    }
+}
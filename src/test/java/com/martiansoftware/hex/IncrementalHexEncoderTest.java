@@ -0,0 +1,125 @@
+package com.martiansoftware.hex;
+
+//   Copyright 2016 Martian Software, Inc.
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import junit.framework.TestCase;
+
+public class IncrementalHexEncoderTest extends TestCase {
+
+    private static byte[] bytes(int len) {
+        byte[] b = new byte[len];
+        new Random(45).nextBytes(b);
+        if (len > 200) Arrays.fill(b, 50, 150, (byte) 0);
+        return b;
+    }
+
+    private static HexEncoder[] encoders() {
+        return new HexEncoder[] {
+            new DefaultHexEncoder(),
+            new DelimitedMultilineHexEncoder(8, ":"),
+            new HexDumpEncoder(),
+            new HexDumpEncoder(true),
+            HexLayout.builder().bytePrefix("0x").byteSeparator(", ").group(4, " | ").bytesPerLine(8).build().encoder(),
+            new IntelHexEncoder(0xfff0, 16),
+            new SRecordEncoder(),
+            new CachingHexEncoder(new DefaultHexEncoder(), 16),
+            StandardHexCodecs.SIMPLE,
+            new HexEncoder() {  // relies on the default, buffering implementation
+                @Override
+                public void encode(InputStream in, PrintWriter out) throws IOException {
+                    new DefaultHexEncoder().encode(in, out);
+                }
+            }
+        };
+    }
+
+    /**
+     * Feeds the input in random chunks, accepting at most `demand` characters
+     * at a time, as a subscriber with limited demand would
+     */
+    private static String encodeInChunks(HexEncoder e, byte[] b, int demand, Random r, boolean direct) {
+        IncrementalHexEncoder inc = e.newIncrementalEncoder();
+        CharBuffer out = CharBuffer.allocate(demand);
+        StringBuilder result = new StringBuilder();
+        int pos = 0;
+        while (pos < b.length) {
+            int n = Math.min(b.length - pos, r.nextInt(40));
+            ByteBuffer chunk = direct ? ByteBuffer.allocateDirect(n) : ByteBuffer.wrap(b, pos, n);
+            if (direct) {
+                chunk.put(b, pos, n);
+                chunk.flip();
+            }
+            inc.feed(chunk, out);
+            assertFalse(chunk.hasRemaining());
+            pos += n;
+            collect(inc, out, result);
+        }
+        assertEquals(b.length, inc.totalBytes());
+        inc.finish(out);
+        collect(inc, out, result);
+        return result.toString();
+    }
+
+    private static void collect(IncrementalHexEncoder inc, CharBuffer out, StringBuilder result) {
+        while (true) {
+            out.flip();
+            result.append(out);
+            out.clear();
+            if (!inc.hasPending()) return;
+            inc.drain(out);
+        }
+    }
+
+    public void testChunkedEncodingMatchesEncode() throws Exception {
+        Random r = new Random(7);
+        for (int len : new int[] { 0, 1, 15, 16, 17, 100, 1000 }) {
+            byte[] b = bytes(len);
+            for (HexEncoder e : encoders()) {
+                String expected = e.encode(b);
+                for (int demand : new int[] { 1, 7, 64, 100000 }) {
+                    assertEquals(e.getClass().getName() + "/" + len + "/" + demand, expected, encodeInChunks(e, b, demand, r, false));
+                }
+                assertEquals(e.getClass().getName() + "/" + len + "/direct", expected, encodeInChunks(e, b, 50, r, true));
+            }
+        }
+    }
+
+    public void testEachChunkIsEncodedWhenFed() throws Exception {
+        for (HexEncoder e : new HexEncoder[] { new DefaultHexEncoder(), new DelimitedMultilineHexEncoder(8, ":") }) {
+            IncrementalHexEncoder inc = e.newIncrementalEncoder();
+            CharBuffer out = CharBuffer.allocate(100);
+            inc.feed(new byte[] { 1, 2 }, 0, 2, out);
+            out.flip();
+            assertEquals(e.encode(new byte[] { 1, 2 }), out.toString());
+        }
+    }
+
+    public void testFinished() throws Exception {
+        IncrementalHexEncoder inc = new DefaultHexEncoder().newIncrementalEncoder();
+        CharBuffer out = CharBuffer.allocate(10);
+        inc.finish(out);
+        try {
+            inc.feed(new byte[1], 0, 1, out);
+            fail("fed bytes after finishing");
+        } catch (IllegalStateException expected) {}
+    }
+}
@@ -0,0 +1,170 @@
+package com.martiansoftware.hex;
+
+//   Copyright 2016 Martian Software, Inc.
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.Random;
+import junit.framework.TestCase;
+
+/**
+ * Tests IntelHexEncoder and IntelHexDecoder
+ */
+public class IntelHexTest extends TestCase {
+
+    private static final String NEWLINE = String.format("%n");
+
+    private static byte[] bytes(int len, long seed) {
+        byte[] b = new byte[len];
+        new Random(seed).nextBytes(b);
+        return b;
+    }
+
+    private static byte[] range(int len) {
+        byte[] b = new byte[len];
+        for (int i = 0; i < len; ++i) b[i] = (byte) i;
+        return b;
+    }
+
+    public void testEncode() throws Exception {
+        assertEquals(":10000000000102030405060708090A0B0C0D0E0F78" + NEWLINE
+                   + ":03001000101112BA" + NEWLINE
+                   + ":00000001FF", StandardHexCodecs.INTEL_HEX.encode(range(19)));
+        assertEquals(":00000001FF", StandardHexCodecs.INTEL_HEX.encode(new byte[0]));
+    }
+
+    public void testRecordsDoNotCross64KBoundaries() throws Exception {
+        String s = new IntelHexEncoder(0x1fff8, 16).encode(range(16));
+        assertEquals(":020000040001F9" + NEWLINE
+                   + ":08FFF8000001020304050607E5" + NEWLINE
+                   + ":020000040002F8" + NEWLINE
+                   + ":0800000008090A0B0C0D0E0F9C" + NEWLINE
+                   + ":00000001FF", s);
+    }
+
+    public void testRoundTrip() throws Exception {
+        for (int len : new int[] { 1, 15, 16, 17, 255, 256, 70000 }) {
+            byte[] b = bytes(len, len);
+            for (IntelHexEncoder e : new IntelHexEncoder[] { new IntelHexEncoder(), new IntelHexEncoder(0xfff0, 32), new IntelHexEncoder(0x08000000L, 255) }) {
+                String s = e.encode(b);
+                assertTrue(Arrays.equals(b, new IntelHexDecoder().decode(s)));
+                assertEquals(len, new IntelHexDecoder().decodedLength(s));
+                assertEquals(-1, new IntelHexDecoder().validate(s));
+            }
+        }
+    }
+
+    public void testDecodeAcceptsLowercaseAndCRLF() throws Exception {
+        assertTrue(Arrays.equals(range(3), new IntelHexDecoder().decode(":03000000000102fa\r\n:00000001ff\r\n")));
+    }
+
+    public void testSparseDecodeToStreamFillsGaps() throws Exception {
+        String s = ":020000001122CB" + NEWLINE + ":02000400334483" + NEWLINE + ":00000001FF";
+        byte[] expected = { 0x11, 0x22, (byte) 0xff, (byte) 0xff, 0x33, 0x44 };
+        assertTrue(Arrays.equals(expected, new IntelHexDecoder().decode(s)));
+        expected[2] = expected[3] = 0;
+        assertTrue(Arrays.equals(expected, new IntelHexDecoder((byte) 0).decode(s)));
+    }
+
+    public void testExtendedSegmentAddress() throws Exception {
+        // segment 0x1000 places data at 0x10000 + 4
+        File f = File.createTempFile("intelhex", ".bin");
+        f.deleteOnExit();
+        try (FileChannel out = FileChannel.open(f.toPath(), StandardOpenOption.WRITE, StandardOpenOption.READ)) {
+            long n = new IntelHexDecoder().decode(new StringReader(":020000021000EC\n:0100040055A6\n:00000001FF"), out, 0x10000);
+            assertEquals(1, n);
+            ByteBuffer b = ByteBuffer.allocate(5);
+            out.read(b, 0);
+            assertEquals(0x55, b.get(4));
+        }
+    }
+
+    public void testDecodeToChannel() throws Exception {
+        byte[] low = bytes(100, 1), high = bytes(300, 2);
+        StringWriter w = new StringWriter();
+        // write the high region first; a channel accepts records in any order
+        try (RecordHexEncoder.RecordWriter r = new IntelHexEncoder().newRecordWriter(new PrintWriter(w))) {
+            r.write(0x08010000L, high);
+            r.write(0x08000000L, low);
+            assertTrue(r.records() > 0);
+        }
+        String s = w.toString();
+        assertFalse(s.contains(":10" + "0064"));   // nothing between the regions
+
+        try {
+            new IntelHexDecoder().decode(s);
+            fail("decoded out-of-order records to a stream");
+        } catch (ParseException expected) {
+            assertTrue(expected.getMessage().contains("precedes"));
+        }
+
+        File f = File.createTempFile("intelhex", ".bin");
+        f.deleteOnExit();
+        try (FileChannel out = FileChannel.open(f.toPath(), StandardOpenOption.WRITE, StandardOpenOption.READ)) {
+            assertEquals(400, new IntelHexDecoder().decode(new StringReader(s), out, 0x08000000L));
+            assertEquals(0x10000 + 300, out.size());
+            ByteBuffer b = ByteBuffer.allocate(300);
+            out.read(b, 0x10000);
+            assertTrue(Arrays.equals(high, b.array()));
+            b = ByteBuffer.allocate(100);
+            out.read(b, 0);
+            assertTrue(Arrays.equals(low, b.array()));
+        }
+
+        try (FileChannel out = FileChannel.open(f.toPath(), StandardOpenOption.WRITE)) {
+            new IntelHexDecoder().decode(new StringReader(s), out, 0x08000001L);
+            fail("wrote a record below the base address");
+        } catch (ParseException expected) {}
+    }
+
+    public void testInvalidRecords() throws Exception {
+        String good = ":03000000000102FA" + NEWLINE + ":00000001FF";
+        int second = good.indexOf(NEWLINE) + NEWLINE.length();
+        assertInvalid(":03000000000102FB", 0, "checksum");
+        assertInvalid(good.replace(":00000001FF", ":00000001FE"), second, "checksum");
+        assertInvalid(":030000000001", 0, "incomplete");
+        assertInvalid(":03000000000102FAFF", 17, "unexpected character");
+        assertInvalid("03000000000102FA", 0, "unexpected character");
+        assertInvalid(":00000001FF" + NEWLINE + ":03000000000102FA", 11 + NEWLINE.length(), "end-of-file");
+        assertInvalid(":00000006FA", 0, "unknown record type");
+        assertInvalid(":0100000401FA", 0, "byte count");
+        assertInvalid(":0300000000x102FA", 11, "invalid character");
+    }
+
+    private static void assertInvalid(String s, int position, String message) throws Exception {
+        try {
+            new IntelHexDecoder().decode(s);
+            fail("decoded invalid input " + s);
+        } catch (ParseException e) {
+            assertEquals(s, position, e.getErrorOffset());
+            assertTrue(e.getMessage(), e.getMessage().contains(message));
+        }
+        assertFalse(new IntelHexDecoder().tryDecode(s).isValid());
+    }
+
+    public void testAddressRange() throws Exception {
+        try {
+            new IntelHexEncoder(0xfffffff0L, 16).encode(new byte[17]);
+            fail("encoded beyond 32-bit addresses");
+        } catch (IllegalArgumentException expected) {}
+    }
+}
@@ -0,0 +1,124 @@
+package com.martiansoftware.hex;
+
+//   Copyright 2016 Martian Software, Inc.
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.Random;
+import junit.framework.TestCase;
+
+/**
+ * Tests SRecordEncoder and SRecordDecoder
+ */
+public class SRecordTest extends TestCase {
+
+    private static final String NEWLINE = String.format("%n");
+
+    private static byte[] bytes(int len, long seed) {
+        byte[] b = new byte[len];
+        new Random(seed).nextBytes(b);
+        return b;
+    }
+
+    public void testEncode() throws Exception {
+        byte[] b = { 0x00, 0x01, 0x02, 0x03 };
+        assertEquals("S3090000000000010203F0" + NEWLINE
+                   + "S5030001FB" + NEWLINE
+                   + "S70500000000FA", StandardHexCodecs.SREC.encode(b));
+        assertEquals("S107100000010203E2" + NEWLINE
+                   + "S5030001FB" + NEWLINE
+                   + "S9030000FC", new SRecordEncoder(0x1000, 16, 2).encode(b));
+        assertEquals("S20801000000010203F0" + NEWLINE
+                   + "S5030001FB" + NEWLINE
+                   + "S804000000FB", new SRecordEncoder(0x10000, 16, 3).encode(b));
+    }
+
+    public void testRoundTrip() throws Exception {
+        for (int len : new int[] { 0, 1, 15, 16, 17, 250, 251, 70000 }) {
+            byte[] b = bytes(len, len);
+            SRecordEncoder[] encoders = { new SRecordEncoder(), new SRecordEncoder(0x100, 32, 2), new SRecordEncoder(0x123456, 251, 3), new SRecordEncoder(0x80000000L, 250, 4) };
+            for (SRecordEncoder e : encoders) {
+                if (len > 0xff00 && e == encoders[1]) continue;
+                String s = e.encode(b);
+                assertTrue(Arrays.equals(b, new SRecordDecoder().decode(s)));
+                assertEquals(len, new SRecordDecoder().decodedLength(s));
+            }
+        }
+    }
+
+    public void testHeaderAndSparseRecords() throws Exception {
+        String s = "S00600004844521B" + NEWLINE
+                 + "S10500001122C7" + NEWLINE
+                 + "S105000433447F" + NEWLINE
+                 + "S9030000FC";
+        byte[] expected = { 0x11, 0x22, (byte) 0xff, (byte) 0xff, 0x33, 0x44 };
+        assertTrue(Arrays.equals(expected, new SRecordDecoder().decode(s)));
+    }
+
+    public void testDecodeToChannel() throws Exception {
+        byte[] low = bytes(40, 1), high = bytes(70, 2);
+        StringWriter w = new StringWriter();
+        try (RecordHexEncoder.RecordWriter r = new SRecordEncoder().newRecordWriter(new PrintWriter(w))) {
+            r.write(0x2000, high);
+            r.write(0x1000, low);
+        }
+        File f = File.createTempFile("srec", ".bin");
+        f.deleteOnExit();
+        try (FileChannel out = FileChannel.open(f.toPath(), StandardOpenOption.WRITE, StandardOpenOption.READ)) {
+            assertEquals(110, new SRecordDecoder().decode(new StringReader(w.toString()), out, 0x1000));
+            ByteBuffer b = ByteBuffer.allocate(70);
+            out.read(b, 0x1000);
+            assertTrue(Arrays.equals(high, b.array()));
+            b = ByteBuffer.allocate(40);
+            out.read(b, 0);
+            assertTrue(Arrays.equals(low, b.array()));
+        }
+    }
+
+    public void testInvalidRecords() throws Exception {
+        assertInvalid("S10500001122C8", 0, "checksum");
+        assertInvalid("S10500001122", 0, "incomplete");
+        assertInvalid("S40500001122C7", 0, "unknown record type");
+        assertInvalid("S10500001122C7" + NEWLINE + "S5030002FA", 14 + NEWLINE.length(), "record count");
+        assertInvalid("S9030000FC" + NEWLINE + "S10500001122C7", 10 + NEWLINE.length(), "termination");
+        assertInvalid("S10200FD", 0, "too small");
+        assertInvalid("S10500001122C7 S", 15, "unexpected character");
+    }
+
+    private static void assertInvalid(String s, int position, String message) throws Exception {
+        try {
+            new SRecordDecoder().decode(s);
+            fail("decoded invalid input " + s);
+        } catch (ParseException e) {
+            assertEquals(s, position, e.getErrorOffset());
+            assertTrue(e.getMessage(), e.getMessage().contains(message));
+        }
+        assertEquals(position, new SRecordDecoder().validate(s));
+    }
+
+    public void testAddressRange() throws Exception {
+        try {
+            new SRecordEncoder(0xfff0, 16, 2).encode(new byte[17]);
+            fail("encoded beyond 16-bit addresses");
+        } catch (IllegalArgumentException expected) {}
+    }
+}
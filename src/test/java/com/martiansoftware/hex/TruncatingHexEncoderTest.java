@@ -0,0 +1,156 @@
+package com.martiansoftware.hex;
+
+//   Copyright 2016 Martian Software, Inc.
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+import java.io.ByteArrayInputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Arrays;
+import java.util.Random;
+import junit.framework.TestCase;
+
+public class TruncatingHexEncoderTest extends TestCase {
+
+    private static final String NEWLINE = System.lineSeparator();
+
+    private static byte[] randomBytes(int len) {
+        byte[] b = new byte[len];
+        new Random(len).nextBytes(b);
+        return b;
+    }
+
+    private static String encodeStream(HexEncoder e, byte[] b) throws Exception {
+        StringWriter s = new StringWriter();
+        e.encode(new ByteArrayInputStream(b), new PrintWriter(s));
+        return s.toString();
+    }
+
+    private static String encodeBuffer(HexEncoder e, ByteBuffer b) {
+        StringWriter s = new StringWriter();
+        e.encode(b, new PrintWriter(s));
+        return s.toString();
+    }
+
+    /**
+     * A very large virtual channel whose byte at each position is the low
+     * byte of the position, counting the bytes actually read from it
+     */
+    private static class CountingChannel implements SeekableByteChannel {
+        private final long _size;
+        private long _position = 0;
+        long read = 0;
+
+        CountingChannel(long size) {
+            _size = size;
+        }
+
+        @Override public int read(java.nio.ByteBuffer dst) {
+            if (_position >= _size) return -1;
+            int n = (int) Math.min(dst.remaining(), _size - _position);
+            for (int i = 0; i < n; ++i) dst.put((byte) _position++);
+            read += n;
+            return n;
+        }
+        @Override public int write(ByteBuffer src) { throw new UnsupportedOperationException(); }
+        @Override public long position() { return _position; }
+        @Override public SeekableByteChannel position(long p) { _position = p; return this; }
+        @Override public long size() { return _size; }
+        @Override public SeekableByteChannel truncate(long size) { throw new UnsupportedOperationException(); }
+        @Override public boolean isOpen() { return true; }
+        @Override public void close() {}
+    }
+
+    public void testShortInputIsUnchanged() throws Exception {
+        HexEncoder[] encoders = { new DefaultHexEncoder(), new HexDumpEncoder(), new DelimitedMultilineHexEncoder(8, ":") };
+        for (HexEncoder e : encoders) {
+            TruncatingHexEncoder t = new TruncatingHexEncoder(e, 20, 12);
+            for (int len : new int[] {0, 1, 16, 31, 32}) {
+                byte[] b = randomBytes(len);
+                assertEquals(e.encode(b), t.encode(b));
+                assertEquals(e.encode(b), encodeStream(t, b));
+                assertEquals(e.encode(b), encodeBuffer(t, ByteBuffer.wrap(b)));
+            }
+        }
+    }
+
+    public void testHeadAndTail() throws Exception {
+        byte[] b = randomBytes(100);
+        DefaultHexEncoder e = new DefaultHexEncoder();
+        String expected = e.encode(b, 0, 4) + NEWLINE + "... 93 bytes skipped ..." + NEWLINE + e.encode(b, 97, 3);
+        TruncatingHexEncoder t = new TruncatingHexEncoder(e, 4, 3);
+        assertEquals(expected, t.encode(b));
+        assertEquals(expected, encodeStream(t, b));
+        ByteBuffer buf = ByteBuffer.allocateDirect(b.length);
+        buf.put(b).flip();
+        assertEquals(expected, encodeBuffer(t, buf));
+        assertFalse(buf.hasRemaining());
+    }
+
+    public void testHeadOrTailOnly() throws Exception {
+        byte[] b = randomBytes(50);
+        DefaultHexEncoder e = new DefaultHexEncoder();
+        assertEquals(e.encode(b, 0, 2) + NEWLINE + "... 48 bytes skipped ...", new TruncatingHexEncoder(e, 2, 0).encode(b));
+        assertEquals("... 48 bytes skipped ..." + NEWLINE + e.encode(b, 48, 2), new TruncatingHexEncoder(e, 0, 2).encode(b));
+        assertEquals("... 50 bytes skipped ...", encodeStream(new TruncatingHexEncoder(e, 0, 0), b));
+    }
+
+    public void testStreamMatchesArrayAcrossSizes() throws Exception {
+        // exercises the tail ring wrapping at every position relative to the stream's blocks
+        HexEncoder[] encoders = { new DefaultHexEncoder(), new HexDumpEncoder() };
+        Random r = new Random(3);
+        for (HexEncoder e : encoders) {
+            for (int i = 0; i < 200; ++i) {
+                byte[] b = randomBytes(r.nextInt(20000));
+                TruncatingHexEncoder t = new TruncatingHexEncoder(e, r.nextInt(100), r.nextInt(5000));
+                assertEquals(t.encode(b), encodeStream(t, b));
+            }
+        }
+    }
+
+    public void testHexDumpTailAddresses() throws Exception {
+        byte[] b = randomBytes(1000);
+        TruncatingHexEncoder t = new TruncatingHexEncoder(new HexDumpEncoder(), 16, 20);
+        String s = t.encode(b);
+        String[] lines = s.split(NEWLINE);
+        assertEquals(4, lines.length);
+        assertEquals(new HexDumpEncoder().encode(b).split(NEWLINE)[0], lines[0]);
+        assertEquals("... 964 bytes skipped ...", lines[1]);
+        assertTrue(lines[2].startsWith("000003d4: "));
+        assertTrue(lines[3].startsWith("000003e4: "));
+        assertTrue(Arrays.equals(Arrays.copyOfRange(b, 980, 1000), new HexDumpDecoder().decode(lines[2] + NEWLINE + lines[3])));
+    }
+
+    public void testChannelReadsOnlyHeadAndTail() throws Exception {
+        CountingChannel c = new CountingChannel(1L << 40);
+        StringWriter s = new StringWriter();
+        new TruncatingHexEncoder(new HexDumpEncoder(), 32, 16).encode(c, 0x1000, c.size() - 0x1000, new PrintWriter(s));
+        assertEquals(48, c.read);
+        String[] lines = s.toString().split(NEWLINE);
+        assertEquals(4, lines.length);
+        assertTrue(lines[0].startsWith("0000001000: 00 01 02 03"));
+        assertTrue(lines[1].startsWith("0000001010: 10 11 12 13"));
+        assertEquals(String.format("... %d bytes skipped ...", c.size() - 0x1000 - 48), lines[2]);
+        assertTrue(lines[3].startsWith("fffffffff0: f0 f1 f2 f3"));
+
+        c = new CountingChannel(1L << 40);
+        s = new StringWriter();
+        new TruncatingHexEncoder(new DefaultHexEncoder(), 2, 2).encode(c, 0, c.size(), new PrintWriter(s));
+        assertEquals(4, c.read);
+        assertEquals("0001" + NEWLINE + String.format("... %d bytes skipped ...", c.size() - 4) + NEWLINE + "feff", s.toString());
+    }
+
+}
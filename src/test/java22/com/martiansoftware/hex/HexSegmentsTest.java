@@ -0,0 +1,131 @@
+package com.martiansoftware.hex;
+
+//   Copyright 2016 Martian Software, Inc.
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.io.StringWriter;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.Random;
+import junit.framework.TestCase;
+
+public class HexSegmentsTest extends TestCase {
+
+    private static byte[] bytes(MemorySegment s, long offset, int len) {
+        byte[] b = new byte[len];
+        MemorySegment.copy(s, ValueLayout.JAVA_BYTE, offset, b, 0, len);
+        return b;
+    }
+
+    private static MemorySegment segment(Arena arena, byte[] b, long offset) {
+        MemorySegment s = arena.allocate(offset + b.length);
+        MemorySegment.copy(b, 0, s, ValueLayout.JAVA_BYTE, offset, b.length);
+        return s;
+    }
+
+    public void testEncode() throws Exception {
+        byte[] b = new byte[200000];
+        new Random(60).nextBytes(b);
+        HexEncoder[] encoders = { new DefaultHexEncoder(), new HexDumpEncoder(true), StandardHexCodecs.HEXDUMP };
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment in = segment(arena, b, 10);
+            for (HexEncoder e : encoders) {
+                String expected = e.encode(b);
+                StringWriter s = new StringWriter();
+                try (PrintWriter out = new PrintWriter(s)) {
+                    HexSegments.encode(e, in, 10, b.length, out);
+                }
+                assertEquals(expected, s.toString());
+
+                MemorySegment hex = arena.allocate(expected.length() + 5);
+                assertEquals(expected.length(), HexSegments.encode(e, in, 10, b.length, hex, 5));
+                assertEquals(expected, new String(bytes(hex, 5, expected.length()), StandardCharsets.ISO_8859_1));
+            }
+        }
+    }
+
+    public void testDecode() throws Exception {
+        byte[] b = new byte[200000];
+        new Random(61).nextBytes(b);
+        HexEncoder[] encoders = { new DefaultHexEncoder(), new HexDumpEncoder(true) };
+        HexDecoder[] decoders = { new DefaultHexDecoder(), new HexDumpDecoder() };
+        try (Arena arena = Arena.ofConfined()) {
+            for (int i = 0; i < encoders.length; ++i) {
+                byte[] hex = encoders[i].encode(b).getBytes(StandardCharsets.ISO_8859_1);
+                MemorySegment in = segment(arena, hex, 3);
+                MemorySegment out = arena.allocate(b.length + 7);
+                assertEquals(b.length, HexSegments.decode(decoders[i], in, 3, hex.length, out, 7));
+                assertTrue(Arrays.equals(b, bytes(out, 7, b.length)));
+
+                try {
+                    HexSegments.decode(decoders[i], in, 3, hex.length, out, 8);
+                    fail("decoded past the end of the output segment");
+                } catch (IndexOutOfBoundsException expected) {}
+            }
+        }
+    }
+
+    public void testErrors() throws Exception {
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment in = segment(arena, "xx0102 0g".getBytes(StandardCharsets.ISO_8859_1), 0);
+            MemorySegment out = arena.allocate(10);
+            try {
+                HexSegments.decode(new DefaultHexDecoder(), in, 2, 7, out, 0);
+                fail("decoded an illegal character");
+            } catch (ParseException expected) {
+                assertEquals(6, expected.getErrorOffset());
+            }
+            try {
+                HexSegments.encode(new DefaultHexEncoder(), in, 5, 5, out, 0);
+                fail("encoded past the end of the input segment");
+            } catch (IndexOutOfBoundsException expected) {}
+        }
+    }
+
+    public void testRegionBeyond2GB() throws Exception {
+        long offset = 0xC0000000L;
+        File f = File.createTempFile("hexsegments", ".bin");
+        f.deleteOnExit();
+        try (RandomAccessFile raf = new RandomAccessFile(f, "rw");
+             FileChannel c = raf.getChannel();
+             Arena arena = Arena.ofConfined()) {
+            // sparse, so only the bytes written here take up space
+            raf.setLength(offset + 16);
+            c.write(ByteBuffer.wrap(new byte[] { 0x01, 0x02, (byte) 0xfe }), offset);
+            c.write(ByteBuffer.wrap("0a0b".getBytes(StandardCharsets.ISO_8859_1)), offset + 8);
+            MemorySegment file = c.map(FileChannel.MapMode.READ_ONLY, 0, raf.length(), arena);
+
+            StringWriter s = new StringWriter();
+            try (PrintWriter out = new PrintWriter(s)) {
+                HexSegments.encode(new DefaultHexEncoder(), file, offset, 3, out);
+            }
+            assertEquals(new DefaultHexEncoder().encode(new byte[] { 0x01, 0x02, (byte) 0xfe }), s.toString());
+
+            MemorySegment out = arena.allocate(2);
+            assertEquals(2, HexSegments.decode(new DefaultHexDecoder(), file, offset + 8, 4, out, 0));
+            assertTrue(Arrays.equals(new byte[] { 0x0a, 0x0b }, bytes(out, 0, 2)));
+        } finally {
+            f.delete();
+        }
+    }
+}